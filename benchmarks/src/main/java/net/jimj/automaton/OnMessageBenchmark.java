@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton;
+
+import net.jimj.automaton.dispatch.Dispatcher;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.model.DispatchConfig;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bot.onMessage for the kinds of lines a channel sees, with dispatched work run inline.
+ *
+ * Lines are picked so nothing is sent back, otherwise the outbound queue grows for the whole run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OnMessageBenchmark {
+    @Param({"hey, anyone around?", "jimj++", ".nosuch with some args", "did you see what your mom did"})
+    public String line;
+
+    private Storage storage;
+    private File logDir;
+    private BotRuntime runtime;
+    private Bot bot;
+
+    @Setup
+    public void setup() throws IOException {
+        Config config = new Config();
+        //Every channel line goes to the channel log, so that's part of what's measured.
+        logDir = Files.createTempDirectory("onmessage-log").toFile();
+        config.getLog().setDir(logDir.getPath());
+        config.getLog().setMaxBytes(64L * 1024 * 1024);
+        config.setNick("automaton");
+        config.setCommandChar(".");
+        storage = new EmbeddedStorage(null);
+        runtime = new BotRuntime(config, storage, new MetricRegistry()) {
+            @Override
+            protected Dispatcher createDispatcher(DispatchConfig dispatchConfig) {
+                return new InlineDispatcher(dispatchConfig);
+            }
+        };
+        bot = runtime.getBot(NetworkConfig.DEFAULT_NAME);
+    }
+
+    @TearDown
+    public void tearDown() {
+        runtime.shutdown();
+        storage.close();
+        File[] segments = logDir.listFiles();
+        for(File segment : segments == null ? new File[0] : segments) {
+            segment.delete();
+        }
+        logDir.delete();
+    }
+
+    @Benchmark
+    public void onMessage() {
+        bot.onMessage("#bench", "someone", "login", "host.example.com", line);
+    }
+
+    private static class InlineDispatcher extends Dispatcher {
+        private InlineDispatcher(DispatchConfig config) {
+            super(config);
+        }
+
+        @Override
+        public boolean dispatch(String laneKey, String taskName, Runnable task) {
+            task.run();
+            return true;
+        }
+    }
+}
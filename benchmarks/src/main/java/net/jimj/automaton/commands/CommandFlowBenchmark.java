@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.events.Event;
+import net.jimj.automaton.events.EventBus;
+import net.jimj.automaton.events.Subscriber;
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole command flows against the in-memory embedded storage, so the numbers are ours and not the database's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandFlowBenchmark {
+    private static final int QUOTES = 1000;
+    private static final String[] WORDS = {"apple", "bridge", "castle", "dragon", "engine", "forest", "garden",
+            "harbor", "island", "jacket", "kettle", "ladder", "mirror", "needle", "orange", "pencil", "quartz",
+            "rocket", "saddle", "tunnel", "umbrella", "violin", "window", "yellow", "zipper", "anchor", "basket",
+            "candle", "desert", "falcon", "glacier", "hammer", "lantern", "meadow", "pepper", "ribbon", "silver",
+            "thunder", "velvet", "walnut"};
+
+    private Storage storage;
+    private KarmaCommand karma;
+    private NoteCommand note;
+    private QuoteCommand quote;
+    private User user;
+    private User recipient;
+    private int replies;
+
+    @Setup
+    public void setup() {
+        storage = new EmbeddedStorage(null);
+        EventBus events = new EventBus();
+        events.subscribe(Event.class, new Subscriber<Event>() {
+            @Override
+            public void onEvent(Event event) {
+                replies++;
+            }
+        });
+
+        //Long flush interval and threshold so the flush is measured on its own.
+        karma = new KarmaCommand(storage.getKarmaStore(), TimeUnit.HOURS.toMillis(1), Integer.MAX_VALUE);
+        karma.setEventBus(events);
+        note = new NoteCommand(storage.getNoteStore());
+        note.setEventBus(events);
+        quote = new QuoteCommand(storage.getQuoteStore());
+        quote.setEventBus(events);
+
+        //Each quote gets its own run of words, otherwise near duplicate checking turns most of them away.
+        Random random = new Random(42);
+        for(int i=0;i<QUOTES;i++) {
+            StringBuilder text = new StringBuilder();
+            text.append("[12:0").append(i % 10).append("] <nick").append(i % 50).append(">");
+            for(int w=0;w<8;w++) {
+                text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append(" quote number ").append(i).append(" about ").append(i % 2 == 0 ? "cats" : "dogs");
+            quote.execute(user("someone"), text.toString());
+        }
+
+        int stored = 0;
+        for(Quote ignored : storage.getQuoteStore().findAll()) {
+            stored++;
+        }
+        if(stored != QUOTES) {
+            throw new IllegalStateException("Only " + stored + " of " + QUOTES + " seeded quotes were stored");
+        }
+
+        user = user("someone");
+        recipient = user("recipient");
+    }
+
+    @TearDown
+    public void tearDown() {
+        karma.shutdown();
+        storage.close();
+    }
+
+    @Benchmark
+    public void karmaProcess() {
+        karma.process(user, "jimj++");
+    }
+
+    @Benchmark
+    public void karmaLookup() {
+        karma.execute(user, "jimj");
+    }
+
+    @Benchmark
+    public void karmaFlush() {
+        karma.process(user, "jimj++");
+        karma.flush();
+    }
+
+    @Benchmark
+    public void noteProcessNothingPending() {
+        note.process(user, "just chatting");
+    }
+
+    @Benchmark
+    public void noteStoreAndDeliver() {
+        note.execute(user, "recipient don't forget the thing");
+        note.process(recipient, "hi all");
+    }
+
+    @Benchmark
+    public void quoteRandom() {
+        quote.execute(user, "");
+    }
+
+    @Benchmark
+    public void quoteWordSearch() {
+        quote.execute(user, "/cats/");
+    }
+
+    @Benchmark
+    public void quoteNickSearch() {
+        quote.execute(user, "nick7");
+    }
+
+    @Benchmark
+    public void quoteRegexSearch() {
+        quote.execute(user, "/number 9.*dogs/");
+    }
+
+    private static User user(String nick) {
+        User user = new User(0);
+        user.setNick(nick);
+        user.setNetwork("slashnet");
+        user.setChannel("#bench");
+        return user;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.model.Quote;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * QuoteParser as it was before it became a single pass over the paste: a regex per token for
+ * timestamps and a substring per candidate nick.  Kept here so the two can be benchmarked.
+ */
+class LegacyQuoteParser {
+    private static final Pattern TIMESTAMP = Pattern.compile(".*([0-9]{1,2}:[0-9][0-9]).*");
+
+    /**
+     * @return the quote, or null if no nick could be found in it.
+     */
+    public Quote parse(String network, Args args) {
+        int quoteStart = findQuoteStart(args);
+        if(quoteStart == -1) {
+            return null;
+        }
+
+        Set<String> nicks = findNickCandidates(args);
+
+        //Quote defaults to entire string
+        String quote = args.text();
+
+        if(quoteStart > 0) {
+            //Add on any 'passed in' nicks for the quote as well
+            //i.e. .quote foo <foobar> my quote
+            //would get the nicks ["foo", "foobar"] associated w/ it.
+            for(int i=0;i<quoteStart;i++) {
+                nicks.add(args.getString(i));
+            }
+
+            //Cut out the passed in nicks from the actual quote.
+            quote = args.rest(quoteStart);
+        }
+        return new Quote(nicks, quote, network);
+    }
+
+    public int findQuoteStart(Args args) {
+        for(int i=0;i<args.size();i++) {
+            String argPart = args.getString(i);
+            //Does the argPart start w/ a legal char?  If not, probably a nickname.
+            if(isMetaWord(argPart)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public Set<String> findNickCandidates(Args args) {
+        Set<String> candidates = new LinkedHashSet<>();
+        for(int i=0;i<args.size();i++) {
+            String argPart = args.getString(i);
+            //String splitting happens on whitespace
+            //argParts could show up as ["<", "nick>"] due to irc client formatting.
+            //If this is the case, append the next argPart onto the current string
+            if(argPart.length() == 1 && i + 1 < args.size()) {
+                argPart += args.getString(i+1);
+            }
+
+            if(isMetaWord(argPart)) {
+                String candidate = getNormalizedNick(argPart);
+                if(!looksLikeTimestamp(candidate)) {
+                    candidates.add(candidate);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    public boolean looksLikeTimestamp(String str) {
+        return TIMESTAMP.matcher(str).matches();
+    }
+
+    public String getNormalizedNick(String nick) {
+        int startNick = 0;
+        int endNick = nick.length();
+
+        int j=nick.length();
+        for(int i=0;i<nick.length();i++) {
+            if(i >= j) {
+                break;
+            }
+            if(!legalChar(nick.charAt(i))) {
+                startNick = i+1;
+            }
+            j--;
+            if(!legalChar(nick.charAt(j))) {
+                endNick = j;
+            }
+        }
+
+        return nick.substring(startNick, endNick).toLowerCase();
+    }
+
+    public boolean isMetaWord(String word) {
+        if(StringUtils.isBlank(word)) {
+            return false;
+        }
+        return !(Character.isAlphabetic(word.codePointAt(0)) || Character.isDigit(word.codePointAt(0)));
+    }
+
+    public boolean legalChar(char c) {
+        switch(c) {
+            case '<':
+            case '@':
+            case '+':
+            case '>':
+            case ' ':
+                return false;
+            default:
+                return true;
+        }
+    }
+}
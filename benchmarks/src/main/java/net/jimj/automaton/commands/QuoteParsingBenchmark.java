@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The string handling QuoteCommand does on every pasted quote, and the same against LegacyQuoteParser
+ * on pastes of a few lines and of a few hundred.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuoteParsingBenchmark {
+    private static final String PASTE = "[12:01] <jimj> did anyone see that [12:02] <@Gnome> no [12:02] * foo_ shrugs " +
+            "[12:03] <+bar|away> see what?";
+
+    @Param({"1", "200"})
+    public int pasteLines;
+
+    private QuoteCommand command;
+    private Args args;
+    private String[] words;
+    private QuoteParser parser;
+    private LegacyQuoteParser legacyParser;
+    private String largePaste;
+
+    @Setup
+    public void setup() {
+        command = new QuoteCommand(new EmbeddedStorage(null).getQuoteStore());
+        args = Args.parse(PASTE);
+        words = new String[args.size()];
+        for(int i=0;i<words.length;i++) {
+            words[i] = args.getString(i);
+        }
+
+        parser = new QuoteParser();
+        legacyParser = new LegacyQuoteParser();
+        StringBuilder paste = new StringBuilder();
+        for(int i=0;i<pasteLines;i++) {
+            paste.append(PASTE).append(' ');
+        }
+        largePaste = paste.toString();
+    }
+
+    @Benchmark
+    public Set<String> findNickCandidates() {
+        return command.findNickCandidates(args);
+    }
+
+    @Benchmark
+    public Quote parse() {
+        return parser.parse("slashnet", Args.parse(largePaste));
+    }
+
+    @Benchmark
+    public Quote legacyParse() {
+        return legacyParser.parse("slashnet", Args.parse(largePaste));
+    }
+
+    @Benchmark
+    public String getNormalizedNick() {
+        return command.getNormalizedNick("<@Gnome>");
+    }
+
+    @Benchmark
+    public void isMetaWord(Blackhole bh) {
+        for(String word : words) {
+            bh.consume(command.isMetaWord(word));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picking processors for a line, which happens for every non-command line the bot sees.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TriggerMatcherBenchmark {
+    @Param({"hey, anyone around?", "jimj++", "did you see what Your Mom did last night, it was something else"})
+    public String line;
+
+    private Storage storage;
+    private KarmaCommand karma;
+    private TriggerMatcher<Processor> matcher;
+
+    @Setup
+    public void setup() {
+        storage = new EmbeddedStorage(null);
+        karma = new KarmaCommand(storage.getKarmaStore());
+        Processor[] processors = {karma, new NoteCommand(storage.getNoteStore()),
+                new YourMomCommand(storage.getYourMomStore())};
+
+        Map<Processor, List<Trigger>> triggers = new LinkedHashMap<>();
+        for(Processor processor : processors) {
+            triggers.put(processor, processor.getTriggers());
+        }
+        matcher = TriggerMatcher.compile(triggers);
+    }
+
+    @TearDown
+    public void tearDown() {
+        karma.shutdown();
+        storage.close();
+    }
+
+    @Benchmark
+    public List<Processor> match() {
+        return matcher.match(line);
+    }
+}
@@ -22,76 +22,104 @@
 
 package net.jimj.automaton;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mongodb.BasicDBObject;
-import com.mongodb.DB;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
-import net.jimj.automaton.commands.Command;
-import net.jimj.automaton.commands.CommandObserver;
-import net.jimj.automaton.commands.HeadCommand;
-import net.jimj.automaton.commands.KarmaCommand;
-import net.jimj.automaton.commands.NoteCommand;
-import net.jimj.automaton.commands.Processor;
-import net.jimj.automaton.commands.QuoteCommand;
-import net.jimj.automaton.commands.YourMomCommand;
-import net.jimj.automaton.events.Event;
-import net.jimj.automaton.events.MessageEvent;
-import net.jimj.automaton.model.Config;
-import net.jimj.automaton.model.User;
-import org.apache.commons.lang.StringUtils;
+import net.jimj.automaton.events.JoinEvent;
+import net.jimj.automaton.events.NickChangeEvent;
+import net.jimj.automaton.events.PartEvent;
+import net.jimj.automaton.events.QuitEvent;
+import net.jimj.automaton.metrics.Gauge;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.OutboundConfig;
+import net.jimj.automaton.outbound.MessageSink;
+import net.jimj.automaton.outbound.OutboundQueue;
+import net.jimj.automaton.outbound.Priority;
 import org.jibble.pircbot.PircBot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-
-public class Bot extends PircBot implements CommandObserver {
+/**
+ * The connection to one network.  What to do with what's said is up to the BotRuntime.
+ */
+public class Bot extends PircBot {
     private static final Logger LOGGER = LoggerFactory.getLogger(Bot.class);
-    private static final String USER_COLLECTION = "users";
-    private ObjectMapper objectMapper;
-    private HashMap<String, Command> commandMap = new HashMap<>();
-    private ArrayList<Processor> processors = new ArrayList<>();
 
-    private Config config;
+    private BotRuntime runtime;
+    private NetworkConfig network;
+    private OutboundQueue outbound;
+    private volatile boolean shutdown;
 
-    private DB db;
-    private DBCollection users;
+    public Bot(BotRuntime runtime, NetworkConfig network, OutboundConfig outboundConfig, MetricRegistry metrics) {
+        this.runtime = runtime;
+        this.network = network;
 
-    public Bot(DB db) throws Exception {
-        this.db = db;
-        this.objectMapper = new ObjectMapper();
-        loadConfig();
-
-        this.setLogin(config.getNick());
-        this.setName(config.getNick());
+        this.setLogin(network.getNick());
+        this.setName(network.getNick());
         //TODO: Clean up logging
         this.setVerbose(LOGGER.isTraceEnabled());
-        users = db.getCollection(USER_COLLECTION);
-        loadCommands();
+        //The outbound queue does the pacing, pircbot's own delay would just add to it.
+        this.setMessageDelay(0);
+        outbound = new OutboundQueue(outboundConfig, new MessageSink() {
+            @Override
+            public void send(String target, String line) {
+                write(target, line);
+            }
+        });
+        registerGauges(metrics);
+    }
+
+    public NetworkConfig getNetwork() {
+        return network;
     }
 
     public void go() {
+        outbound.start();
         try {
-            this.connect(config.getServer());
+            this.connect(network.getServer(), network.getPort());
         }catch(Exception e) {
-            LOGGER.error("Exception in go method ", e);
+            LOGGER.error("Exception connecting to " + network.getName(), e);
         }
     }
 
+    public void shutdown() {
+        shutdown = true;
+        outbound.shutdown();
+    }
+
+    /**
+     * Send what the outbound queue has ready now, for when go() hasn't started its sender thread.
+     * @return how many lines were sent.
+     */
+    public int sendQueued() {
+        return outbound.sendReady();
+    }
+
+    /**
+     * Queue a line to send on this network.
+     */
+    public boolean offer(String target, String message, Priority priority) {
+        return outbound.offer(target, message, priority);
+    }
+
+    /**
+     * Put a line from the outbound queue on the wire.
+     */
+    protected void write(String target, String line) {
+        sendMessage(target, line);
+    }
+
     @Override
     protected void onConnect() {
-        for(String channel : config.getChannels()) {
+        for(String channel : network.getChannels()) {
             this.joinChannel(channel);
         }
     }
 
     @Override
     protected void onDisconnect() {
-        go();
+        //Reconnecting is for dropped connections, not for ones closed on the way out.
+        if(!shutdown) {
+            go();
+        }
     }
 
     @Override
@@ -100,112 +128,78 @@ public class Bot extends PircBot implements CommandObserver {
     }
 
     @Override
-    protected void onChannelInfo(String channel, int userCount, String topic) {
-        super.onChannelInfo(channel, userCount, topic);    //To change body of overridden methods use File | Settings | File Templates.
-
+    protected void onJoin(String channel, String sender, String login, String hostname) {
+        runtime.getEvents().publish(new JoinEvent(network.getName(), channel, sender));
     }
 
     @Override
-    protected void onMessage(String channel, String sender, String login, String hostname, String message) {
-        User user = getUser(sender, channel);
-
-        //Ignore self for any processing.
-        if(user.getNick().equals(config.getNick())) {
-            return;
-        }
-
-        if(message.startsWith(config.getCommandChar())) {
-            String commandName = message;
-
-            //Try to chop off the first word
-            int commandNameEnd = message.indexOf(" ");
-            String args = null;
-
-            //Strip off the command character for looking up the command
-            if(commandNameEnd != -1) {
-                commandName = message.substring(config.getCommandChar().length(), commandNameEnd);
-                args = StringUtils.strip(message.substring(config.getCommandChar().length() + commandName.length()));
-            }else {
-                commandName = commandName.substring(config.getCommandChar().length());
-            }
-
-            try {
-                fireCommand(user, commandName, args);
-            }catch(Exception e) {
-                String target = channel == null? sender : channel;
-                this.sendMessage(target, "fyf " + sender);
-
-                StackTraceElement[] st = e.getStackTrace();
-                int numMessages = Math.min(3, st.length);
-
-                //TODO: put this in config or dig out from Users somehow.
-                this.sendMessage("Gnome", sender + " caused " + e.getMessage());
-                for(int i=0;i<numMessages;i++) {
-                    this.sendMessage("Gnome", st[i].toString());
-                }
-            }
-        }else {
-            for(Processor processor : processors) {
-                if(processor.shouldProcess(message)) {
-                    processor.process(user, message);
-                }
-            }
-        }
+    protected void onPart(String channel, String sender, String login, String hostname) {
+        runtime.getEvents().publish(new PartEvent(network.getName(), channel, sender));
     }
 
-    protected void fireCommand(User user, String commandName, String args) {
-        LOGGER.debug("Firing command " + commandName);
-        Command commandObj = commandMap.get(commandName);
-        if(commandObj != null && commandObj.authorized(user)) {
-            commandObj.execute(user, args);
-        }
+    @Override
+    protected void onKick(String channel, String kickerNick, String kickerLogin, String kickerHostname,
+                          String recipientNick, String reason) {
+        runtime.getEvents().publish(new PartEvent(network.getName(), channel, recipientNick));
     }
 
     @Override
-    public void observe(Event event) {
-        if(event instanceof MessageEvent) {
-            MessageEvent msgEvent = (MessageEvent)event;
-            sendMessage(msgEvent.getTarget(), msgEvent.getMessage());
-        }
+    protected void onNickChange(String oldNick, String login, String hostname, String newNick) {
+        runtime.getEvents().publish(new NickChangeEvent(network.getName(), oldNick, newNick));
     }
 
-    private void loadCommands() {
-        loadCommand(new QuoteCommand(db.getCollection("quotes")));
-        loadCommand(new HeadCommand());
-        loadCommand(new KarmaCommand(db.getCollection("karma")));
-        loadCommand(new YourMomCommand(db.getCollection("yourmom")));
-        loadCommand(new NoteCommand(db.getCollection("notes")));
+    @Override
+    protected void onQuit(String sourceNick, String sourceLogin, String sourceHostname, String reason) {
+        runtime.getEvents().publish(new QuitEvent(network.getName(), sourceNick, reason));
     }
 
-    private void loadCommand(Command command) {
-        command.addObserver(this);
-        commandMap.put(command.getCommandName(), command);
+    @Override
+    protected void onChannelInfo(String channel, int userCount, String topic) {
+        super.onChannelInfo(channel, userCount, topic);    //To change body of overridden methods use File | Settings | File Templates.
 
-        if(command instanceof Processor) {
-            processors.add((Processor)command);
-        }
     }
 
-    private void loadConfig() throws Exception {
-        //TODO: externalize this
-        InputStream configStream = getClass().getResourceAsStream("/META-INF/config.json");
-        config = objectMapper.readValue(configStream, Config.class);
-        if(LOGGER.isDebugEnabled()) {
-            LOGGER.debug(objectMapper.writeValueAsString(config));
+    @Override
+    protected void onMessage(String channel, String sender, String login, String hostname, String message) {
+        //Ignore self for any processing.
+        if(sender.equals(network.getNick())) {
+            return;
         }
+
+        runtime.onMessage(this, channel, sender, message);
     }
 
-    private User getUser(String userName, String channel) {
-        User user;
-        DBCursor userCur = users.find(new BasicDBObject("nick", userName));
-        if(userCur.hasNext()) {
-            DBObject userObj = userCur.next();
-            user = objectMapper.convertValue(userObj.toString(), User.class);
-        }else {
-            user = new User(0);
-            user.setNick(userName);
-        }
-        user.setChannel(channel);
-        return user;
+    private void registerGauges(MetricRegistry metrics) {
+        String prefix = network.getName() + ".";
+        metrics.register(prefix + "irc.outgoingQueue", new Gauge() {
+            @Override
+            public long getValue() {
+                return getOutgoingQueueSize();
+            }
+        });
+        metrics.register(prefix + "outbound.queued", new Gauge() {
+            @Override
+            public long getValue() {
+                return outbound.size();
+            }
+        });
+        metrics.register(prefix + "outbound.sent", new Gauge() {
+            @Override
+            public long getValue() {
+                return outbound.getSent();
+            }
+        });
+        metrics.register(prefix + "outbound.coalesced", new Gauge() {
+            @Override
+            public long getValue() {
+                return outbound.getCoalesced();
+            }
+        });
+        metrics.register(prefix + "outbound.dropped", new Gauge() {
+            @Override
+            public long getValue() {
+                return outbound.getDropped();
+            }
+        });
     }
 }
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton;
+
+import net.jimj.automaton.cache.ExpiringCache;
+import net.jimj.automaton.commands.Args;
+import net.jimj.automaton.commands.Command;
+import net.jimj.automaton.commands.CommandRegistry;
+import net.jimj.automaton.commands.PluginCommand;
+import net.jimj.automaton.commands.Processor;
+import net.jimj.automaton.dispatch.Dispatcher;
+import net.jimj.automaton.events.CommandExecutedEvent;
+import net.jimj.automaton.events.EventBus;
+import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.events.NickChangeEvent;
+import net.jimj.automaton.events.QuitEvent;
+import net.jimj.automaton.events.Subscriber;
+import net.jimj.automaton.http.HttpFetcher;
+import net.jimj.automaton.log.ChannelLog;
+import net.jimj.automaton.log.LogRecord;
+import net.jimj.automaton.metrics.Counter;
+import net.jimj.automaton.metrics.Gauge;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.metrics.Timer;
+import net.jimj.automaton.model.CacheConfig;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.model.DispatchConfig;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.OutboundConfig;
+import net.jimj.automaton.model.PluginConfig;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.outbound.Priority;
+import net.jimj.automaton.plugins.PluginContext;
+import net.jimj.automaton.plugins.PluginManager;
+import net.jimj.automaton.store.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything the bot's connections share: commands, storage, the dispatcher, the event bus,
+ * the http client, the channel log and the user cache.
+ *
+ * There's one Bot per configured network.  Each hands its lines here and publishes what else
+ * happens on it (joins, nick changes and so on) to the event bus.  Replies are MessageEvents on
+ * the bus too, and are routed back to the Bot for the network the user spoke on.
+ */
+public class BotRuntime {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BotRuntime.class);
+    private static final String ADMIN = "admin";
+    private CommandRegistry registry = new CommandRegistry();
+    private PluginManager plugins;
+
+    private Config config;
+    private EventBus events;
+    private Dispatcher dispatcher;
+    private ExpiringCache<UserKey, User> userCache;
+    private HttpFetcher httpFetcher;
+    private ChannelLog channelLog;
+    private LinkedHashMap<String, Bot> bots = new LinkedHashMap<>();
+
+    private Storage storage;
+    private MetricRegistry metrics;
+
+    public BotRuntime(Config config, Storage storage, MetricRegistry metrics) {
+        this(config, storage, metrics, new EventBus());
+    }
+
+    /**
+     * @param events the bus to use, for when storage (e.g. a PublishingStorage) already publishes to it.
+     */
+    public BotRuntime(Config config, Storage storage, MetricRegistry metrics, EventBus events) {
+        this.config = config;
+        this.storage = storage;
+        this.metrics = metrics;
+        this.events = events;
+
+        CacheConfig cacheConfig = config.getCache();
+        userCache = new ExpiringCache<>(cacheConfig.getUserMaxSize(),
+                TimeUnit.SECONDS.toMillis(cacheConfig.getUserTtlSeconds()),
+                TimeUnit.SECONDS.toMillis(cacheConfig.getUserNegativeTtlSeconds()));
+        dispatcher = createDispatcher(config.getDispatch());
+        httpFetcher = new HttpFetcher(config.getHttp());
+        if(config.getLog().isEnabled()) {
+            channelLog = new ChannelLog(new File(config.getLog().getDir()), config.getLog());
+        }
+        subscribe();
+        loadCommands();
+
+        for(NetworkConfig network : config.getResolvedNetworks()) {
+            if(bots.containsKey(network.getName())) {
+                throw new IllegalArgumentException("Network " + network.getName() + " is configured twice");
+            }
+            bots.put(network.getName(), createBot(network, config.getOutbound(), metrics));
+        }
+        registerGauges();
+    }
+
+    protected Dispatcher createDispatcher(DispatchConfig dispatchConfig) {
+        return new Dispatcher(dispatchConfig);
+    }
+
+    protected Bot createBot(NetworkConfig network, OutboundConfig outboundConfig, MetricRegistry metrics) {
+        return new Bot(this, network, outboundConfig, metrics);
+    }
+
+    /**
+     * Connect to every network.
+     */
+    public void start() {
+        for(Bot bot : bots.values()) {
+            bot.go();
+        }
+    }
+
+    /**
+     * Finish any queued work and let commands save what they're holding on to.
+     */
+    public void shutdown() {
+        dispatcher.shutdown();
+        httpFetcher.shutdown();
+        for(Bot bot : bots.values()) {
+            bot.shutdown();
+        }
+        plugins.shutdown();
+        if(channelLog != null) {
+            channelLog.close();
+        }
+        events.shutdown();
+    }
+
+    public Bot getBot(String network) {
+        return bots.get(network);
+    }
+
+    public Collection<Bot> getBots() {
+        return Collections.unmodifiableCollection(bots.values());
+    }
+
+    public EventBus getEvents() {
+        return events;
+    }
+
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    public CommandRegistry getRegistry() {
+        return registry;
+    }
+
+    public PluginManager getPlugins() {
+        return plugins;
+    }
+
+    /**
+     * Handle a line someone said to one of the bots.
+     */
+    protected void onMessage(final Bot bot, final String channel, final String sender, String message) {
+        final NetworkConfig network = bot.getNetwork();
+
+        //Replies for a channel (or a private conversation) go through one lane so they stay in order.
+        final String target = channel == null ? sender : channel;
+        final String lane = network.getName() + " " + target;
+
+        boolean isCommand = message.startsWith(network.getCommandChar());
+        if(channelLog != null && channel != null) {
+            logLine(network.getName(), channel, sender, message, isCommand);
+        }
+
+        if(isCommand) {
+            //Lines for commands nobody has are dropped without making any Strings out of them.
+            final Args args = Args.parseCommand(message, network.getCommandChar().length());
+            final Command command = registry.find(args);
+            if(command == null) {
+                return;
+            }
+
+            boolean accepted = dispatcher.dispatch(lane, command.getCommandName(), new Runnable() {
+                @Override
+                public void run() {
+                    User user = getUser(network.getName(), sender, channel);
+                    try {
+                        fireCommand(user, command, args);
+                    }catch(Exception e) {
+                        reportError(bot, target, sender, e);
+                    }
+                }
+            });
+
+            if(!accepted) {
+                metrics.counter("dispatch.rejected").increment();
+                bot.offer(target, sender + ": busy, try again in a bit.", Priority.REPLY);
+            }
+        }else {
+            final String finalMessage = message;
+            for(final Processor processor : registry.match(message)) {
+                String processorName = ((Command)processor).getCommandName();
+                final Timer timer = metrics.timer("processor." + processorName);
+                boolean accepted = dispatcher.dispatch(lane, DispatchConfig.PROCESSOR_PREFIX + processorName, new Runnable() {
+                    @Override
+                    public void run() {
+                        Timer.Context context = timer.time();
+                        try {
+                            processor.process(getUser(network.getName(), sender, channel), finalMessage);
+                        }catch(RuntimeException e) {
+                            context.fail();
+                            throw e;
+                        }finally {
+                            context.stop();
+                        }
+                    }
+                });
+
+                if(!accepted) {
+                    metrics.counter("dispatch.rejected").increment();
+                    LOGGER.warn("Dropped " + processorName + " processing for " + sender + " on " +
+                            network.getName() + ", too busy");
+                }
+            }
+        }
+    }
+
+    private void logLine(String network, String channel, String sender, String message, boolean isCommand) {
+        try {
+            channelLog.append(new LogRecord(System.currentTimeMillis(), network, channel, sender, message, isCommand));
+        }catch(RuntimeException e) {
+            //Losing a line of history isn't worth losing the line itself over.
+            metrics.counter("log.failed").increment();
+            LOGGER.warn("Couldn't log a line from " + channel + " on " + network, e);
+        }
+    }
+
+    private void reportError(Bot bot, String target, String sender, Exception e) {
+        bot.offer(target, "fyf " + sender, Priority.REPLY);
+
+        StackTraceElement[] st = e.getStackTrace();
+        int numMessages = Math.min(3, st.length);
+
+        //TODO: put this in config or dig out from Users somehow.
+        bot.offer("Gnome", sender + " caused " + e.getMessage(), Priority.DIAGNOSTIC);
+        for(int i=0;i<numMessages;i++) {
+            bot.offer("Gnome", st[i].toString(), Priority.DIAGNOSTIC);
+        }
+    }
+
+    protected void fireCommand(User user, Command command, Args args) {
+        if(LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Firing command " + command.getCommandName());
+        }
+        if(command.authorized(user)) {
+            Timer.Context context = metrics.timer("command." + command.getCommandName()).time();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                command.execute(user, args);
+                failed = false;
+            }catch(RuntimeException e) {
+                context.fail();
+                throw e;
+            }finally {
+                context.stop();
+                events.publish(new CommandExecutedEvent(user, command.getCommandName(), System.nanoTime() - start, failed));
+            }
+        }
+    }
+
+    private void subscribe() {
+        final Counter replies = metrics.counter("replies");
+        events.subscribe(MessageEvent.class, new Subscriber<MessageEvent>() {
+            @Override
+            public void onEvent(MessageEvent event) {
+                replies.increment();
+                Bot bot = bots.get(event.getNetwork());
+                if(bot == null) {
+                    LOGGER.warn("No connection to " + event.getNetwork() + " for message to " + event.getTarget());
+                    return;
+                }
+                bot.offer(event.getTarget(), event.getMessage(), event.getPriority());
+            }
+        });
+
+        //What we know about a nick doesn't carry over once someone else can have it.
+        events.subscribe(NickChangeEvent.class, new Subscriber<NickChangeEvent>() {
+            @Override
+            public void onEvent(NickChangeEvent event) {
+                invalidateUser(event.getNetwork(), event.getOldNick());
+                invalidateUser(event.getNetwork(), event.getNewNick());
+            }
+        });
+        events.subscribe(QuitEvent.class, new Subscriber<QuitEvent>() {
+            @Override
+            public void onEvent(QuitEvent event) {
+                invalidateUser(event.getNetwork(), event.getNick());
+            }
+        });
+    }
+
+    private void loadCommands() {
+        PluginConfig pluginConfig = config.getPlugins();
+        registry.setAliases(pluginConfig.getAliases());
+
+        PluginContext context = new PluginContext(config, storage, httpFetcher, metrics, channelLog);
+        File pluginDir = pluginConfig.getDir() == null ? null : new File(pluginConfig.getDir());
+        plugins = new PluginManager(pluginDir, context, registry) {
+            @Override
+            protected void bind(Command command) {
+                bindCommand(command);
+            }
+        };
+        plugins.loadBuiltins();
+
+        Command pluginCommand = new PluginCommand(plugins, pluginConfig.getAdminLevel());
+        bindCommand(pluginCommand);
+        registry.add(ADMIN, Collections.singletonList(pluginCommand));
+
+        plugins.loadAll();
+    }
+
+    private void bindCommand(Command command) {
+        command.setEventBus(events);
+    }
+
+    private void registerGauges() {
+        metrics.register("events.queued", new Gauge() {
+            @Override
+            public long getValue() {
+                return events.getQueued();
+            }
+        });
+        metrics.register("events.dropped", new Gauge() {
+            @Override
+            public long getValue() {
+                return events.getDropped();
+            }
+        });
+        metrics.register("events.failed", new Gauge() {
+            @Override
+            public long getValue() {
+                return events.getFailed();
+            }
+        });
+        metrics.register("dispatch.pending", new Gauge() {
+            @Override
+            public long getValue() {
+                return dispatcher.getPending();
+            }
+        });
+        metrics.register("cache.users.size", new Gauge() {
+            @Override
+            public long getValue() {
+                return userCache.size();
+            }
+        });
+        metrics.register("cache.users.hits", new Gauge() {
+            @Override
+            public long getValue() {
+                return userCache.getHits();
+            }
+        });
+        metrics.register("cache.users.misses", new Gauge() {
+            @Override
+            public long getValue() {
+                return userCache.getMisses();
+            }
+        });
+        metrics.register("cache.users.evictions", new Gauge() {
+            @Override
+            public long getValue() {
+                return userCache.getEvictions();
+            }
+        });
+        if(channelLog != null) {
+            metrics.register("log.segments", new Gauge() {
+                @Override
+                public long getValue() {
+                    return channelLog.getSegmentCount();
+                }
+            });
+        }
+        metrics.register("http.active", new Gauge() {
+            @Override
+            public long getValue() {
+                return httpFetcher.getActive();
+            }
+        });
+        metrics.register("http.queued", new Gauge() {
+            @Override
+            public long getValue() {
+                return httpFetcher.getQueued();
+            }
+        });
+        metrics.register("cache.heads.hits", new Gauge() {
+            @Override
+            public long getValue() {
+                return httpFetcher.getHeadCache().getHits();
+            }
+        });
+        metrics.register("cache.heads.misses", new Gauge() {
+            @Override
+            public long getValue() {
+                return httpFetcher.getHeadCache().getMisses();
+            }
+        });
+        metrics.register("cache.pages.hits", new Gauge() {
+            @Override
+            public long getValue() {
+                return httpFetcher.getPageCache().getHits();
+            }
+        });
+        metrics.register("cache.pages.misses", new Gauge() {
+            @Override
+            public long getValue() {
+                return httpFetcher.getPageCache().getMisses();
+            }
+        });
+    }
+
+    /**
+     * Forget what we know about a nick on a network, e.g. after it changes hands.
+     */
+    protected void invalidateUser(String network, String nick) {
+        userCache.invalidate(new UserKey(network, nick));
+    }
+
+    private User getUser(String network, String userName, String channel) {
+        User cached = userCache.get(new UserKey(network, userName), userLoader);
+        User user;
+        if(cached != null) {
+            //Cached users are shared, hand out a copy since the channel differs per message.
+            user = new User(cached);
+        }else {
+            user = new User(0);
+            user.setNick(userName);
+        }
+        user.setNetwork(network);
+        user.setChannel(channel);
+        return user;
+    }
+
+    private final ExpiringCache.Loader<UserKey, User> userLoader = new ExpiringCache.Loader<UserKey, User>() {
+        @Override
+        public User load(UserKey key) {
+            return storage.getUserStore().findUser(key.network, key.nick);
+        }
+    };
+
+    private static final class UserKey {
+        private final String network;
+        private final String nick;
+
+        private UserKey(String network, String nick) {
+            this.network = network;
+            this.nick = nick;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof UserKey)) {
+                return false;
+            }
+            UserKey other = (UserKey)o;
+            return network.equals(other.network) && nick.equals(other.nick);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * network.hashCode() + nick.hashCode();
+        }
+    }
+}
@@ -22,19 +22,127 @@
 
 package net.jimj.automaton;
 
-import com.mongodb.DB;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.MongoClient;
+import net.jimj.automaton.bulk.QuoteExporter;
+import net.jimj.automaton.bulk.QuoteImporter;
+import net.jimj.automaton.events.EventBus;
+import net.jimj.automaton.metrics.LogReporter;
+import net.jimj.automaton.metrics.MeteredStorage;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.model.MetricsConfig;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.StorageConfig;
+import net.jimj.automaton.store.PublishingStorage;
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import net.jimj.automaton.store.mongo.MongoStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
 import java.util.logging.LogManager;
 
 public class Main {
-    private static final String DATABASE_NAME = "ircbot";
+    private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int IMPORT_BATCH_SIZE = 1000;
 
     public static void main(String[] args) throws Exception { //TODO: Don't throw Exception
         LogManager.getLogManager().readConfiguration(Main.class.getResourceAsStream("/META-INF/logging.properties"));
-        MongoClient client = new MongoClient();
-        DB db = client.getDB(DATABASE_NAME);
-        Bot bot = new Bot(db);
-        bot.go();
+        Config config = loadConfig();
+        if(args.length > 0) {
+            runTool(config, args);
+            return;
+        }
+
+        MetricsConfig metricsConfig = config.getMetrics();
+        final MetricRegistry metrics = new MetricRegistry(metricsConfig.isJmx() ?
+                ManagementFactory.getPlatformMBeanServer() : null);
+        final LogReporter reporter = new LogReporter(metrics);
+        reporter.start(metricsConfig.getReportSeconds());
+
+        EventBus events = new EventBus();
+        final Storage storage = new PublishingStorage(new MeteredStorage(openStorage(config.getStorage()), metrics), events);
+        final BotRuntime runtime = new BotRuntime(config, storage, metrics, events);
+        Runtime.getRuntime().addShutdownHook(new Thread("shutdown") {
+            @Override
+            public void run() {
+                runtime.shutdown();
+                storage.close();
+                reporter.stop();
+                reporter.report();
+            }
+        });
+        runtime.start();
+    }
+
+    /**
+     * Offline quote maintenance, run against the configured storage:
+     *   import &lt;file&gt; [json|text] [network]
+     *   export &lt;file&gt;
+     * A bot that's already running only indexes quotes when it starts, so it won't pick imported
+     * quotes for word searches or near duplicate checks until it's restarted.
+     */
+    private static void runTool(Config config, String[] args) throws Exception {
+        String mode = args[0];
+        if(args.length < 2 || !("import".equals(mode) || "export".equals(mode))) {
+            System.err.println("Usage: import <file> [json|text] [network]");
+            System.err.println("       export <file>");
+            System.err.println("Restart a running bot after an import so its quote search sees the new quotes.");
+            System.exit(1);
+        }
+
+        Storage storage = openStorage(config.getStorage());
+        try {
+            File file = new File(args[1]);
+            if("import".equals(mode)) {
+                String format = args.length > 2 ? args[2] : QuoteImporter.JSON;
+                String network = args.length > 3 ? args[3] : NetworkConfig.DEFAULT_NAME;
+                QuoteImporter importer = new QuoteImporter(storage.getQuoteStore(),
+                        Runtime.getRuntime().availableProcessors(), IMPORT_BATCH_SIZE);
+                try(Reader in = new InputStreamReader(new FileInputStream(file), UTF8)) {
+                    LOGGER.info("Imported " + file + ": " + importer.importFrom(in, format, network));
+                }
+            }else {
+                try(Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8))) {
+                    LOGGER.info("Exported " + new QuoteExporter(storage.getQuoteStore()).exportTo(out) + " quotes to " + file);
+                }
+            }
+        }finally {
+            storage.close();
+        }
+    }
+
+    private static Config loadConfig() throws Exception {
+        //TODO: externalize this
+        ObjectMapper objectMapper = new ObjectMapper();
+        InputStream configStream = Main.class.getResourceAsStream("/META-INF/config.json");
+        Config config = objectMapper.readValue(configStream, Config.class);
+        if(LOGGER.isDebugEnabled()) {
+            LOGGER.debug(objectMapper.writeValueAsString(config));
+        }
+        return config;
+    }
+
+    private static Storage openStorage(StorageConfig storageConfig) throws Exception {
+        if(StorageConfig.EMBEDDED.equals(storageConfig.getType())) {
+            LOGGER.info("Using embedded storage in " + storageConfig.getDataDir());
+            return new EmbeddedStorage(new File(storageConfig.getDataDir()));
+        }
+
+        MongoClient client = new MongoClient(storageConfig.getHost(), storageConfig.getPort());
+        return new MongoStorage(client, storageConfig.getDatabase());
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.store.QuoteStore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes every quote in a store out as JSON, one quote per line, in the form QuoteImporter reads.
+ * Quotes are written as the store hands them over, so memory use doesn't grow with the store.
+ */
+public class QuoteExporter {
+    private final QuoteStore quotes;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public QuoteExporter(QuoteStore quotes) {
+        this.quotes = quotes;
+    }
+
+    /**
+     * @return how many quotes were written.
+     */
+    public long exportTo(Writer out) throws IOException {
+        long count = 0;
+        for(Quote quote : quotes.findAll()) {
+            out.write(objectMapper.writeValueAsString(toRecord(quote)));
+            out.write('\n');
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    private Map<String, Object> toRecord(Quote quote) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        //Ids are store specific (e.g. mongo ObjectIds), so they only go out as text.
+        record.put("id", quote.getId() == null ? null : quote.getId().toString());
+        record.put("network", quote.getNetwork());
+        record.put("nicks", new ArrayList<>(quote.getNicks()));
+        record.put("quote", quote.getQuote());
+        return record;
+    }
+}
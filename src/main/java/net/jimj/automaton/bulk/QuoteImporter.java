@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.bulk;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jimj.automaton.commands.Args;
+import net.jimj.automaton.commands.QuoteParser;
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.store.Fingerprint;
+import net.jimj.automaton.store.QuoteStore;
+import net.jimj.automaton.store.StoreException;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads a dump of quotes into a quote store.
+ *
+ * Lines are read in chunks and handed to a small pool of parser threads, which run each
+ * pasted quote through the same nick detection as .quote.  Parsed quotes go through a bounded
+ * queue to a single writer that stores them in batches.  Every stage has a fixed size queue in
+ * front of it, so a slow store holds up the parsers and they hold up the reader rather than
+ * the dump piling up in memory.  Quotes from different chunks may be stored out of order.
+ * Quotes with the same Fingerprint as one already stored, or earlier in the dump, are dropped;
+ * each batch's Fingerprints are looked up in the store all at once.
+ *
+ * If the store fails, the import stops: the writer keeps taking what the parsers hand it so
+ * they can't block, the reader stops reading, and importFrom throws once everything has wound down.
+ */
+public class QuoteImporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuoteImporter.class);
+    /** One quote per line as written by QuoteExporter; missing nicks are found in the quote. */
+    public static final String JSON = "json";
+    /** One pasted quote per line, e.g. "[12:01] &lt;foo&gt; hi". */
+    public static final String TEXT = "text";
+
+    private static final int CHUNK_LINES = 256;
+    private static final List<Quote> END = Collections.emptyList();
+
+    private final QuoteStore quotes;
+    private final int threads;
+    private final int batchSize;
+    private final QuoteParser parser = new QuoteParser();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * @param threads how many threads parse lines.
+     * @param batchSize how many quotes to store per write.
+     */
+    public QuoteImporter(QuoteStore quotes, int threads, int batchSize) {
+        this.quotes = quotes;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import every line of the reader, returning once everything has been stored.
+     * @throws StoreException if the store failed, after counting what wasn't stored as failed.
+     * @param format JSON or TEXT.
+     * @param network the network for quotes that don't name one.
+     */
+    public Result importFrom(Reader in, final String format, final String network) throws IOException, InterruptedException {
+        if(!JSON.equals(format) && !TEXT.equals(format)) {
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+
+        final Result result = new Result();
+        final BlockingQueue<List<Quote>> parsed = new ArrayBlockingQueue<>(threads * 2);
+        BatchWriter writer = new BatchWriter(parsed, result);
+        writer.start();
+
+        //CallerRunsPolicy makes the reader parse a chunk itself when the parsers are all busy,
+        //which keeps it from reading any further ahead.
+        ThreadPoolExecutor parsers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            BufferedReader reader = new BufferedReader(in);
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            String line;
+            while(writer.failure == null && (line = reader.readLine()) != null) {
+                result.lines.incrementAndGet();
+                chunk.add(line);
+                if(chunk.size() == CHUNK_LINES) {
+                    submit(parsers, chunk, format, network, parsed, result);
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                }
+            }
+            if(!chunk.isEmpty() && writer.failure == null) {
+                submit(parsers, chunk, format, network, parsed, result);
+            }
+        }finally {
+            parsers.shutdown();
+            while(!parsers.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.debug("Waiting for parsers to finish");
+            }
+            parsed.put(END);
+            writer.join();
+        }
+
+        if(writer.failure != null) {
+            throw new StoreException("Quote import stopped after " + result, writer.failure);
+        }
+        return result;
+    }
+
+    /**
+     * @return the quote on the line, or null if it should be skipped.
+     */
+    protected Quote parseLine(String line, String format, String network) throws IOException {
+        if(StringUtils.isBlank(line)) {
+            return null;
+        }
+
+        if(TEXT.equals(format)) {
+            return parser.parse(network, Args.parse(line.trim()));
+        }
+
+        Quote quote = objectMapper.readValue(line, Quote.class);
+        quote.setId(null);
+        if(StringUtils.isBlank(quote.getQuote())) {
+            return null;
+        }
+        if(quote.getNetwork() == null) {
+            quote.setNetwork(network);
+        }
+        if(quote.getNicks() == null || quote.getNicks().isEmpty()) {
+            Quote found = parser.parse(quote.getNetwork(), Args.parse(quote.getQuote()));
+            if(found == null) {
+                return null;
+            }
+            quote.setNicks(found.getNicks());
+        }else {
+            Set<String> nicks = new LinkedHashSet<>();
+            for(String nick : quote.getNicks()) {
+                nicks.add(nick.toLowerCase());
+            }
+            quote.setNicks(nicks);
+        }
+        return quote;
+    }
+
+    private void submit(ThreadPoolExecutor parsers, final List<String> chunk, final String format, final String network,
+                        final BlockingQueue<List<Quote>> parsed, final Result result) {
+        parsers.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Quote> chunkQuotes = new ArrayList<>(chunk.size());
+                for(String line : chunk) {
+                    try {
+                        Quote quote = parseLine(line, format, network);
+                        if(quote == null) {
+                            result.skipped.incrementAndGet();
+                        }else {
+                            chunkQuotes.add(quote);
+                        }
+                    }catch(IOException | RuntimeException e) {
+                        LOGGER.warn("Skipping unreadable line " + line, e);
+                        result.skipped.incrementAndGet();
+                    }
+                }
+
+                if(!chunkQuotes.isEmpty()) {
+                    try {
+                        parsed.put(chunkQuotes);
+                    }catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        result.failed.addAndGet(chunkQuotes.size());
+                    }
+                }
+            }
+        });
+    }
+
+    private class BatchWriter extends Thread {
+        private final BlockingQueue<List<Quote>> parsed;
+        private final Result result;
+        private volatile RuntimeException failure;
+
+        private BatchWriter(BlockingQueue<List<Quote>> parsed, Result result) {
+            super("quote-import-writer");
+            this.parsed = parsed;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            List<Quote> batch = new ArrayList<>(batchSize);
+            try {
+                List<Quote> chunk;
+                while((chunk = parsed.take()) != END) {
+                    for(Quote quote : chunk) {
+                        batch.add(quote);
+                        if(batch.size() == batchSize) {
+                            write(batch);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+                }
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            write(batch);
+        }
+
+        /**
+         * Store the batch, less any duplicates.  Once the store has failed, everything after is counted as failed.
+         */
+        private void write(List<Quote> batch) {
+            if(batch.isEmpty()) {
+                return;
+            }
+            if(failure != null) {
+                result.failed.addAndGet(batch.size());
+                return;
+            }
+
+            try {
+                List<Quote> fresh = withoutDuplicates(batch);
+                if(!fresh.isEmpty()) {
+                    quotes.saveAll(fresh);
+                    result.imported.addAndGet(fresh.size());
+                    LOGGER.debug("Stored " + result.getImported() + " quotes");
+                }
+            }catch(RuntimeException e) {
+                LOGGER.error("Couldn't store " + batch.size() + " quotes, stopping the import", e);
+                result.failed.addAndGet(batch.size());
+                failure = e;
+            }
+        }
+
+        /**
+         * @return the quotes that aren't already stored or repeated earlier in the batch.
+         */
+        private List<Quote> withoutDuplicates(List<Quote> batch) {
+            //network -> fingerprints, so each network's are looked up in one go.
+            Map<String, Set<Long>> byNetwork = new HashMap<>();
+            long[] fingerprints = new long[batch.size()];
+            for(int i=0;i<batch.size();i++) {
+                Quote quote = batch.get(i);
+                fingerprints[i] = Fingerprint.of(quote.getQuote());
+                Set<Long> networkFingerprints = byNetwork.get(quote.getNetwork());
+                if(networkFingerprints == null) {
+                    networkFingerprints = new HashSet<>();
+                    byNetwork.put(quote.getNetwork(), networkFingerprints);
+                }
+                networkFingerprints.add(fingerprints[i]);
+            }
+
+            Map<String, Set<Long>> stored = new HashMap<>();
+            for(Map.Entry<String, Set<Long>> network : byNetwork.entrySet()) {
+                stored.put(network.getKey(), quotes.findFingerprints(network.getKey(), network.getValue()));
+            }
+
+            List<Quote> fresh = new ArrayList<>(batch.size());
+            Set<String> seen = new HashSet<>();
+            for(int i=0;i<batch.size();i++) {
+                Quote quote = batch.get(i);
+                if(stored.get(quote.getNetwork()).contains(fingerprints[i]) ||
+                        !seen.add(quote.getNetwork() + ' ' + fingerprints[i])) {
+                    result.duplicates.incrementAndGet();
+                }else {
+                    fresh.add(quote);
+                }
+            }
+            return fresh;
+        }
+    }
+
+    public static class Result {
+        private final AtomicLong lines = new AtomicLong();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong duplicates = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        public long getLines() {
+            return lines.get();
+        }
+
+        public long getImported() {
+            return imported.get();
+        }
+
+        /**
+         * @return blank or unreadable lines, and quotes with no nick to file them under.
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * @return quotes that were already stored.
+         */
+        public long getDuplicates() {
+            return duplicates.get();
+        }
+
+        /**
+         * @return quotes the store wouldn't take, and any left when the import stopped because of that.
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        @Override
+        public String toString() {
+            return lines + " lines, " + imported + " imported, " + skipped + " skipped, " + duplicates + " duplicates, " + failed + " failed";
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded LRU cache whose entries also expire after a fixed time.
+ * Lookups that find nothing can be cached too (for a separate, usually shorter, time)
+ * so repeated misses don't keep going back to the database.
+ */
+public class ExpiringCache<K, V> {
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private final Map<K, Generation> loading = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize the most entries to hold before the least recently used are evicted.
+     * @param ttlMillis how long a loaded value is good for.
+     * @param negativeTtlMillis how long to remember that a key had no value, 0 to not remember.
+     */
+    public ExpiringCache(final int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if(size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the value for a key, loading it if it's not cached or has expired.
+     * The loader runs without holding the cache lock, so two threads missing on the same
+     * key at the same time may both load it.  A load that was under way when the key was
+     * invalidated or put is returned to its caller but not cached, since it may be out of date.
+     * @return the value, or null if the loader didn't find one.
+     */
+    public V get(K key, Loader<K, V> loader) {
+        long now = now();
+        Generation generation;
+        long seen;
+        synchronized(entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if(entry != null) {
+                if(entry.expiresAt > now) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+
+            generation = loading.get(key);
+            if(generation == null) {
+                generation = new Generation();
+                loading.put(key, generation);
+            }
+            generation.loaders++;
+            seen = generation.value;
+        }
+
+        misses.incrementAndGet();
+        V value = null;
+        try {
+            value = loader.load(key);
+        }finally {
+            synchronized(entries) {
+                if(--generation.loaders == 0 && loading.get(key) == generation) {
+                    loading.remove(key);
+                }
+                if(generation.value == seen) {
+                    if(value != null) {
+                        entries.put(key, new CacheEntry<>(value, now + ttlMillis));
+                    }else if(negativeTtlMillis > 0) {
+                        entries.put(key, new CacheEntry<V>(null, now + negativeTtlMillis));
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the value for a key without loading it, for callers that load asynchronously.
+     * @return the cached value, or null if it isn't cached, has expired, or was cached as missing.
+     */
+    public V getIfPresent(K key) {
+        long now = now();
+        synchronized(entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if(entry != null) {
+                if(entry.expiresAt > now) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        long expiresAt = now() + ttlMillis;
+        synchronized(entries) {
+            bump(key);
+            entries.put(key, new CacheEntry<>(value, expiresAt));
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized(entries) {
+            bump(key);
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized(entries) {
+            for(Generation generation : loading.values()) {
+                generation.value++;
+            }
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Make any load of the key that's under way too old to cache.  Called holding the lock.
+     */
+    private void bump(K key) {
+        Generation generation = loading.get(key);
+        if(generation != null) {
+            generation.value++;
+        }
+    }
+
+    public interface Loader<K, V> {
+        /**
+         * @return the value for the key, or null if there isn't one.
+         */
+        public V load(K key);
+    }
+
+    /**
+     * Counts changes to a key while it's being loaded.  Only kept while there are loads
+     * in flight, so keys that are never loaded again cost nothing.
+     */
+    private static class Generation {
+        private long value;
+        private int loaders;
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
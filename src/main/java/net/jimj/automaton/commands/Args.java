@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+/**
+ * A command line, split into the command name and its arguments without copying the line.
+ *
+ * Everything is kept as offsets into the original message.  Tokens are worked out the first
+ * time they're asked for, and only turned into Strings when a caller asks for one, so a command
+ * that just wants its argument text (or only looks at the first word) doesn't pay for the rest.
+ *
+ * Tokens are separated by whitespace.  A token starting with a double quote runs to the next
+ * double quote, so "two words" is one token (without the quotes).  An unclosed quote runs to
+ * the end of the line.  text() and rest() are the line as it was typed, so they keep any quotes.
+ *
+ * Not thread safe, but fine to hand from one thread to another.
+ */
+public class Args {
+    private static final Args EMPTY = new Args("", 0, 0, 0);
+    private static final int INITIAL_TOKENS = 8;
+
+    private final String line;
+    private final int nameStart;
+    private final int nameEnd;
+    private final int textStart;
+    private final int textEnd;
+
+    //Three ints per token: where its raw text starts, where its value starts, and where its value ends.
+    private int[] tokens;
+    private int tokenCount = -1;
+
+    private Args(String line, int nameStart, int nameEnd, int textEnd) {
+        this.line = line;
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+
+        int start = nameEnd;
+        while(start < textEnd && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        int end = textEnd;
+        while(end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        this.textStart = start;
+        this.textEnd = end;
+    }
+
+    /**
+     * Split a command line.
+     * @param nameStart where the command name starts, i.e. just past the command character.
+     */
+    public static Args parseCommand(String line, int nameStart) {
+        int nameEnd = nameStart;
+        while(nameEnd < line.length() && !Character.isWhitespace(line.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        return new Args(line, nameStart, nameEnd, line.length());
+    }
+
+    /**
+     * Wrap argument text that has no command name in front of it.
+     */
+    public static Args parse(String args) {
+        if(args == null || args.isEmpty()) {
+            return EMPTY;
+        }
+        return new Args(args, 0, 0, args.length());
+    }
+
+    /**
+     * @return true if the command name is exactly this, without making a String of it.
+     */
+    public boolean nameIs(String name) {
+        return name.length() == nameEnd - nameStart && line.startsWith(name, nameStart);
+    }
+
+    public int getNameLength() {
+        return nameEnd - nameStart;
+    }
+
+    public char nameCharAt(int index) {
+        return line.charAt(nameStart + index);
+    }
+
+    public String getName() {
+        return line.substring(nameStart, nameEnd);
+    }
+
+    /**
+     * @return everything after the command name, without surrounding whitespace, quotes and all.
+     */
+    public String text() {
+        return line.substring(textStart, textEnd);
+    }
+
+    public boolean isEmpty() {
+        return textStart == textEnd;
+    }
+
+    public int size() {
+        tokenize();
+        return tokenCount;
+    }
+
+    /**
+     * @return a view of the token, which doesn't copy it until toString().
+     */
+    public CharSequence get(int index) {
+        checkIndex(index);
+        return new Slice(tokens[index * 3 + 1], tokens[index * 3 + 2]);
+    }
+
+    public String getString(int index) {
+        checkIndex(index);
+        return line.substring(tokens[index * 3 + 1], tokens[index * 3 + 2]);
+    }
+
+    /**
+     * @return the text from the token at index to the end, as it was typed (quotes, spacing and all),
+     * or an empty string if there aren't that many tokens.
+     */
+    public String rest(int index) {
+        tokenize();
+        if(index >= tokenCount) {
+            return "";
+        }
+        return line.substring(tokens[index * 3], textEnd);
+    }
+
+    @Override
+    public String toString() {
+        return line.substring(nameStart, textEnd);
+    }
+
+    private void checkIndex(int index) {
+        tokenize();
+        if(index < 0 || index >= tokenCount) {
+            throw new IndexOutOfBoundsException("No token " + index + " in " + tokenCount + " tokens");
+        }
+    }
+
+    private void tokenize() {
+        if(tokenCount != -1) {
+            return;
+        }
+
+        tokenCount = 0;
+        int i = textStart;
+        while(i < textEnd) {
+            char c = line.charAt(i);
+            if(Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            int rawStart = i;
+            int start;
+            int end;
+            if(c == '"') {
+                start = i + 1;
+                end = line.indexOf('"', start);
+                if(end == -1 || end > textEnd) {
+                    end = textEnd;
+                }
+                i = Math.min(end + 1, textEnd);
+            }else {
+                start = i;
+                while(i < textEnd && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                end = i;
+            }
+            addToken(rawStart, start, end);
+        }
+    }
+
+    private void addToken(int rawStart, int start, int end) {
+        if(tokens == null) {
+            tokens = new int[INITIAL_TOKENS * 3];
+        }else if(tokens.length == tokenCount * 3) {
+            int[] grown = new int[tokens.length * 2];
+            System.arraycopy(tokens, 0, grown, 0, tokens.length);
+            tokens = grown;
+        }
+        tokens[tokenCount * 3] = rawStart;
+        tokens[tokenCount * 3 + 1] = start;
+        tokens[tokenCount * 3 + 2] = end;
+        tokenCount++;
+    }
+
+    private class Slice implements CharSequence {
+        private final int start;
+        private final int end;
+
+        private Slice(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if(index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return line.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if(from < 0 || to > length() || from > to) {
+                throw new IndexOutOfBoundsException(from + ", " + to);
+            }
+            return new Slice(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return line.substring(start, end);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.plugins.CommandProvider;
+import net.jimj.automaton.plugins.PluginContext;
+import net.jimj.automaton.store.Storage;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The commands that ship with the bot, found the same way as plugin commands.
+ */
+public class BuiltinCommands implements CommandProvider {
+    @Override
+    public List<Command> createCommands(PluginContext context) {
+        Storage storage = context.getStorage();
+        return Arrays.asList(
+                new QuoteCommand(storage.getQuoteStore(), context.getChannelLog()),
+                new HeadCommand(context.getHttpFetcher()),
+                new TitleCommand(context.getHttpFetcher()),
+                new KarmaCommand(storage.getKarmaStore()),
+                new YourMomCommand(storage.getYourMomStore()),
+                new NoteCommand(storage.getNoteStore()));
+    }
+}
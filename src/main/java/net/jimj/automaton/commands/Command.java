@@ -23,23 +23,54 @@
 package net.jimj.automaton.commands;
 
 import net.jimj.automaton.events.Event;
+import net.jimj.automaton.events.EventBus;
 import net.jimj.automaton.model.User;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Represent a command for the bot to execute.
  */
 public abstract class Command {
-    private CommandObserver observer;
+    private EventBus events;
 
     public abstract String getCommandName();
-    public abstract void execute(User user, String args);
+    public abstract void execute(User user, Args args);
     public abstract boolean authorized(User user);
 
-    public void addObserver(CommandObserver observer) {
-        this.observer = observer;
+    /**
+     * Other names the command answers to.
+     */
+    public List<String> getAliases() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Run the command with argument text that hasn't been parsed yet.
+     */
+    public void execute(User user, String args) {
+        execute(user, Args.parse(args));
+    }
+
+    /**
+     * Set where the command's replies (and anything else it has to say) go.
+     */
+    public void setEventBus(EventBus events) {
+        this.events = events;
+    }
+
+    public EventBus getEventBus() {
+        return events;
+    }
+
+    public void publish(Event event) {
+        events.publish(event);
     }
 
-    public void notifyObserver(Event event) {
-        observer.observe(event);
+    /**
+     * Called once when the bot is going away, for commands holding on to unsaved state.
+     */
+    public void shutdown() {
     }
 }
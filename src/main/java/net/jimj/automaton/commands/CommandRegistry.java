@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The commands and processors the bot currently has, grouped by who provided them.
+ *
+ * Lookups go against an immutable snapshot, so they never wait on a plugin being loaded or
+ * unloaded.  Changes build a fresh snapshot and swap it in.
+ */
+public class CommandRegistry {
+    private final LinkedHashMap<String, List<Command>> owners = new LinkedHashMap<>();
+    private Map<String, String> aliases = Collections.emptyMap();
+    private volatile Snapshot snapshot = new Snapshot(owners, aliases);
+
+    /**
+     * Extra names for commands, on top of the ones commands declare themselves.
+     * An alias for a command that isn't loaded is ignored until it is.
+     * @param aliases alias to command name.
+     */
+    public synchronized void setAliases(Map<String, String> aliases) {
+        Map<String, String> copy = new LinkedHashMap<>(aliases);
+        snapshot = new Snapshot(owners, copy);
+        this.aliases = copy;
+    }
+
+    /**
+     * Add a group of commands.  Either all of them are added or, if any name or alias is
+     * already taken, none are.
+     * @throws IllegalArgumentException if the owner already has commands or a name is taken.
+     */
+    public synchronized void add(String owner, Collection<? extends Command> commands) {
+        if(owners.containsKey(owner)) {
+            throw new IllegalArgumentException(owner + " is already loaded");
+        }
+
+        LinkedHashMap<String, List<Command>> changed = new LinkedHashMap<>(owners);
+        changed.put(owner, Collections.unmodifiableList(new ArrayList<>(commands)));
+        Snapshot replacement = new Snapshot(changed, aliases);
+        owners.put(owner, changed.get(owner));
+        snapshot = replacement;
+    }
+
+    /**
+     * @return the commands the owner had, or an empty list if it had none.
+     */
+    public synchronized List<Command> remove(String owner) {
+        List<Command> removed = owners.remove(owner);
+        if(removed == null) {
+            return Collections.emptyList();
+        }
+        snapshot = new Snapshot(owners, aliases);
+        return removed;
+    }
+
+    public Command find(Args args) {
+        return snapshot.trie.find(args);
+    }
+
+    /**
+     * @return the processors interested in a line, in the order they were added.
+     */
+    public List<Processor> match(String line) {
+        return snapshot.processors.match(line);
+    }
+
+    public List<Command> getCommands() {
+        return snapshot.commands;
+    }
+
+    public synchronized List<String> getOwners() {
+        return new ArrayList<>(owners.keySet());
+    }
+
+    private static class Snapshot {
+        private final CommandTrie trie = new CommandTrie();
+        private final TriggerMatcher<Processor> processors;
+        private final List<Command> commands;
+
+        private Snapshot(Map<String, List<Command>> owners, Map<String, String> aliases) {
+            List<Command> all = new ArrayList<>();
+            LinkedHashMap<Processor, List<Trigger>> processorTriggers = new LinkedHashMap<>();
+            for(List<Command> owned : owners.values()) {
+                for(Command command : owned) {
+                    trie.add(command.getCommandName(), command);
+                    for(String alias : command.getAliases()) {
+                        trie.add(alias, command);
+                    }
+                    if(command instanceof Processor) {
+                        Processor processor = (Processor)command;
+                        processorTriggers.put(processor, processor.getTriggers());
+                    }
+                    all.add(command);
+                }
+            }
+            for(Map.Entry<String, String> alias : aliases.entrySet()) {
+                Command command = trie.find(alias.getValue());
+                if(command != null && command.getCommandName().equals(alias.getValue())) {
+                    trie.add(alias.getKey(), command);
+                }
+            }
+            processors = TriggerMatcher.compile(processorTriggers);
+            commands = Collections.unmodifiableList(all);
+        }
+    }
+}
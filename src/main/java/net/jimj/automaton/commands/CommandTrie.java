@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import java.util.Arrays;
+
+/**
+ * Finds commands by name, alias, or any prefix of those that only one command has.
+ *
+ * e.g. with "quote" and "karma" registered, ".q" and ".quo" both run quote.  An exact name
+ * always wins, so a command named "no" still works alongside "note".  Lookups walk the
+ * command line in place and don't allocate.  Tries are built once and not changed after,
+ * CommandRegistry builds a new one when commands come and go.
+ */
+public class CommandTrie {
+    private final Node root = new Node();
+
+    /**
+     * @throws IllegalArgumentException if the name is empty or already taken.
+     */
+    public void add(String name, Command command) {
+        if(name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Command names can't be empty");
+        }
+
+        Node node = root;
+        for(int i=0;i<name.length();i++) {
+            node = node.child(name.charAt(i), true);
+            node.reachable(command);
+        }
+        if(node.exact != null) {
+            throw new IllegalArgumentException(name + " is already taken by " + node.exact.getCommandName());
+        }
+        node.exact = command;
+    }
+
+    /**
+     * @return the command the line's name picks out, or null if none does or it's ambiguous.
+     */
+    public Command find(Args args) {
+        int length = args.getNameLength();
+        if(length == 0) {
+            return null;
+        }
+
+        Node node = root;
+        for(int i=0;i<length && node != null;i++) {
+            node = node.child(args.nameCharAt(i), false);
+        }
+        if(node == null) {
+            return null;
+        }
+        return node.exact != null ? node.exact : node.only;
+    }
+
+    public Command find(String name) {
+        return find(Args.parseCommand(name, 0));
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Command exact;
+        //The one command under this node, or null if there's more than one.
+        private Command only;
+        private boolean shared;
+
+        private Node child(char c, boolean create) {
+            for(int i=0;i<keys.length;i++) {
+                if(keys[i] == c) {
+                    return children[i];
+                }
+            }
+            if(!create) {
+                return null;
+            }
+
+            Node child = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        private void reachable(Command command) {
+            if(shared || only == command) {
+                return;
+            }
+            if(only == null) {
+                only = command;
+            }else {
+                only = null;
+                shared = true;
+            }
+        }
+    }
+}
@@ -23,22 +23,17 @@
 package net.jimj.automaton.commands;
 
 import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.http.HeadResult;
+import net.jimj.automaton.http.HttpFetcher;
 import net.jimj.automaton.model.User;
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
-import org.apache.http.StatusLine;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpHead;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+
+import java.net.SocketTimeoutException;
 
 public class HeadCommand extends Command {
-    private static final Logger LOGGER = LoggerFactory.getLogger(HeadCommand.class);
-    private HttpClient httpClient;
+    private HttpFetcher fetcher;
 
-    public HeadCommand() {
-        httpClient = new DefaultHttpClient();
+    public HeadCommand(HttpFetcher fetcher) {
+        this.fetcher = fetcher;
     }
 
     @Override
@@ -47,24 +42,38 @@ public class HeadCommand extends Command {
     }
 
     @Override
-    public void execute(User user, String args) {
-        if(!args.startsWith("http://") && !args.startsWith("https://")) {
-            args = "http://" + args;
+    public void execute(final User user, Args args) {
+        if(args.isEmpty()) {
+            return;
+        }
+        String text = args.getString(0);
+        if(!text.startsWith("http://") && !text.startsWith("https://")) {
+            text = "http://" + text;
         }
 
-        HttpHead headMethod = new HttpHead(args);
-        try {
-            HttpResponse response = httpClient.execute(headMethod);
-            StatusLine status = response.getStatusLine();
-            notifyObserver(new MessageEvent(user, status.getStatusCode() + " " + status.getReasonPhrase()));
+        //Answers come back on the fetcher's threads, a slow server doesn't hold up anything else.
+        final String url = text;
+        boolean accepted = fetcher.head(url, new HttpFetcher.Callback<HeadResult>() {
+            @Override
+            public void completed(HeadResult result) {
+                publish(new MessageEvent(user, result.getStatusCode() + " " + result.getReasonPhrase()));
+                if(result.getServer() != null) {
+                    publish(new MessageEvent(user, "Server: " + result.getServer()));
+                }
+            }
 
-            Header[] serverHeaders = response.getHeaders("Server");
-            if(serverHeaders != null) {
-                notifyObserver(new MessageEvent(user, "Server: " + serverHeaders[0].getValue()));
+            @Override
+            public void failed(Exception e) {
+                if(e instanceof SocketTimeoutException) {
+                    publish(new MessageEvent(user, url + " timed out"));
+                }else {
+                    publish(new MessageEvent(user, "Couldn't HEAD " + url + ": " + e.getMessage()));
+                }
             }
-            headMethod.releaseConnection();
-        }catch(Exception e) {
-            LOGGER.error("Error in HEAD", e);
+        });
+
+        if(!accepted) {
+            publish(new MessageEvent(user, "Too many lookups going, try again in a bit."));
         }
     }
 
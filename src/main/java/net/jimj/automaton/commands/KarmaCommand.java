@@ -1,23 +1,127 @@
 package net.jimj.automaton.commands;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
 import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.model.KarmaChange;
+import net.jimj.automaton.model.KarmaItem;
 import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.KarmaStore;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Karma changes are collected in memory and written to the store in batches.
+ * Reads merge whatever is stored with the changes that haven't been flushed yet.
+ *
+ * Leaderboards and ranks (.karma top 5, .karma bottom, .karma rank foo) come from a KarmaRanking
+ * that's loaded from the store at startup and changed along with every ++ and --.
+ *
+ * Every change is also kept, with who gave it and where, in the store's history.  What an item got
+ * (.karma foo history 30d) and who's been giving (.karma givers 7d) are answered from a KarmaHistory
+ * of rolled up buckets, which is rebuilt from the stored history at startup.
+ */
 public class KarmaCommand extends Command implements Processor {
-    private static final String KARMA_ITEM = "item";
-    private static final String KARMA_VALUE = "value";
+    private static final long DEFAULT_FLUSH_MILLIS = 5000;
+    private static final int DEFAULT_FLUSH_THRESHOLD = 100;
+    private static final int DEFAULT_LEADERS = 5;
+    private static final int MAX_LEADERS = 10;
+    private static final int DEFAULT_HISTORY_DAYS = 365;
+    private static final String DEFAULT_WINDOW = "7d";
+    private static final long EXPIRE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Pattern WINDOW = Pattern.compile("(\\d{1,4})([mhdw])");
+    private static final List<Trigger> TRIGGERS = Collections.unmodifiableList(
+            Arrays.asList(Trigger.suffix("++"), Trigger.suffix("--")));
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KarmaCommand.class);
-    DBCollection karmaCollection;
+    private final KarmaStore karmaStore;
+
+    private final int flushThreshold;
+    private final ScheduledExecutorService flushTimer;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    //Writers share the read lock while bumping counters, flush takes the write lock just long enough
+    //to swap in a fresh map so no delta can land in a map that's already being written out.
+    private final ReadWriteLock deltaLock = new ReentrantReadWriteLock();
+    private volatile ConcurrentHashMap<Key, AtomicInteger> pending = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<Key, AtomicInteger> flushing = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    //Odd while a flush is writing, so readers can tell when the store may have moved under them.
+    private final AtomicLong flushSeq = new AtomicLong();
+    private final Lock flushStateLock = new ReentrantLock();
+    private final Condition flushDone = flushStateLock.newCondition();
+    private final KarmaRanking ranking = new KarmaRanking();
+    private final KarmaHistory history;
+    private final ConcurrentLinkedQueue<KarmaChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingChangeCount = new AtomicInteger();
+    private long lastExpired;
+
+    public KarmaCommand(KarmaStore karmaStore) {
+        this(karmaStore, DEFAULT_FLUSH_MILLIS, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * @param flushMillis how often to write pending karma, 0 to only flush on threshold/shutdown.
+     * @param flushThreshold how many distinct items can be pending before a flush is forced.
+     */
+    public KarmaCommand(KarmaStore karmaStore, long flushMillis, int flushThreshold) {
+        this(karmaStore, flushMillis, flushThreshold, DEFAULT_HISTORY_DAYS);
+    }
 
-    public KarmaCommand(DBCollection karmaCollection) {
-        this.karmaCollection = karmaCollection;
+    /**
+     * @param historyDays how many days of changes to keep, and the longest window history can be asked about.
+     */
+    public KarmaCommand(KarmaStore karmaStore, long flushMillis, int flushThreshold, int historyDays) {
+        this.karmaStore = karmaStore;
+        this.flushThreshold = flushThreshold;
+        this.history = new KarmaHistory(historyDays);
+        loadRanking();
+        loadHistory();
+
+        //Threshold flushes run here too, so the thread that saw the ++ never waits on the store.
+        flushTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "karma-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if(flushMillis > 0) {
+            flushTimer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    }catch(Exception e) {
+                        LOGGER.error("Error flushing karma", e);
+                    }
+                }
+            }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -26,14 +130,53 @@ public class KarmaCommand extends Command implements Processor {
     }
 
     @Override
-    public void execute(User user, String args) {
+    public void execute(User user, Args args) {
+        if(args.isEmpty()) {
+            return;
+        }
+
+        String first = args.getString(0);
+        if(("top".equals(first) || "bottom".equals(first)) && (args.size() == 1 ||
+                (args.size() == 2 && StringUtils.isNumeric(args.getString(1))))) {
+            int n = DEFAULT_LEADERS;
+            if(args.size() == 2) {
+                String count = args.getString(1);
+                n = count.length() > 2 ? MAX_LEADERS : Math.max(1, Math.min(MAX_LEADERS, Integer.parseInt(count)));
+            }
+            publish(new MessageEvent(user, getLeaders(user.getNetwork(), "top".equals(first), n)));
+            return;
+        }
+        if("rank".equals(first) && args.size() > 1) {
+            publish(new MessageEvent(user, getRank(user.getNetwork(), args.rest(1))));
+            return;
+        }
+
+        if("givers".equals(first) && args.size() <= 2) {
+            String window = args.size() == 1 ? DEFAULT_WINDOW : args.getString(1);
+            if(parseWindow(window) > 0) {
+                publish(new MessageEvent(user, getGivers(user.getNetwork(), window)));
+                return;
+            }
+        }
+
+        String last = args.getString(args.size() - 1);
+        if(args.size() > 1 && "history".equals(last)) {
+            publish(new MessageEvent(user, getHistory(user.getNetwork(), itemBefore(args, args.size() - 1), DEFAULT_WINDOW)));
+            return;
+        }
+        if(args.size() > 2 && "history".equals(args.getString(args.size() - 2)) && parseWindow(last) > 0) {
+            publish(new MessageEvent(user, getHistory(user.getNetwork(), itemBefore(args, args.size() - 2), last)));
+            return;
+        }
+
+        String item = unquote(args.text());
         int value = 0;
-        Karma karma = getKarma(args);
+        Karma karma = getKarma(user.getNetwork(), item);
         if(karma != null) {
             value = karma.getValue();
         }
-        String message = args + ": " + value;
-        notifyObserver(new MessageEvent(user, message));
+        String message = item + ": " + value;
+        publish(new MessageEvent(user, message));
     }
 
     @Override
@@ -42,46 +185,118 @@ public class KarmaCommand extends Command implements Processor {
     }
 
     @Override
-    public boolean shouldProcess(String message) {
-        return message.endsWith("++") || message.endsWith("--");
+    public List<Trigger> getTriggers() {
+        return TRIGGERS;
     }
 
     @Override
     public void process(User user, String message) {
         LOGGER.debug("Processing Karma message");
         if(message.endsWith("++")) {
-            addKarma(message.substring(0, message.length()-2).toLowerCase());
+            addKarma(user, message.substring(0, message.length()-2));
         }else {
-            subtractKarma(message.substring(0, message.length()-2).toLowerCase());
+            subtractKarma(user, message.substring(0, message.length()-2));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        flushTimer.shutdown();
+        try {
+            flushTimer.awaitTermination(10, TimeUnit.SECONDS);
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    protected String getLeaders(String network, boolean top, int n) {
+        List<KarmaRanking.Ranked> leaders = top ? ranking.top(network, n) : ranking.bottom(network, n);
+        if(leaders.isEmpty()) {
+            return "Nothing has karma yet.";
+        }
+
+        StringBuilder message = new StringBuilder(top ? "top karma: " : "bottom karma: ");
+        for(int i=0;i<leaders.size();i++) {
+            KarmaRanking.Ranked ranked = leaders.get(i);
+            if(i > 0) {
+                message.append(", ");
+            }
+            message.append(ranked.getRank()).append(". ").append(ranked.getItem())
+                    .append(" (").append(ranked.getValue()).append(')');
         }
+        return message.toString();
     }
 
-    protected void addKarma(String item) {
-        Karma karma = getKarma(item);
-        int newVal = (karma.getValue()+1);
-        karma.setValue(newVal);
-        putKarma(karma);
+    protected String getRank(String network, String item) {
+        item = normalize(item);
+        KarmaRanking.Ranked ranked = ranking.find(network, item);
+        if(ranked == null) {
+            return item + " has no karma.";
+        }
+        return item + " is ranked " + ranked.getRank() + " of " + ranking.size(network) + " with " + ranked.getValue() + ".";
+    }
+
+    /**
+     * @param window how far back to look, e.g. 30d; see parseWindow.
+     */
+    protected String getHistory(String network, String item, String window) {
+        item = normalize(item);
+        window = clampWindow(window);
+        KarmaHistory.Tally tally = history.itemTally(network, item, windowMillis(window), now());
+        if(tally == null || (tally.getUp() == 0 && tally.getDown() == 0)) {
+            return item + " got no karma in the last " + window + ".";
+        }
+        return item + " got +" + tally.getUp() + "/-" + tally.getDown() + " in the last " + window +
+                " (net " + (tally.getNet() > 0 ? "+" : "") + tally.getNet() + ").";
     }
 
-    protected void subtractKarma(String item) {
-        Karma karma = getKarma(item);
-        int newVal = (karma.getValue()-1);
-        karma.setValue(newVal);
-        putKarma(karma);
+    protected String getGivers(String network, String window) {
+        window = clampWindow(window);
+        List<KarmaHistory.Tally> givers = history.topGivers(network, DEFAULT_LEADERS, windowMillis(window), now());
+        if(givers.isEmpty()) {
+            return "Nobody's given karma in the last " + window + ".";
+        }
+
+        StringBuilder message = new StringBuilder("most karma given in the last " + window + ": ");
+        for(int i=0;i<givers.size();i++) {
+            if(i > 0) {
+                message.append(", ");
+            }
+            message.append(i + 1).append(". ").append(givers.get(i).getName())
+                    .append(" (+").append(givers.get(i).getUp()).append(')');
+        }
+        return message.toString();
     }
 
-    protected Karma getKarma(String item) {
-        LOGGER.trace("Looking for karma for " + item);
-        Karma karma = new Karma(item.toLowerCase());
+    protected void addKarma(User user, String item) {
+        applyDelta(user, new Key(user.getNetwork(), normalize(item)), 1);
+    }
 
-        BasicDBObject query = new BasicDBObject(KARMA_ITEM, item.toLowerCase());
-        DBCursor cur = karmaCollection.find(query);
+    protected void subtractKarma(User user, String item) {
+        applyDelta(user, new Key(user.getNetwork(), normalize(item)), -1);
+    }
 
-        if(cur != null && cur.hasNext()) {
-            DBObject karmaObj = cur.next();
-            karma.setId(karmaObj.get("_id"));
-            karma.setItem((String)karmaObj.get(KARMA_ITEM));
-            karma.setValue((Integer)karmaObj.get(KARMA_VALUE));
+    protected Karma getKarma(String network, String item) {
+        item = normalize(item);
+        LOGGER.trace("Looking for karma for " + item + " on " + network);
+        Karma karma = new Karma(item);
+        Key key = new Key(network, item);
+        while(true) {
+            long seq = flushSeq.get();
+            if(seq % 2 == 1 && flushing.containsKey(key)) {
+                //The store may or may not have this item's delta yet, only the end of the flush will tell.
+                awaitFlush(seq);
+                continue;
+            }
+            int stored = karmaStore.getKarma(network, item);
+            int unflushed = getUnflushed(key);
+            if(flushSeq.get() == seq) {
+                //No flush started or finished while reading, so this item's stored and unflushed karma
+                //were read with nothing moving from one to the other.
+                karma.setValue(stored + unflushed);
+                break;
+            }
         }
 
         LOGGER.trace("Karma: " + karma);
@@ -89,21 +304,308 @@ public class KarmaCommand extends Command implements Processor {
         return karma;
     }
 
-    private void putKarma(Karma karma) {
-        if(karma.getId() == null) {
-            //Insert
-            BasicDBObject karmaObj = new BasicDBObject(KARMA_ITEM, karma.getItem());
-            karmaObj.append(KARMA_VALUE, karma.getValue());
-            karmaCollection.insert(karmaObj);
-        }else {
-            //Update
-            BasicDBObject karmaObj = new BasicDBObject("_id", karma.getId());
-            karmaCollection.update(karmaObj, new BasicDBObject("$set", new BasicDBObject(KARMA_VALUE, karma.getValue())));
+    /**
+     * Write every pending karma change out to mongo.
+     * Reads of the items being written wait for it to finish; nothing else does.
+     */
+    protected void flush() {
+        synchronized(flushLock) {
+            flushRequested.set(false);
+            flushChanges();
+            expireChanges();
+
+            if(pending.isEmpty()) {
+                return;
+            }
+            //Odd before the swap, so a reader that sees the swapped maps also sees the flush has started.
+            flushSeq.incrementAndGet();
+            try {
+                deltaLock.writeLock().lock();
+                try {
+                    flushing = pending;
+                    pending = new ConcurrentHashMap<>();
+                }finally {
+                    deltaLock.writeLock().unlock();
+                }
+
+                LOGGER.debug("Flushing karma for " + flushing.size() + " items");
+                Map<String, Map<String, Integer>> networkDeltas = new HashMap<>();
+                for(Map.Entry<Key, AtomicInteger> entry : flushing.entrySet()) {
+                    Map<String, Integer> deltas = networkDeltas.get(entry.getKey().network);
+                    if(deltas == null) {
+                        deltas = new HashMap<>();
+                        networkDeltas.put(entry.getKey().network, deltas);
+                    }
+                    deltas.put(entry.getKey().item, entry.getValue().get());
+                }
+
+                for(Map.Entry<String, Map<String, Integer>> network : networkDeltas.entrySet()) {
+                    Map<String, Integer> deltas = network.getValue();
+                    try {
+                        karmaStore.applyDeltas(network.getKey(), deltas);
+                    }catch(Exception e) {
+                        //Whatever's left didn't get written, put it back so the next flush tries again.
+                        LOGGER.error("Error flushing karma for " + deltas.size() + " items on " + network.getKey() +
+                                ", will retry", e);
+                        for(Map.Entry<String, Integer> entry : deltas.entrySet()) {
+                            addPending(new Key(network.getKey(), entry.getKey()), entry.getValue());
+                        }
+                    }
+                }
+                flushing = new ConcurrentHashMap<>();
+            }finally {
+                flushStateLock.lock();
+                try {
+                    flushSeq.incrementAndGet();
+                    flushDone.signalAll();
+                }finally {
+                    flushStateLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for the flush that was under way at seq to finish.
+     */
+    private void awaitFlush(long seq) {
+        flushStateLock.lock();
+        try {
+            while(flushSeq.get() == seq) {
+                flushDone.awaitUninterruptibly();
+            }
+        }finally {
+            flushStateLock.unlock();
+        }
+    }
+
+    /**
+     * Have the flush thread write pending karma out soon, unless it's already been asked to.
+     */
+    private void requestFlush() {
+        if(!flushRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flushTimer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    }catch(Exception e) {
+                        LOGGER.error("Error flushing karma", e);
+                    }
+                }
+            });
+        }catch(RejectedExecutionException e) {
+            //Shutting down, and shutdown flushes anyway.
+            flushRequested.set(false);
+        }
+    }
+
+    private void loadRanking() {
+        int loaded = 0;
+        for(KarmaItem item : karmaStore.findAll()) {
+            ranking.set(item.getNetwork(), item.getItem(), item.getValue());
+            loaded++;
+        }
+        LOGGER.info("Ranked karma for " + loaded + " items");
+    }
+
+    private void loadHistory() {
+        long now = now();
+        int loaded = 0;
+        for(KarmaChange change : karmaStore.findChanges(now - history.getRetention())) {
+            history.add(change);
+            loaded++;
+        }
+        history.expire(now);
+        LOGGER.info("Rolled up " + loaded + " karma changes");
+    }
+
+    private void applyDelta(User giver, Key item, int delta) {
+        ranking.add(item.network, item.item, delta);
+
+        KarmaChange change = new KarmaChange(item.network, giver.getChannel(), item.item,
+                giver.getNick() == null ? null : giver.getNick().toLowerCase(), delta, now());
+        history.add(change);
+        pendingChanges.add(change);
+        boolean changesDue = pendingChangeCount.incrementAndGet() >= flushThreshold;
+
+        if(addPending(item, delta) || changesDue) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Append every change made since the last flush to the stored history.
+     */
+    private void flushChanges() {
+        List<KarmaChange> changes = new ArrayList<>();
+        KarmaChange change;
+        while((change = pendingChanges.poll()) != null) {
+            pendingChangeCount.decrementAndGet();
+            changes.add(change);
+        }
+        if(changes.isEmpty()) {
+            return;
+        }
+
+        try {
+            karmaStore.appendChanges(changes);
+        }catch(Exception e) {
+            LOGGER.error("Error writing " + changes.size() + " karma changes, will retry", e);
+            pendingChanges.addAll(changes);
+            pendingChangeCount.addAndGet(changes.size());
+        }
+    }
+
+    /**
+     * Every so often, forget history that's older than anything that can be asked about.
+     */
+    private void expireChanges() {
+        long now = now();
+        if(now - lastExpired < EXPIRE_MILLIS) {
+            return;
+        }
+        lastExpired = now;
+
+        history.expire(now);
+        try {
+            karmaStore.expireChanges(now - history.getRetention());
+        }catch(Exception e) {
+            LOGGER.error("Error expiring karma history", e);
+        }
+    }
+
+    /**
+     * @return the item typed before the token at index, e.g. "foo bar" from "foo bar history 30d".
+     */
+    private String itemBefore(Args args, int index) {
+        String text = args.text();
+        return text.substring(0, text.length() - args.rest(index).length());
+    }
+
+    /**
+     * @return a window like 90m, 12h, 30d or 2w in millis, or -1 if it isn't one.
+     */
+    protected static long parseWindow(String window) {
+        Matcher matcher = WINDOW.matcher(window);
+        if(!matcher.matches()) {
+            return -1;
+        }
+
+        long n = Long.parseLong(matcher.group(1));
+        switch(matcher.group(2).charAt(0)) {
+            case 'm':
+                return TimeUnit.MINUTES.toMillis(n);
+            case 'h':
+                return TimeUnit.HOURS.toMillis(n);
+            case 'd':
+                return TimeUnit.DAYS.toMillis(n);
+            default:
+                return TimeUnit.DAYS.toMillis(n * 7);
+        }
+    }
+
+    /**
+     * @return the window in millis, no longer than the history that's kept.
+     */
+    private long windowMillis(String window) {
+        return Math.min(parseWindow(window), history.getRetention());
+    }
+
+    /**
+     * @return the window as asked for, or as long as the history that's kept if it asks for more.
+     */
+    private String clampWindow(String window) {
+        if(parseWindow(window) <= history.getRetention()) {
+            return window;
+        }
+        return TimeUnit.MILLISECONDS.toDays(history.getRetention()) + "d";
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return true if enough items are pending that it's time to flush.
+     */
+    private boolean addPending(Key item, int delta) {
+        deltaLock.readLock().lock();
+        try {
+            AtomicInteger counter = pending.get(item);
+            if(counter == null) {
+                AtomicInteger newCounter = new AtomicInteger();
+                counter = pending.putIfAbsent(item, newCounter);
+                if(counter == null) {
+                    counter = newCounter;
+                }
+            }
+            counter.addAndGet(delta);
+            return pending.size() >= flushThreshold;
+        }finally {
+            deltaLock.readLock().unlock();
+        }
+    }
+
+    private int getUnflushed(Key item) {
+        int unflushed = 0;
+        AtomicInteger counter = flushing.get(item);
+        if(counter != null) {
+            unflushed += counter.get();
+        }
+        counter = pending.get(item);
+        if(counter != null) {
+            unflushed += counter.get();
+        }
+        return unflushed;
+    }
+
+    private String normalize(String item) {
+        return unquote(item).toLowerCase();
+    }
+
+    /**
+     * @return the item without a pair of double quotes around it, so "foo bar" and foo bar are the same item.
+     */
+    private static String unquote(String item) {
+        item = item.trim();
+        if(item.length() >= 2 && item.charAt(0) == '"' && item.indexOf('"', 1) == item.length() - 1) {
+            return item.substring(1, item.length() - 1).trim();
+        }
+        return item;
+    }
+
+    /**
+     * An item's karma is separate on each network.
+     */
+    private static final class Key {
+        private final String network;
+        private final String item;
+
+        private Key(String network, String item) {
+            this.network = network;
+            this.item = item;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)o;
+            return network.equals(other.network) && item.equals(other.item);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * network.hashCode() + item.hashCode();
         }
     }
 
     protected class Karma {
-        private Object id;
         private String item;
         private int value;
 
@@ -115,14 +617,6 @@ public class KarmaCommand extends Command implements Processor {
             value = 0;
             this.item = item;
         }
-        public Object getId() {
-            return id;
-        }
-
-        public void setId(Object id) {
-            this.id = id;
-        }
-
         public String getItem() {
             return item;
         }
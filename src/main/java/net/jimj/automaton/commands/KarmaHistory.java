@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.model.KarmaChange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How much karma each item got, and each nick gave, over recent windows of time.
+ *
+ * Changes aren't kept one by one.  Each item and each giver has the ups and downs summed into
+ * minute buckets for the last few hours, hour buckets for the last week or so and day buckets
+ * for as long as history is kept.  A question about a window is answered from the finest buckets
+ * that go back far enough, so it never adds up more than a few hundred of them however much
+ * karma has changed hands.  Windows are rounded out to whole buckets, e.g. "30d" starts at midnight (UTC).
+ *
+ * Buckets are only made when something happens in them, and are dropped as they fall out of their tier.
+ */
+public class KarmaHistory {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long MINUTES_KEPT = TimeUnit.HOURS.toMillis(6);
+    private static final long HOURS_KEPT = TimeUnit.DAYS.toMillis(8);
+
+    private final long retention;
+    //network -> item or giver -> buckets
+    private final Map<String, Map<String, Series>> items = new HashMap<>();
+    private final Map<String, Map<String, Series>> givers = new HashMap<>();
+
+    /**
+     * @param retentionDays how many days of day buckets to keep; the longest window that can be asked about.
+     */
+    public KarmaHistory(int retentionDays) {
+        this.retention = TimeUnit.DAYS.toMillis(Math.max(1, retentionDays));
+    }
+
+    /**
+     * @return the longest window there's history for, in millis.
+     */
+    public long getRetention() {
+        return retention;
+    }
+
+    public synchronized void add(KarmaChange change) {
+        series(items, change.getNetwork(), change.getItem()).add(change.getWhen(), change.getDelta());
+        if(change.getGiver() != null) {
+            series(givers, change.getNetwork(), change.getGiver()).add(change.getWhen(), change.getDelta());
+        }
+    }
+
+    /**
+     * @return what an item got in the window ending now, or null if it's got nothing in all the history kept.
+     */
+    public synchronized Tally itemTally(String network, String item, long window, long now) {
+        Map<String, Series> networkItems = items.get(network);
+        Series series = networkItems == null ? null : networkItems.get(item);
+        return series == null ? null : series.tally(item, window, now);
+    }
+
+    /**
+     * @return up to n nicks who gave the most ++ in the window ending now, most first.
+     */
+    public synchronized List<Tally> topGivers(String network, int n, long window, long now) {
+        Map<String, Series> networkGivers = givers.get(network);
+        if(networkGivers == null) {
+            return Collections.emptyList();
+        }
+
+        List<Tally> tallies = new ArrayList<>();
+        for(Map.Entry<String, Series> giver : networkGivers.entrySet()) {
+            Tally tally = giver.getValue().tally(giver.getKey(), window, now);
+            if(tally.getUp() > 0) {
+                tallies.add(tally);
+            }
+        }
+        Collections.sort(tallies, new Comparator<Tally>() {
+            @Override
+            public int compare(Tally a, Tally b) {
+                if(a.up != b.up) {
+                    return a.up > b.up ? -1 : 1;
+                }
+                return a.name.compareTo(b.name);
+            }
+        });
+        return tallies.size() > n ? new ArrayList<>(tallies.subList(0, n)) : tallies;
+    }
+
+    /**
+     * Drop buckets that have aged out, and anything with no buckets left.
+     */
+    public synchronized void expire(long now) {
+        expire(items, now);
+        expire(givers, now);
+    }
+
+    private void expire(Map<String, Map<String, Series>> all, long now) {
+        Iterator<Map<String, Series>> networks = all.values().iterator();
+        while(networks.hasNext()) {
+            Map<String, Series> network = networks.next();
+            Iterator<Series> series = network.values().iterator();
+            while(series.hasNext()) {
+                if(series.next().expire(now)) {
+                    series.remove();
+                }
+            }
+            if(network.isEmpty()) {
+                networks.remove();
+            }
+        }
+    }
+
+    private Series series(Map<String, Map<String, Series>> all, String network, String name) {
+        Map<String, Series> networkSeries = all.get(network);
+        if(networkSeries == null) {
+            networkSeries = new HashMap<>();
+            all.put(network, networkSeries);
+        }
+        Series series = networkSeries.get(name);
+        if(series == null) {
+            series = new Series(retention);
+            networkSeries.put(name, series);
+        }
+        return series;
+    }
+
+    /**
+     * The ups and downs an item got, or a nick gave, in a window.
+     */
+    public static class Tally {
+        private final String name;
+        private final int up;
+        private final int down;
+
+        public Tally(String name, int up, int down) {
+            this.name = name;
+            this.up = up;
+            this.down = down;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getUp() {
+            return up;
+        }
+
+        public int getDown() {
+            return down;
+        }
+
+        public int getNet() {
+            return up - down;
+        }
+    }
+
+    /**
+     * One item's or giver's buckets at each resolution.
+     */
+    private static class Series {
+        private final Rollup[] rollups;
+
+        private Series(long retention) {
+            rollups = new Rollup[] {
+                    new Rollup(MINUTE, MINUTES_KEPT), new Rollup(HOUR, HOURS_KEPT), new Rollup(DAY, retention)};
+        }
+
+        private void add(long when, int delta) {
+            for(Rollup rollup : rollups) {
+                rollup.add(when, delta);
+            }
+        }
+
+        private Tally tally(String name, long window, long now) {
+            for(Rollup rollup : rollups) {
+                if(window <= rollup.kept || rollup == rollups[rollups.length - 1]) {
+                    int[] sums = rollup.sum(now - window, now);
+                    return new Tally(name, sums[0], sums[1]);
+                }
+            }
+            throw new IllegalStateException("No rollups");
+        }
+
+        /**
+         * @return true if there's nothing left.
+         */
+        private boolean expire(long now) {
+            boolean empty = true;
+            for(Rollup rollup : rollups) {
+                rollup.expire(now);
+                empty &= rollup.count == 0;
+            }
+            return empty;
+        }
+    }
+
+    /**
+     * Buckets of one width, oldest first, in arrays that are trimmed from the front as buckets age
+     * out and grown at the back as new ones start.
+     */
+    private static class Rollup {
+        private final long width;
+        private final long kept;
+        private long[] starts = new long[2];
+        private int[] ups = new int[2];
+        private int[] downs = new int[2];
+        private int first;
+        private int count;
+
+        private Rollup(long width, long kept) {
+            this.width = width;
+            this.kept = kept;
+        }
+
+        private void add(long when, int delta) {
+            long start = when - when % width;
+            int end = first + count;
+            int at;
+            if(count > 0 && starts[end - 1] == start) {
+                at = end - 1;
+            }else if(count == 0 || starts[end - 1] < start) {
+                at = insert(end, start);
+            }else {
+                //Changes flushed by different threads can arrive a little out of order.
+                at = Arrays.binarySearch(starts, first, end, start);
+                if(at < 0) {
+                    at = insert(-at - 1, start);
+                }
+            }
+
+            if(delta > 0) {
+                ups[at] += delta;
+            }else {
+                downs[at] -= delta;
+            }
+            expire(when);
+        }
+
+        /**
+         * @return ups and downs in buckets that end after since and start before now.
+         */
+        private int[] sum(long since, long now) {
+            int[] sums = new int[2];
+            for(int i=first+count-1;i>=first && starts[i] + width > since;i--) {
+                if(starts[i] <= now) {
+                    sums[0] += ups[i];
+                    sums[1] += downs[i];
+                }
+            }
+            return sums;
+        }
+
+        private void expire(long now) {
+            while(count > 0 && starts[first] + width <= now - kept) {
+                first++;
+                count--;
+            }
+            if(count == 0) {
+                first = 0;
+            }
+        }
+
+        /**
+         * Open up a new, empty bucket at index at, between first and first + count.
+         */
+        private int insert(int at, long start) {
+            if(first + count == starts.length) {
+                if(first > 0) {
+                    //Slide down into the space the expired buckets left.
+                    System.arraycopy(starts, first, starts, 0, count);
+                    System.arraycopy(ups, first, ups, 0, count);
+                    System.arraycopy(downs, first, downs, 0, count);
+                    at -= first;
+                    first = 0;
+                }else {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                    ups = Arrays.copyOf(ups, ups.length * 2);
+                    downs = Arrays.copyOf(downs, downs.length * 2);
+                }
+            }
+
+            int end = first + count;
+            System.arraycopy(starts, at, starts, at + 1, end - at);
+            System.arraycopy(ups, at, ups, at + 1, end - at);
+            System.arraycopy(downs, at, downs, at + 1, end - at);
+            starts[at] = start;
+            ups[at] = 0;
+            downs[at] = 0;
+            count++;
+            return at;
+        }
+    }
+}
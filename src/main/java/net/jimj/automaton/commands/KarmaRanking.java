@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Every item's karma in order, per network, for leaderboards and ranks without sorting everything each time.
+ *
+ * Each network's items are kept in a treap ordered by karma, highest first, with ties broken by name.
+ * Every node knows how big its subtree is, so an item's rank is counted on one walk down, and
+ * the top or bottom n are the first n of a walk from either end.  Changing an item's karma takes
+ * it out and puts it back in its new place, all in O(log n).
+ *
+ * Rank is 1 + how many items have more karma, so items with the same karma share a rank.
+ */
+public class KarmaRanking {
+    private final Map<String, Tree> networks = new HashMap<>();
+    private final Random random = new Random();
+
+    /**
+     * Set an item's karma, e.g. when loading what's stored.
+     */
+    public synchronized void set(String network, String item, int value) {
+        Tree tree = tree(network);
+        Integer old = tree.values.put(item, value);
+        if(old != null) {
+            tree.root = remove(tree.root, old, item);
+        }
+        tree.root = insert(tree.root, new Node(item, value, random.nextInt()));
+    }
+
+    public synchronized void add(String network, String item, int delta) {
+        Integer old = tree(network).values.get(item);
+        set(network, item, (old == null ? 0 : old) + delta);
+    }
+
+    /**
+     * @return up to n items with the most karma, most first.
+     */
+    public synchronized List<Ranked> top(String network, int n) {
+        List<Ranked> found = new ArrayList<>();
+        Tree tree = networks.get(network);
+        if(tree != null) {
+            collect(tree.root, n, true, found);
+        }
+        return found;
+    }
+
+    /**
+     * @return up to n items with the least karma, least first.
+     */
+    public synchronized List<Ranked> bottom(String network, int n) {
+        List<Ranked> found = new ArrayList<>();
+        Tree tree = networks.get(network);
+        if(tree != null) {
+            collect(tree.root, n, false, found);
+        }
+        return found;
+    }
+
+    /**
+     * @return the item with its rank, or null if it's never had karma on the network.
+     */
+    public synchronized Ranked find(String network, String item) {
+        Tree tree = networks.get(network);
+        Integer value = tree == null ? null : tree.values.get(item);
+        if(value == null) {
+            return null;
+        }
+        return new Ranked(item, value, countAbove(tree.root, value) + 1);
+    }
+
+    /**
+     * @return how many items on the network have karma.
+     */
+    public synchronized int size(String network) {
+        Tree tree = networks.get(network);
+        return tree == null ? 0 : tree.values.size();
+    }
+
+    private Tree tree(String network) {
+        Tree tree = networks.get(network);
+        if(tree == null) {
+            tree = new Tree();
+            networks.put(network, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * In order, so the top n are on the left.  Ranks are worked out from the previous item as the walk goes.
+     */
+    private void collect(Node root, int n, boolean fromTop, List<Ranked> found) {
+        int index = 0;
+        Ranked previous = null;
+        //Walked with a stack rather than recursion so it can stop after n.
+        List<Node> stack = new ArrayList<>();
+        Node node = root;
+        while((node != null || !stack.isEmpty()) && found.size() < n) {
+            while(node != null) {
+                stack.add(node);
+                node = fromTop ? node.left : node.right;
+            }
+            node = stack.remove(stack.size() - 1);
+
+            int rank;
+            if(previous != null && previous.value == node.value) {
+                rank = previous.rank;
+            }else if(fromTop) {
+                rank = index + 1;
+            }else {
+                rank = countAbove(root, node.value) + 1;
+            }
+            previous = new Ranked(node.item, node.value, rank);
+            found.add(previous);
+            index++;
+
+            node = fromTop ? node.right : node.left;
+        }
+    }
+
+    private static int countAbove(Node node, int value) {
+        int above = 0;
+        while(node != null) {
+            if(node.value > value) {
+                above += size(node.left) + 1;
+                node = node.right;
+            }else {
+                node = node.left;
+            }
+        }
+        return above;
+    }
+
+    private static Node insert(Node node, Node added) {
+        if(node == null) {
+            return added;
+        }
+        if(compare(added.value, added.item, node) < 0) {
+            node.left = insert(node.left, added);
+            if(node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        }else {
+            node.right = insert(node.right, added);
+            if(node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.resize();
+        return node;
+    }
+
+    private static Node remove(Node node, int value, String item) {
+        if(node == null) {
+            return null;
+        }
+        int c = compare(value, item, node);
+        if(c < 0) {
+            node.left = remove(node.left, value, item);
+        }else if(c > 0) {
+            node.right = remove(node.right, value, item);
+        }else {
+            return merge(node.left, node.right);
+        }
+        node.resize();
+        return node;
+    }
+
+    /**
+     * Join two treaps where everything in left comes before everything in right.
+     */
+    private static Node merge(Node left, Node right) {
+        if(left == null) {
+            return right;
+        }
+        if(right == null) {
+            return left;
+        }
+        if(left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.resize();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.resize();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.resize();
+        left.resize();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.resize();
+        right.resize();
+        return right;
+    }
+
+    /**
+     * Most karma first, then by name.
+     */
+    private static int compare(int value, String item, Node node) {
+        if(value != node.value) {
+            return value > node.value ? -1 : 1;
+        }
+        return item.compareTo(node.item);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * An item, its karma and where that puts it.
+     */
+    public static class Ranked {
+        private final String item;
+        private final int value;
+        private final int rank;
+
+        public Ranked(String item, int value, int rank) {
+            this.item = item;
+            this.value = value;
+            this.rank = rank;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+    }
+
+    private static class Tree {
+        private Node root;
+        private final Map<String, Integer> values = new HashMap<>();
+    }
+
+    private static class Node {
+        private final String item;
+        private final int value;
+        private final int priority;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(String item, int value, int priority) {
+            this.item = item;
+            this.value = value;
+            this.priority = priority;
+        }
+
+        private void resize() {
+            size = 1 + KarmaRanking.size(left) + KarmaRanking.size(right);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.store.Fingerprint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory index of MinHash signatures, for finding text that's nearly the same as something already stored.
+ *
+ * Signatures are cut into bands and each band is hashed into a bucket, so only texts sharing at least
+ * one whole band are compared.  With 16 bands of 4 rows, texts sharing 80% of their shingles almost
+ * always share a band, and ones sharing under 40% rarely do.  Very short texts aren't indexed; there's
+ * too little of them for nearly the same to mean anything.
+ */
+public class NearDuplicateIndex {
+    private static final int BANDS = 16;
+    private static final int ROWS = Fingerprint.SIGNATURE_SIZE / BANDS;
+    private static final int MIN_LENGTH = 20;
+
+    private final double threshold;
+    private final Map<BandKey, List<Object>> buckets = new HashMap<>();
+    private final Map<Object, int[]> signatures = new HashMap<>();
+
+    /**
+     * @param threshold how similar (0 to 1) text has to be to count as a near duplicate.
+     */
+    public NearDuplicateIndex(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param scope only text with the same scope (e.g. network) is compared, may be null.
+     */
+    public synchronized void add(Object id, String scope, String text) {
+        if(!indexable(text)) {
+            return;
+        }
+
+        int[] signature = Fingerprint.minHash(text);
+        signatures.put(id, signature);
+        for(int band=0;band<BANDS;band++) {
+            BandKey key = new BandKey(scope, band, signature);
+            List<Object> ids = buckets.get(key);
+            if(ids == null) {
+                ids = new ArrayList<>(1);
+                buckets.put(key, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    /**
+     * @return the id of something nearly the same as the text, or null if there isn't anything.
+     */
+    public synchronized Object findNear(String scope, String text) {
+        if(!indexable(text)) {
+            return null;
+        }
+
+        int[] signature = Fingerprint.minHash(text);
+        for(int band=0;band<BANDS;band++) {
+            List<Object> ids = buckets.get(new BandKey(scope, band, signature));
+            if(ids == null) {
+                continue;
+            }
+            for(Object id : ids) {
+                if(Fingerprint.similarity(signature, signatures.get(id)) >= threshold) {
+                    return id;
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return signatures.size();
+    }
+
+    private boolean indexable(String text) {
+        return Fingerprint.normalize(text).length() >= MIN_LENGTH;
+    }
+
+    private static class BandKey {
+        private final String scope;
+        private final int band;
+        private final int[] rows = new int[ROWS];
+        private final int hash;
+
+        private BandKey(String scope, int band, int[] signature) {
+            this.scope = scope;
+            this.band = band;
+            int hash = scope == null ? 0 : scope.hashCode();
+            hash = 31 * hash + band;
+            for(int i=0;i<ROWS;i++) {
+                rows[i] = signature[band * ROWS + i];
+                hash = 31 * hash + rows[i];
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof BandKey)) {
+                return false;
+            }
+            BandKey other = (BandKey)o;
+            if(band != other.band || hash != other.hash) {
+                return false;
+            }
+            if(scope == null ? other.scope != null : !scope.equals(other.scope)) {
+                return false;
+            }
+            for(int i=0;i<ROWS;i++) {
+                if(rows[i] != other.rows[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
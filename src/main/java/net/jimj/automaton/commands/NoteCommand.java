@@ -1,33 +1,47 @@
 package net.jimj.automaton.commands;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
 import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.model.Note;
 import net.jimj.automaton.model.User;
+import net.jimj.automaton.outbound.Priority;
+import net.jimj.automaton.store.NoteStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NoteCommand extends Command implements Processor {
     private static final Logger logger = LoggerFactory.getLogger(NoteCommand.class);
 
-    private static final String NOTE_FROM = "from";
-    private static final String NOTE_TO = "to";
-    private static final String NOTE_NOTE = "note";
-    private static final String NOTE_WHEN = "when";
-    private static final String NOTE_DELIVERED = "delivered";
+    private NoteStore notes;
 
-    private DBCollection notes;
+    //Everyone with at least one undelivered note, so ordinary chat doesn't have to ask the store.
+    //Entries are pendingKey(network, nick).
+    private final Set<String> pendingRecipients = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-    private static final SimpleDateFormat WHEN_FMT = new SimpleDateFormat("yyyy-MM-dd HH:mm zzz");
+    //SimpleDateFormat isn't thread safe and notes are now delivered from the dispatch threads.
+    private static final ThreadLocal<SimpleDateFormat> WHEN_FMT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm zzz");
+        }
+    };
 
-    public NoteCommand(DBCollection notes) {
+    public NoteCommand(NoteStore notes) {
         this.notes = notes;
-        notes.ensureIndex(new BasicDBObject(NOTE_TO, 1));
+        for(Map.Entry<String, Set<String>> network : notes.findPendingRecipients().entrySet()) {
+            for(String nick : network.getValue()) {
+                pendingRecipients.add(pendingKey(network.getKey(), nick));
+            }
+        }
+        logger.info(pendingRecipients.size() + " people have notes waiting");
     }
 
     @Override
@@ -36,57 +50,65 @@ public class NoteCommand extends Command implements Processor {
     }
 
     @Override
-    public void execute(User user, String args) {
-        String[] argParts = ArgUtil.split(args);
-
-        if(argParts[0].isEmpty()) {
+    public void execute(User user, Args args) {
+        if(args.isEmpty()) {
             logger.info("Finding notes for " + user.getNick());
             findNotes(user);
             return;
         }
 
-        String toNick = argParts[0].trim();
-        String note = ArgUtil.squash(argParts, 1);
-        if(note == null ||  note.isEmpty()) {
+        String toNick = args.getString(0);
+        String note = args.rest(1);
+        if(note.isEmpty()) {
             //insultEvent
             return;
         }
 
         logger.info("Storing note for " + toNick + " (" + note + ")");
-        storeNote(user.getNick(), toNick, note);
+        storeNote(user.getNetwork(), user.getNick(), toNick, note);
     }
 
-    protected void storeNote(String from, String to, String note) {
-        BasicDBObject noteObj = new BasicDBObject(NOTE_FROM, from);
-        noteObj.append(NOTE_TO, to.toLowerCase());
-        noteObj.append(NOTE_NOTE, note);
-        noteObj.append(NOTE_DELIVERED, false);
-        noteObj.append(NOTE_WHEN, System.currentTimeMillis());
-        notes.insert(noteObj);
+    protected void storeNote(String network, String from, String to, String note) {
+        notes.save(new Note(network, from, to.toLowerCase(), note, System.currentTimeMillis()));
+        pendingRecipients.add(pendingKey(network, to));
+    }
+
+    protected boolean hasPendingNotes(String network, String nick) {
+        return pendingRecipients.contains(pendingKey(network, nick));
     }
 
     protected void findNotes(User to) {
-        BasicDBObject query = new BasicDBObject(NOTE_TO, to.getNick().toLowerCase());
-        query.append(NOTE_DELIVERED, false);
-        DBCursor noteCursor = notes.find(query);
-        if(noteCursor == null) {
-            return;
+        String toNick = to.getNick().toLowerCase();
+        String key = pendingKey(to.getNetwork(), toNick);
+        //Clear the flag before looking so a note stored while we deliver sets it again.
+        pendingRecipients.remove(key);
+
+        try {
+            deliverNotes(to, toNick);
+        }catch(RuntimeException e) {
+            pendingRecipients.add(key);
+            throw e;
         }
+    }
 
-        while(noteCursor.hasNext()) {
-            DBObject noteObj = noteCursor.next();
-            String from = (String)noteObj.get(NOTE_FROM);
-            String note = (String)noteObj.get(NOTE_NOTE);
-            long when = (long)noteObj.get(NOTE_WHEN);
+    /**
+     * Nicks can't have spaces, so this is unambiguous whatever the network is called.
+     */
+    private String pendingKey(String network, String nick) {
+        return network + " " + nick.toLowerCase();
+    }
 
+    private void deliverNotes(User to, String toNick) {
+        List<Object> delivered = new ArrayList<>();
+        for(Note note : notes.findUndelivered(to.getNetwork(), toNick)) {
             StringBuilder noteMessage = new StringBuilder(to.getNick()).append(" you have a note from ");
-            noteMessage.append(from).append(" at ").append(WHEN_FMT.format(new Date(when)));
-            notifyObserver(new MessageEvent(to, noteMessage.toString()));
-            notifyObserver(new MessageEvent(to, note));
-
-            notes.update(new BasicDBObject("_id", noteObj.get("_id")),new BasicDBObject("$set",
-                    new BasicDBObject(NOTE_DELIVERED, true)));
+            noteMessage.append(note.getFrom()).append(" at ").append(WHEN_FMT.get().format(new Date(note.getWhen())));
+            publish(new MessageEvent(to, noteMessage.toString(), Priority.NORMAL));
+            publish(new MessageEvent(to, note.getNote(), Priority.NORMAL));
+            delivered.add(note.getId());
         }
+
+        notes.markDelivered(delivered);
     }
 
     @Override
@@ -95,12 +117,15 @@ public class NoteCommand extends Command implements Processor {
     }
 
     @Override
-    public boolean shouldProcess(String message) {
-        return true;
+    public List<Trigger> getTriggers() {
+        //Notes are for whoever speaks, whatever they say.
+        return Collections.singletonList(Trigger.always());
     }
 
     @Override
     public void process(User user, String message) {
-        findNotes(user);
+        if(hasPendingNotes(user.getNetwork(), user.getNick())) {
+            findNotes(user);
+        }
     }
 }
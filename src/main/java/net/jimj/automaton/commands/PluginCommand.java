@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.plugins.PluginManager;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.List;
+
+/**
+ * .plugin list | load name | unload name | reload name
+ */
+public class PluginCommand extends Command {
+    private PluginManager plugins;
+    private int adminLevel;
+
+    public PluginCommand(PluginManager plugins, int adminLevel) {
+        this.plugins = plugins;
+        this.adminLevel = adminLevel;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "plugin";
+    }
+
+    @Override
+    public void execute(User user, Args args) {
+        if(args.isEmpty() || "list".equals(args.getString(0))) {
+            List<String> loaded = plugins.getLoaded();
+            publish(new MessageEvent(user, loaded.isEmpty() ? "No plugins loaded." :
+                    "Loaded: " + StringUtils.join(loaded, ", ")));
+            return;
+        }
+        if(args.size() < 2) {
+            publish(new MessageEvent(user, "Usage: plugin list | load name | unload name | reload name"));
+            return;
+        }
+
+        String action = args.getString(0);
+        String name = args.getString(1);
+        try {
+            if("load".equals(action)) {
+                load(user, name);
+            }else if("unload".equals(action)) {
+                unload(user, name);
+            }else if("reload".equals(action)) {
+                plugins.unload(name);
+                load(user, name);
+            }else {
+                publish(new MessageEvent(user, "Don't know how to " + action + " a plugin."));
+            }
+        }catch(IllegalArgumentException e) {
+            publish(new MessageEvent(user, e.getMessage()));
+        }
+    }
+
+    private void load(User user, String name) {
+        List<String> commands = plugins.load(name);
+        publish(new MessageEvent(user, "Loaded " + name + ": " + StringUtils.join(commands, ", ")));
+    }
+
+    private void unload(User user, String name) {
+        publish(new MessageEvent(user, plugins.unload(name) ? "Unloaded " + name : name + " isn't loaded."));
+    }
+
+    @Override
+    public boolean authorized(User user) {
+        return user.getLevel() >= adminLevel;
+    }
+}
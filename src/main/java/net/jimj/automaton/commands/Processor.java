@@ -2,10 +2,14 @@ package net.jimj.automaton.commands;
 
 import net.jimj.automaton.model.User;
 
+import java.util.List;
+
 /**
  * Processors look at every line of text that is not a command.
+ *
+ * Each one declares the triggers it cares about, and is only handed lines matching one of them.
  */
 public interface Processor {
-    public boolean shouldProcess(String message);
+    public List<Trigger> getTriggers();
     public void process(User user, String message);
 }
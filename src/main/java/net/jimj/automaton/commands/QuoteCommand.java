@@ -22,35 +22,47 @@
 
 package net.jimj.automaton.commands;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
 import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.log.ChannelLog;
+import net.jimj.automaton.log.LogRecord;
+import net.jimj.automaton.model.Quote;
 import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.Fingerprint;
+import net.jimj.automaton.store.QuoteStore;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 public class QuoteCommand extends Command {
-    protected static final String QUOTE_NICK = "nick";
-    protected static final String QUOTE_QUOTE = "quote";
-    protected static final String QUOTE_NETWORK = "network";
-    private static final Pattern TIMESTAMP = Pattern.compile(".*([0-9]{1,2}:[0-9][0-9]).*");
     private static final String NO_QUOTES = "No quotes found.";
-
-    private DBCollection quotes;
+    private static final int MAX_GRAB_LINES = 5;
+    private static final String STORED = "quote stored.";
+    //How much of its text a new quote can share with an old one before it's turned away.
+    private static final double NEAR_DUPLICATE = 0.8;
+
+    private QuoteStore quotes;
+    private ChannelLog log;
+    private QuoteIndex index = new QuoteIndex();
+    private QuoteParser parser = new QuoteParser();
+    private NearDuplicateIndex nearDuplicates = new NearDuplicateIndex(NEAR_DUPLICATE);
     private static final Logger LOGGER = LoggerFactory.getLogger(QuoteCommand.class);
-    private static Random random = new Random();
 
-    public QuoteCommand(DBCollection quotes) {
+    public QuoteCommand(QuoteStore quotes) {
+        this(quotes, null);
+    }
+
+    /**
+     * @param log where to grab quotes from, or null if channels aren't being logged.
+     */
+    public QuoteCommand(QuoteStore quotes, ChannelLog log) {
         this.quotes = quotes;
+        this.log = log;
+        loadIndex();
     }
 
     @Override
@@ -59,205 +71,180 @@ public class QuoteCommand extends Command {
     }
 
     @Override
-    public void execute(User user, String args) {
-        if(args == null) {
-            args = "";
+    public void execute(User user, Args args) {
+        //e.g. quote grab foo 2
+        //to store the last two things foo said in this channel
+        if(args.size() > 1 && "grab".equals(args.getString(0))) {
+            int lines = 1;
+            if(args.size() > 2 && StringUtils.isNumeric(args.getString(2))) {
+                lines = Math.max(1, Math.min(MAX_GRAB_LINES, Integer.parseInt(args.getString(2))));
+            }
+            publish(new MessageEvent(user, grabQuote(user, args.getString(1), lines)));
+            return;
         }
 
+        String text = args.text();
+
         //Is this a search?
         //e.g. quote foo /search string/
         //to find a quote by 'foo' containing 'search string'
-        int searchStart = args.indexOf("/");
-        int searchEnd = args.lastIndexOf("/");
+        int searchStart = text.indexOf("/");
+        int searchEnd = text.lastIndexOf("/");
 
-        String[] argParts = ArgUtil.split(args);
         //If there's more than 1 argument, and no search term.
-        if(argParts.length > 1 && searchStart == searchEnd) {
-            LOGGER.debug(String.format("%d > 1 && %d == %d", argParts.length, searchStart, searchEnd));
-            if(storeQuote(args, argParts)) {
-                notifyObserver(new MessageEvent(user, "quote stored."));
-            }else {
-                notifyObserver(new MessageEvent(user, "I couldn't parse the quote correctly."));
-            }
+        if(args.size() > 1 && searchStart == searchEnd) {
+            LOGGER.debug(String.format("%d > 1 && %d == %d", args.size(), searchStart, searchEnd));
+            publish(new MessageEvent(user, storeQuote(user.getNetwork(), args)));
         }else {
-            notifyObserver(new MessageEvent(user, getQuote(args)));
+            publish(new MessageEvent(user, getQuote(user.getNetwork(), text)));
         }
     }
 
-    protected boolean storeQuote(String args, String[] argParts) {
-        boolean stored = false;
-
-        //Try to determine the start of the quote based on the assumption that
-        //pasted quotes will contain nicknames surrounded by some sort of 'special' character.
-        int quoteStart = findQuoteStart(argParts);
-        if(quoteStart == -1) {
+    /**
+     * @return what to tell the user.
+     */
+    protected String storeQuote(String network, Args args) {
+        Quote quote = parser.parse(network, args);
+        if(quote == null) {
             LOGGER.warn("Couldn't find nick in quote " + args);
-        } else {
-            Set<String> nicks = findNickCandidates(argParts);
-
-            //Quote defaults to entire string
-            String quote = args;
-
-            if(quoteStart > 0) {
-                //Add on any 'passed in' nicks for the quote as well
-                //i.e. .quote foo <foobar> my quote
-                //would get the nicks ["foo", "foobar"] associated w/ it.
-                for(int i=0;i<quoteStart;i++) {
-                    nicks.add(argParts[i]);
-                }
-
-                //Cut out the passed in nicks from the actual quote.
-                quote = ArgUtil.squash(argParts, quoteStart);
-            }
+            return "I couldn't parse the quote correctly.";
+        }
+        return save(quote);
+    }
 
-            BasicDBObject quoteObj = new BasicDBObject(QUOTE_NICK, nicks);
-            quoteObj.append(QUOTE_QUOTE, quote);
-            quoteObj.append(QUOTE_NETWORK, "slashnet");
-            quoteObj.append("QUOTE_VERSION", "1");
-            if(LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Storing quote: " + quoteObj);
+    /**
+     * Store what a nick last said in the user's channel, straight from the channel log.
+     * @return what to tell the user.
+     */
+    protected String grabQuote(User user, String nick, int lines) {
+        if(log == null) {
+            return "Channels aren't being logged, paste the quote instead.";
+        }
+        if(user.getChannel() == null) {
+            return "Quotes can only be grabbed in a channel.";
+        }
+
+        List<LogRecord> said = log.lastBy(user.getNetwork(), user.getChannel(), nick, lines);
+        if(said.isEmpty()) {
+            return "I haven't heard " + nick + " say anything here.";
+        }
+
+        StringBuilder quote = new StringBuilder();
+        for(LogRecord record : said) {
+            if(quote.length() > 0) {
+                quote.append(' ');
             }
-            quotes.save(quoteObj);
-            stored = true;
+            quote.append('<').append(record.getNick()).append("> ").append(record.getMessage());
         }
-        return stored;
+        return save(new Quote(new LinkedHashSet<>(Collections.singleton(nick.toLowerCase())), quote.toString(), user.getNetwork()));
     }
 
-    protected int findQuoteStart(String[] argParts) {
-        for(int i=0;i<argParts.length;i++) {
-            String argPart = argParts[i];
-            //Does the argPart start w/ a legal char?  If not, probably a nickname.
-            if(isMetaWord(argPart)) {
-                return i;
-            }
+    /**
+     * Store the quote unless it, or something nearly the same, is already stored.
+     * @return what to tell the user.
+     */
+    private String save(Quote quote) {
+        if(quotes.findByFingerprint(quote.getNetwork(), Fingerprint.of(quote.getQuote())) != null) {
+            return "I already have that quote.";
+        }
+        if(nearDuplicates.findNear(quote.getNetwork(), quote.getQuote()) != null) {
+            return "I already have a quote a lot like that.";
         }
 
-        return -1;
+        quotes.save(quote);
+        add(quote);
+        return STORED;
     }
 
-    protected HashSet<String> findNickCandidates(String[] argParts) {
-        HashSet<String> candidates = new HashSet<>();
-        for(int i=0;i<argParts.length;i++) {
-            String argPart = argParts[i];
-            //String splitting happens on a space
-            //argParts could show up as ["<", "nick>"] due to irc client formatting.
-            //If this is the case, append the next argPart onto the current string
-            if(argPart.length() == 1) {
-                argPart += argParts[i+1];
-            }
+    private void add(Quote quote) {
+        index.add(quote.getId(), quote.getNicks(), quote.getNetwork(), quote.getQuote());
+        nearDuplicates.add(quote.getId(), quote.getNetwork(), quote.getQuote());
+    }
 
-            if(isMetaWord(argPart)) {
-                String candidate = getNormalizedNick(argPart);
-                if(!looksLikeTimestamp(candidate)) {
-                    candidates.add(candidate);
-                }
-            }
-        }
-        return candidates;
+    protected int findQuoteStart(Args args) {
+        return parser.findQuoteStart(args);
+    }
+
+    protected Set<String> findNickCandidates(Args args) {
+        return parser.findNickCandidates(args);
     }
 
     protected boolean looksLikeTimestamp(String str) {
-        return TIMESTAMP.matcher(str).matches();
+        return parser.looksLikeTimestamp(str);
     }
 
     protected String getNormalizedNick(String nick) {
-        int startNick = 0;
-        int endNick = nick.length();
-
-        int j=nick.length();
-        for(int i=0;i<nick.length();i++) {
-            if(i >= j) {
-                break;
-            }
-            if(!legalChar(nick.charAt(i))) {
-                startNick = i+1;
-            }
-            j--;
-            if(!legalChar(nick.charAt(j))) {
-                endNick = j;
-            }
-        }
-
-        return nick.substring(startNick, endNick).toLowerCase();
+        return parser.getNormalizedNick(nick);
     }
 
     protected boolean isMetaWord(String word) {
-        if(StringUtils.isBlank(word)) {
-            return false;
-        }
-        return !(Character.isAlphabetic(word.codePointAt(0)) || Character.isDigit(word.codePointAt(0)));
+        return parser.isMetaWord(word);
     }
 
-    protected boolean legalChar(char c) {
-        switch(c) {
-            case '<':
-            case '@':
-            case '+':
-            case '>':
-            case ' ':
-                return false;
-            default:
-                return true;
-        }
-    }
+    protected String getQuote(String network, String arg) {
+        String search = getSearchTerm(arg);
+        String nick = getSearchNick(arg);
 
-    protected String getQuote(String arg) {
-        BasicDBObject query = buildQuoteSearch(arg);
-        if(LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Searching for quotes that match " + query);
+        Quote quote = null;
+        if(search != null && QuoteIndex.isPlainSearch(search)) {
+            //Word searches are answered from the in memory index, and only the chosen quote is read from the store.
+            //The index only finds matches that start at a word, so a miss still gets the regex search.
+            Object quoteId = index.findRandom(network, nick, search);
+            quote = quoteId == null ? null : quotes.findById(quoteId);
+        }
+        if(quote == null) {
+            quote = quotes.findRandom(network, nick, search);
         }
 
-        BasicDBObject keysWanted = new BasicDBObject("_id", "1");
-        List<DBObject> quoteIds = quotes.find(query,keysWanted).toArray();
-        return getRandomQuote(quoteIds);
+        if(quote == null) {
+            return NO_QUOTES;
+        }
+        return quote.getQuote();
     }
 
-    protected BasicDBObject buildQuoteSearch(String arg) {
-        //todo: replace w/ real Network concept.
-        BasicDBObject query = new BasicDBObject(QUOTE_NETWORK,"slashnet");
-
-        if(arg != null) {
-            //Regex search
-            int searchStart = arg.indexOf("/");
-            int searchEnd = arg.lastIndexOf("/");
-            if(searchStart != -1 && searchStart < searchEnd) {
-                //cut out the included / characters.
-                String quoteSearch = arg.substring(searchStart+1, searchEnd);
-                if(quoteSearch.length() > 0) {
-                    query.append(QUOTE_QUOTE, new BasicDBObject("$regex", quoteSearch));
-                }
-            }
-
-            String nick = arg;
-            if(searchStart != -1) {
-                nick = arg.substring(0, searchStart).trim();
-            }
+    /**
+     * @return whatever's between the first and last '/' of the argument, or null if there's no search.
+     */
+    protected String getSearchTerm(String arg) {
+        if(arg == null) {
+            return null;
+        }
 
-            if(!StringUtils.isBlank(nick)) {
-                query.append(QUOTE_NICK, nick);
+        int searchStart = arg.indexOf("/");
+        int searchEnd = arg.lastIndexOf("/");
+        if(searchStart != -1 && searchStart < searchEnd) {
+            //cut out the included / characters.
+            String quoteSearch = arg.substring(searchStart+1, searchEnd);
+            if(quoteSearch.length() > 0) {
+                return quoteSearch;
             }
         }
-
-        LOGGER.debug(query.toString());
-        return query;
+        return null;
     }
 
-    protected String getRandomQuote(List<DBObject> quoteIds) {
-        if(quoteIds == null) {
-            return NO_QUOTES;
+    /**
+     * @return the nick before any search term, or null if there isn't one.
+     */
+    protected String getSearchNick(String arg) {
+        if(arg == null) {
+            return null;
         }
 
-        int totalQuotes = quoteIds.size();
+        String nick = arg;
+        int searchStart = arg.indexOf("/");
+        if(searchStart != -1) {
+            nick = arg.substring(0, searchStart).trim();
+        }
 
-        if(totalQuotes < 1) {
-            return NO_QUOTES;
-        } else {
-            int quoteNum = random.nextInt(totalQuotes);
-            Object quoteId = quoteIds.get(quoteNum).get("_id");
-            DBCursor quoteCur = quotes.find(new BasicDBObject("_id", quoteId), new BasicDBObject(QUOTE_QUOTE, 1));
-            DBObject quoteObj = quoteCur.next();
-            return (String)quoteObj.get(QUOTE_QUOTE);
+        return StringUtils.isBlank(nick) ? null : nick;
+    }
+
+    private void loadIndex() {
+        long start = System.currentTimeMillis();
+        for(Quote quote : quotes.findAll()) {
+            add(quote);
         }
+        LOGGER.info("Indexed " + index.size() + " quotes in " + (System.currentTimeMillis() - start) + "ms");
     }
 
     @Override
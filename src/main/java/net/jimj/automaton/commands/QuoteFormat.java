@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+/**
+ * How one kind of irc client marks who's speaking in a copied line.
+ *
+ * QuoteParser walks a pasted quote one token at a time and asks each format whether a speaker
+ * starts at the current token.  Timestamps are recognized by the parser itself, since every
+ * client writes them much the same way.
+ */
+public interface QuoteFormat {
+    /**
+     * Look for a speaker starting at a token.
+     * @param lineStart true if the token is the first one, or only follows a timestamp.
+     * @param nick where to append the speaker's normalized nick.
+     * @return how many tokens the speaker took up, or 0 if there isn't one here.
+     */
+    public int matchSpeaker(Args args, int index, boolean lineStart, StringBuilder nick);
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The QuoteFormats of common irc clients.
+ */
+public final class QuoteFormats {
+    /**
+     * irssi, mIRC and HexChat: "&lt;@nick&gt; hi", or "&lt; nick&gt; hi" with irssi's padding.
+     */
+    public static final QuoteFormat ANGLE_BRACKETS = new QuoteFormat() {
+        @Override
+        public int matchSpeaker(Args args, int index, boolean lineStart, StringBuilder nick) {
+            CharSequence token = args.get(index);
+            if(token.charAt(0) != '<') {
+                return 0;
+            }
+
+            int consumed = 1;
+            if(token.length() == 1) {
+                if(index + 1 >= args.size()) {
+                    return 0;
+                }
+                token = args.get(index + 1);
+                consumed = 2;
+            }
+
+            //Without a closing bracket it's more likely a <3 than a nick.
+            if(indexOf(token, '>') == -1) {
+                return 0;
+            }
+            return QuoteParser.appendNick(token, nick) ? consumed : 0;
+        }
+    };
+
+    /**
+     * Actions in most clients: "* nick waves".
+     */
+    public static final QuoteFormat ACTION = new QuoteFormat() {
+        @Override
+        public int matchSpeaker(Args args, int index, boolean lineStart, StringBuilder nick) {
+            if(!lineStart || index + 1 >= args.size() || !isOnly(args.get(index), '*')) {
+                return 0;
+            }
+            return QuoteParser.appendNick(args.get(index + 1), nick) ? 2 : 0;
+        }
+    };
+
+    /**
+     * WeeChat, which puts a bar after the nick instead of brackets around it: "12:01:33 @nick | hi".
+     */
+    public static final QuoteFormat WEECHAT = new QuoteFormat() {
+        @Override
+        public int matchSpeaker(Args args, int index, boolean lineStart, StringBuilder nick) {
+            if(!lineStart || index + 1 >= args.size()) {
+                return 0;
+            }
+
+            CharSequence next = args.get(index + 1);
+            if(!isOnly(next, '|') && !isOnly(next, '\u2502')) {
+                return 0;
+            }
+            return QuoteParser.appendNick(args.get(index), nick) ? 2 : 0;
+        }
+    };
+
+    public static final List<QuoteFormat> DEFAULTS = Collections.unmodifiableList(Arrays.asList(
+            ANGLE_BRACKETS, ACTION, WEECHAT));
+
+    private QuoteFormats() {
+
+    }
+
+    private static boolean isOnly(CharSequence token, char c) {
+        return token.length() == 1 && token.charAt(0) == c;
+    }
+
+    private static int indexOf(CharSequence token, char c) {
+        for(int i=0;i<token.length();i++) {
+            if(token.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
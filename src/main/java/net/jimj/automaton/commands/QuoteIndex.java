@@ -0,0 +1,167 @@
+package net.jimj.automaton.commands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In memory inverted index of quote words, so word searches don't have to scan every quote.
+ *
+ * Words are lowercased runs of letters and digits.  The index narrows a search down to quotes
+ * containing every search word, where a search word matches any indexed word it's a prefix of,
+ * and then keeps only the ones that contain the search exactly as typed.  That's the same case
+ * sensitive substring match a regex search without metacharacters makes, so what's found is
+ * always what a regex search would find.  Matches that only start mid-word (e.g. "ell" in
+ * "hello") aren't found here, so callers should fall back to a regex search when this finds nothing.
+ */
+public class QuoteIndex {
+    private static final String REGEX_CHARS = ".*+?^$[](){}|\\";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Set<Object>> postings = new TreeMap<>();
+    private final Map<Object, IndexedQuote> quotes = new HashMap<>();
+    private final Random random = new Random();
+
+    /**
+     * @return true if the search can be answered by the index instead of a regex.
+     */
+    public static boolean isPlainSearch(String search) {
+        boolean hasWord = false;
+        for(int i=0;i<search.length();i++) {
+            char c = search.charAt(i);
+            if(REGEX_CHARS.indexOf(c) != -1) {
+                return false;
+            }
+            hasWord |= Character.isLetterOrDigit(c);
+        }
+        return hasWord;
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if(text == null) {
+            return tokens;
+        }
+
+        int start = -1;
+        for(int i=0;i<=text.length();i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(wordChar && start == -1) {
+                start = i;
+            }else if(!wordChar && start != -1) {
+                tokens.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    public void add(Object id, Collection<String> nicks, String network, String quote) {
+        IndexedQuote indexed = new IndexedQuote(new HashSet<>(nicks), network, quote);
+        lock.writeLock().lock();
+        try {
+            quotes.put(id, indexed);
+            for(String token : tokenize(quote)) {
+                Set<Object> ids = postings.get(token);
+                if(ids == null) {
+                    ids = new HashSet<>();
+                    postings.put(token, ids);
+                }
+                ids.add(id);
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return quotes.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param nick only match quotes with this nick, or null for any nick.
+     * @return the id of a random quote matching the search, or null if none match.
+     */
+    public Object findRandom(String network, String nick, String search) {
+        List<Object> matches = find(network, nick, search);
+        if(matches.isEmpty()) {
+            return null;
+        }
+        return matches.get(random.nextInt(matches.size()));
+    }
+
+    public List<Object> find(String network, String nick, String search) {
+        List<String> words = tokenize(search);
+        if(words.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<Object> candidates = null;
+            for(String word : words) {
+                Set<Object> wordMatches = prefixMatches(word);
+                if(candidates == null) {
+                    candidates = wordMatches;
+                }else {
+                    candidates.retainAll(wordMatches);
+                }
+                if(candidates.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+
+            List<Object> matches = new ArrayList<>(candidates.size());
+            for(Object id : candidates) {
+                IndexedQuote quote = quotes.get(id);
+                if(quote.matches(network, nick) && quote.text.contains(search)) {
+                    matches.add(id);
+                }
+            }
+            return matches;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Set<Object> prefixMatches(String word) {
+        Set<Object> matches = new HashSet<>();
+        for(Set<Object> ids : postings.subMap(word, true, word + Character.MAX_VALUE, false).values()) {
+            matches.addAll(ids);
+        }
+        return matches;
+    }
+
+    private static class IndexedQuote {
+        private final Set<String> nicks;
+        private final String network;
+        private final String text;
+
+        private IndexedQuote(Set<String> nicks, String network, String text) {
+            this.nicks = nicks;
+            this.network = network;
+            this.text = text == null ? "" : text;
+        }
+
+        private boolean matches(String network, String nick) {
+            if(network != null && !network.equals(this.network)) {
+                return false;
+            }
+            return nick == null || nicks.contains(nick);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.model.Quote;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out who's in a pasted quote and where the quote itself starts.
+ *
+ * The paste is read in a single pass over its tokens.  Each is either a timestamp, the start
+ * of a speaker as one of the QuoteFormats marks them (e.g. "&lt;@foo&gt;"), some other
+ * punctuation, or plain text.  The quote starts at the first token that isn't plain text, and
+ * any plain words before it are taken to be nicks the quote should also be filed under.
+ * Parsers hold no state, one can be shared by any number of threads.
+ */
+public class QuoteParser {
+    //States of the timestamp reader.
+    private static final int TS_OPEN = 0;
+    private static final int TS_FIRST = 1;
+    private static final int TS_TIME = 2;
+    private static final int TS_DATE = 3;
+    private static final int TS_CLOSE = 4;
+
+    private final List<QuoteFormat> formats;
+
+    public QuoteParser() {
+        this(QuoteFormats.DEFAULTS);
+    }
+
+    public QuoteParser(List<QuoteFormat> formats) {
+        this.formats = formats;
+    }
+
+    /**
+     * @return the quote, or null if no nick could be found in it.
+     */
+    public Quote parse(String network, Args args) {
+        Set<String> nicks = new LinkedHashSet<>();
+        int quoteStart = scan(args, nicks);
+        if(quoteStart == -1) {
+            return null;
+        }
+
+        //Quote defaults to entire string
+        String quote = args.text();
+
+        if(quoteStart > 0) {
+            //Add on any 'passed in' nicks for the quote as well
+            //i.e. .quote foo <foobar> my quote
+            //would get the nicks ["foo", "foobar"] associated w/ it.
+            for(int i=0;i<quoteStart;i++) {
+                nicks.add(args.getString(i));
+            }
+
+            //Cut out the passed in nicks from the actual quote.
+            quote = args.rest(quoteStart);
+        }
+
+        if(nicks.isEmpty()) {
+            return null;
+        }
+        return new Quote(nicks, quote, network);
+    }
+
+    /**
+     * @return the index of the token the quote starts at, or -1 if it doesn't look like a quote.
+     */
+    public int findQuoteStart(Args args) {
+        return scan(args, null);
+    }
+
+    public Set<String> findNickCandidates(Args args) {
+        Set<String> candidates = new LinkedHashSet<>();
+        scan(args, candidates);
+        return candidates;
+    }
+
+    public boolean looksLikeTimestamp(String str) {
+        return isTimestamp(str);
+    }
+
+    public String getNormalizedNick(String nick) {
+        StringBuilder normalized = new StringBuilder(nick.length());
+        appendNick(nick, normalized);
+        return normalized.toString();
+    }
+
+    public boolean isMetaWord(String word) {
+        return word != null && !word.isEmpty() && isMeta(word.charAt(0));
+    }
+
+    /**
+     * @param nicks where to put the speakers found, or null to only find the start.
+     * @return the index of the token the quote starts at, or -1 if it doesn't look like a quote.
+     */
+    private int scan(Args args, Set<String> nicks) {
+        int quoteStart = -1;
+        boolean lineStart = true;
+        StringBuilder nick = null;
+
+        int size = args.size();
+        int i = 0;
+        while(i < size) {
+            CharSequence token = args.get(i);
+            int consumed;
+            if(isTimestamp(token)) {
+                lineStart = true;
+                consumed = 1;
+            }else {
+                if(nick == null) {
+                    nick = new StringBuilder();
+                }
+                consumed = matchSpeaker(args, i, lineStart, nick);
+                if(consumed > 0) {
+                    if(nicks != null) {
+                        nicks.add(nick.toString());
+                    }
+                    nick.setLength(0);
+                    lineStart = false;
+                }else if(isMeta(token.charAt(0))) {
+                    //A lone bracket is what's left of "[ 9:34]" style timestamps, the line hasn't really started.
+                    lineStart &= isBrackets(token);
+                    consumed = 1;
+                }else {
+                    //Plain text.
+                    lineStart = false;
+                    i++;
+                    continue;
+                }
+            }
+
+            if(quoteStart == -1) {
+                quoteStart = i;
+                if(nicks == null) {
+                    break;
+                }
+            }
+            i += consumed;
+        }
+        return quoteStart;
+    }
+
+    private int matchSpeaker(Args args, int index, boolean lineStart, StringBuilder nick) {
+        for(QuoteFormat format : formats) {
+            int consumed = format.matchSpeaker(args, index, lineStart, nick);
+            if(consumed > 0) {
+                return consumed;
+            }
+            nick.setLength(0);
+        }
+        return 0;
+    }
+
+    /**
+     * Append the lowercased nick in a token, dropping decorations like brackets and mode prefixes.
+     * @return false if there's no nick in the token.
+     */
+    static boolean appendNick(CharSequence token, StringBuilder nick) {
+        int start = 0;
+        while(start < token.length() && isDecoration(token.charAt(start))) {
+            start++;
+        }
+
+        int end = start;
+        while(end < token.length() && !isDecoration(token.charAt(end))) {
+            nick.append(Character.toLowerCase(token.charAt(end)));
+            end++;
+        }
+        return end > start;
+    }
+
+    static boolean isDecoration(char c) {
+        switch(c) {
+            case '<':
+            case '>':
+            case '@':
+            case '+':
+            case '%':
+            case '&':
+            case '~':
+            case ' ':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Timestamps look like "12:01", "[12:01:33]" or "2013-06-01", and are read with a small state machine
+     * rather than a regex, since every token of every paste gets checked.
+     */
+    static boolean isTimestamp(CharSequence token) {
+        int state = TS_OPEN;
+        int digits = 0;
+        for(int i=0;i<token.length();i++) {
+            char c = token.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            switch(state) {
+                case TS_OPEN:
+                    if(digit) {
+                        state = TS_FIRST;
+                        digits = 1;
+                    }else if(!isOpenBracket(c)) {
+                        return false;
+                    }
+                    break;
+                case TS_FIRST:
+                    if(digit) {
+                        digits++;
+                        if(digits > 4) {
+                            return false;
+                        }
+                    }else if(c == ':' && digits <= 2) {
+                        state = TS_TIME;
+                        digits = 0;
+                    }else if(c == '-' && digits == 4) {
+                        state = TS_DATE;
+                        digits = 0;
+                    }else {
+                        return false;
+                    }
+                    break;
+                case TS_TIME:
+                    //Minutes, then maybe seconds, two digits each.
+                    if(digit) {
+                        digits++;
+                        if(digits > 2) {
+                            return false;
+                        }
+                    }else if(c == ':' && digits == 2) {
+                        digits = 0;
+                    }else if(digits == 2 && isCloseBracket(c)) {
+                        state = TS_CLOSE;
+                    }else {
+                        return false;
+                    }
+                    break;
+                case TS_DATE:
+                    //Month, then day.
+                    if(digit) {
+                        digits++;
+                        if(digits > 2) {
+                            return false;
+                        }
+                    }else if(c == '-' && digits == 2) {
+                        digits = 0;
+                    }else if(digits == 2 && isCloseBracket(c)) {
+                        state = TS_CLOSE;
+                    }else {
+                        return false;
+                    }
+                    break;
+                default:
+                    if(!isCloseBracket(c)) {
+                        return false;
+                    }
+            }
+        }
+        return state == TS_CLOSE || ((state == TS_TIME || state == TS_DATE) && digits == 2);
+    }
+
+    private static boolean isOpenBracket(char c) {
+        return c == '[' || c == '(' || c == ' ';
+    }
+
+    private static boolean isCloseBracket(char c) {
+        return c == ']' || c == ')' || c == ' ';
+    }
+
+    private static boolean isBrackets(CharSequence token) {
+        for(int i=0;i<token.length();i++) {
+            if(!isOpenBracket(token.charAt(i)) && !isCloseBracket(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMeta(char c) {
+        return !Character.isLetterOrDigit(c);
+    }
+}
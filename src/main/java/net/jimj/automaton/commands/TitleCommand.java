@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.http.HttpFetcher;
+import net.jimj.automaton.http.PageInfo;
+import net.jimj.automaton.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Says what links people paste point to: the page title, content type and size.
+ * Also available as a command, to ask about a link directly.
+ */
+public class TitleCommand extends Command implements Processor {
+    private static final Pattern URL = Pattern.compile("https?://[^\\s<>\"]+", Pattern.CASE_INSENSITIVE);
+    private static final String TRAILING_PUNCTUATION = ".,;:!?)'\"";
+    private static final int MAX_URLS_PER_LINE = 3;
+
+    private HttpFetcher fetcher;
+
+    public TitleCommand(HttpFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "title";
+    }
+
+    @Override
+    public void execute(final User user, Args args) {
+        if(args.isEmpty()) {
+            return;
+        }
+        String text = args.getString(0);
+        if(!text.startsWith("http://") && !text.startsWith("https://")) {
+            text = "http://" + text;
+        }
+
+        final String url = text;
+        boolean accepted = fetcher.page(url, new HttpFetcher.Callback<PageInfo>() {
+            @Override
+            public void completed(PageInfo result) {
+                String description = describe(result);
+                publish(new MessageEvent(user, description != null ? description :
+                        url + " answered " + result.getStatusCode()));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                publish(new MessageEvent(user, "Couldn't fetch " + url + ": " + e.getMessage()));
+            }
+        });
+
+        if(!accepted) {
+            publish(new MessageEvent(user, "Too many lookups going, try again in a bit."));
+        }
+    }
+
+    @Override
+    public boolean authorized(User user) {
+        return true;
+    }
+
+    @Override
+    public List<Trigger> getTriggers() {
+        return Arrays.asList(Trigger.contains("http://"), Trigger.contains("https://"));
+    }
+
+    @Override
+    public void process(final User user, String message) {
+        for(String url : findUrls(message)) {
+            //Links nobody asked about aren't worth complaining over, so failures stay quiet.
+            fetcher.page(url, new HttpFetcher.Callback<PageInfo>() {
+                @Override
+                public void completed(PageInfo result) {
+                    String description = describe(result);
+                    if(description != null) {
+                        publish(new MessageEvent(user, description));
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the distinct links in a line, at most MAX_URLS_PER_LINE of them.
+     */
+    static List<String> findUrls(String message) {
+        Set<String> urls = new LinkedHashSet<>();
+        Matcher matcher = URL.matcher(message);
+        while(matcher.find() && urls.size() < MAX_URLS_PER_LINE) {
+            String url = matcher.group();
+            int end = url.length();
+            while(end > 0 && TRAILING_PUNCTUATION.indexOf(url.charAt(end - 1)) != -1) {
+                end--;
+            }
+            urls.add(url.substring(0, end));
+        }
+        return new ArrayList<>(urls);
+    }
+
+    /**
+     * @return a one line summary of the page, or null if there's nothing worth saying.
+     */
+    static String describe(PageInfo page) {
+        if(page.getStatusCode() >= 300 || (page.getTitle() == null && page.getContentType() == null)) {
+            return null;
+        }
+
+        StringBuilder description = new StringBuilder();
+        if(page.getTitle() != null) {
+            description.append("[ ").append(page.getTitle()).append(" ] ");
+        }
+        description.append(page.getContentType() == null ? "unknown type" : page.getContentType());
+        if(page.getContentLength() >= 0) {
+            description.append(", ").append(formatSize(page.getContentLength()));
+        }
+        return description.toString();
+    }
+
+    static String formatSize(long bytes) {
+        if(bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KB", "MB", "GB", "TB"};
+        double size = bytes;
+        int unit = -1;
+        while(size >= 1024 && unit < units.length - 1) {
+            size /= 1024;
+            unit++;
+        }
+        return (size < 10 ? String.format("%.1f", size) : String.valueOf(Math.round(size))) + " " + units[unit];
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import java.util.regex.Pattern;
+
+/**
+ * Something in a line of text that a Processor wants to see.
+ *
+ * Literal triggers (suffixes and substrings) ignore case.  Regexes are used as given.
+ */
+public class Trigger {
+    public enum Type {
+        ALWAYS, SUFFIX, CONTAINS, REGEX
+    }
+
+    private static final Trigger ALWAYS = new Trigger(Type.ALWAYS, null, null);
+
+    private final Type type;
+    private final String literal;
+    private final Pattern pattern;
+
+    private Trigger(Type type, String literal, Pattern pattern) {
+        this.type = type;
+        this.literal = literal;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Match every line, for processors that care about who spoke rather than what they said.
+     */
+    public static Trigger always() {
+        return ALWAYS;
+    }
+
+    public static Trigger suffix(String suffix) {
+        return new Trigger(Type.SUFFIX, checkLiteral(suffix), null);
+    }
+
+    public static Trigger contains(String substring) {
+        return new Trigger(Type.CONTAINS, checkLiteral(substring), null);
+    }
+
+    /**
+     * Match lines where the pattern is found anywhere, as with Matcher.find().
+     */
+    public static Trigger regex(String regex) {
+        return new Trigger(Type.REGEX, null, Pattern.compile(regex));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getLiteral() {
+        return literal;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return type + (literal != null ? " " + literal : "") + (pattern != null ? " " + pattern : "");
+    }
+
+    private static String checkLiteral(String literal) {
+        if(literal == null || literal.isEmpty()) {
+            throw new IllegalArgumentException("Trigger text can't be empty");
+        }
+        return literal;
+    }
+}
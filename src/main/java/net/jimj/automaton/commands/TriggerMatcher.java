@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Finds which targets want a line of text, in one pass over it.
+ *
+ * Every literal trigger goes into one Aho-Corasick automaton.  A suffix is a literal that only
+ * counts when it ends on the last character.  Regex triggers can't be combined that way, so each
+ * runs on its own, and only against lines no literal has claimed their target for already.
+ *
+ * Immutable once built, so it can be shared between threads.
+ */
+public class TriggerMatcher<T> {
+    private final List<T> targets;
+    private final BitSet alwaysTargets = new BitSet();
+    private final List<Pattern> regexes = new ArrayList<>();
+    private final List<Integer> regexTargets = new ArrayList<>();
+
+    //The automaton.  State 0 is the root; each state's edges are sorted by char.
+    private final char[][] edgeChars;
+    private final int[][] edgeStates;
+    private final int[] fail;
+    //Per state: the literal ids that end there, including those inherited through fail links.
+    private final int[][] outputs;
+    private final int[] literalTargets;
+    private final boolean[] literalIsSuffix;
+
+    private TriggerMatcher(Map<T, List<Trigger>> triggers) {
+        targets = new ArrayList<>(triggers.keySet());
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> literalTargetList = new ArrayList<>();
+        List<Boolean> literalSuffixList = new ArrayList<>();
+        for(int target=0;target<targets.size();target++) {
+            for(Trigger trigger : triggers.get(targets.get(target))) {
+                switch(trigger.getType()) {
+                    case ALWAYS:
+                        alwaysTargets.set(target);
+                        break;
+                    case REGEX:
+                        regexes.add(trigger.getPattern());
+                        regexTargets.add(target);
+                        break;
+                    default:
+                        literals.add(lowerCase(trigger.getLiteral()));
+                        literalTargetList.add(target);
+                        literalSuffixList.add(trigger.getType() == Trigger.Type.SUFFIX);
+                }
+            }
+        }
+
+        literalTargets = new int[literals.size()];
+        literalIsSuffix = new boolean[literals.size()];
+        for(int i=0;i<literals.size();i++) {
+            literalTargets[i] = literalTargetList.get(i);
+            literalIsSuffix[i] = literalSuffixList.get(i);
+        }
+
+        //Build the trie, then the fail links breadth first.
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> trieOutputs = new ArrayList<>();
+        trie.add(new TreeMap<Character, Integer>());
+        trieOutputs.add(new ArrayList<Integer>());
+        for(int literal=0;literal<literals.size();literal++) {
+            int state = 0;
+            for(char c : literals.get(literal).toCharArray()) {
+                Integer next = trie.get(state).get(c);
+                if(next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    trieOutputs.add(new ArrayList<Integer>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            trieOutputs.get(state).add(literal);
+        }
+
+        int states = trie.size();
+        edgeChars = new char[states][];
+        edgeStates = new int[states][];
+        for(int state=0;state<states;state++) {
+            TreeMap<Character, Integer> edges = trie.get(state);
+            edgeChars[state] = new char[edges.size()];
+            edgeStates[state] = new int[edges.size()];
+            int i = 0;
+            for(Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[state][i] = edge.getKey();
+                edgeStates[state][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        fail = new int[states];
+        outputs = new int[states][];
+        outputs[0] = toArray(trieOutputs.get(0));
+        Queue<Integer> queue = new ArrayDeque<>();
+        for(int child : edgeStates[0]) {
+            queue.add(child);
+        }
+        while(!queue.isEmpty()) {
+            int state = queue.remove();
+            List<Integer> stateOutputs = trieOutputs.get(state);
+            for(int out : outputs[fail[state]]) {
+                stateOutputs.add(out);
+            }
+            outputs[state] = toArray(stateOutputs);
+
+            for(int i=0;i<edgeChars[state].length;i++) {
+                int child = edgeStates[state][i];
+                fail[child] = next(fail[state], edgeChars[state][i]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @param triggers each target and what it wants to see.  Iteration order is kept in results.
+     */
+    public static <T> TriggerMatcher<T> compile(Map<T, List<Trigger>> triggers) {
+        return new TriggerMatcher<>(new LinkedHashMap<>(triggers));
+    }
+
+    /**
+     * @return the targets wanting this line, in the order they were given.
+     */
+    public List<T> match(String line) {
+        BitSet matched = (BitSet)alwaysTargets.clone();
+
+        int state = 0;
+        int last = line.length() - 1;
+        for(int i=0;i<=last;i++) {
+            state = next(state, Character.toLowerCase(line.charAt(i)));
+            for(int literal : outputs[state]) {
+                if(!literalIsSuffix[literal] || i == last) {
+                    matched.set(literalTargets[literal]);
+                }
+            }
+        }
+
+        for(int i=0;i<regexes.size();i++) {
+            int target = regexTargets.get(i);
+            if(!matched.get(target) && regexes.get(i).matcher(line).find()) {
+                matched.set(target);
+            }
+        }
+
+        if(matched.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<T> result = new ArrayList<>(matched.cardinality());
+        for(int target=matched.nextSetBit(0);target>=0;target=matched.nextSetBit(target+1)) {
+            result.add(targets.get(target));
+        }
+        return result;
+    }
+
+    /**
+     * Follow the edge for c out of state, falling back through fail links until one exists.
+     */
+    private int next(int state, char c) {
+        while(true) {
+            int edge = Arrays.binarySearch(edgeChars[state], c);
+            if(edge >= 0) {
+                return edgeStates[state][edge];
+            }
+            if(state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Lowercase the way match() does, a char at a time, so literals and lines agree.
+     */
+    private static String lowerCase(String literal) {
+        char[] chars = literal.toCharArray();
+        for(int i=0;i<chars.length;i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for(int i=0;i<array.length;i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -1,24 +1,24 @@
 package net.jimj.automaton.commands;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
-import com.mongodb.DBObject;
 import net.jimj.automaton.events.MessageEvent;
 import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.YourMomStore;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 public class YourMomCommand extends Command implements Processor {
-    private static final String YOURMOM_INSULT = "insult";
+    private static final String NOT_UNIQUE = "0/10 that is not a unique 'your mom'";
+    private static final double NEAR_DUPLICATE = 0.8;
 
-    private DBCollection yourMoms;
-    private Random random;
+    private YourMomStore yourMoms;
+    private NearDuplicateIndex nearDuplicates = new NearDuplicateIndex(NEAR_DUPLICATE);
 
-    public YourMomCommand(DBCollection yourMoms) {
+    public YourMomCommand(YourMomStore yourMoms) {
         this.yourMoms = yourMoms;
-        this.random = new Random();
+        for(String insult : yourMoms.findAll()) {
+            nearDuplicates.add(insult, null, insult);
+        }
     }
 
     @Override
@@ -27,16 +27,13 @@ public class YourMomCommand extends Command implements Processor {
     }
 
     @Override
-    public void execute(User user, String args) {
-        List<DBObject> yourMomIds = yourMoms.find(new BasicDBObject(),new BasicDBObject("_id", "1")).toArray();
-        int totalYourMoms = yourMomIds.size();
-        int quoteNum = random.nextInt(totalYourMoms);
-        Object yourMomId = yourMomIds.get(quoteNum).get("_id");
+    public void execute(User user, Args args) {
+        String insult = yourMoms.findRandom();
+        if(insult == null) {
+            return;
+        }
 
-        DBCursor yourMomCur = yourMoms.find(new BasicDBObject("_id", yourMomId), new BasicDBObject(YOURMOM_INSULT, 1));
-        DBObject yourMomObj = yourMomCur.next();
-        String insult = (String)yourMomObj.get(YOURMOM_INSULT);
-        notifyObserver(new MessageEvent(user, insult));
+        publish(new MessageEvent(user, insult));
     }
 
     @Override
@@ -45,28 +42,18 @@ public class YourMomCommand extends Command implements Processor {
     }
 
     @Override
-    public boolean shouldProcess(String message) {
-        return message.toLowerCase().contains("your mom");
+    public List<Trigger> getTriggers() {
+        return Collections.singletonList(Trigger.contains("your mom"));
     }
 
     @Override
     public void process(User user, String message) {
-        if(!putYourMom(message.toLowerCase())) {
-            notifyObserver(new MessageEvent(user, "0/10 that is not a unique 'your mom'"));
+        String insult = message.toLowerCase();
+        //Exact repeats are caught by the store's fingerprint, rewordings by the signature index.
+        if(nearDuplicates.findNear(null, insult) != null || !yourMoms.add(insult)) {
+            publish(new MessageEvent(user, NOT_UNIQUE));
+            return;
         }
-    }
-
-    private boolean putYourMom(String insult) {
-        boolean isUnique = true;
-
-        BasicDBObject yourMomObj = new BasicDBObject(YOURMOM_INSULT, insult);
-        DBCursor cur = yourMoms.find(yourMomObj);
-        if(cur.hasNext()) {
-            isUnique = false;
-        }else {
-            yourMoms.insert(yourMomObj);
-        }
-
-        return isUnique;
+        nearDuplicates.add(insult, null, insult);
     }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.dispatch;
+
+import net.jimj.automaton.model.DispatchConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs command and processor work off of PircBot's input thread.
+ *
+ * Work is queued into lanes (one per channel, or per nick for private messages).
+ * Tasks in the same lane run one at a time and in the order they were dispatched,
+ * so replies to a channel come back in the order the lines came in.  Different
+ * lanes share a fixed pool of worker threads.
+ *
+ * Shutting down stops taking new work, then lets the lanes finish what they already have
+ * (for up to shutdownSeconds) before the threads are stopped.
+ */
+public class Dispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Dispatcher.class);
+
+    private final DispatchConfig config;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Semaphore> limits = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object idle = new Object();
+    private volatile boolean shuttingDown = false;
+
+    public Dispatcher(DispatchConfig config) {
+        this.config = config;
+        this.executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(),
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new DispatchThreadFactory());
+    }
+
+    /**
+     * Queue a task onto a lane.
+     * @param laneKey the channel (or nick) the work belongs to.
+     * @param taskName the command or processor name, used for concurrency limits.
+     * @param task the work itself.
+     * @return false if the task was rejected because the bot is too busy.
+     */
+    public boolean dispatch(String laneKey, String taskName, Runnable task) {
+        Semaphore limit = getLimit(taskName);
+        if(!limit.tryAcquire()) {
+            LOGGER.debug("Rejecting " + taskName + ", too many running");
+            return false;
+        }
+
+        //Counted before checking for shutdown, so shutdown either waits for this task or it's rejected here.
+        if(pending.incrementAndGet() > config.getQueueDepth() || shuttingDown) {
+            done();
+            limit.release();
+            LOGGER.debug("Rejecting " + taskName + (shuttingDown ? ", shutting down" : ", dispatch queue is full"));
+            return false;
+        }
+
+        Task wrapped = new Task(taskName, task, limit);
+        while(true) {
+            Lane lane = getLane(laneKey);
+            int result = lane.offer(wrapped);
+            if(result == Lane.ACCEPTED) {
+                return true;
+            }else if(result == Lane.FULL) {
+                wrapped.abandon();
+                LOGGER.debug("Rejecting " + taskName + ", lane " + laneKey + " is full");
+                return false;
+            }
+            //Lane was retired while we were looking at it, go get a fresh one.
+        }
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public void shutdown() {
+        shuttingDown = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getShutdownSeconds());
+        try {
+            synchronized(idle) {
+                long remaining;
+                while(pending.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+                }
+            }
+            if(pending.get() > 0) {
+                LOGGER.warn("Dispatcher still had " + pending.get() + " tasks queued at shutdown");
+            }
+
+            executor.shutdown();
+            if(!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                LOGGER.warn("Dispatcher didn't finish pending work before shutdown");
+                executor.shutdownNow();
+            }
+        }catch(InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void done() {
+        if(pending.decrementAndGet() == 0 && shuttingDown) {
+            synchronized(idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    private Lane getLane(String laneKey) {
+        Lane lane = lanes.get(laneKey);
+        if(lane == null) {
+            Lane newLane = new Lane(laneKey);
+            lane = lanes.putIfAbsent(laneKey, newLane);
+            if(lane == null) {
+                lane = newLane;
+            }
+        }
+        return lane;
+    }
+
+    private Semaphore getLimit(String taskName) {
+        Semaphore limit = limits.get(taskName);
+        if(limit == null) {
+            Semaphore newLimit = new Semaphore(config.getLimit(taskName));
+            limit = limits.putIfAbsent(taskName, newLimit);
+            if(limit == null) {
+                limit = newLimit;
+            }
+        }
+        return limit;
+    }
+
+    private class Task implements Runnable {
+        private final String name;
+        private final Runnable task;
+        private final Semaphore limit;
+
+        private Task(String name, Runnable task, Semaphore limit) {
+            this.name = name;
+            this.task = task;
+            this.limit = limit;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            }catch(Exception e) {
+                LOGGER.error("Uncaught exception running " + name, e);
+            }finally {
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            done();
+            limit.release();
+        }
+    }
+
+    /**
+     * Runs its tasks one at a time on the shared executor.
+     * A lane only occupies a worker thread for a single task at a time so a busy
+     * channel can't starve the others.
+     */
+    private class Lane implements Runnable {
+        private static final int ACCEPTED = 0;
+        private static final int FULL = 1;
+        private static final int RETIRED = 2;
+
+        private final String key;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private boolean running = false;
+        private boolean retired = false;
+
+        private Lane(String key) {
+            this.key = key;
+        }
+
+        private synchronized int offer(Task task) {
+            if(retired) {
+                return RETIRED;
+            }
+            if(tasks.size() >= config.getLaneDepth()) {
+                return FULL;
+            }
+
+            tasks.add(task);
+            if(!running) {
+                running = true;
+                submit();
+            }
+            return ACCEPTED;
+        }
+
+        @Override
+        public void run() {
+            Task task;
+            synchronized(this) {
+                task = tasks.poll();
+            }
+
+            if(task != null) {
+                task.run();
+            }
+
+            synchronized(this) {
+                if(tasks.isEmpty()) {
+                    running = false;
+                    //Idle lanes are dropped so private message lanes don't pile up forever.
+                    retired = true;
+                    lanes.remove(key, this);
+                }else {
+                    submit();
+                }
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this);
+            }catch(RejectedExecutionException e) {
+                LOGGER.warn("Dispatcher is shut down, dropping " + tasks.size() + " tasks for " + key);
+                Task task;
+                while((task = tasks.poll()) != null) {
+                    task.abandon();
+                }
+                running = false;
+            }
+        }
+    }
+
+    private static class DispatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "dispatch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.events;
+
+import net.jimj.automaton.model.User;
+
+/**
+ * A command finished running for a user, whether or not it worked.
+ */
+public class CommandExecutedEvent implements Event {
+    private final User user;
+    private final String command;
+    private final long nanos;
+    private final boolean failed;
+
+    public CommandExecutedEvent(User user, String command, long nanos, boolean failed) {
+        this.user = user;
+        this.command = command;
+        this.nanos = nanos;
+        this.failed = failed;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return how long the command took.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return true if the command threw.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands events to everything that's subscribed to their type.
+ *
+ * Subscribing to a type also gets events of its subtypes, so subscribing to Event gets everything.
+ * Subscribers are kept in an immutable snapshot that's replaced when someone subscribes or cancels,
+ * so publishing never takes a lock; the subscribers for each event class are worked out once per
+ * snapshot and reused.
+ *
+ * By default subscribers are called on the publishing thread, in the order they subscribed.  One
+ * that's slow, or that shouldn't hold up the publisher, can ask for a lane instead: each lane is a
+ * thread of its own with a bounded queue, delivering in publish order.  Events that don't fit in a
+ * lane's queue are dropped and counted rather than blocking the publisher.
+ *
+ * A subscriber that throws is logged and counted, and doesn't stop the others getting the event.
+ */
+public class EventBus {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventBus.class);
+    private static final int DEFAULT_LANE_DEPTH = 1024;
+
+    private final int laneDepth;
+    private final ConcurrentHashMap<String, ThreadPoolExecutor> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(new Subscription<?>[0]);
+    private volatile boolean shutdown;
+
+    public EventBus() {
+        this(DEFAULT_LANE_DEPTH);
+    }
+
+    /**
+     * @param laneDepth how many events each lane holds before dropping new ones.
+     */
+    public EventBus(int laneDepth) {
+        this.laneDepth = laneDepth;
+    }
+
+    /**
+     * Get events of a type (and its subtypes) on the publishing thread.
+     */
+    public <E extends Event> Subscription<E> subscribe(Class<E> type, Subscriber<? super E> subscriber) {
+        return subscribe(type, subscriber, null);
+    }
+
+    /**
+     * Get events of a type (and its subtypes) on a lane's thread.
+     * @param lane the lane to deliver on, shared with anything else subscribed on it, or null for the publishing thread.
+     */
+    public <E extends Event> Subscription<E> subscribe(Class<E> type, Subscriber<? super E> subscriber, String lane) {
+        Subscription<E> subscription = new Subscription<>(type, subscriber, lane == null ? null : getLane(lane));
+        synchronized(this) {
+            Subscription<?>[] all = snapshot.all;
+            Subscription<?>[] grown = Arrays.copyOf(all, all.length + 1);
+            grown[all.length] = subscription;
+            snapshot = new Snapshot(grown);
+        }
+        return subscription;
+    }
+
+    public void publish(Event event) {
+        published.incrementAndGet();
+        for(Subscription<?> subscription : snapshot.forClass(event.getClass())) {
+            subscription.deliver(event);
+        }
+    }
+
+    /**
+     * Stop the lanes, delivering whatever's already queued on them first.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for(ThreadPoolExecutor lane : lanes.values()) {
+            lane.shutdown();
+        }
+        for(ThreadPoolExecutor lane : lanes.values()) {
+            try {
+                if(!lane.awaitTermination(5, TimeUnit.SECONDS)) {
+                    LOGGER.warn("Gave up waiting for an event lane to finish");
+                }
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * @return events that didn't fit in a lane.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return deliveries where the subscriber threw.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return events waiting in lanes.
+     */
+    public int getQueued() {
+        int queued = 0;
+        for(ThreadPoolExecutor lane : lanes.values()) {
+            queued += lane.getQueue().size();
+        }
+        return queued;
+    }
+
+    private ThreadPoolExecutor getLane(final String name) {
+        ThreadPoolExecutor lane = lanes.get(name);
+        if(lane == null) {
+            ThreadPoolExecutor created = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(laneDepth), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "events-" + name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            lane = lanes.putIfAbsent(name, created);
+            if(lane == null) {
+                lane = created;
+            }else {
+                created.shutdown();
+            }
+        }
+        return lane;
+    }
+
+    private synchronized void remove(Subscription<?> subscription) {
+        List<Subscription<?>> kept = new ArrayList<>(Arrays.asList(snapshot.all));
+        if(kept.remove(subscription)) {
+            snapshot = new Snapshot(kept.toArray(new Subscription<?>[kept.size()]));
+        }
+    }
+
+    /**
+     * The subscribers at one point in time, and which of them want each class of event.
+     */
+    private static class Snapshot {
+        private final Subscription<?>[] all;
+        private final ConcurrentHashMap<Class<?>, Subscription<?>[]> byClass = new ConcurrentHashMap<>();
+
+        private Snapshot(Subscription<?>[] all) {
+            this.all = all;
+        }
+
+        private Subscription<?>[] forClass(Class<?> eventClass) {
+            Subscription<?>[] matching = byClass.get(eventClass);
+            if(matching == null) {
+                List<Subscription<?>> found = new ArrayList<>();
+                for(Subscription<?> subscription : all) {
+                    if(subscription.type.isAssignableFrom(eventClass)) {
+                        found.add(subscription);
+                    }
+                }
+                matching = found.toArray(new Subscription<?>[found.size()]);
+                byClass.put(eventClass, matching);
+            }
+            return matching;
+        }
+    }
+
+    /**
+     * One subscriber's interest in one type of event.
+     */
+    public class Subscription<E extends Event> {
+        private final Class<E> type;
+        private final Subscriber<? super E> subscriber;
+        private final ThreadPoolExecutor lane;
+
+        private Subscription(Class<E> type, Subscriber<? super E> subscriber, ThreadPoolExecutor lane) {
+            this.type = type;
+            this.subscriber = subscriber;
+            this.lane = lane;
+        }
+
+        /**
+         * Stop getting events.  Events already queued on a lane are still delivered.
+         */
+        public void cancel() {
+            remove(this);
+        }
+
+        private void deliver(final Event event) {
+            if(lane == null) {
+                call(event);
+                return;
+            }
+
+            if(shutdown) {
+                dropped.incrementAndGet();
+                return;
+            }
+            try {
+                lane.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        call(event);
+                    }
+                });
+            }catch(RejectedExecutionException e) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        private void call(Event event) {
+            try {
+                //Only events of the subscribed type are delivered, so the cast always succeeds.
+                subscriber.onEvent(type.cast(event));
+            }catch(RuntimeException e) {
+                failed.incrementAndGet();
+                LOGGER.warn("Subscriber " + subscriber + " failed on " + event.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
@@ -1,21 +1,36 @@
 package net.jimj.automaton.events;
 
 import net.jimj.automaton.model.User;
+import net.jimj.automaton.outbound.Priority;
 
 public class MessageEvent implements Event {
     private User user;
     private String message;
+    private Priority priority;
 
     public MessageEvent(User user, String message) {
+        this(user, message, Priority.REPLY);
+    }
+
+    public MessageEvent(User user, String message, Priority priority) {
         this.user = user;
         this.message = message;
+        this.priority = priority;
     }
 
     public String getTarget() {
         return user.getChannel() == null ? user.getNick() : user.getChannel();
     }
 
+    public String getNetwork() {
+        return user.getNetwork();
+    }
+
     public String getMessage() {
         return message;
     }
+
+    public Priority getPriority() {
+        return priority;
+    }
 }
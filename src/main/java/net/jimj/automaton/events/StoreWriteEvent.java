@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.events;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Something was written to a store, e.g. store "quote", method "save".
+ * The arguments are the ones the write was called with, as they were before it ran (maps and
+ * collections are copies), so subscribers can tell what changed.
+ */
+public class StoreWriteEvent implements Event {
+    private final String store;
+    private final String method;
+    private final List<Object> arguments;
+
+    public StoreWriteEvent(String store, String method, Object[] arguments) {
+        this.store = store;
+        this.method = method;
+        this.arguments = arguments == null ? Collections.emptyList() :
+                Collections.unmodifiableList(Arrays.asList(arguments));
+    }
+
+    public String getStore() {
+        return store;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public List<Object> getArguments() {
+        return arguments;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.http;
+
+import net.jimj.automaton.cache.ExpiringCache;
+import net.jimj.automaton.model.HttpConfig;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Makes HTTP requests for commands without tying up the thread that asked.
+ *
+ * Requests share a pool of connections, with a cap on how many go to one host at a time,
+ * and run on a small fixed set of threads with a bounded queue in front.  Every request has
+ * connect and read timeouts, so a server that never answers costs one worker for a few seconds
+ * rather than hanging the bot.  Recent results are cached by URL, and asking for a URL that's
+ * already being fetched waits on that fetch instead of starting another.
+ *
+ * Unless HttpConfig allows it, nothing is fetched from loopback, private or link-local addresses,
+ * including by following a redirect.
+ */
+public class HttpFetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpFetcher.class);
+    private static final Pattern TITLE = Pattern.compile("<title[^>]*>(.*?)</title", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Charset DEFAULT_CHARSET = Charset.forName("ISO-8859-1");
+
+    private final HttpConfig config;
+    private final PoolingClientConnectionManager connectionManager;
+    private final DefaultHttpClient httpClient;
+    private final ThreadPoolExecutor executor;
+    private final Lookup<HeadResult> heads;
+    private final Lookup<PageInfo> pages;
+
+    public HttpFetcher(HttpConfig config) {
+        this.config = config;
+        DnsResolver resolver = new SystemDefaultDnsResolver();
+        if(!config.isAllowPrivateAddresses()) {
+            //Checked where connections are made, so redirects and names that change what they
+            //resolve to get no further than the first URL would have.
+            resolver = new PublicOnlyResolver(resolver);
+        }
+        connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault(), resolver);
+        connectionManager.setMaxTotal(config.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxPerHost());
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, config.getConnectTimeoutMillis());
+        HttpConnectionParams.setSoTimeout(params, config.getReadTimeoutMillis());
+        //Waiting on a busy host's connections counts against the connect timeout too.
+        params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, config.getConnectTimeoutMillis());
+        httpClient = new DefaultHttpClient(connectionManager, params);
+
+        executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(config.getMaxQueued()),
+                new HttpThreadFactory());
+
+        heads = new Lookup<HeadResult>() {
+            @Override
+            protected HeadResult fetch(String url) throws IOException {
+                return fetchHead(url);
+            }
+        };
+        pages = new Lookup<PageInfo>() {
+            @Override
+            protected PageInfo fetch(String url) throws IOException {
+                return fetchPage(url);
+            }
+        };
+    }
+
+    /**
+     * Send a HEAD request for a URL, or answer from the cache if it was asked recently.
+     * A cached answer is handed to the callback before this returns, otherwise the callback
+     * is called from one of the fetcher's threads.
+     * @return false if the request was turned away because too many are already waiting.
+     */
+    public boolean head(String url, Callback<HeadResult> callback) {
+        return heads.get(url, callback);
+    }
+
+    /**
+     * Find out what a URL points to: its type, size and, for html, its title.
+     * Only the first HttpConfig.getMaxPageBytes() of the body are read, however big the page is.
+     * Callbacks are handled as with head().
+     */
+    public boolean page(String url, Callback<PageInfo> callback) {
+        return pages.get(url, callback);
+    }
+
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    public ExpiringCache<String, HeadResult> getHeadCache() {
+        return heads.cache;
+    }
+
+    public ExpiringCache<String, PageInfo> getPageCache() {
+        return pages.cache;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        connectionManager.shutdown();
+    }
+
+    protected boolean submit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        }catch(RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    protected HeadResult fetchHead(String url) throws IOException {
+        HttpHead head = new HttpHead(url);
+        try {
+            HttpResponse response = httpClient.execute(head);
+            StatusLine status = response.getStatusLine();
+            Header server = response.getFirstHeader("Server");
+            return new HeadResult(status.getStatusCode(), status.getReasonPhrase(),
+                    server == null ? null : server.getValue());
+        }finally {
+            //Hands the connection back to the pool whether or not the request worked.
+            head.releaseConnection();
+        }
+    }
+
+    protected PageInfo fetchPage(String url) throws IOException {
+        HttpGet get = new HttpGet(url);
+        boolean drained = false;
+        try {
+            HttpResponse response = httpClient.execute(get);
+            StatusLine status = response.getStatusLine();
+            HttpEntity entity = response.getEntity();
+            if(entity == null) {
+                drained = true;
+                return new PageInfo(status.getStatusCode(), null, -1, null);
+            }
+
+            ContentType contentType = ContentType.get(entity);
+            String mimeType = contentType == null ? null : contentType.getMimeType();
+            String title = null;
+            if(status.getStatusCode() < 300 && mimeType != null && mimeType.contains("html")) {
+                ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+                drained = readPrefix(entity.getContent(), prefix, config.getMaxPageBytes());
+                Charset charset = contentType.getCharset() == null ? DEFAULT_CHARSET : contentType.getCharset();
+                title = findTitle(new String(prefix.toByteArray(), charset));
+            }
+            return new PageInfo(status.getStatusCode(), mimeType, entity.getContentLength(), title);
+        }finally {
+            if(drained) {
+                get.releaseConnection();
+            }else {
+                //Whatever is left of the body isn't worth downloading just to reuse the connection.
+                get.abort();
+            }
+        }
+    }
+
+    /**
+     * @return true if the whole stream fit in the limit.
+     */
+    private static boolean readPrefix(InputStream in, ByteArrayOutputStream out, int limit) throws IOException {
+        byte[] buffer = new byte[4096];
+        while(out.size() < limit) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, limit - out.size()));
+            if(read == -1) {
+                return true;
+            }
+            out.write(buffer, 0, read);
+        }
+        return false;
+    }
+
+    static String findTitle(String html) {
+        Matcher matcher = TITLE.matcher(html);
+        if(!matcher.find()) {
+            return null;
+        }
+        String title = StringEscapeUtils.unescapeHtml(matcher.group(1)).replaceAll("\\s+", " ").trim();
+        return title.isEmpty() ? null : title;
+    }
+
+    public interface Callback<T> {
+        public void completed(T result);
+        public void failed(Exception e);
+    }
+
+    /**
+     * One kind of request, with its own cache and its own record of what's being fetched.
+     */
+    private abstract class Lookup<T> {
+        //Failures aren't cached, the next ask should try again.
+        private final ExpiringCache<String, T> cache = new ExpiringCache<>(config.getCacheMaxSize(),
+                TimeUnit.SECONDS.toMillis(config.getCacheTtlSeconds()), 0);
+        private final Map<String, List<Callback<T>>> inFlight = new HashMap<>();
+
+        protected abstract T fetch(String url) throws IOException;
+
+        private boolean get(final String url, Callback<T> callback) {
+            T cached = cache.getIfPresent(url);
+            if(cached != null) {
+                callback.completed(cached);
+                return true;
+            }
+
+            synchronized(inFlight) {
+                List<Callback<T>> waiting = inFlight.get(url);
+                if(waiting != null) {
+                    waiting.add(callback);
+                    return true;
+                }
+                waiting = new ArrayList<>();
+                waiting.add(callback);
+                inFlight.put(url, waiting);
+            }
+
+            boolean accepted = submit(new Runnable() {
+                @Override
+                public void run() {
+                    T result;
+                    try {
+                        result = fetch(url);
+                    }catch(Exception e) {
+                        LOGGER.debug("Fetching " + url + " failed", e);
+                        for(Callback<T> waiting : finish(url)) {
+                            waiting.failed(e);
+                        }
+                        return;
+                    }
+                    cache.put(url, result);
+                    for(Callback<T> waiting : finish(url)) {
+                        waiting.completed(result);
+                    }
+                }
+            });
+
+            if(!accepted) {
+                //Anyone who piled on in the meantime was told it was accepted, so tell them it failed.
+                List<Callback<T>> waiting = finish(url);
+                RejectedExecutionException rejected = new RejectedExecutionException("Too many requests waiting");
+                for(Callback<T> other : waiting.subList(1, waiting.size())) {
+                    other.failed(rejected);
+                }
+            }
+            return accepted;
+        }
+
+        private List<Callback<T>> finish(String url) {
+            synchronized(inFlight) {
+                return inFlight.remove(url);
+            }
+        }
+    }
+
+    private static class PublicOnlyResolver implements DnsResolver {
+        private final DnsResolver resolver;
+
+        private PublicOnlyResolver(DnsResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            return PublicAddresses.requirePublic(host, resolver.resolve(host));
+        }
+    }
+
+    private static class HttpThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.http;
+
+/**
+ * What a GET of a URL turned up, from the headers and the start of the body.
+ */
+public class PageInfo {
+    private final int statusCode;
+    private final String contentType;
+    private final long contentLength;
+    private final String title;
+
+    public PageInfo(int statusCode, String contentType, long contentLength, String title) {
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.title = title;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the mime type without parameters, or null if the server didn't say.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the size in bytes, or -1 if the server didn't say.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return the html title, or null if there wasn't one in the part of the page that was read.
+     */
+    public String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.http;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Tells addresses out on the internet from ones on the bot's own machine or network.
+ *
+ * Links are pasted by anyone in the channel, so without this a link to 127.0.0.1 or 10.x, or to a
+ * name that resolves there, would have the bot poke at services that only trust it for being local.
+ */
+public final class PublicAddresses {
+    private PublicAddresses() {
+    }
+
+    public static boolean isPublic(InetAddress[] addresses) {
+        for(InetAddress address : addresses) {
+            if(!isPublic(address)) {
+                return false;
+            }
+        }
+        return addresses.length > 0;
+    }
+
+    public static boolean isPublic(InetAddress address) {
+        if(address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+                || address.isAnyLocalAddress() || address.isMulticastAddress()) {
+            return false;
+        }
+        //IPv6 unique local addresses (fc00::/7) are its 10.x, but Java doesn't count them as site local.
+        return !(address instanceof Inet6Address && (address.getAddress()[0] & 0xfe) == 0xfc);
+    }
+
+    /**
+     * @throws UnknownHostException if any of the addresses isn't public, so a connection is never made.
+     */
+    static InetAddress[] requirePublic(String host, InetAddress[] addresses) throws UnknownHostException {
+        if(!isPublic(addresses)) {
+            throw new UnknownHostException(host + " isn't a public address");
+        }
+        return addresses;
+    }
+}
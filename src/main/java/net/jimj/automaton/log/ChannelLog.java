@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.log;
+
+import net.jimj.automaton.model.LogConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append only record of what's been said in channels.
+ *
+ * The log is a directory of fixed size, memory mapped segment files.  Every line gets an
+ * offset, its position counting from the start of the first segment ever written, and a new
+ * segment starts when the current one is full.  Old segments are deleted once the log is over
+ * its size limit or everything in them is past its age limit.
+ *
+ * In memory indexes of offsets per channel and per nick in each channel (rebuilt from the files
+ * on open) make "what did this nick last say here" a read of just the lines wanted, however
+ * long ago the nick last spoke or whether they ever did.  Those lines are read without holding
+ * the lock appends need, so a lookup never holds up logging.
+ */
+public class ChannelLog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChannelLog.class);
+    private static final String SUFFIX = ".log";
+
+    private final File dir;
+    private final LogConfig config;
+    private final TreeMap<Long, LogSegment> segments = new TreeMap<>();
+    private final Map<String, OffsetList> channels = new HashMap<>();
+    //Lines by each nick in each channel, leaving out commands to the bot.
+    private final Map<String, OffsetList> speakers = new HashMap<>();
+    private LogSegment active;
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+    public ChannelLog(File dir, LogConfig config) {
+        this.dir = dir;
+        this.config = config;
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalArgumentException("Couldn't create log directory " + dir);
+        }
+
+        Handler indexer = new Handler() {
+            @Override
+            public void handle(long offset, LogRecord record) {
+                index(offset, record);
+            }
+        };
+        for(long baseOffset : findSegments()) {
+            LogSegment segment = LogSegment.open(LogSegment.fileFor(dir, baseOffset), baseOffset,
+                    config.getSegmentBytes(), indexer);
+            segments.put(baseOffset, segment);
+        }
+
+        if(segments.isEmpty()) {
+            active = LogSegment.open(LogSegment.fileFor(dir, 0), 0, config.getSegmentBytes(), null);
+            segments.put(0L, active);
+        }else {
+            active = segments.lastEntry().getValue();
+        }
+        applyRetention();
+        LOGGER.info("Opened channel log in " + dir + " with " + segments.size() + " segments");
+    }
+
+    /**
+     * @return the record's offset.
+     */
+    public synchronized long append(LogRecord record) {
+        int needed = LogSegment.maxRecordSize(record);
+        if(needed > scratch.capacity()) {
+            scratch = ByteBuffer.allocate(needed);
+        }
+
+        long offset = active.append(record, scratch);
+        if(offset == -1) {
+            roll();
+            offset = active.append(record, scratch);
+            if(offset == -1) {
+                throw new IllegalArgumentException("Record is too big for a " + active.getCapacity() + " byte segment");
+            }
+        }
+        index(offset, record);
+        return offset;
+    }
+
+    /**
+     * @return the record at an offset, or null if there isn't one (or it's been deleted).
+     */
+    public synchronized LogRecord read(long offset) {
+        Map.Entry<Long, LogSegment> entry = segments.floorEntry(offset);
+        if(entry == null) {
+            return null;
+        }
+        return entry.getValue().read((int)(offset - entry.getKey()));
+    }
+
+    /**
+     * Hand every record from an offset onwards to the handler, oldest first.
+     * Offsets before the start of the log start from the oldest record still kept.
+     */
+    public synchronized void replay(long fromOffset, Handler handler) {
+        for(LogSegment segment : segments.tailMap(segments.floorKey(Math.max(fromOffset, getStartOffset()))).values()) {
+            int at = (int)Math.max(0, fromOffset - segment.getBaseOffset());
+            int size;
+            while((size = segment.recordSize(at)) != -1) {
+                handler.handle(segment.getBaseOffset() + at, segment.read(at));
+                at += size;
+            }
+        }
+    }
+
+    /**
+     * @return up to limit of the most recent lines in a channel, oldest first.
+     */
+    public List<LogRecord> recent(String network, String channel, int limit) {
+        return readLast(channels, channelKey(network, channel), limit);
+    }
+
+    /**
+     * @return up to limit of the most recent things a nick said in a channel, oldest first.
+     * Commands to the bot are skipped.
+     */
+    public List<LogRecord> lastBy(String network, String channel, String nick, int limit) {
+        return readLast(speakers, speakerKey(network, channel, nick), limit);
+    }
+
+    public synchronized long getStartOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * @return the offset the next record will get.
+     */
+    public synchronized long getEndOffset() {
+        return active.getEndOffset();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized void flush() {
+        active.flush();
+    }
+
+    public synchronized void close() {
+        flush();
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Look up where the last few lines under an index key are while holding the lock, then read
+     * them without it.  Records never change once written, and a segment that retention deletes
+     * in the meantime stays mapped until it's collected.
+     */
+    private List<LogRecord> readLast(Map<String, OffsetList> index, String key, int limit) {
+        LogSegment[] inSegments;
+        int[] positions;
+        synchronized(this) {
+            OffsetList offsets = index.get(key);
+            if(offsets == null) {
+                return Collections.emptyList();
+            }
+            int count = Math.min(limit, offsets.size());
+            inSegments = new LogSegment[count];
+            positions = new int[count];
+            for(int i=0;i<count;i++) {
+                long offset = offsets.get(offsets.size() - count + i);
+                LogSegment segment = segments.floorEntry(offset).getValue();
+                inSegments[i] = segment;
+                positions[i] = (int)(offset - segment.getBaseOffset());
+            }
+        }
+
+        List<LogRecord> found = new ArrayList<>(positions.length);
+        for(int i=0;i<positions.length;i++) {
+            LogRecord record = inSegments[i].read(positions[i]);
+            if(record != null) {
+                found.add(record);
+            }
+        }
+        return found;
+    }
+
+    private void roll() {
+        active.flush();
+        long baseOffset = active.getEndOffset();
+        active = LogSegment.open(LogSegment.fileFor(dir, baseOffset), baseOffset, config.getSegmentBytes(), null);
+        segments.put(baseOffset, active);
+        applyRetention();
+    }
+
+    /**
+     * Drop the oldest segments until the log is inside its limits.  The segment being written is always kept.
+     */
+    private void applyRetention() {
+        long oldest = now() - TimeUnit.DAYS.toMillis(config.getMaxAgeDays());
+        long total = 0;
+        for(LogSegment segment : segments.values()) {
+            total += segment.getCapacity();
+        }
+
+        while(segments.size() > 1) {
+            LogSegment first = segments.firstEntry().getValue();
+            if(total <= config.getMaxBytes() && first.getLastTime() >= oldest) {
+                break;
+            }
+            segments.remove(first.getBaseOffset());
+            total -= first.getCapacity();
+            if(!first.getFile().delete()) {
+                LOGGER.warn("Couldn't delete old log segment " + first.getFile());
+            }
+            LOGGER.info("Dropped log segment " + first.getFile().getName());
+        }
+
+        long start = segments.firstKey();
+        dropBefore(channels, start);
+        dropBefore(speakers, start);
+    }
+
+    private static void dropBefore(Map<String, OffsetList> index, long start) {
+        Iterator<OffsetList> lists = index.values().iterator();
+        while(lists.hasNext()) {
+            OffsetList offsets = lists.next();
+            offsets.dropBefore(start);
+            if(offsets.size() == 0) {
+                lists.remove();
+            }
+        }
+    }
+
+    private void index(long offset, LogRecord record) {
+        index(channels, channelKey(record.getNetwork(), record.getChannel()), offset);
+        if(!record.isCommand()) {
+            index(speakers, speakerKey(record.getNetwork(), record.getChannel(), record.getNick()), offset);
+        }
+    }
+
+    private static void index(Map<String, OffsetList> index, String key, long offset) {
+        OffsetList offsets = index.get(key);
+        if(offsets == null) {
+            offsets = new OffsetList();
+            index.put(key, offsets);
+        }
+        offsets.add(offset);
+    }
+
+    private static String channelKey(String network, String channel) {
+        return network + " " + (channel == null ? "" : channel.toLowerCase());
+    }
+
+    private static String speakerKey(String network, String channel, String nick) {
+        return channelKey(network, channel) + "\n" + (nick == null ? "" : nick.toLowerCase());
+    }
+
+    private long[] findSegments() {
+        String[] names = dir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+
+        List<Long> baseOffsets = new ArrayList<>();
+        for(String name : names == null ? new String[0] : names) {
+            try {
+                baseOffsets.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+            }catch(NumberFormatException e) {
+                LOGGER.warn("Ignoring " + name + " in " + dir + ", it isn't a log segment");
+            }
+        }
+
+        long[] sorted = new long[baseOffsets.size()];
+        for(int i=0;i<sorted.length;i++) {
+            sorted[i] = baseOffsets.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    public interface Handler {
+        public void handle(long offset, LogRecord record);
+    }
+
+    /**
+     * A growable list of offsets in ascending order, without boxing.
+     */
+    private static class OffsetList {
+        private long[] offsets = new long[16];
+        private int start = 0;
+        private int end = 0;
+
+        private void add(long offset) {
+            if(end == offsets.length) {
+                int size = end - start;
+                long[] grown = size * 2 > offsets.length ? new long[offsets.length * 2] : offsets;
+                System.arraycopy(offsets, start, grown, 0, size);
+                offsets = grown;
+                start = 0;
+                end = size;
+            }
+            offsets[end++] = offset;
+        }
+
+        private int size() {
+            return end - start;
+        }
+
+        private long get(int index) {
+            return offsets[start + index];
+        }
+
+        private void dropBefore(long offset) {
+            while(start < end && offsets[start] < offset) {
+                start++;
+            }
+        }
+    }
+}
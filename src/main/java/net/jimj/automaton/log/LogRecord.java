@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.log;
+
+/**
+ * One line someone said in a channel.
+ */
+public class LogRecord {
+    private final long time;
+    private final String network;
+    private final String channel;
+    private final String nick;
+    private final String message;
+    private final boolean command;
+
+    /**
+     * @param command true if the line was a command to the bot rather than conversation.
+     */
+    public LogRecord(long time, String network, String channel, String nick, String message, boolean command) {
+        this.time = time;
+        this.network = network;
+        this.channel = channel;
+        this.nick = nick;
+        this.message = message;
+        this.command = command;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getNetwork() {
+        return network;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getNick() {
+        return nick;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isCommand() {
+        return command;
+    }
+
+    @Override
+    public String toString() {
+        return "<" + nick + "> " + message;
+    }
+}
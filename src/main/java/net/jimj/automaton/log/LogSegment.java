@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.log;
+
+import net.jimj.automaton.store.StoreException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * One memory mapped file of the channel log.
+ *
+ * Records are laid out back to back from the start of the file:
+ *
+ *   int length     bytes after this field
+ *   int crc        CRC32 of the bytes after this field
+ *   long time
+ *   byte flags
+ *   network, channel, nick, message, each an unsigned short length and that many UTF-8 bytes
+ *
+ * The file is allocated at full size up front, so the first zero length marks the end of the data.
+ * A record that doesn't check out (from a crash part way through a write) is treated as the end too.
+ */
+class LogSegment {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int HEADER = 8;
+    private static final int FLAG_COMMAND = 1;
+    private static final int MAX_STRING = 0xFFFF;
+    private static final ThreadLocal<byte[]> CRC_CHUNK = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[4096];
+        }
+    };
+
+    private final File file;
+    private final long baseOffset;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private long lastTime;
+
+    private LogSegment(File file, long baseOffset, MappedByteBuffer buffer) {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.buffer = buffer;
+    }
+
+    static File fileFor(File dir, long baseOffset) {
+        return new File(dir, String.format("%020d.log", baseOffset));
+    }
+
+    /**
+     * Map a segment file, creating it if needed, and find the end of its data.
+     * @param visitor told about every record already in the file, may be null.
+     */
+    static LogSegment open(File file, long baseOffset, int capacity, ChannelLog.Handler visitor) {
+        MappedByteBuffer buffer;
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            //Existing files keep their size, even if the configured size has changed since.
+            long size = raf.length() > 0 ? raf.length() : capacity;
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }catch(IOException e) {
+            throw new StoreException("Couldn't map " + file, e);
+        }
+
+        LogSegment segment = new LogSegment(file, baseOffset, buffer);
+        segment.scan(visitor);
+        return segment;
+    }
+
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    long getEndOffset() {
+        return baseOffset + position;
+    }
+
+    long getLastTime() {
+        return lastTime;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    boolean isEmpty() {
+        return position == 0;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @param scratch somewhere to build the record, at least maxRecordSize(record) long.
+     * @return the record's offset, or -1 if there isn't room for it in this segment.
+     */
+    long append(LogRecord record, ByteBuffer scratch) {
+        scratch.clear();
+        scratch.position(HEADER);
+        scratch.putLong(record.getTime());
+        scratch.put((byte)(record.isCommand() ? FLAG_COMMAND : 0));
+        putString(scratch, record.getNetwork());
+        putString(scratch, record.getChannel());
+        putString(scratch, record.getNick());
+        putString(scratch, record.getMessage());
+        int size = scratch.position();
+        if(position + size > buffer.capacity()) {
+            return -1;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(scratch.array(), HEADER, size - HEADER);
+        scratch.putInt(0, size - 4);
+        scratch.putInt(4, (int)crc.getValue());
+
+        long offset = baseOffset + position;
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.put(scratch.array(), 0, size);
+        position += size;
+        lastTime = Math.max(lastTime, record.getTime());
+        return offset;
+    }
+
+    /**
+     * @return the record at the position, or null if there isn't a good one there.
+     */
+    LogRecord read(int at) {
+        int size = recordSize(at);
+        if(size == -1) {
+            return null;
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(at + HEADER);
+        long time = in.getLong();
+        boolean command = (in.get() & FLAG_COMMAND) != 0;
+        String network = getString(in);
+        String channel = getString(in);
+        String nick = getString(in);
+        String message = getString(in);
+        return new LogRecord(time, network, channel, nick, message, command);
+    }
+
+    /**
+     * @return how many bytes the record at the position takes up, or -1 if there isn't a good one there.
+     */
+    int recordSize(int at) {
+        if(at < 0 || at + HEADER > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(at);
+        if(length < HEADER || at + 4 + length > buffer.capacity()) {
+            return -1;
+        }
+
+        //CRC32 only takes arrays before Java 8, so the body goes through a reused chunk rather than a copy of its own.
+        CRC32 crc = new CRC32();
+        byte[] chunk = CRC_CHUNK.get();
+        ByteBuffer body = buffer.duplicate();
+        body.position(at + HEADER);
+        body.limit(at + 4 + length);
+        while(body.hasRemaining()) {
+            int read = Math.min(chunk.length, body.remaining());
+            body.get(chunk, 0, read);
+            crc.update(chunk, 0, read);
+        }
+        if((int)crc.getValue() != buffer.getInt(at + 4)) {
+            return -1;
+        }
+        return 4 + length;
+    }
+
+    void flush() {
+        buffer.force();
+    }
+
+    static int maxRecordSize(LogRecord record) {
+        return HEADER + 8 + 1 + stringSize(record.getNetwork()) + stringSize(record.getChannel())
+                + stringSize(record.getNick()) + stringSize(record.getMessage());
+    }
+
+    private void scan(ChannelLog.Handler visitor) {
+        int at = 0;
+        int size;
+        while((size = recordSize(at)) != -1) {
+            LogRecord record = read(at);
+            lastTime = Math.max(lastTime, record.getTime());
+            if(visitor != null) {
+                visitor.handle(baseOffset + at, record);
+            }
+            at += size;
+        }
+        position = at;
+
+        if(at + 4 <= buffer.capacity() && buffer.getInt(at) != 0) {
+            //A write was cut off.  Clear it away so what's left of it can't be mistaken for a record later.
+            ByteBuffer tail = buffer.duplicate();
+            tail.position(at);
+            byte[] zeros = new byte[4096];
+            while(tail.hasRemaining()) {
+                tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+            }
+        }
+    }
+
+    private static int stringSize(String value) {
+        //UTF-8 is at most 3 bytes per char for anything in a Java String's char range.
+        return 2 + Math.min(MAX_STRING, value == null ? 0 : value.length() * 3);
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF8);
+        int length = Math.min(bytes.length, MAX_STRING);
+        out.putShort((short)length);
+        out.put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & MAX_STRING;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes every metric to the log on a schedule.
+ */
+public class LogReporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogReporter.class);
+
+    private final MetricRegistry registry;
+    private ScheduledExecutorService scheduler;
+
+    public LogReporter(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    public synchronized void start(long periodSeconds) {
+        if(scheduler != null || periodSeconds <= 0) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    report();
+                }catch(Exception e) {
+                    LOGGER.warn("Error reporting metrics", e);
+                }
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if(scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    public void report() {
+        for(Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+            Timer timer = entry.getValue();
+            LOGGER.info(String.format("%s count=%d errors=%d mean=%.2fms p50=%.2fms p99=%.2fms", entry.getKey(),
+                    timer.getCount(), timer.getErrors(), timer.getMeanMillis(), timer.getP50Millis(), timer.getP99Millis()));
+        }
+        for(Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+            LOGGER.info(entry.getKey() + " count=" + entry.getValue().getCount());
+        }
+        for(Map.Entry<String, Gauge> entry : registry.getGauges().entrySet()) {
+            LOGGER.info(entry.getKey() + " value=" + entry.getValue().getValue());
+        }
+    }
+}
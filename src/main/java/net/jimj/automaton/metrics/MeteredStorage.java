@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.metrics;
+
+import net.jimj.automaton.store.KarmaStore;
+import net.jimj.automaton.store.NoteStore;
+import net.jimj.automaton.store.QuoteStore;
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.UserStore;
+import net.jimj.automaton.store.YourMomStore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Times every call into another Storage's stores, as store.&lt;store&gt;.&lt;method&gt;.
+ *
+ * This works the same for any backend, so with Mongo it's our count of database round trips.
+ */
+public class MeteredStorage implements Storage {
+    private final Storage storage;
+    private final QuoteStore quoteStore;
+    private final KarmaStore karmaStore;
+    private final NoteStore noteStore;
+    private final UserStore userStore;
+    private final YourMomStore yourMomStore;
+
+    public MeteredStorage(Storage storage, MetricRegistry metrics) {
+        this.storage = storage;
+        quoteStore = meter(QuoteStore.class, storage.getQuoteStore(), "quote", metrics);
+        karmaStore = meter(KarmaStore.class, storage.getKarmaStore(), "karma", metrics);
+        noteStore = meter(NoteStore.class, storage.getNoteStore(), "note", metrics);
+        userStore = meter(UserStore.class, storage.getUserStore(), "user", metrics);
+        yourMomStore = meter(YourMomStore.class, storage.getYourMomStore(), "yourmom", metrics);
+    }
+
+    @Override
+    public QuoteStore getQuoteStore() {
+        return quoteStore;
+    }
+
+    @Override
+    public KarmaStore getKarmaStore() {
+        return karmaStore;
+    }
+
+    @Override
+    public NoteStore getNoteStore() {
+        return noteStore;
+    }
+
+    @Override
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    @Override
+    public YourMomStore getYourMomStore() {
+        return yourMomStore;
+    }
+
+    @Override
+    public void close() {
+        storage.close();
+    }
+
+    private static <T> T meter(Class<T> storeInterface, final T store, final String storeName, final MetricRegistry metrics) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if(method.getDeclaringClass() == Object.class) {
+                    return method.invoke(store, args);
+                }
+
+                Timer.Context context = metrics.timer("store." + storeName + "." + method.getName()).time();
+                try {
+                    return method.invoke(store, args);
+                }catch(InvocationTargetException e) {
+                    context.fail();
+                    throw e.getCause();
+                }finally {
+                    context.stop();
+                }
+            }
+        };
+        return storeInterface.cast(Proxy.newProxyInstance(storeInterface.getClassLoader(),
+                new Class<?>[]{storeInterface}, handler));
+    }
+}
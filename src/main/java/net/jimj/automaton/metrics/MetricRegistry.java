@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Named timers, counters and gauges, created on first use.
+ *
+ * Given an MBeanServer, every metric is also registered there as
+ * net.jimj.automaton:type=Timer|Counter|Gauge,name=...
+ */
+public class MetricRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricRegistry.class);
+    public static final String JMX_DOMAIN = "net.jimj.automaton";
+
+    private final MBeanServer mBeanServer;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public MetricRegistry() {
+        this(null);
+    }
+
+    /**
+     * @param mBeanServer where to publish metrics, or null to keep them to ourselves.
+     */
+    public MetricRegistry(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    public Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if(timer == null) {
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if(timer == null) {
+                timer = created;
+                publish("Timer", name, created, TimerMBean.class);
+            }
+        }
+        return timer;
+    }
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if(counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if(counter == null) {
+                counter = created;
+                publish("Counter", name, created, CounterMBean.class);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Register a gauge, replacing any gauge already using the name.
+     */
+    public void register(String name, Gauge gauge) {
+        if(gauges.put(name, gauge) != null) {
+            unpublish("Gauge", name);
+        }
+        publish("Gauge", name, gauge, GaugeMBean.class);
+    }
+
+    public Map<String, Timer> getTimers() {
+        return Collections.unmodifiableMap(timers);
+    }
+
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public Map<String, Gauge> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * Take everything back out of JMX.
+     */
+    public void close() {
+        for(String name : timers.keySet()) {
+            unpublish("Timer", name);
+        }
+        for(String name : counters.keySet()) {
+            unpublish("Counter", name);
+        }
+        for(String name : gauges.keySet()) {
+            unpublish("Gauge", name);
+        }
+    }
+
+    public static ObjectName objectName(String type, String name) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+
+    private <T> void publish(String type, String name, T metric, Class<T> mBeanInterface) {
+        if(mBeanServer == null) {
+            return;
+        }
+
+        try {
+            mBeanServer.registerMBean(new StandardMBean(metric, mBeanInterface), objectName(type, name));
+        }catch(JMException e) {
+            LOGGER.warn("Couldn't publish " + type + " " + name + " to JMX", e);
+        }
+    }
+
+    private void unpublish(String type, String name) {
+        if(mBeanServer == null) {
+            return;
+        }
+
+        try {
+            mBeanServer.unregisterMBean(objectName(type, name));
+        }catch(JMException e) {
+            LOGGER.debug("Couldn't unpublish " + type + " " + name, e);
+        }
+    }
+}
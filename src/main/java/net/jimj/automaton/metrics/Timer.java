@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts calls and failures and keeps the most recent latencies for percentiles.
+ *
+ * Percentiles come from a fixed window of the last samples, so they describe recent behaviour
+ * rather than everything since startup.
+ */
+public class Timer implements TimerMBean {
+    private static final int DEFAULT_WINDOW = 1024;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLongArray samples;
+
+    public Timer() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public Timer(int window) {
+        samples = new AtomicLongArray(window);
+    }
+
+    public Context time() {
+        return new Context();
+    }
+
+    public void update(long nanos, boolean failed) {
+        long n = count.getAndIncrement();
+        samples.set((int)(n % samples.length()), nanos);
+        totalNanos.addAndGet(nanos);
+        if(failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : toMillis(totalNanos.get() / n);
+    }
+
+    @Override
+    public double getP50Millis() {
+        return toMillis(percentile(0.5));
+    }
+
+    @Override
+    public double getP99Millis() {
+        return toMillis(percentile(0.99));
+    }
+
+    /**
+     * @param quantile between 0 and 1.
+     * @return the latency in nanos at the quantile, over the recent window.
+     */
+    public long percentile(double quantile) {
+        int size = (int)Math.min(count.get(), samples.length());
+        if(size == 0) {
+            return 0;
+        }
+
+        long[] sorted = new long[size];
+        for(int i=0;i<size;i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int)Math.ceil(quantile * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * One timed call.  Call fail() if it went wrong, and stop() when it's done (in a finally).
+     */
+    public class Context {
+        private final long start = System.nanoTime();
+        private boolean failed;
+
+        public void fail() {
+            failed = true;
+        }
+
+        public void stop() {
+            update(System.nanoTime() - start, failed);
+        }
+    }
+}
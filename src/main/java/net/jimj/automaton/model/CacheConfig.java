@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CacheConfig {
+    private int userMaxSize = 1000;
+    private int userTtlSeconds = 600;
+    private int userNegativeTtlSeconds = 120;
+
+    public int getUserMaxSize() {
+        return userMaxSize;
+    }
+
+    public void setUserMaxSize(int userMaxSize) {
+        this.userMaxSize = userMaxSize;
+    }
+
+    public int getUserTtlSeconds() {
+        return userTtlSeconds;
+    }
+
+    public void setUserTtlSeconds(int userTtlSeconds) {
+        this.userTtlSeconds = userTtlSeconds;
+    }
+
+    public int getUserNegativeTtlSeconds() {
+        return userNegativeTtlSeconds;
+    }
+
+    public void setUserNegativeTtlSeconds(int userNegativeTtlSeconds) {
+        this.userNegativeTtlSeconds = userNegativeTtlSeconds;
+    }
+}
@@ -22,14 +22,28 @@
 
 package net.jimj.automaton.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Config {
     private String nick;
     private String commandChar;
     private String server;
     private String[] channels;
+    private List<NetworkConfig> networks = new ArrayList<>();
+    private DispatchConfig dispatch = new DispatchConfig();
+    private CacheConfig cache = new CacheConfig();
+    private StorageConfig storage = new StorageConfig();
+    private MetricsConfig metrics = new MetricsConfig();
+    private OutboundConfig outbound = new OutboundConfig();
+    private HttpConfig http = new HttpConfig();
+    private PluginConfig plugins = new PluginConfig();
+    private LogConfig log = new LogConfig();
 
     public String getNick() {
         return nick;
@@ -62,4 +76,104 @@ public class Config {
     public void setChannels(String[] channels) {
         this.channels = channels;
     }
+
+    public DispatchConfig getDispatch() {
+        return dispatch;
+    }
+
+    public void setDispatch(DispatchConfig dispatch) {
+        this.dispatch = dispatch;
+    }
+
+    public CacheConfig getCache() {
+        return cache;
+    }
+
+    public void setCache(CacheConfig cache) {
+        this.cache = cache;
+    }
+
+    public StorageConfig getStorage() {
+        return storage;
+    }
+
+    public void setStorage(StorageConfig storage) {
+        this.storage = storage;
+    }
+
+    public MetricsConfig getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricsConfig metrics) {
+        this.metrics = metrics;
+    }
+
+    public OutboundConfig getOutbound() {
+        return outbound;
+    }
+
+    public void setOutbound(OutboundConfig outbound) {
+        this.outbound = outbound;
+    }
+
+    public HttpConfig getHttp() {
+        return http;
+    }
+
+    public void setHttp(HttpConfig http) {
+        this.http = http;
+    }
+
+    public PluginConfig getPlugins() {
+        return plugins;
+    }
+
+    public void setPlugins(PluginConfig plugins) {
+        this.plugins = plugins;
+    }
+
+    public LogConfig getLog() {
+        return log;
+    }
+
+    public void setLog(LogConfig log) {
+        this.log = log;
+    }
+
+    public List<NetworkConfig> getNetworks() {
+        return networks;
+    }
+
+    public void setNetworks(List<NetworkConfig> networks) {
+        this.networks = networks;
+    }
+
+    /**
+     * The networks to connect to, with anything they leave out taken from the top level settings.
+     * A config without a networks section is the old single network layout, and is treated as
+     * one network named NetworkConfig.DEFAULT_NAME.
+     */
+    @JsonIgnore
+    public List<NetworkConfig> getResolvedNetworks() {
+        if(networks == null || networks.isEmpty()) {
+            return Collections.singletonList(new NetworkConfig(NetworkConfig.DEFAULT_NAME, server, nick, commandChar,
+                    channels == null ? new String[0] : channels));
+        }
+
+        List<NetworkConfig> resolved = new ArrayList<>(networks.size());
+        for(NetworkConfig network : networks) {
+            if(network.getName() == null || network.getServer() == null) {
+                throw new IllegalArgumentException("Every network needs a name and a server");
+            }
+
+            NetworkConfig copy = new NetworkConfig(network.getName(), network.getServer(),
+                    network.getNick() == null ? nick : network.getNick(),
+                    network.getCommandChar() == null ? commandChar : network.getCommandChar(),
+                    network.getChannels() == null ? new String[0] : network.getChannels());
+            copy.setPort(network.getPort());
+            resolved.add(copy);
+        }
+        return resolved;
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DispatchConfig {
+    /** Processors are dispatched under their name with this in front, e.g. processor.karma. */
+    public static final String PROCESSOR_PREFIX = "processor.";
+
+    private int threads = 4;
+    private int queueDepth = 200;
+    private int laneDepth = 25;
+    private int defaultLimit = 8;
+    private int processorLimit = 100;
+    private int shutdownSeconds = 5;
+    private Map<String, Integer> limits = new HashMap<>();
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public int getLaneDepth() {
+        return laneDepth;
+    }
+
+    public void setLaneDepth(int laneDepth) {
+        this.laneDepth = laneDepth;
+    }
+
+    public int getDefaultLimit() {
+        return defaultLimit;
+    }
+
+    public void setDefaultLimit(int defaultLimit) {
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * Processors keep karma and deliver notes, so turning them away loses something rather than
+     * just a reply.  They get a limit of their own, high enough that only the lane and queue
+     * depths hold them back.
+     */
+    public int getProcessorLimit() {
+        return processorLimit;
+    }
+
+    public void setProcessorLimit(int processorLimit) {
+        this.processorLimit = processorLimit;
+    }
+
+    public int getShutdownSeconds() {
+        return shutdownSeconds;
+    }
+
+    public void setShutdownSeconds(int shutdownSeconds) {
+        this.shutdownSeconds = shutdownSeconds;
+    }
+
+    public Map<String, Integer> getLimits() {
+        return limits;
+    }
+
+    public void setLimits(Map<String, Integer> limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * How many tasks with this name may be queued or running at once.
+     */
+    public int getLimit(String taskName) {
+        Integer limit = limits.get(taskName);
+        if(limit != null) {
+            return limit;
+        }
+        return taskName.startsWith(PROCESSOR_PREFIX) ? processorLimit : defaultLimit;
+    }
+}
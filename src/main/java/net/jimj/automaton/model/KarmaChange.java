@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.model;
+
+/**
+ * One ++ or -- (or several, summed), who gave it, where and when.
+ */
+public class KarmaChange {
+    private final String network;
+    private final String channel;
+    private final String item;
+    private final String giver;
+    private final int delta;
+    private final long when;
+
+    public KarmaChange(String network, String channel, String item, String giver, int delta, long when) {
+        this.network = network;
+        this.channel = channel;
+        this.item = item;
+        this.giver = giver;
+        this.delta = delta;
+        this.when = when;
+    }
+
+    public String getNetwork() {
+        return network;
+    }
+
+    /**
+     * @return where it was given, or null if it was said to the bot privately.
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public String getGiver() {
+        return giver;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public long getWhen() {
+        return when;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Flood control for what the bot says.  The defaults stay under the usual ircd excess flood limits.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OutboundConfig {
+    private int burst = 4;
+    private double linesPerSecond = 1;
+    private int targetBurst = 3;
+    private double targetLinesPerSecond = 0.5;
+    private int maxLineLength = 400;
+    private int maxQueuedPerTarget = 20;
+
+    /**
+     * Lines that can go out back to back before the overall rate applies.
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    public double getLinesPerSecond() {
+        return linesPerSecond;
+    }
+
+    public void setLinesPerSecond(double linesPerSecond) {
+        this.linesPerSecond = linesPerSecond;
+    }
+
+    /**
+     * Like burst, but for one channel or nick, so one busy target can't starve the rest.
+     */
+    public int getTargetBurst() {
+        return targetBurst;
+    }
+
+    public void setTargetBurst(int targetBurst) {
+        this.targetBurst = targetBurst;
+    }
+
+    public double getTargetLinesPerSecond() {
+        return targetLinesPerSecond;
+    }
+
+    public void setTargetLinesPerSecond(double targetLinesPerSecond) {
+        this.targetLinesPerSecond = targetLinesPerSecond;
+    }
+
+    /**
+     * Longest line to build when joining short messages, leaving room in the 512 byte
+     * IRC limit for the command and our prefix.
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    public void setMaxLineLength(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    public int getMaxQueuedPerTarget() {
+        return maxQueuedPerTarget;
+    }
+
+    public void setMaxQueuedPerTarget(int maxQueuedPerTarget) {
+        this.maxQueuedPerTarget = maxQueuedPerTarget;
+    }
+}
@@ -29,6 +29,7 @@ public class User {
     private String nick;
     private String hostMask;
     private String channel;
+    private String network; //Stored users without one are the same user on every network.
     private int level;
     private boolean nickTrusted; //Can the bot rely on NickServ?
 
@@ -41,6 +42,15 @@ public class User {
         this.nickTrusted = false;
     }
 
+    public User(User other) {
+        this.nick = other.nick;
+        this.hostMask = other.hostMask;
+        this.channel = other.channel;
+        this.network = other.network;
+        this.level = other.level;
+        this.nickTrusted = other.nickTrusted;
+    }
+
     public String getHostMask() {
         return hostMask;
     }
@@ -80,4 +90,12 @@ public class User {
     public void setChannel(String channel) {
         this.channel = channel;
     }
+
+    public String getNetwork() {
+        return network;
+    }
+
+    public void setNetwork(String network) {
+        this.network = network;
+    }
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.outbound;
+
+import net.jimj.automaton.model.OutboundConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces what the bot says so it doesn't get kicked for flooding.
+ *
+ * Lines wait here until both the overall token bucket and their target's bucket allow them.
+ * Higher priorities go first, and targets take turns within a priority.  Consecutive short
+ * messages to one target are joined into a single line, and when a target has too much queued
+ * the least important, oldest lines are dropped and replaced with a note saying so.
+ */
+public class OutboundQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboundQueue.class);
+    protected static final String SEPARATOR = " | ";
+
+    private final OutboundConfig config;
+    private final MessageSink sink;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TokenBucket globalBucket;
+    //Insertion order is the round robin order; a target moves to the back after it sends.
+    private final LinkedHashMap<String, TargetQueue> targets = new LinkedHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private int queued = 0;
+
+    private Thread sender;
+    private volatile boolean running;
+
+    public OutboundQueue(OutboundConfig config, MessageSink sink) {
+        this.config = config;
+        this.sink = sink;
+        this.globalBucket = new TokenBucket(config.getBurst(), config.getLinesPerSecond(), now());
+    }
+
+    public synchronized void start() {
+        if(sender != null) {
+            return;
+        }
+
+        running = true;
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendLoop();
+            }
+        }, "outbound");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Stop sending.  Anything still queued is logged and thrown away.
+     */
+    public void shutdown() {
+        running = false;
+        lock.lock();
+        try {
+            changed.signalAll();
+            if(queued > 0) {
+                LOGGER.info("Discarding " + queued + " queued outbound messages");
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the message was dropped because its target is flooded with more important lines.
+     */
+    public boolean offer(String target, String message, Priority priority) {
+        lock.lock();
+        try {
+            TargetQueue targetQueue = targets.get(target);
+            if(targetQueue == null) {
+                targetQueue = new TargetQueue(now());
+                targets.put(target, targetQueue);
+            }
+
+            if(targetQueue.size() >= config.getMaxQueuedPerTarget() && !targetQueue.dropFor(priority)) {
+                targetQueue.dropped++;
+                dropped.incrementAndGet();
+                return false;
+            }
+
+            targetQueue.add(message, priority);
+            changed.signalAll();
+            return true;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send everything the buckets allow right now, on the calling thread.  For when there's no
+     * sender thread, e.g. when replaying logs.
+     * @return how many lines were sent.
+     */
+    public int sendReady() {
+        int lines = 0;
+        while(sendNext(now()) == 0) {
+            lines++;
+        }
+        return lines;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queued;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Send one line if the buckets allow it.
+     *
+     * @return 0 if a line was sent, otherwise nanos until one might be, or Long.MAX_VALUE if nothing is queued.
+     */
+    protected long sendNext(long now) {
+        String target = null;
+        String line = null;
+        long wait = Long.MAX_VALUE;
+
+        lock.lock();
+        try {
+            if(queued == 0) {
+                return Long.MAX_VALUE;
+            }
+
+            long globalWait = globalBucket.nanosUntilAvailable(now);
+            if(globalWait > 0) {
+                return globalWait;
+            }
+
+            for(Priority priority : Priority.values()) {
+                for(Map.Entry<String, TargetQueue> entry : targets.entrySet()) {
+                    TargetQueue targetQueue = entry.getValue();
+                    if(targetQueue.lines[priority.ordinal()].isEmpty()) {
+                        continue;
+                    }
+
+                    long targetWait = targetQueue.bucket.nanosUntilAvailable(now);
+                    if(targetWait > 0) {
+                        wait = Math.min(wait, targetWait);
+                        continue;
+                    }
+
+                    target = entry.getKey();
+                    line = targetQueue.takeLine(priority);
+                    targetQueue.bucket.tryTake(now);
+                    globalBucket.tryTake(now);
+                    break;
+                }
+                if(line != null) {
+                    break;
+                }
+            }
+
+            if(line != null) {
+                //Back of the line for this target.
+                targets.put(target, targets.remove(target));
+            }
+            removeIdleTargets(now);
+        }finally {
+            lock.unlock();
+        }
+
+        if(line == null) {
+            return wait;
+        }
+
+        try {
+            sink.send(target, line);
+            sent.incrementAndGet();
+        }catch(RuntimeException e) {
+            LOGGER.error("Error sending to " + target, e);
+        }
+        return 0;
+    }
+
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    private void sendLoop() {
+        while(running) {
+            long wait = sendNext(now());
+            if(wait == 0) {
+                continue;
+            }
+
+            lock.lock();
+            try {
+                if(running) {
+                    //Re-check under the lock so an offer between sendNext and here isn't missed.
+                    if(wait == Long.MAX_VALUE && queued == 0) {
+                        changed.await();
+                    }else if(wait != Long.MAX_VALUE) {
+                        changed.awaitNanos(wait);
+                    }
+                }
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Forget targets with nothing queued and a full bucket, they'd start over the same way.
+     */
+    private void removeIdleTargets(long now) {
+        Iterator<TargetQueue> it = targets.values().iterator();
+        while(it.hasNext()) {
+            TargetQueue targetQueue = it.next();
+            if(targetQueue.size() == 0 && targetQueue.dropped == 0 && targetQueue.bucket.isFull(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private class TargetQueue {
+        private final TokenBucket bucket;
+        private final ArrayDeque<String>[] lines;
+        private int dropped = 0;
+
+        @SuppressWarnings("unchecked")
+        private TargetQueue(long now) {
+            bucket = new TokenBucket(config.getTargetBurst(), config.getTargetLinesPerSecond(), now);
+            lines = (ArrayDeque<String>[])new ArrayDeque<?>[Priority.values().length];
+            for(int i=0;i<lines.length;i++) {
+                lines[i] = new ArrayDeque<>();
+            }
+        }
+
+        private int size() {
+            int size = 0;
+            for(ArrayDeque<String> priorityLines : lines) {
+                size += priorityLines.size();
+            }
+            return size;
+        }
+
+        private void add(String message, Priority priority) {
+            lines[priority.ordinal()].add(message);
+            queued++;
+        }
+
+        /**
+         * Make room for a message by dropping the oldest line that's no more important than it.
+         */
+        private boolean dropFor(Priority priority) {
+            for(int i=lines.length-1;i>=priority.ordinal();i--) {
+                if(!lines[i].isEmpty()) {
+                    lines[i].remove();
+                    queued--;
+                    dropped++;
+                    OutboundQueue.this.dropped.incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Take the next message at this priority, along with any following ones that fit on the same line.
+         */
+        private String takeLine(Priority priority) {
+            ArrayDeque<String> priorityLines = lines[priority.ordinal()];
+            StringBuilder line = new StringBuilder(priorityLines.remove());
+            queued--;
+
+            while(!priorityLines.isEmpty()
+                    && line.length() + SEPARATOR.length() + priorityLines.peek().length() <= config.getMaxLineLength()) {
+                line.append(SEPARATOR).append(priorityLines.remove());
+                queued--;
+                coalesced.incrementAndGet();
+            }
+
+            if(dropped > 0 && size() == 0) {
+                String summary = "(" + dropped + (dropped == 1 ? " line" : " lines") + " dropped, slow down)";
+                if(line.length() + SEPARATOR.length() + summary.length() <= config.getMaxLineLength()) {
+                    line.append(SEPARATOR).append(summary);
+                }else {
+                    add(summary, priority);
+                }
+                dropped = 0;
+            }
+            return line.toString();
+        }
+    }
+}
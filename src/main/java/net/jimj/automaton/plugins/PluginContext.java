@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.plugins;
+
+import net.jimj.automaton.http.HttpFetcher;
+import net.jimj.automaton.log.ChannelLog;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.store.Storage;
+
+/**
+ * What the bot shares with the commands providers create.
+ */
+public class PluginContext {
+    private final Config config;
+    private final Storage storage;
+    private final HttpFetcher httpFetcher;
+    private final MetricRegistry metrics;
+    private final ChannelLog channelLog;
+
+    public PluginContext(Config config, Storage storage, HttpFetcher httpFetcher, MetricRegistry metrics,
+                         ChannelLog channelLog) {
+        this.config = config;
+        this.storage = storage;
+        this.httpFetcher = httpFetcher;
+        this.metrics = metrics;
+        this.channelLog = channelLog;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public HttpFetcher getHttpFetcher() {
+        return httpFetcher;
+    }
+
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the log of what's been said in channels, or null if logging is turned off.
+     */
+    public ChannelLog getChannelLog() {
+        return channelLog;
+    }
+}
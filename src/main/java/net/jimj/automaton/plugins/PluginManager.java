@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.plugins;
+
+import net.jimj.automaton.commands.Command;
+import net.jimj.automaton.commands.CommandRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Loads CommandProviders into a CommandRegistry: the ones built into the bot, and plugin jars.
+ *
+ * Each plugin jar gets its own class loader, so unloading it and loading a new build of the
+ * same jar picks up the new classes.  A plugin's name is its jar name without ".jar".
+ */
+public class PluginManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PluginManager.class);
+    public static final String BUILTIN = "builtin";
+
+    private final File pluginDir;
+    private final PluginContext context;
+    private final CommandRegistry registry;
+    private final LinkedHashMap<String, URLClassLoader> loaders = new LinkedHashMap<>();
+
+    public PluginManager(File pluginDir, PluginContext context, CommandRegistry registry) {
+        this.pluginDir = pluginDir;
+        this.context = context;
+        this.registry = registry;
+    }
+
+    /**
+     * Load the providers on the bot's own classpath.
+     */
+    public void loadBuiltins() {
+        ClassLoader classLoader = PluginManager.class.getClassLoader();
+        register(BUILTIN, createCommands(classLoader, null));
+    }
+
+    /**
+     * Load every jar in the plugin directory.  One bad jar doesn't stop the rest.
+     */
+    public void loadAll() {
+        File[] jars = pluginDir == null ? null : pluginDir.listFiles();
+        if(jars == null) {
+            return;
+        }
+        for(File jar : jars) {
+            if(jar.getName().endsWith(".jar")) {
+                try {
+                    load(nameOf(jar));
+                }catch(RuntimeException e) {
+                    LOGGER.error("Couldn't load plugin " + jar, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the names of the commands the plugin added.
+     * @throws IllegalArgumentException if there's no such jar, it's already loaded, or it clashes with loaded commands.
+     */
+    public synchronized List<String> load(String name) {
+        if(loaders.containsKey(name) || BUILTIN.equals(name)) {
+            throw new IllegalArgumentException(name + " is already loaded");
+        }
+        File jar = new File(pluginDir, name + ".jar");
+        if(pluginDir == null || !jar.isFile()) {
+            throw new IllegalArgumentException("No plugin jar " + jar);
+        }
+
+        URLClassLoader classLoader;
+        try {
+            classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, PluginManager.class.getClassLoader());
+        }catch(MalformedURLException e) {
+            throw new IllegalArgumentException("Bad plugin path " + jar, e);
+        }
+
+        List<Command> commands = Collections.emptyList();
+        try {
+            commands = createCommands(classLoader, classLoader);
+            if(commands.isEmpty()) {
+                throw new IllegalArgumentException(jar + " doesn't provide any commands");
+            }
+            register(name, commands);
+        }catch(RuntimeException e) {
+            //Commands may have started timers or threads already, and they can't outlive their classes.
+            shutdown(commands);
+            close(name, classLoader);
+            throw e;
+        }
+
+        loaders.put(name, classLoader);
+        LOGGER.info("Loaded plugin " + name);
+        return namesOf(commands);
+    }
+
+    /**
+     * Remove a plugin's commands, let them shut down, and let go of its classes.
+     * Work already dispatched to its commands may still finish after this.
+     * @return false if no plugin by that name is loaded.
+     */
+    public synchronized boolean unload(String name) {
+        URLClassLoader classLoader = loaders.remove(name);
+        if(classLoader == null) {
+            return false;
+        }
+        shutdown(registry.remove(name));
+        close(name, classLoader);
+        LOGGER.info("Unloaded plugin " + name);
+        return true;
+    }
+
+    public synchronized List<String> getLoaded() {
+        return new ArrayList<>(loaders.keySet());
+    }
+
+    /**
+     * Unload everything, built in commands included.
+     */
+    public synchronized void shutdown() {
+        for(String name : new ArrayList<>(loaders.keySet())) {
+            unload(name);
+        }
+        shutdown(registry.remove(BUILTIN));
+    }
+
+    /**
+     * Called with each command before it's registered, e.g. to hook up its observer.
+     */
+    protected void bind(Command command) {
+    }
+
+    private void register(String owner, List<Command> commands) {
+        for(Command command : commands) {
+            bind(command);
+        }
+        registry.add(owner, commands);
+    }
+
+    /**
+     * @param only if not null, skip providers that weren't loaded by this class loader.
+     *             A plugin's loader can see the built in providers through its parent.
+     */
+    private List<Command> createCommands(ClassLoader classLoader, ClassLoader only) {
+        List<Command> commands = new ArrayList<>();
+        for(CommandProvider provider : ServiceLoader.load(CommandProvider.class, classLoader)) {
+            if(only == null || provider.getClass().getClassLoader() == only) {
+                commands.addAll(provider.createCommands(context));
+            }
+        }
+        return commands;
+    }
+
+    private void shutdown(List<Command> commands) {
+        for(Command command : commands) {
+            try {
+                command.shutdown();
+            }catch(Exception e) {
+                LOGGER.error("Error shutting down " + command.getCommandName(), e);
+            }
+        }
+    }
+
+    private static void close(String name, URLClassLoader classLoader) {
+        try {
+            classLoader.close();
+        }catch(IOException e) {
+            LOGGER.warn("Error closing " + name, e);
+        }
+    }
+
+    private static String nameOf(File jar) {
+        String fileName = jar.getName();
+        return fileName.substring(0, fileName.length() - ".jar".length());
+    }
+
+    private static List<String> namesOf(List<Command> commands) {
+        List<String> names = new ArrayList<>(commands.size());
+        for(Command command : commands) {
+            names.add(command.getCommandName());
+        }
+        return Collections.unmodifiableList(names);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store;
+
+/**
+ * Content fingerprints, so text that only differs in ways people don't care about is seen as the same.
+ *
+ * Text is normalized before hashing: timestamps like "[12:01]" are dropped, everything but letters
+ * and digits is dropped (which takes care of nick decorations like "&lt;@foo&gt;"), it's lowercased
+ * and runs of whitespace become a single space.  An exact fingerprint is a 64 bit hash of that.
+ *
+ * For text that's nearly the same there's a MinHash signature over 4 character shingles of the
+ * normalized text.  The fraction of positions two signatures agree on estimates how much of their
+ * text they share.
+ */
+public final class Fingerprint {
+    /** How many ints are in a MinHash signature. */
+    public static final int SIGNATURE_SIZE = 64;
+    private static final int SHINGLE_LENGTH = 4;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int[] SEEDS = new int[SIGNATURE_SIZE];
+
+    static {
+        //Fixed seeds, signatures have to compare across restarts.
+        long seed = 0x9e3779b97f4a7c15L;
+        for(int i=0;i<SIGNATURE_SIZE;i++) {
+            seed = mix(seed + 0x9e3779b97f4a7c15L);
+            SEEDS[i] = (int)seed;
+        }
+    }
+
+    private Fingerprint() {
+
+    }
+
+    public static String normalize(String text) {
+        if(text == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(text.length());
+        int start = -1;
+        for(int i=0;i<=text.length();i++) {
+            boolean space = i == text.length() || Character.isWhitespace(text.charAt(i));
+            if(!space && start == -1) {
+                start = i;
+            }else if(space && start != -1) {
+                appendWord(normalized, text, start, i);
+                start = -1;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return the exact fingerprint of the text.
+     */
+    public static long of(String text) {
+        String normalized = normalize(text);
+        long hash = FNV_OFFSET;
+        for(int i=0;i<normalized.length();i++) {
+            hash ^= normalized.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the MinHash signature of the text, SIGNATURE_SIZE ints long.
+     */
+    public static int[] minHash(String text) {
+        String normalized = normalize(text);
+        int[] signature = new int[SIGNATURE_SIZE];
+        for(int i=0;i<SIGNATURE_SIZE;i++) {
+            signature[i] = Integer.MAX_VALUE;
+        }
+
+        int shingles = Math.max(1, normalized.length() - SHINGLE_LENGTH + 1);
+        for(int start=0;start<shingles;start++) {
+            int shingle = 0;
+            int end = Math.min(normalized.length(), start + SHINGLE_LENGTH);
+            for(int i=start;i<end;i++) {
+                shingle = 31 * shingle + normalized.charAt(i);
+            }
+            for(int i=0;i<SIGNATURE_SIZE;i++) {
+                //Masked to stay positive, so MAX_VALUE is always the largest.
+                int hash = (int)mix(shingle ^ SEEDS[i]) & Integer.MAX_VALUE;
+                if(hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return roughly what fraction of their shingles the two texts share, from 0 to 1.
+     */
+    public static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for(int i=0;i<SIGNATURE_SIZE;i++) {
+            if(a[i] == b[i]) {
+                same++;
+            }
+        }
+        return same / (double)SIGNATURE_SIZE;
+    }
+
+    private static void appendWord(StringBuilder normalized, String text, int start, int end) {
+        if(isTimestamp(text, start, end)) {
+            return;
+        }
+
+        int length = normalized.length();
+        if(length > 0) {
+            normalized.append(' ');
+        }
+        boolean kept = false;
+        for(int i=start;i<end;i++) {
+            char c = text.charAt(i);
+            if(Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+                kept = true;
+            }
+        }
+        if(!kept) {
+            normalized.setLength(length);
+        }
+    }
+
+    /**
+     * @return true for words made of digits and ':' with maybe some brackets, e.g. "[12:01:33]".
+     */
+    private static boolean isTimestamp(String text, int start, int end) {
+        boolean colon = false;
+        boolean digit = false;
+        for(int i=start;i<end;i++) {
+            char c = text.charAt(i);
+            if(c == ':') {
+                colon = true;
+            }else if(Character.isDigit(c)) {
+                digit = true;
+            }else if("[]()".indexOf(c) == -1) {
+                return false;
+            }
+        }
+        return colon && digit;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store;
+
+import net.jimj.automaton.model.KarmaChange;
+import net.jimj.automaton.model.KarmaItem;
+
+import java.util.List;
+import java.util.Map;
+
+public interface KarmaStore {
+    /**
+     * @return the stored karma for an item on a network, 0 if it has none.
+     */
+    public int getKarma(String network, String item);
+
+    /**
+     * Every item's stored karma, on every network, read lazily.
+     */
+    public Iterable<KarmaItem> findAll();
+
+    /**
+     * Add each delta to its item's karma, creating items as needed.
+     * Deltas are removed from the map as they're written, so if this throws
+     * the map holds only the ones that still need writing.
+     */
+    @Write
+    public void applyDeltas(String network, Map<String, Integer> deltas);
+
+    /**
+     * Every change made at or after since, on every network, oldest first, read lazily.
+     */
+    public Iterable<KarmaChange> findChanges(long since);
+
+    /**
+     * Add changes to the history.  Unlike applyDeltas, nothing is summed; each change is kept as it is.
+     */
+    @Write
+    public void appendChanges(List<KarmaChange> changes);
+
+    /**
+     * Forget every change made before a time.
+     */
+    @Write
+    public void expireChanges(long before);
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store;
+
+import net.jimj.automaton.events.EventBus;
+import net.jimj.automaton.events.StoreWriteEvent;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Publishes a StoreWriteEvent after every successful call to a store method marked @Write,
+ * so caches over the stores can drop what's changed instead of polling for it.
+ */
+public class PublishingStorage implements Storage {
+    private final Storage storage;
+    private final QuoteStore quoteStore;
+    private final KarmaStore karmaStore;
+    private final NoteStore noteStore;
+    private final UserStore userStore;
+    private final YourMomStore yourMomStore;
+
+    public PublishingStorage(Storage storage, EventBus events) {
+        this.storage = storage;
+        quoteStore = publish(QuoteStore.class, storage.getQuoteStore(), "quote", events);
+        karmaStore = publish(KarmaStore.class, storage.getKarmaStore(), "karma", events);
+        noteStore = publish(NoteStore.class, storage.getNoteStore(), "note", events);
+        userStore = publish(UserStore.class, storage.getUserStore(), "user", events);
+        yourMomStore = publish(YourMomStore.class, storage.getYourMomStore(), "yourmom", events);
+    }
+
+    @Override
+    public QuoteStore getQuoteStore() {
+        return quoteStore;
+    }
+
+    @Override
+    public KarmaStore getKarmaStore() {
+        return karmaStore;
+    }
+
+    @Override
+    public NoteStore getNoteStore() {
+        return noteStore;
+    }
+
+    @Override
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    @Override
+    public YourMomStore getYourMomStore() {
+        return yourMomStore;
+    }
+
+    @Override
+    public void close() {
+        storage.close();
+    }
+
+    private static <T> T publish(Class<T> storeInterface, final T store, final String storeName, final EventBus events) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                boolean write = method.isAnnotationPresent(Write.class);
+                //Taken before the write, since some writes use up their arguments, e.g. applyDeltas.
+                Object[] written = write ? copy(args) : null;
+                Object result;
+                try {
+                    result = method.invoke(store, args);
+                }catch(InvocationTargetException e) {
+                    throw e.getCause();
+                }
+
+                if(write) {
+                    events.publish(new StoreWriteEvent(storeName, method.getName(), written));
+                }
+                return result;
+            }
+        };
+        return storeInterface.cast(Proxy.newProxyInstance(storeInterface.getClassLoader(),
+                new Class<?>[]{storeInterface}, handler));
+    }
+
+    /**
+     * @return the arguments with any maps and collections copied, so the event shows them as they were passed.
+     */
+    private static Object[] copy(Object[] args) {
+        if(args == null) {
+            return null;
+        }
+        Object[] copy = new Object[args.length];
+        for(int i=0;i<args.length;i++) {
+            if(args[i] instanceof Map) {
+                copy[i] = new LinkedHashMap<>((Map<?, ?>)args[i]);
+            }else if(args[i] instanceof Collection) {
+                copy[i] = new ArrayList<>((Collection<?>)args[i]);
+            }else {
+                copy[i] = args[i];
+            }
+        }
+        return copy;
+    }
+}
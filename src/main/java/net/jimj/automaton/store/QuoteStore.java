@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store;
+
+import net.jimj.automaton.model.Quote;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface QuoteStore {
+    /**
+     * Store a new quote, setting its id.
+     */
+    @Write
+    public void save(Quote quote);
+
+    /**
+     * Store a batch of new quotes in one write, setting their ids.
+     */
+    @Write
+    public void saveAll(List<Quote> quotes);
+
+    public Quote findById(Object id);
+
+    /**
+     * @return a quote on the network whose text has the given Fingerprint, or null if there isn't one.
+     */
+    public Quote findByFingerprint(String network, long fingerprint);
+
+    /**
+     * @return which of the Fingerprints already belong to a quote on the network, looked up all at once.
+     */
+    public Set<Long> findFingerprints(String network, Collection<Long> fingerprints);
+
+    /**
+     * @param nick only pick quotes with this nick, or null for any.
+     * @param regex only pick quotes matching this regex, or null for any.
+     * @return a random matching quote, or null if nothing matches.
+     */
+    public Quote findRandom(String network, String nick, String regex);
+
+    /**
+     * Every stored quote, read lazily.
+     */
+    public Iterable<Quote> findAll();
+}
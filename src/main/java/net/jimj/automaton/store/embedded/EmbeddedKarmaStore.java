@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import net.jimj.automaton.model.KarmaChange;
+import net.jimj.automaton.model.KarmaItem;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.store.KarmaStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journals the new value of each item as it changes and compacts down to one record per item when opened.
+ * The history of changes has a journal of its own, which is rewritten without the old ones when they expire.
+ */
+public class EmbeddedKarmaStore implements KarmaStore {
+    private static final Comparator<KarmaChange> OLDEST_FIRST = new Comparator<KarmaChange>() {
+        @Override
+        public int compare(KarmaChange a, KarmaChange b) {
+            return a.getWhen() < b.getWhen() ? -1 : (a.getWhen() == b.getWhen() ? 0 : 1);
+        }
+    };
+
+    private final Journal journal;
+    private final Journal historyJournal;
+    //network -> item -> karma
+    private final HashMap<String, HashMap<String, Integer>> karma = new HashMap<>();
+    private final List<KarmaChange> history = new ArrayList<>();
+
+    public EmbeddedKarmaStore(Journal journal, Journal historyJournal) {
+        this.journal = journal;
+        this.historyJournal = historyJournal;
+        journal.replay(new Journal.Handler() {
+            @Override
+            public void handle(Map<String, Object> record) {
+                String network = (String)record.get("network");
+                if(network == null) {
+                    network = NetworkConfig.DEFAULT_NAME;
+                }
+                networkKarma(network).put((String)record.get("item"), ((Number)record.get("value")).intValue());
+            }
+        });
+
+        List<Map<String, Object>> snapshot = new ArrayList<>();
+        for(Map.Entry<String, HashMap<String, Integer>> network : karma.entrySet()) {
+            for(Map.Entry<String, Integer> entry : network.getValue().entrySet()) {
+                snapshot.add(toRecord(network.getKey(), entry.getKey(), entry.getValue()));
+            }
+        }
+        journal.rewrite(snapshot);
+
+        historyJournal.replay(new Journal.Handler() {
+            @Override
+            public void handle(Map<String, Object> record) {
+                history.add(new KarmaChange((String)record.get("network"), (String)record.get("channel"),
+                        (String)record.get("item"), (String)record.get("giver"),
+                        ((Number)record.get("delta")).intValue(), ((Number)record.get("when")).longValue()));
+            }
+        });
+        //Changes flushed by different threads can land slightly out of order.
+        Collections.sort(history, OLDEST_FIRST);
+    }
+
+    @Override
+    public synchronized int getKarma(String network, String item) {
+        HashMap<String, Integer> networkKarma = karma.get(network);
+        Integer value = networkKarma == null ? null : networkKarma.get(item);
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    public synchronized Iterable<KarmaItem> findAll() {
+        List<KarmaItem> all = new ArrayList<>();
+        for(Map.Entry<String, HashMap<String, Integer>> network : karma.entrySet()) {
+            for(Map.Entry<String, Integer> entry : network.getValue().entrySet()) {
+                all.add(new KarmaItem(network.getKey(), entry.getKey(), entry.getValue()));
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public synchronized void applyDeltas(String network, Map<String, Integer> deltas) {
+        HashMap<String, Integer> networkKarma = networkKarma(network);
+        Iterator<Map.Entry<String, Integer>> entries = deltas.entrySet().iterator();
+        while(entries.hasNext()) {
+            Map.Entry<String, Integer> entry = entries.next();
+            int value = getKarma(network, entry.getKey()) + entry.getValue();
+            journal.append(toRecord(network, entry.getKey(), value));
+            networkKarma.put(entry.getKey(), value);
+            entries.remove();
+        }
+    }
+
+    @Override
+    public synchronized Iterable<KarmaChange> findChanges(long since) {
+        List<KarmaChange> found = new ArrayList<>();
+        for(KarmaChange change : history) {
+            if(change.getWhen() >= since) {
+                found.add(change);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized void appendChanges(List<KarmaChange> changes) {
+        List<Map<String, Object>> records = new ArrayList<>(changes.size());
+        for(KarmaChange change : changes) {
+            records.add(toRecord(change));
+        }
+        historyJournal.appendAll(records);
+
+        //Batches are usually in order and after everything already kept, so only sort when they aren't.
+        long last = history.isEmpty() ? Long.MIN_VALUE : history.get(history.size() - 1).getWhen();
+        boolean ordered = true;
+        for(KarmaChange change : changes) {
+            ordered &= last <= change.getWhen();
+            last = change.getWhen();
+        }
+        history.addAll(changes);
+        if(!ordered) {
+            Collections.sort(history, OLDEST_FIRST);
+        }
+    }
+
+    @Override
+    public synchronized void expireChanges(long before) {
+        int expired = 0;
+        while(expired < history.size() && history.get(expired).getWhen() < before) {
+            expired++;
+        }
+        if(expired == 0) {
+            return;
+        }
+
+        history.subList(0, expired).clear();
+        List<Map<String, Object>> kept = new ArrayList<>(history.size());
+        for(KarmaChange change : history) {
+            kept.add(toRecord(change));
+        }
+        historyJournal.rewrite(kept);
+    }
+
+    private HashMap<String, Integer> networkKarma(String network) {
+        HashMap<String, Integer> networkKarma = karma.get(network);
+        if(networkKarma == null) {
+            networkKarma = new HashMap<>();
+            karma.put(network, networkKarma);
+        }
+        return networkKarma;
+    }
+
+    private Map<String, Object> toRecord(String network, String item, int value) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("network", network);
+        record.put("item", item);
+        record.put("value", value);
+        return record;
+    }
+
+    private Map<String, Object> toRecord(KarmaChange change) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("network", change.getNetwork());
+        record.put("channel", change.getChannel());
+        record.put("item", change.getItem());
+        record.put("giver", change.getGiver());
+        record.put("delta", change.getDelta());
+        record.put("when", change.getWhen());
+        return record;
+    }
+}
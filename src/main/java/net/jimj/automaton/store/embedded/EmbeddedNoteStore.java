@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.Note;
+import net.jimj.automaton.store.NoteStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Journals new notes and deliveries.  Delivered notes are forgotten, and dropped from the journal when it is compacted at startup.
+ */
+public class EmbeddedNoteStore implements NoteStore {
+    private final Journal journal;
+    private final LinkedHashMap<Long, Note> notes = new LinkedHashMap<>();
+    private long nextId = 1;
+
+    public EmbeddedNoteStore(Journal journal) {
+        this.journal = journal;
+        journal.replay(new Journal.Handler() {
+            @Override
+            public void handle(Map<String, Object> record) {
+                if(record.containsKey("delivered")) {
+                    for(Object id : (Collection)record.get("delivered")) {
+                        notes.remove(((Number)id).longValue());
+                    }
+                }else {
+                    String network = (String)record.get("network");
+                    Note note = new Note(network == null ? NetworkConfig.DEFAULT_NAME : network,
+                            (String)record.get("from"), (String)record.get("to"),
+                            (String)record.get("note"), ((Number)record.get("when")).longValue());
+                    note.setId(((Number)record.get("id")).longValue());
+                    notes.put((Long)note.getId(), note);
+                    nextId = Math.max(nextId, (Long)note.getId() + 1);
+                }
+            }
+        });
+
+        List<Map<String, Object>> snapshot = new ArrayList<>(notes.size());
+        for(Note note : notes.values()) {
+            snapshot.add(toRecord(note));
+        }
+        journal.rewrite(snapshot);
+    }
+
+    @Override
+    public synchronized void save(Note note) {
+        note.setId(nextId++);
+        journal.append(toRecord(note));
+        notes.put((Long)note.getId(), note);
+    }
+
+    @Override
+    public synchronized Map<String, Set<String>> findPendingRecipients() {
+        Map<String, Set<String>> recipients = new HashMap<>();
+        for(Note note : notes.values()) {
+            Set<String> nicks = recipients.get(note.getNetwork());
+            if(nicks == null) {
+                nicks = new HashSet<>();
+                recipients.put(note.getNetwork(), nicks);
+            }
+            nicks.add(note.getTo());
+        }
+        return recipients;
+    }
+
+    @Override
+    public synchronized List<Note> findUndelivered(String network, String to) {
+        List<Note> found = new ArrayList<>();
+        for(Note note : notes.values()) {
+            if(note.getNetwork().equals(network) && note.getTo().equals(to)) {
+                found.add(note);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized void markDelivered(Collection<Object> ids) {
+        if(ids.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("delivered", new ArrayList<>(ids));
+        journal.append(record);
+        for(Object id : ids) {
+            Note note = notes.remove(((Number)id).longValue());
+            if(note != null) {
+                note.setDelivered(true);
+            }
+        }
+    }
+
+    private Map<String, Object> toRecord(Note note) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", note.getId());
+        record.put("network", note.getNetwork());
+        record.put("from", note.getFrom());
+        record.put("to", note.getTo());
+        record.put("note", note.getNote());
+        record.put("when", note.getWhen());
+        return record;
+    }
+}
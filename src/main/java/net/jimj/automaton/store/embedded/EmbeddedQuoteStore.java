@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.store.Fingerprint;
+import net.jimj.automaton.store.QuoteStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public class EmbeddedQuoteStore implements QuoteStore {
+    private final Journal journal;
+    private final LinkedHashMap<Long, Quote> quotes = new LinkedHashMap<>();
+    private final Map<FingerprintKey, Long> fingerprints = new HashMap<>();
+    private final Random random = new Random();
+    private long nextId = 1;
+
+    public EmbeddedQuoteStore(Journal journal) {
+        this.journal = journal;
+        journal.replay(new Journal.Handler() {
+            @Override
+            public void handle(Map<String, Object> record) {
+                Quote quote = fromRecord(record);
+                put(quote);
+                nextId = Math.max(nextId, (Long)quote.getId() + 1);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void save(Quote quote) {
+        quote.setId(nextId++);
+        journal.append(toRecord(quote));
+        put(quote);
+    }
+
+    @Override
+    public synchronized void saveAll(List<Quote> batch) {
+        List<Map<String, Object>> records = new ArrayList<>(batch.size());
+        long firstId = nextId;
+        for(Quote quote : batch) {
+            quote.setId(nextId++);
+            records.add(toRecord(quote));
+        }
+        try {
+            journal.appendAll(records);
+        }catch(RuntimeException e) {
+            nextId = firstId;
+            throw e;
+        }
+        for(Quote quote : batch) {
+            put(quote);
+        }
+    }
+
+    @Override
+    public synchronized Quote findById(Object id) {
+        return quotes.get(toId(id));
+    }
+
+    @Override
+    public synchronized Quote findByFingerprint(String network, long fingerprint) {
+        Long id = fingerprints.get(new FingerprintKey(network, fingerprint));
+        return id == null ? null : quotes.get(id);
+    }
+
+    @Override
+    public synchronized Set<Long> findFingerprints(String network, Collection<Long> fingerprints) {
+        Set<Long> found = new HashSet<>();
+        for(long fingerprint : fingerprints) {
+            if(this.fingerprints.containsKey(new FingerprintKey(network, fingerprint))) {
+                found.add(fingerprint);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Picks with a reservoir sample, so it's one pass over the quotes without building a list of matches.
+     */
+    @Override
+    public synchronized Quote findRandom(String network, String nick, String regex) {
+        Pattern pattern = regex == null ? null : Pattern.compile(regex);
+        Quote chosen = null;
+        int seen = 0;
+        for(Quote quote : quotes.values()) {
+            if(network != null && !network.equals(quote.getNetwork())) {
+                continue;
+            }
+            if(nick != null && !quote.getNicks().contains(nick)) {
+                continue;
+            }
+            if(pattern != null && (quote.getQuote() == null || !pattern.matcher(quote.getQuote()).find())) {
+                continue;
+            }
+
+            seen++;
+            if(random.nextInt(seen) == 0) {
+                chosen = quote;
+            }
+        }
+        return chosen;
+    }
+
+    @Override
+    public synchronized Iterable<Quote> findAll() {
+        return new ArrayList<>(quotes.values());
+    }
+
+    private void put(Quote quote) {
+        quotes.put((Long)quote.getId(), quote);
+        FingerprintKey key = new FingerprintKey(quote.getNetwork(), Fingerprint.of(quote.getQuote()));
+        if(!fingerprints.containsKey(key)) {
+            fingerprints.put(key, (Long)quote.getId());
+        }
+    }
+
+    private Long toId(Object id) {
+        if(id instanceof Number) {
+            return ((Number)id).longValue();
+        }
+        return id == null ? null : Long.valueOf(id.toString());
+    }
+
+    private Map<String, Object> toRecord(Quote quote) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", quote.getId());
+        record.put("nicks", new ArrayList<>(quote.getNicks()));
+        record.put("quote", quote.getQuote());
+        record.put("network", quote.getNetwork());
+        return record;
+    }
+
+    private Quote fromRecord(Map<String, Object> record) {
+        Set<String> nicks = new LinkedHashSet<>();
+        Object nickList = record.get("nicks");
+        if(nickList instanceof Collection) {
+            for(Object nick : (Collection)nickList) {
+                nicks.add(String.valueOf(nick));
+            }
+        }
+
+        Quote quote = new Quote(nicks, (String)record.get("quote"), (String)record.get("network"));
+        quote.setId(toId(record.get("id")));
+        return quote;
+    }
+
+    private static class FingerprintKey {
+        private final String network;
+        private final long fingerprint;
+
+        private FingerprintKey(String network, long fingerprint) {
+            this.network = network;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof FingerprintKey)) {
+                return false;
+            }
+            FingerprintKey other = (FingerprintKey)o;
+            return fingerprint == other.fingerprint &&
+                    (network == null ? other.network == null : network.equals(other.network));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (network == null ? 0 : network.hashCode()) + (int)(fingerprint ^ (fingerprint >>> 32));
+        }
+    }
+}
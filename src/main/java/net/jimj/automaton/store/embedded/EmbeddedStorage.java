@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jimj.automaton.store.KarmaStore;
+import net.jimj.automaton.store.NoteStore;
+import net.jimj.automaton.store.QuoteStore;
+import net.jimj.automaton.store.StoreException;
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.UserStore;
+import net.jimj.automaton.store.YourMomStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps everything in memory, journaled to files in a data directory.
+ * Meant for small deployments and tests that shouldn't need a mongo server.
+ */
+public class EmbeddedStorage implements Storage {
+    private final List<Journal> journals = new ArrayList<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final QuoteStore quoteStore;
+    private final KarmaStore karmaStore;
+    private final NoteStore noteStore;
+    private final UserStore userStore;
+    private final YourMomStore yourMomStore;
+
+    /**
+     * @param dataDir where to keep the journals, or null to keep everything in memory only.
+     */
+    public EmbeddedStorage(File dataDir) {
+        if(dataDir != null && !dataDir.isDirectory() && !dataDir.mkdirs()) {
+            throw new StoreException("Couldn't create data directory " + dataDir, null);
+        }
+
+        quoteStore = new EmbeddedQuoteStore(openJournal(dataDir, "quotes"));
+        karmaStore = new EmbeddedKarmaStore(openJournal(dataDir, "karma"), openJournal(dataDir, "karma-history"));
+        noteStore = new EmbeddedNoteStore(openJournal(dataDir, "notes"));
+        userStore = new EmbeddedUserStore(openJournal(dataDir, "users"), objectMapper);
+        yourMomStore = new EmbeddedYourMomStore(openJournal(dataDir, "yourmom"));
+    }
+
+    @Override
+    public QuoteStore getQuoteStore() {
+        return quoteStore;
+    }
+
+    @Override
+    public KarmaStore getKarmaStore() {
+        return karmaStore;
+    }
+
+    @Override
+    public NoteStore getNoteStore() {
+        return noteStore;
+    }
+
+    @Override
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    @Override
+    public YourMomStore getYourMomStore() {
+        return yourMomStore;
+    }
+
+    @Override
+    public void close() {
+        for(Journal journal : journals) {
+            journal.close();
+        }
+    }
+
+    private Journal openJournal(File dataDir, String name) {
+        Journal journal = new Journal(dataDir == null ? null : new File(dataDir, name + ".json"), objectMapper);
+        journals.add(journal);
+        return journal;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.UserStore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Users are maintained by hand, one JSON user per line of the journal.
+ */
+public class EmbeddedUserStore implements UserStore {
+    //Keyed by network (null for users on every network), then nick.
+    private final HashMap<String, HashMap<String, User>> users = new HashMap<>();
+
+    public EmbeddedUserStore(Journal journal, final ObjectMapper objectMapper) {
+        journal.replay(new Journal.Handler() {
+            @Override
+            public void handle(Map<String, Object> record) {
+                User user = objectMapper.convertValue(record, User.class);
+                HashMap<String, User> networkUsers = users.get(user.getNetwork());
+                if(networkUsers == null) {
+                    networkUsers = new HashMap<>();
+                    users.put(user.getNetwork(), networkUsers);
+                }
+                networkUsers.put(user.getNick(), user);
+            }
+        });
+    }
+
+    @Override
+    public synchronized User findUser(String network, String nick) {
+        User user = find(network, nick);
+        return user != null ? user : find(null, nick);
+    }
+
+    private User find(String network, String nick) {
+        HashMap<String, User> networkUsers = users.get(network);
+        return networkUsers == null ? null : networkUsers.get(nick);
+    }
+}
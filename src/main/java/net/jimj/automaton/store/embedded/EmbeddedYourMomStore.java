@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import net.jimj.automaton.store.Fingerprint;
+import net.jimj.automaton.store.YourMomStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class EmbeddedYourMomStore implements YourMomStore {
+    private final Journal journal;
+    private final List<String> insults = new ArrayList<>();
+    private final Set<Long> unique = new HashSet<>();
+    private final Random random = new Random();
+
+    public EmbeddedYourMomStore(Journal journal) {
+        this.journal = journal;
+        journal.replay(new Journal.Handler() {
+            @Override
+            public void handle(Map<String, Object> record) {
+                String insult = (String)record.get("insult");
+                if(unique.add(Fingerprint.of(insult))) {
+                    insults.add(insult);
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized String findRandom() {
+        if(insults.isEmpty()) {
+            return null;
+        }
+        return insults.get(random.nextInt(insults.size()));
+    }
+
+    @Override
+    public synchronized boolean add(String insult) {
+        if(!unique.add(Fingerprint.of(insult))) {
+            return false;
+        }
+
+        Map<String, Object> record = new HashMap<>();
+        record.put("insult", insult);
+        journal.append(record);
+        insults.add(insult);
+        return true;
+    }
+
+    @Override
+    public synchronized Iterable<String> findAll() {
+        return new ArrayList<>(insults);
+    }
+}
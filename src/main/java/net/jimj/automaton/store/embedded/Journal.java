@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jimj.automaton.store.StoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append only file of JSON records, one per line.
+ *
+ * Embedded stores keep their data in memory, write each change here, and replay the
+ * file when they're opened.  A journal without a file keeps nothing, which is handy for tests.
+ */
+public class Journal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Journal.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final TypeReference<Map<String, Object>> RECORD = new TypeReference<Map<String, Object>>() {};
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private Writer writer;
+
+    /**
+     * @param file where to keep records, or null to keep nothing.
+     */
+    public Journal(File file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Hand every stored record to the handler, oldest first.
+     * A torn last line (from a crash mid-write) is skipped, and cut off before the next append.
+     */
+    public synchronized void replay(Handler handler) {
+        if(file == null || !file.exists()) {
+            return;
+        }
+
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8))) {
+            String line;
+            int lineNum = 0;
+            while((line = reader.readLine()) != null) {
+                lineNum++;
+                if(line.isEmpty()) {
+                    continue;
+                }
+
+                Map<String, Object> record;
+                try {
+                    record = objectMapper.readValue(line, RECORD);
+                }catch(IOException e) {
+                    LOGGER.warn("Skipping unreadable record " + lineNum + " in " + file);
+                    continue;
+                }
+                handler.handle(record);
+            }
+        }catch(IOException e) {
+            throw new StoreException("Couldn't replay " + file, e);
+        }
+    }
+
+    public synchronized void append(Map<String, Object> record) {
+        appendAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Append several records with a single flush.
+     */
+    public synchronized void appendAll(List<Map<String, Object>> records) {
+        if(file == null) {
+            return;
+        }
+
+        try {
+            if(writer == null) {
+                trimTornTail();
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+            }
+            for(Map<String, Object> record : records) {
+                writer.write(objectMapper.writeValueAsString(record));
+                writer.write('\n');
+            }
+            writer.flush();
+        }catch(IOException e) {
+            throw new StoreException("Couldn't write to " + file, e);
+        }
+    }
+
+    /**
+     * Replace everything in the journal with the given records, e.g. a snapshot of current state.
+     * The new file is written alongside and renamed over the old one so a crash leaves one or the other.
+     */
+    public synchronized void rewrite(Iterable<Map<String, Object>> records) {
+        if(file == null) {
+            return;
+        }
+
+        close();
+        File compacted = new File(file.getPath() + ".tmp");
+        try(Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(compacted), UTF8))) {
+            for(Map<String, Object> record : records) {
+                out.write(objectMapper.writeValueAsString(record));
+                out.write('\n');
+            }
+        }catch(IOException e) {
+            throw new StoreException("Couldn't compact " + file, e);
+        }
+
+        if(!compacted.renameTo(file)) {
+            //Windows won't rename over an existing file.
+            if(!file.delete() || !compacted.renameTo(file)) {
+                throw new StoreException("Couldn't replace " + file + " with " + compacted, null);
+            }
+        }
+    }
+
+    /**
+     * Cut the file back to the end of its last whole line, so a record torn by a crash
+     * doesn't swallow the first one written after it.
+     */
+    private void trimTornTail() throws IOException {
+        if(!file.exists()) {
+            return;
+        }
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            byte[] buffer = new byte[4096];
+            while(end > 0) {
+                int read = (int)Math.min(buffer.length, end);
+                raf.seek(end - read);
+                raf.readFully(buffer, 0, read);
+                int i = read - 1;
+                while(i >= 0 && buffer[i] != '\n') {
+                    i--;
+                }
+                if(i >= 0) {
+                    end = end - read + i + 1;
+                    break;
+                }
+                end -= read;
+            }
+
+            if(end < length) {
+                LOGGER.warn("Dropping " + (length - end) + " bytes of torn record at the end of " + file);
+                raf.setLength(end);
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if(writer != null) {
+            try {
+                writer.close();
+            }catch(IOException e) {
+                LOGGER.warn("Error closing " + file, e);
+            }
+            writer = null;
+        }
+    }
+
+    public interface Handler {
+        public void handle(Map<String, Object> record);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import net.jimj.automaton.store.Fingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a Fingerprint of each document's text alongside it, so duplicate checks are an indexed lookup.
+ */
+final class MongoFingerprints {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoFingerprints.class);
+    static final String FINGERPRINT_KEY = "fp";
+
+    private MongoFingerprints() {
+
+    }
+
+    /**
+     * Documents stored before fingerprints existed won't have one yet, give them one.
+     */
+    static void assignMissing(DBCollection collection, String textKey) {
+        DBCursor missing = collection.find(new BasicDBObject(FINGERPRINT_KEY, new BasicDBObject("$exists", false)),
+                new BasicDBObject(textKey, 1));
+        if(missing == null) {
+            return;
+        }
+
+        int assigned = 0;
+        while(missing.hasNext()) {
+            DBObject document = missing.next();
+            collection.update(new BasicDBObject("_id", document.get("_id")),
+                    new BasicDBObject("$set", new BasicDBObject(FINGERPRINT_KEY, Fingerprint.of((String)document.get(textKey)))));
+            assigned++;
+        }
+
+        if(assigned > 0) {
+            LOGGER.info("Assigned fingerprints to " + assigned + " documents in " + collection.getName());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import net.jimj.automaton.model.KarmaChange;
+import net.jimj.automaton.model.KarmaItem;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.store.KarmaStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class MongoKarmaStore implements KarmaStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoKarmaStore.class);
+    protected static final String KARMA_ITEM = "item";
+    protected static final String KARMA_VALUE = "value";
+    protected static final String KARMA_NETWORK = "network";
+    protected static final String CHANGE_NETWORK = "network";
+    protected static final String CHANGE_CHANNEL = "channel";
+    protected static final String CHANGE_ITEM = "item";
+    protected static final String CHANGE_GIVER = "giver";
+    protected static final String CHANGE_DELTA = "delta";
+    protected static final String CHANGE_WHEN = "when";
+
+    private final DBCollection karma;
+    private final DBCollection history;
+
+    public MongoKarmaStore(DBCollection karma, DBCollection history) {
+        this.karma = karma;
+        this.history = history;
+        //Karma from before networks was all on the default one.
+        karma.update(new BasicDBObject(KARMA_NETWORK, new BasicDBObject("$exists", false)),
+                new BasicDBObject("$set", new BasicDBObject(KARMA_NETWORK, NetworkConfig.DEFAULT_NAME)), false, true);
+        karma.ensureIndex(new BasicDBObject(KARMA_NETWORK, 1).append(KARMA_ITEM, 1));
+        history.ensureIndex(new BasicDBObject(CHANGE_WHEN, 1));
+    }
+
+    @Override
+    public int getKarma(String network, String item) {
+        DBObject karmaObj = karma.findOne(new BasicDBObject(KARMA_NETWORK, network).append(KARMA_ITEM, item));
+        if(karmaObj == null) {
+            return 0;
+        }
+        return ((Number)karmaObj.get(KARMA_VALUE)).intValue();
+    }
+
+    @Override
+    public Iterable<KarmaItem> findAll() {
+        return new Iterable<KarmaItem>() {
+            @Override
+            public Iterator<KarmaItem> iterator() {
+                final DBCursor cur = karma.find(new BasicDBObject(),
+                        new BasicDBObject(KARMA_NETWORK, 1).append(KARMA_ITEM, 1).append(KARMA_VALUE, 1));
+                return new Iterator<KarmaItem>() {
+                    @Override
+                    public boolean hasNext() {
+                        return cur.hasNext();
+                    }
+
+                    @Override
+                    public KarmaItem next() {
+                        DBObject karmaObj = cur.next();
+                        return new KarmaItem((String)karmaObj.get(KARMA_NETWORK), (String)karmaObj.get(KARMA_ITEM),
+                                ((Number)karmaObj.get(KARMA_VALUE)).intValue());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * The 2.11 driver has no bulk writes, so this is one $inc upsert per item.
+     */
+    @Override
+    public void applyDeltas(String network, Map<String, Integer> deltas) {
+        LOGGER.debug("Writing karma for " + deltas.size() + " items");
+        Iterator<Map.Entry<String, Integer>> entries = deltas.entrySet().iterator();
+        while(entries.hasNext()) {
+            Map.Entry<String, Integer> entry = entries.next();
+            if(entry.getValue() != 0) {
+                karma.update(new BasicDBObject(KARMA_NETWORK, network).append(KARMA_ITEM, entry.getKey()),
+                        new BasicDBObject("$inc", new BasicDBObject(KARMA_VALUE, entry.getValue())), true, false);
+            }
+            entries.remove();
+        }
+    }
+
+    @Override
+    public Iterable<KarmaChange> findChanges(final long since) {
+        return new Iterable<KarmaChange>() {
+            @Override
+            public Iterator<KarmaChange> iterator() {
+                final DBCursor cur = history.find(new BasicDBObject(CHANGE_WHEN, new BasicDBObject("$gte", since)))
+                        .sort(new BasicDBObject(CHANGE_WHEN, 1));
+                return new Iterator<KarmaChange>() {
+                    @Override
+                    public boolean hasNext() {
+                        return cur.hasNext();
+                    }
+
+                    @Override
+                    public KarmaChange next() {
+                        DBObject changeObj = cur.next();
+                        return new KarmaChange((String)changeObj.get(CHANGE_NETWORK), (String)changeObj.get(CHANGE_CHANNEL),
+                                (String)changeObj.get(CHANGE_ITEM), (String)changeObj.get(CHANGE_GIVER),
+                                ((Number)changeObj.get(CHANGE_DELTA)).intValue(),
+                                ((Number)changeObj.get(CHANGE_WHEN)).longValue());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public void appendChanges(List<KarmaChange> changes) {
+        if(changes.isEmpty()) {
+            return;
+        }
+
+        List<DBObject> changeObjs = new ArrayList<>(changes.size());
+        for(KarmaChange change : changes) {
+            changeObjs.add(new BasicDBObject(CHANGE_NETWORK, change.getNetwork())
+                    .append(CHANGE_CHANNEL, change.getChannel())
+                    .append(CHANGE_ITEM, change.getItem())
+                    .append(CHANGE_GIVER, change.getGiver())
+                    .append(CHANGE_DELTA, change.getDelta())
+                    .append(CHANGE_WHEN, change.getWhen()));
+        }
+        history.insert(changeObjs);
+    }
+
+    @Override
+    public void expireChanges(long before) {
+        history.remove(new BasicDBObject(CHANGE_WHEN, new BasicDBObject("$lt", before)));
+    }
+}
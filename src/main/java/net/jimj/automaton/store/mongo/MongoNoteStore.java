@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.Note;
+import net.jimj.automaton.store.NoteStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MongoNoteStore implements NoteStore {
+    private static final String NOTE_FROM = "from";
+    private static final String NOTE_TO = "to";
+    private static final String NOTE_NOTE = "note";
+    private static final String NOTE_WHEN = "when";
+    private static final String NOTE_DELIVERED = "delivered";
+    private static final String NOTE_NETWORK = "network";
+    private static final BasicDBObject RECIPIENT_FIELDS = new BasicDBObject(NOTE_NETWORK, 1).append(NOTE_TO, 1);
+
+    private final DBCollection notes;
+
+    public MongoNoteStore(DBCollection notes) {
+        this.notes = notes;
+        //Notes from before networks were all left on the default one.
+        notes.update(new BasicDBObject(NOTE_NETWORK, new BasicDBObject("$exists", false)),
+                new BasicDBObject("$set", new BasicDBObject(NOTE_NETWORK, NetworkConfig.DEFAULT_NAME)), false, true);
+        notes.ensureIndex(new BasicDBObject(NOTE_NETWORK, 1).append(NOTE_TO, 1));
+    }
+
+    @Override
+    public void save(Note note) {
+        BasicDBObject noteObj = new BasicDBObject(NOTE_NETWORK, note.getNetwork());
+        noteObj.append(NOTE_FROM, note.getFrom());
+        noteObj.append(NOTE_TO, note.getTo());
+        noteObj.append(NOTE_NOTE, note.getNote());
+        noteObj.append(NOTE_DELIVERED, note.isDelivered());
+        noteObj.append(NOTE_WHEN, note.getWhen());
+        notes.insert(noteObj);
+        note.setId(noteObj.get("_id"));
+    }
+
+    @Override
+    public Map<String, Set<String>> findPendingRecipients() {
+        Map<String, Set<String>> recipients = new HashMap<>();
+        DBCursor pending = notes.find(new BasicDBObject(NOTE_DELIVERED, false), RECIPIENT_FIELDS);
+        if(pending == null) {
+            return recipients;
+        }
+
+        while(pending.hasNext()) {
+            DBObject noteObj = pending.next();
+            String network = (String)noteObj.get(NOTE_NETWORK);
+            Set<String> nicks = recipients.get(network);
+            if(nicks == null) {
+                nicks = new HashSet<>();
+                recipients.put(network, nicks);
+            }
+            nicks.add((String)noteObj.get(NOTE_TO));
+        }
+        return recipients;
+    }
+
+    @Override
+    public List<Note> findUndelivered(String network, String to) {
+        List<Note> found = new ArrayList<>();
+        BasicDBObject query = new BasicDBObject(NOTE_NETWORK, network);
+        query.append(NOTE_TO, to);
+        query.append(NOTE_DELIVERED, false);
+        DBCursor noteCursor = notes.find(query);
+        if(noteCursor == null) {
+            return found;
+        }
+
+        while(noteCursor.hasNext()) {
+            DBObject noteObj = noteCursor.next();
+            Note note = new Note((String)noteObj.get(NOTE_NETWORK), (String)noteObj.get(NOTE_FROM),
+                    (String)noteObj.get(NOTE_TO), (String)noteObj.get(NOTE_NOTE),
+                    ((Number)noteObj.get(NOTE_WHEN)).longValue());
+            note.setId(noteObj.get("_id"));
+            found.add(note);
+        }
+        return found;
+    }
+
+    @Override
+    public void markDelivered(Collection<Object> ids) {
+        if(ids.isEmpty()) {
+            return;
+        }
+        notes.update(new BasicDBObject("_id", new BasicDBObject("$in", new ArrayList<>(ids))),
+                new BasicDBObject("$set", new BasicDBObject(NOTE_DELIVERED, true)), false, true);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.store.Fingerprint;
+import net.jimj.automaton.store.QuoteStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MongoQuoteStore implements QuoteStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoQuoteStore.class);
+    protected static final String QUOTE_NICK = "nick";
+    protected static final String QUOTE_QUOTE = "quote";
+    protected static final String QUOTE_NETWORK = "network";
+    private static final BasicDBObject QUOTE_FIELDS = new BasicDBObject(QUOTE_QUOTE, 1)
+            .append(QUOTE_NICK, 1).append(QUOTE_NETWORK, 1);
+
+    private final DBCollection quotes;
+    private final RandomSampler sampler;
+
+    public MongoQuoteStore(DBCollection quotes) {
+        this.quotes = quotes;
+        //Lets nick (and plain network) lookups walk the random key in index order.
+        quotes.ensureIndex(new BasicDBObject(QUOTE_NETWORK, 1).append(RandomSampler.RANDOM_KEY, 1));
+        quotes.ensureIndex(new BasicDBObject(QUOTE_NETWORK, 1).append(QUOTE_NICK, 1).append(RandomSampler.RANDOM_KEY, 1));
+        this.sampler = new RandomSampler(quotes);
+        quotes.ensureIndex(new BasicDBObject(QUOTE_NETWORK, 1).append(MongoFingerprints.FINGERPRINT_KEY, 1));
+        MongoFingerprints.assignMissing(quotes, QUOTE_QUOTE);
+    }
+
+    @Override
+    public void save(Quote quote) {
+        BasicDBObject quoteObj = toDBObject(quote);
+        if(LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Storing quote: " + quoteObj);
+        }
+        quotes.save(quoteObj);
+        quote.setId(quoteObj.get("_id"));
+    }
+
+    @Override
+    public void saveAll(List<Quote> batch) {
+        if(batch.isEmpty()) {
+            return;
+        }
+
+        List<DBObject> quoteObjs = new ArrayList<>(batch.size());
+        for(Quote quote : batch) {
+            quoteObjs.add(toDBObject(quote));
+        }
+        quotes.insert(quoteObjs);
+        for(int i=0;i<batch.size();i++) {
+            batch.get(i).setId(quoteObjs.get(i).get("_id"));
+        }
+    }
+
+    @Override
+    public Quote findById(Object id) {
+        return toQuote(quotes.findOne(new BasicDBObject("_id", id), QUOTE_FIELDS));
+    }
+
+    @Override
+    public Quote findByFingerprint(String network, long fingerprint) {
+        return toQuote(quotes.findOne(new BasicDBObject(QUOTE_NETWORK, network)
+                .append(MongoFingerprints.FINGERPRINT_KEY, fingerprint), QUOTE_FIELDS));
+    }
+
+    @Override
+    public Set<Long> findFingerprints(String network, Collection<Long> fingerprints) {
+        Set<Long> found = new HashSet<>();
+        if(fingerprints.isEmpty()) {
+            return found;
+        }
+
+        DBCursor cur = quotes.find(new BasicDBObject(QUOTE_NETWORK, network).append(MongoFingerprints.FINGERPRINT_KEY,
+                new BasicDBObject("$in", new ArrayList<>(fingerprints))), new BasicDBObject(MongoFingerprints.FINGERPRINT_KEY, 1));
+        if(cur == null) {
+            return found;
+        }
+        while(cur.hasNext()) {
+            found.add(((Number)cur.next().get(MongoFingerprints.FINGERPRINT_KEY)).longValue());
+        }
+        return found;
+    }
+
+    @Override
+    public Quote findRandom(String network, String nick, String regex) {
+        BasicDBObject query = buildQuery(network, nick, regex);
+        if(LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Searching for quotes that match " + query);
+        }
+        return toQuote(sampler.findOne(query, QUOTE_FIELDS));
+    }
+
+    @Override
+    public Iterable<Quote> findAll() {
+        return new Iterable<Quote>() {
+            @Override
+            public Iterator<Quote> iterator() {
+                final DBCursor cur = quotes.find(new BasicDBObject(), QUOTE_FIELDS);
+                return new Iterator<Quote>() {
+                    @Override
+                    public boolean hasNext() {
+                        return cur != null && cur.hasNext();
+                    }
+
+                    @Override
+                    public Quote next() {
+                        return toQuote(cur.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    protected BasicDBObject buildQuery(String network, String nick, String regex) {
+        BasicDBObject query = new BasicDBObject(QUOTE_NETWORK, network);
+        if(regex != null) {
+            query.append(QUOTE_QUOTE, new BasicDBObject("$regex", regex));
+        }
+        if(nick != null) {
+            query.append(QUOTE_NICK, nick);
+        }
+        return query;
+    }
+
+    private BasicDBObject toDBObject(Quote quote) {
+        BasicDBObject quoteObj = new BasicDBObject(QUOTE_NICK, quote.getNicks());
+        quoteObj.append(QUOTE_QUOTE, quote.getQuote());
+        quoteObj.append(QUOTE_NETWORK, quote.getNetwork());
+        quoteObj.append(MongoFingerprints.FINGERPRINT_KEY, Fingerprint.of(quote.getQuote()));
+        quoteObj.append("QUOTE_VERSION", "1");
+        sampler.assignKey(quoteObj);
+        return quoteObj;
+    }
+
+    private Quote toQuote(DBObject quoteObj) {
+        if(quoteObj == null) {
+            return null;
+        }
+
+        Set<String> nicks = new LinkedHashSet<>();
+        Object nickObj = quoteObj.get(QUOTE_NICK);
+        if(nickObj instanceof Collection) {
+            for(Object nick : (Collection)nickObj) {
+                nicks.add(String.valueOf(nick));
+            }
+        }else if(nickObj != null) {
+            nicks.add(nickObj.toString());
+        }
+
+        Quote quote = new Quote(nicks, (String)quoteObj.get(QUOTE_QUOTE), (String)quoteObj.get(QUOTE_NETWORK));
+        quote.setId(quoteObj.get("_id"));
+        return quote;
+    }
+}
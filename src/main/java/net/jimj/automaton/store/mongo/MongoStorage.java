@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+import net.jimj.automaton.store.KarmaStore;
+import net.jimj.automaton.store.NoteStore;
+import net.jimj.automaton.store.QuoteStore;
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.UserStore;
+import net.jimj.automaton.store.YourMomStore;
+
+public class MongoStorage implements Storage {
+    private final MongoClient client;
+    private final QuoteStore quoteStore;
+    private final KarmaStore karmaStore;
+    private final NoteStore noteStore;
+    private final UserStore userStore;
+    private final YourMomStore yourMomStore;
+
+    public MongoStorage(MongoClient client, String database) {
+        this.client = client;
+        DB db = client.getDB(database);
+        quoteStore = new MongoQuoteStore(db.getCollection("quotes"));
+        karmaStore = new MongoKarmaStore(db.getCollection("karma"), db.getCollection("karmaHistory"));
+        noteStore = new MongoNoteStore(db.getCollection("notes"));
+        userStore = new MongoUserStore(db.getCollection("users"));
+        yourMomStore = new MongoYourMomStore(db.getCollection("yourmom"));
+    }
+
+    @Override
+    public QuoteStore getQuoteStore() {
+        return quoteStore;
+    }
+
+    @Override
+    public KarmaStore getKarmaStore() {
+        return karmaStore;
+    }
+
+    @Override
+    public NoteStore getNoteStore() {
+        return noteStore;
+    }
+
+    @Override
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    @Override
+    public YourMomStore getYourMomStore() {
+        return yourMomStore;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.UserStore;
+
+import java.util.Arrays;
+
+public class MongoUserStore implements UserStore {
+    private static final String USER_NICK = "nick";
+    private static final String USER_NETWORK = "network";
+    //Descending puts a user stored for the network ahead of one stored without a network.
+    private static final BasicDBObject NETWORK_FIRST = new BasicDBObject(USER_NETWORK, -1);
+
+    private final DBCollection users;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public MongoUserStore(DBCollection users) {
+        this.users = users;
+    }
+
+    @Override
+    public User findUser(String network, String nick) {
+        //A null in $in also matches documents without the field.
+        BasicDBObject query = new BasicDBObject(USER_NICK, nick)
+                .append(USER_NETWORK, new BasicDBObject("$in", Arrays.asList(network, null)));
+        DBObject userObj = users.findOne(query, null, NETWORK_FIRST);
+        if(userObj == null) {
+            return null;
+        }
+        return objectMapper.convertValue(userObj.toMap(), User.class);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import net.jimj.automaton.store.Fingerprint;
+import net.jimj.automaton.store.YourMomStore;
+
+import java.util.Iterator;
+
+public class MongoYourMomStore implements YourMomStore {
+    private static final String YOURMOM_INSULT = "insult";
+    private static final BasicDBObject YOURMOM_FIELDS = new BasicDBObject(YOURMOM_INSULT, 1);
+    private static final BasicDBObject ID_ONLY = new BasicDBObject("_id", 1);
+
+    private final DBCollection yourMoms;
+    private final RandomSampler sampler;
+
+    public MongoYourMomStore(DBCollection yourMoms) {
+        this.yourMoms = yourMoms;
+        this.sampler = new RandomSampler(yourMoms);
+        yourMoms.ensureIndex(new BasicDBObject(MongoFingerprints.FINGERPRINT_KEY, 1));
+        MongoFingerprints.assignMissing(yourMoms, YOURMOM_INSULT);
+    }
+
+    @Override
+    public String findRandom() {
+        DBObject yourMomObj = sampler.findOne(new BasicDBObject(), YOURMOM_FIELDS);
+        if(yourMomObj == null) {
+            return null;
+        }
+        return (String)yourMomObj.get(YOURMOM_INSULT);
+    }
+
+    @Override
+    public boolean add(String insult) {
+        long fingerprint = Fingerprint.of(insult);
+        if(yourMoms.findOne(new BasicDBObject(MongoFingerprints.FINGERPRINT_KEY, fingerprint), ID_ONLY) != null) {
+            return false;
+        }
+
+        BasicDBObject yourMomObj = new BasicDBObject(YOURMOM_INSULT, insult);
+        yourMomObj.append(MongoFingerprints.FINGERPRINT_KEY, fingerprint);
+        sampler.assignKey(yourMomObj);
+        yourMoms.insert(yourMomObj);
+        return true;
+    }
+
+    @Override
+    public Iterable<String> findAll() {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final DBCursor cur = yourMoms.find(new BasicDBObject(), YOURMOM_FIELDS);
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return cur != null && cur.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return (String)cur.next().get(YOURMOM_INSULT);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+/**
+ * Picks a random document out of a collection without pulling back every matching id.
+ *
+ * Every document gets a random number stored alongside it.  To pick one we roll a new number
+ * and take the first document at or after it (wrapping around to the start if there isn't one),
+ * which with an index on the random field is a single indexed lookup.
+ */
+public class RandomSampler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RandomSampler.class);
+    public static final String RANDOM_KEY = "random";
+    private static final BasicDBObject RANDOM_ORDER = new BasicDBObject(RANDOM_KEY, 1);
+
+    private final DBCollection collection;
+    private final Random random = new Random();
+
+    public RandomSampler(DBCollection collection) {
+        this.collection = collection;
+        collection.ensureIndex(RANDOM_ORDER);
+        assignMissingKeys();
+    }
+
+    /**
+     * Add a random key to a document that's about to be stored.
+     */
+    public void assignKey(DBObject document) {
+        document.put(RANDOM_KEY, random.nextDouble());
+    }
+
+    /**
+     * @return a random document matching the query, or null if nothing matches.
+     */
+    public DBObject findOne(DBObject query, DBObject fields) {
+        double roll = random.nextDouble();
+
+        BasicDBObject sampleQuery = new BasicDBObject(query.toMap());
+        sampleQuery.put(RANDOM_KEY, new BasicDBObject("$gte", roll));
+        DBObject found = collection.findOne(sampleQuery, fields, RANDOM_ORDER);
+        if(found == null) {
+            sampleQuery.put(RANDOM_KEY, new BasicDBObject("$lt", roll));
+            found = collection.findOne(sampleQuery, fields, RANDOM_ORDER);
+        }
+        return found;
+    }
+
+    /**
+     * Documents stored before sampling existed won't have a key yet, give them one.
+     */
+    private void assignMissingKeys() {
+        DBCursor missing = collection.find(new BasicDBObject(RANDOM_KEY, new BasicDBObject("$exists", false)),
+                new BasicDBObject("_id", 1));
+        if(missing == null) {
+            return;
+        }
+
+        int assigned = 0;
+        while(missing.hasNext()) {
+            Object id = missing.next().get("_id");
+            collection.update(new BasicDBObject("_id", id),
+                    new BasicDBObject("$set", new BasicDBObject(RANDOM_KEY, random.nextDouble())));
+            assigned++;
+        }
+
+        if(assigned > 0) {
+            LOGGER.info("Assigned random keys to " + assigned + " documents in " + collection.getName());
+        }
+    }
+}
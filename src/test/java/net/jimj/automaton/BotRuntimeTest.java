@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton;
+
+import net.jimj.automaton.dispatch.Dispatcher;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.model.DispatchConfig;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.OutboundConfig;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BotRuntimeTest {
+    private static final String NET = "slashnet";
+
+    private EmbeddedStorage storage;
+    private BotRuntime runtime;
+    private Dispatcher dispatcher;
+
+    @Before
+    public void init() {
+        Config config = new Config();
+        config.setNetworks(Arrays.asList(new NetworkConfig(NET, "localhost", "automaton", ".", new String[0])));
+        config.getLog().setEnabled(false);
+        config.getPlugins().setDir(null);
+
+        storage = new EmbeddedStorage(null);
+        runtime = new BotRuntime(config, storage, new MetricRegistry()) {
+            @Override
+            protected Dispatcher createDispatcher(DispatchConfig dispatchConfig) {
+                dispatcher = super.createDispatcher(dispatchConfig);
+                return dispatcher;
+            }
+
+            @Override
+            protected Bot createBot(NetworkConfig network, OutboundConfig outboundConfig, MetricRegistry metrics) {
+                return new Bot(this, network, outboundConfig, metrics) {
+                    @Override
+                    protected void write(String target, String line) {
+                    }
+                };
+            }
+        };
+    }
+
+    @After
+    public void cleanup() {
+        storage.close();
+    }
+
+    @Test
+    public void testKarmaBurstIsFullyCounted() throws Exception {
+        //Hold up the channel's lane so the whole burst is queued at once, past the default limit of 8.
+        //Each line queues the karma and note processors, so 12 lines just fit the default lane depth of 25.
+        final CountDownLatch release = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch(NET + " #chan", "blocker", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+
+        Bot bot = runtime.getBot(NET);
+        for(int i=0;i<12;i++) {
+            runtime.onMessage(bot, "#chan", "jimj", "foo++");
+        }
+        release.countDown();
+        runtime.shutdown();
+
+        assertEquals(0, runtime.getMetrics().counter("dispatch.rejected").getCount());
+        assertEquals(12, storage.getKarmaStore().getKarma(NET, "foo"));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.store.QuoteStore;
+import net.jimj.automaton.store.StoreException;
+import net.jimj.automaton.store.embedded.EmbeddedQuoteStore;
+import net.jimj.automaton.store.embedded.Journal;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QuoteImporterTest {
+    private static final String NET = "slashnet";
+
+    private QuoteStore store;
+    private List<Integer> batches;
+    private AtomicInteger lookups;
+
+    @Before
+    public void init() {
+        batches = new ArrayList<>();
+        lookups = new AtomicInteger();
+        store = new EmbeddedQuoteStore(new Journal(null, new ObjectMapper())) {
+            @Override
+            public synchronized void saveAll(List<Quote> batch) {
+                batches.add(batch.size());
+                super.saveAll(batch);
+            }
+
+            @Override
+            public synchronized Set<Long> findFingerprints(String network, Collection<Long> fingerprints) {
+                lookups.incrementAndGet();
+                return super.findFingerprints(network, fingerprints);
+            }
+        };
+    }
+
+    @Test
+    public void testTextImport() throws Exception {
+        String dump = "[12:01] <@foo> hi\n" +
+                "\n" +
+                "no nicks in this one\n" +
+                "<bar> hello <Foo> hey\n";
+
+        QuoteImporter.Result result = new QuoteImporter(store, 2, 10).importFrom(new StringReader(dump), QuoteImporter.TEXT, NET);
+        assertEquals(4, result.getLines());
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getSkipped());
+        assertEquals(0, result.getFailed());
+
+        Map<String, Quote> byText = byText();
+        assertEquals(Arrays.asList("foo"), new ArrayList<>(byText.get("[12:01] <@foo> hi").getNicks()));
+        assertTrue(byText.get("<bar> hello <Foo> hey").getNicks().containsAll(Arrays.asList("bar", "foo")));
+        assertEquals(NET, byText.get("[12:01] <@foo> hi").getNetwork());
+    }
+
+    @Test
+    public void testLargeImportIsBatched() throws Exception {
+        StringBuilder dump = new StringBuilder();
+        for(int i=0;i<5000;i++) {
+            dump.append("<nick").append(i % 7).append("> line ").append(i).append('\n');
+        }
+
+        QuoteImporter.Result result = new QuoteImporter(store, 4, 100).importFrom(new StringReader(dump.toString()), QuoteImporter.TEXT, NET);
+        assertEquals(5000, result.getImported());
+        assertEquals(5000, byText().size());
+        for(int size : batches) {
+            assertTrue("Batch of " + size, size <= 100);
+        }
+        assertTrue(batches.size() >= 50);
+        assertEquals("One fingerprint lookup per batch", batches.size(), lookups.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testStoreFailureStopsTheImport() throws Exception {
+        store = new EmbeddedQuoteStore(new Journal(null, new ObjectMapper())) {
+            @Override
+            public Set<Long> findFingerprints(String network, Collection<Long> fingerprints) {
+                throw new StoreException("down", null);
+            }
+        };
+        StringBuilder dump = new StringBuilder();
+        for(int i=0;i<20000;i++) {
+            dump.append("<nick").append(i % 7).append("> line ").append(i).append('\n');
+        }
+
+        try {
+            new QuoteImporter(store, 2, 10).importFrom(new StringReader(dump.toString()), QuoteImporter.TEXT, NET);
+            fail("A failing store should fail the import");
+        }catch(StoreException e) {
+            assertEquals("down", e.getCause().getMessage());
+        }
+        assertEquals(0, byText().size());
+    }
+
+    @Test
+    public void testExportRoundTrip() throws Exception {
+        new QuoteImporter(store, 2, 10).importFrom(new StringReader("<foo> one\n<bar> two\n"), QuoteImporter.TEXT, NET);
+
+        StringWriter out = new StringWriter();
+        assertEquals(2, new QuoteExporter(store).exportTo(out));
+
+        init();
+        String dump = out.toString() + "{\"quote\":\"<baz> three\"}\n{\"quote\":\"nobody\"}\nnot json\n";
+        QuoteImporter.Result result = new QuoteImporter(store, 2, 10).importFrom(new StringReader(dump), QuoteImporter.JSON, "othernet");
+        assertEquals(3, result.getImported());
+        assertEquals(2, result.getSkipped());
+
+        result = new QuoteImporter(store, 2, 10).importFrom(new StringReader(dump + "{\"quote\":\"<baz> three\"}\n"),
+                QuoteImporter.JSON, "othernet");
+        assertEquals("Importing again adds nothing", 0, result.getImported());
+        assertEquals(4, result.getDuplicates());
+
+        Map<String, Quote> byText = byText();
+        assertEquals(NET, byText.get("<foo> one").getNetwork());
+        assertTrue(byText.get("<foo> one").getNicks().contains("foo"));
+        assertEquals("othernet", byText.get("<baz> three").getNetwork());
+        assertTrue(byText.get("<baz> three").getNicks().contains("baz"));
+    }
+
+    private Map<String, Quote> byText() {
+        Map<String, Quote> byText = new HashMap<>();
+        for(Quote quote : store.findAll()) {
+            assertNotNull(quote.getId());
+            byText.put(quote.getQuote(), quote);
+        }
+        return byText;
+    }
+}
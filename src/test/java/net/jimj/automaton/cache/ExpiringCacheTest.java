@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExpiringCacheTest {
+    private long now;
+    private ExpiringCache<String, String> cache;
+    private CountingLoader loader;
+
+    @Before
+    public void init() {
+        now = 1000;
+        cache = new ExpiringCache<String, String>(2, 100, 50) {
+            @Override
+            protected long now() {
+                return now;
+            }
+        };
+        loader = new CountingLoader();
+        loader.values.put("a", "A");
+        loader.values.put("b", "B");
+        loader.values.put("c", "C");
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        assertEquals("A", cache.get("a", loader));
+        assertEquals("A", cache.get("a", loader));
+        assertEquals(1, loader.loads);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiry() {
+        cache.get("a", loader);
+        now += 101;
+        cache.get("a", loader);
+        assertEquals("Expired entry should be reloaded", 2, loader.loads);
+    }
+
+    @Test
+    public void testNegativeCaching() {
+        assertNull(cache.get("missing", loader));
+        assertNull(cache.get("missing", loader));
+        assertEquals("Misses should be cached", 1, loader.loads);
+
+        now += 51;
+        cache.get("missing", loader);
+        assertEquals("Negative entries use their own ttl", 2, loader.loads);
+    }
+
+    @Test
+    public void testEviction() {
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+
+        //b was least recently used so it's the one that went away.
+        cache.get("a", loader);
+        assertEquals(3, loader.loads);
+        cache.get("b", loader);
+        assertEquals(4, loader.loads);
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.get("a", loader);
+        cache.invalidate("a");
+        cache.get("a", loader);
+        assertEquals(2, loader.loads);
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() {
+        ExpiringCache.Loader<String, String> stale = new ExpiringCache.Loader<String, String>() {
+            @Override
+            public String load(String key) {
+                //The value changes and is invalidated while the old one is on its way back.
+                loader.values.put(key, "A2");
+                cache.invalidate(key);
+                return "A1";
+            }
+        };
+        assertEquals("A1", cache.get("a", stale));
+        assertNull("A stale load isn't cached", cache.getIfPresent("a"));
+        assertEquals("A2", cache.get("a", loader));
+        assertEquals("A2", cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void testPutDuringLoad() {
+        ExpiringCache.Loader<String, String> stale = new ExpiringCache.Loader<String, String>() {
+            @Override
+            public String load(String key) {
+                cache.put(key, "A2");
+                return "A1";
+            }
+        };
+        assertEquals("A1", cache.get("a", stale));
+        assertEquals("A2", cache.getIfPresent("a"));
+    }
+
+    private static class CountingLoader implements ExpiringCache.Loader<String, String> {
+        private Map<String, String> values = new HashMap<>();
+        private int loads = 0;
+
+        @Override
+        public String load(String key) {
+            loads++;
+            return values.get(key);
+        }
+    }
+}
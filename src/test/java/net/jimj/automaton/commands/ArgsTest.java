@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ArgsTest {
+    @Test
+    public void testParseCommand() {
+        Args args = Args.parseCommand(".note  someone   don't forget ", 1);
+        assertTrue(args.nameIs("note"));
+        assertFalse(args.nameIs("not"));
+        assertFalse(args.nameIs("notes"));
+        assertEquals("note", args.getName());
+        assertEquals("someone   don't forget", args.text());
+        assertEquals(3, args.size());
+        assertEquals("someone", args.getString(0));
+        assertEquals("don't forget", args.rest(1));
+        assertEquals("", args.rest(3));
+    }
+
+    @Test
+    public void testNoArgs() {
+        Args args = Args.parseCommand(".quote", 1);
+        assertTrue(args.nameIs("quote"));
+        assertTrue(args.isEmpty());
+        assertEquals(0, args.size());
+        assertEquals("", args.text());
+
+        assertTrue(Args.parse(null).isEmpty());
+        assertEquals(0, Args.parse("   ").size());
+    }
+
+    @Test
+    public void testQuoting() {
+        Args args = Args.parse("add \"two words\" \"\" last");
+        assertEquals(4, args.size());
+        assertEquals("two words", args.getString(1));
+        assertEquals("", args.getString(2));
+        assertEquals("\"two words\" \"\" last", args.rest(1));
+
+        Args unclosed = Args.parse("say \"never closed  ");
+        assertEquals(2, unclosed.size());
+        assertEquals("never closed", unclosed.getString(1));
+    }
+
+    @Test
+    public void testQuotedArgument() {
+        Args args = Args.parseCommand(".karma \"foo bar\"", 1);
+        assertEquals(1, args.size());
+        assertEquals("Tokens lose their quotes", "foo bar", args.getString(0));
+        assertEquals("foo bar", args.get(0).toString());
+        assertEquals("The text keeps them", "\"foo bar\"", args.text());
+        assertEquals("\"foo bar\"", args.rest(0));
+    }
+
+    @Test
+    public void testViews() {
+        Args args = Args.parse("one two");
+        CharSequence two = args.get(1);
+        assertEquals(3, two.length());
+        assertEquals('w', two.charAt(1));
+        assertEquals("wo", two.subSequence(1, 3).toString());
+        assertEquals("two", two.toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testMissingToken() {
+        Args.parse("one").get(1);
+    }
+
+    @Test
+    public void testManyTokens() {
+        StringBuilder line = new StringBuilder();
+        for(int i=0;i<50;i++) {
+            line.append(i).append(' ');
+        }
+        Args args = Args.parse(line.toString());
+        assertEquals(50, args.size());
+        assertEquals("49", args.getString(49));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandRegistryTest {
+    private CommandRegistry registry;
+    private Command note;
+    private Command no;
+    private Command quote;
+
+    @Before
+    public void init() {
+        registry = new CommandRegistry();
+        note = new NamedCommand("note");
+        no = new NamedCommand("no");
+        quote = new NamedCommand("quote", "q", "grab");
+    }
+
+    @Test
+    public void testPrefixes() {
+        registry.add("test", Arrays.asList(note, quote));
+        assertSame(note, find("note"));
+        assertSame(note, find("n"));
+        assertSame(quote, find("quo"));
+        assertNull(find("notes"));
+        assertNull(find("x"));
+        assertNull(find(""));
+    }
+
+    @Test
+    public void testExactNameWinsOverPrefix() {
+        registry.add("test", Arrays.asList(note, no));
+        assertSame(no, find("no"));
+        assertSame(note, find("not"));
+        assertNull("n is ambiguous", find("n"));
+    }
+
+    @Test
+    public void testAliases() {
+        registry.add("test", Arrays.asList(note, quote));
+        assertSame(quote, find("grab"));
+        assertSame(quote, find("gr"));
+
+        registry.setAliases(Collections.singletonMap("memo", "note"));
+        assertSame(note, find("memo"));
+        registry.setAliases(Collections.singletonMap("other", "nosuch"));
+        assertNull(find("other"));
+    }
+
+    @Test
+    public void testClashesAreRejectedWhole() {
+        registry.add("first", Arrays.asList(note));
+        try {
+            registry.add("second", Arrays.asList(quote, new NamedCommand("note")));
+            fail("Should have clashed on note");
+        }catch(IllegalArgumentException e) {
+            //expected
+        }
+        assertNull("Nothing from a rejected group is added", find("quote"));
+        assertEquals(Arrays.asList("first"), registry.getOwners());
+    }
+
+    @Test
+    public void testRemove() {
+        registry.add("first", Arrays.asList(note));
+        registry.add("second", Arrays.asList(quote));
+        assertEquals(Arrays.asList(quote), registry.remove("second"));
+        assertNull(find("quote"));
+        assertTrue(registry.remove("second").isEmpty());
+        assertEquals(Arrays.asList(note), registry.getCommands());
+    }
+
+    @Test
+    public void testProcessors() {
+        ProcessingCommand processor = new ProcessingCommand();
+        registry.add("test", Arrays.asList(note, processor));
+        assertEquals(Arrays.<Processor>asList(processor), registry.match("hi there"));
+        assertTrue(registry.match("bye").isEmpty());
+
+        registry.remove("test");
+        assertTrue(registry.match("hi there").isEmpty());
+    }
+
+    private Command find(String name) {
+        return registry.find(Args.parseCommand("." + name + " some args", 1));
+    }
+
+    private static class NamedCommand extends Command {
+        private final String name;
+        private final List<String> aliases;
+
+        private NamedCommand(String name, String... aliases) {
+            this.name = name;
+            this.aliases = Arrays.asList(aliases);
+        }
+
+        @Override
+        public String getCommandName() {
+            return name;
+        }
+
+        @Override
+        public List<String> getAliases() {
+            return aliases;
+        }
+
+        @Override
+        public void execute(User user, Args args) {
+        }
+
+        @Override
+        public boolean authorized(User user) {
+            return true;
+        }
+    }
+
+    private static class ProcessingCommand extends NamedCommand implements Processor {
+        private ProcessingCommand() {
+            super("hi");
+        }
+
+        @Override
+        public List<Trigger> getTriggers() {
+            return Collections.singletonList(Trigger.contains("hi"));
+        }
+
+        @Override
+        public void process(User user, String message) {
+        }
+    }
+}
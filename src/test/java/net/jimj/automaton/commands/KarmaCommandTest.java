@@ -1,78 +1,338 @@
 package net.jimj.automaton.commands;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.jimj.automaton.events.Event;
+import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.model.KarmaChange;
+import net.jimj.automaton.model.KarmaItem;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.KarmaStore;
+import net.jimj.automaton.store.embedded.EmbeddedKarmaStore;
+import net.jimj.automaton.store.embedded.Journal;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class KarmaCommandTest {
+    private static final String NET = "slashnet";
+
     private KarmaCommand command;
-    private DBCollection karma;
+    private KarmaStore karma;
 
     @Before
     public void init() {
-        karma = mock(DBCollection.class);
-        command = new KarmaCommand(karma);
+        karma = mock(KarmaStore.class);
+        when(karma.findAll()).thenReturn(Collections.<KarmaItem>emptyList());
+        when(karma.findChanges(anyLong())).thenReturn(Collections.<KarmaChange>emptyList());
+        command = new KarmaCommand(karma, 0, 100);
     }
 
     @Test
     public void testAddKarmaNew() {
-        when(karma.find(any(BasicDBObject.class))).thenReturn(null);
-        ArgumentCaptor<BasicDBObject> insert = ArgumentCaptor.forClass(BasicDBObject.class);
-        command.addKarma("test");
-        verify(karma).insert(insert.capture());
-        Integer value = (Integer)insert.getValue().get("value");
-        assertEquals(1, value.intValue());
+        command.addKarma(user(NET), "test");
+        assertEquals(1, command.getKarma(NET, "test").getValue());
+        assertEquals(1, flushedDelta("test"));
+    }
+
+    @Test
+    public void testQuotedItems() {
+        final List<String> replies = new ArrayList<>();
+        command = new KarmaCommand(karma, 0, 100) {
+            @Override
+            public void publish(Event event) {
+                replies.add(((MessageEvent)event).getMessage());
+            }
+        };
+        command.addKarma(user(NET), "\"Foo Bar\"");
+        command.addKarma(user(NET), "foo bar");
+        assertEquals(2, command.getKarma(NET, "\"foo bar\"").getValue());
+
+        command.execute(user(NET), Args.parseCommand(".karma \"foo bar\"", 1));
+        assertEquals(Arrays.asList("foo bar: 2"), replies);
     }
 
     @Test
     public void testAddKarmaUpdate() {
-        DBCursor cur = mock(DBCursor.class);
-        BasicDBObject existing = new BasicDBObject("value", 5);
+        when(karma.getKarma(NET, "test")).thenReturn(5);
+        command.addKarma(user(NET), "test");
+        assertEquals(6, command.getKarma(NET, "test").getValue());
+        assertEquals(1, flushedDelta("test"));
+    }
 
-        when(karma.find(any(BasicDBObject.class))).thenReturn(cur);
-        when(cur.hasNext()).thenReturn(Boolean.TRUE);
-        when(cur.next()).thenReturn(existing);
-        ArgumentCaptor<BasicDBObject> insertArg = ArgumentCaptor.forClass(BasicDBObject.class);
+    @Test
+    public void testSubtractKarma() {
+        command.subtractKarma(user(NET), "test");
+        assertEquals(-1, command.getKarma(NET, "test").getValue());
+        assertEquals(-1, flushedDelta("test"));
+    }
 
-        command.addKarma("test");
+    @Test
+    public void testSubtractKarmaUpdate() {
+        when(karma.getKarma(NET, "test")).thenReturn(5);
+        command.subtractKarma(user(NET), "test");
+        assertEquals(4, command.getKarma(NET, "test").getValue());
+        assertEquals(-1, flushedDelta("test"));
+    }
 
-        verify(karma).insert(insertArg.capture());
-        Integer value = (Integer)insertArg.getValue().get("value");
-        assertEquals(6, value.intValue());
+    @Test
+    public void testDeltasAreBatched() {
+        command.addKarma(user(NET), "test");
+        command.addKarma(user(NET), "Test ");
+        command.addKarma(user(NET), "TEST");
+        command.subtractKarma(user(NET), "test");
+        assertEquals(2, flushedDelta("test"));
     }
 
     @Test
-    public void testSubtractKarma() {
-        when(karma.find(any(BasicDBObject.class))).thenReturn(null);
-        ArgumentCaptor<BasicDBObject> insert = ArgumentCaptor.forClass(BasicDBObject.class);
+    public void testFlushThreshold() {
+        command = new KarmaCommand(karma, 0, 2);
+        command.addKarma(user(NET), "one");
+        verify(karma, never()).applyDeltas(anyString(), anyMap());
+        command.addKarma(user(NET), "two");
+        //Written on the flush thread, not the one that gave the karma.
+        verify(karma, timeout(5000)).applyDeltas(anyString(), anyMap());
+    }
 
-        command.subtractKarma("test");
+    @Test
+    public void testShutdownFlushes() {
+        command.addKarma(user(NET), "test");
+        command.shutdown();
+        verify(karma).applyDeltas(anyString(), anyMap());
+    }
 
-        verify(karma).insert(insert.capture());
-        Integer value = (Integer)insert.getValue().get("value");
-        assertEquals(-1, value.intValue());
+    @Test
+    public void testFailedFlushIsRetried() {
+        doThrow(new RuntimeException("down")).when(karma).applyDeltas(anyString(), anyMap());
+        command.addKarma(user(NET), "test");
+        command.flush();
+        assertEquals("Unwritten karma should still count", 1, command.getKarma(NET, "test").getValue());
+
+        doNothing().when(karma).applyDeltas(anyString(), anyMap());
+        assertEquals(1, flushedDelta("test"));
     }
 
     @Test
-    public void testSubtractKarmaUpdate() {
-        DBCursor cur = mock(DBCursor.class);
-        BasicDBObject existing = new BasicDBObject("value", 5);
+    public void testReadDuringFlush() throws Exception {
+        final CountDownLatch written = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        KarmaStore store = new EmbeddedKarmaStore(new Journal(null, new ObjectMapper()), new Journal(null, new ObjectMapper())) {
+            @Override
+            public void applyDeltas(String network, Map<String, Integer> deltas) {
+                super.applyDeltas(network, deltas);
+                written.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        command = new KarmaCommand(store, 0, 100);
+        command.addKarma(user(NET), "test");
+
+        Thread flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                command.flush();
+            }
+        });
+        flusher.start();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+
+        //The delta is in the store but the flush hasn't finished with it yet.
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> read = reader.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return command.getKarma(NET, "test").getValue();
+                }
+            });
+            Thread.sleep(50);
+            release.countDown();
+            assertEquals("Written karma shouldn't also count as unflushed", 1, read.get(5, TimeUnit.SECONDS).intValue());
+        }finally {
+            reader.shutdown();
+        }
+        flusher.join();
+        assertEquals(1, command.getKarma(NET, "test").getValue());
+    }
+
+    @Test
+    public void testOtherItemsDontWaitOnFlush() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        KarmaStore store = new EmbeddedKarmaStore(new Journal(null, new ObjectMapper()), new Journal(null, new ObjectMapper())) {
+            @Override
+            public void applyDeltas(String network, Map<String, Integer> deltas) {
+                writing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.applyDeltas(network, deltas);
+            }
+        };
+        command = new KarmaCommand(store, 0, 1);
+        try {
+            //Over the threshold, so this starts a flush that's stuck in the store.
+            command.addKarma(user(NET), "slow");
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            command.addKarma(user(NET), "other");
+            assertEquals(1, command.getKarma(NET, "other").getValue());
+            assertEquals(0, command.getKarma(NET, "nothing").getValue());
+        }finally {
+            release.countDown();
+        }
+        assertEquals(1, command.getKarma(NET, "slow").getValue());
+        command.shutdown();
+        assertEquals(1, store.getKarma(NET, "other"));
+    }
+
+    @Test
+    public void testNetworksAreSeparate() {
+        command.addKarma(user(NET), "test");
+        command.addKarma(user("othernet"), "test");
+        command.addKarma(user("othernet"), "test");
+        assertEquals(1, command.getKarma(NET, "test").getValue());
+        assertEquals(2, command.getKarma("othernet", "test").getValue());
+
+        command.flush();
+        verify(karma).applyDeltas(eq(NET), eq(Collections.singletonMap("test", 1)));
+        verify(karma).applyDeltas(eq("othernet"), eq(Collections.singletonMap("test", 2)));
+    }
+
+    @Test
+    public void testLeadersLoadedAtStartup() {
+        when(karma.findAll()).thenReturn(Arrays.asList(
+                new KarmaItem(NET, "foo", 12), new KarmaItem(NET, "bar", 9),
+                new KarmaItem(NET, "baz", -3), new KarmaItem("othernet", "qux", 50)));
+        command = new KarmaCommand(karma, 0, 100);
+
+        assertEquals("top karma: 1. foo (12), 2. bar (9)", command.getLeaders(NET, true, 2));
+        assertEquals("bottom karma: 3. baz (-3), 2. bar (9), 1. foo (12)", command.getLeaders(NET, false, 5));
+        assertEquals("bar is ranked 2 of 3 with 9.", command.getRank(NET, "Bar "));
+        assertEquals("qux has no karma.", command.getRank(NET, "qux"));
+    }
+
+    @Test
+    public void testLeadersFollowChanges() {
+        assertEquals("Nothing has karma yet.", command.getLeaders(NET, true, 5));
+        command.addKarma(user(NET), "foo");
+        command.addKarma(user(NET), "bar");
+        command.addKarma(user(NET), "bar");
+        command.subtractKarma(user(NET), "baz");
+        assertEquals("top karma: 1. bar (2), 2. foo (1), 3. baz (-1)", command.getLeaders(NET, true, 5));
+
+        command.addKarma(user(NET), "foo");
+        assertEquals("top karma: 1. bar (2), 1. foo (2)", command.getLeaders(NET, true, 2));
+        assertEquals("foo is ranked 1 of 3 with 2.", command.getRank(NET, "foo"));
+    }
+
+    @Test
+    public void testChangesAreKept() {
+        command.addKarma(user(NET), "Foo");
+        command.subtractKarma(user(NET), "bar");
+        command.flush();
+
+        ArgumentCaptor<List> changes = ArgumentCaptor.forClass(List.class);
+        verify(karma).appendChanges(changes.capture());
+        assertEquals(2, changes.getValue().size());
+        KarmaChange change = (KarmaChange)changes.getValue().get(0);
+        assertEquals("foo", change.getItem());
+        assertEquals("jimj", change.getGiver());
+        assertEquals("#automaton", change.getChannel());
+        assertEquals(1, change.getDelta());
+    }
+
+    @Test
+    public void testHistory() {
+        long now = TimeUnit.DAYS.toMillis(1000);
+        when(karma.findChanges(anyLong())).thenReturn(Arrays.asList(
+                new KarmaChange(NET, "#automaton", "foo", "bob", 1, now - TimeUnit.DAYS.toMillis(20)),
+                new KarmaChange(NET, "#automaton", "foo", "bob", -1, now - TimeUnit.DAYS.toMillis(3)),
+                new KarmaChange(NET, "#automaton", "foo", "alice", 1, now - TimeUnit.HOURS.toMillis(2))));
+        command = new ClockedKarmaCommand(now);
+        command.addKarma(user(NET), "foo");
+
+        assertEquals("foo got +2/-1 in the last 7d (net +1).", command.getHistory(NET, "foo", "7d"));
+        assertEquals("foo got +3/-1 in the last 30d (net +2).", command.getHistory(NET, "Foo", "30d"));
+        assertEquals("foo got +2/-0 in the last 3h (net +2).", command.getHistory(NET, "foo", "3h"));
+        assertEquals("bar got no karma in the last 7d.", command.getHistory(NET, "bar", "7d"));
+        assertEquals("most karma given in the last 7d: 1. alice (+1), 2. jimj (+1)", command.getGivers(NET, "7d"));
+        assertEquals("most karma given in the last 4w: 1. alice (+1), 2. bob (+1), 3. jimj (+1)", command.getGivers(NET, "4w"));
+        assertEquals("Nobody's given karma in the last 7d.", command.getGivers("othernet", "7d"));
+        assertEquals("Only the history that's kept is counted, and the reply says so",
+                "foo got +3/-1 in the last 365d (net +2).", command.getHistory(NET, "foo", "400d"));
+        assertEquals("Nobody's given karma in the last 365d.", command.getGivers("othernet", "60w"));
+    }
+
+    @Test
+    public void testParseWindow() {
+        assertEquals(TimeUnit.MINUTES.toMillis(90), KarmaCommand.parseWindow("90m"));
+        assertEquals(TimeUnit.DAYS.toMillis(14), KarmaCommand.parseWindow("2w"));
+        assertEquals(-1, KarmaCommand.parseWindow("soon"));
+        assertEquals(-1, KarmaCommand.parseWindow("30"));
+    }
+
+    private User user(String network) {
+        User user = new User();
+        user.setNick("JimJ");
+        user.setChannel("#automaton");
+        user.setNetwork(network);
+        return user;
+    }
+
+    private class ClockedKarmaCommand extends KarmaCommand {
+        private final long now;
+
+        private ClockedKarmaCommand(long now) {
+            super(karma, 0, 100);
+            this.now = now;
+        }
+
+        @Override
+        protected long now() {
+            return now;
+        }
+    }
 
-        when(karma.find(any(BasicDBObject.class))).thenReturn(cur);
-        when(cur.hasNext()).thenReturn(Boolean.TRUE);
-        when(cur.next()).thenReturn(existing);
-        ArgumentCaptor<BasicDBObject> insertArg = ArgumentCaptor.forClass(BasicDBObject.class);
+    private int flushedDelta(String item) {
+        final Map<String, Integer> written = new HashMap<>();
+        reset(karma);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                assertEquals(NET, invocation.getArguments()[0]);
+                written.putAll((Map<String, Integer>)invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(karma).applyDeltas(anyString(), anyMap());
 
-        command.subtractKarma("test");
+        command.flush();
 
-        verify(karma).insert(insertArg.capture());
-        Integer value = (Integer)insertArg.getValue().get("value");
-        assertEquals(4, value.intValue());
+        verify(karma).applyDeltas(anyString(), anyMap());
+        assertEquals(1, written.size());
+        return written.get(item);
     }
 }
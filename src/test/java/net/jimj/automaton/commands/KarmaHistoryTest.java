@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.model.KarmaChange;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class KarmaHistoryTest {
+    private static final String NET = "slashnet";
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long NOW = 500 * DAY;
+
+    @Test
+    public void testEachResolution() {
+        KarmaHistory history = new KarmaHistory(90);
+        history.add(change("foo", "jimj", 1, NOW - 10 * MINUTE));
+        history.add(change("foo", "jimj", 1, NOW - 5 * HOUR));
+        history.add(change("foo", "bob", -1, NOW - 3 * DAY));
+        history.add(change("foo", "bob", 1, NOW - 40 * DAY));
+
+        assertTally(history.itemTally(NET, "foo", 30 * MINUTE, NOW), 1, 0);
+        assertTally(history.itemTally(NET, "foo", 6 * HOUR, NOW), 2, 0);
+        assertTally(history.itemTally(NET, "foo", 7 * DAY, NOW), 2, 1);
+        assertTally(history.itemTally(NET, "foo", 60 * DAY, NOW), 3, 1);
+        assertNull(history.itemTally(NET, "bar", 60 * DAY, NOW));
+        assertNull(history.itemTally("othernet", "foo", 60 * DAY, NOW));
+    }
+
+    @Test
+    public void testOutOfOrderChanges() {
+        KarmaHistory history = new KarmaHistory(90);
+        history.add(change("foo", "jimj", 1, NOW - MINUTE));
+        history.add(change("foo", "jimj", 1, NOW - 3 * MINUTE));
+        history.add(change("foo", "jimj", -1, NOW - 2 * MINUTE));
+        assertTally(history.itemTally(NET, "foo", 2 * MINUTE, NOW), 1, 1);
+        assertTally(history.itemTally(NET, "foo", 4 * MINUTE, NOW), 2, 1);
+    }
+
+    @Test
+    public void testTopGivers() {
+        KarmaHistory history = new KarmaHistory(90);
+        history.add(change("foo", "jimj", 1, NOW - DAY));
+        history.add(change("bar", "jimj", 1, NOW - DAY));
+        history.add(change("foo", "bob", 1, NOW - 2 * DAY));
+        history.add(change("foo", "bob", -1, NOW - 2 * DAY));
+        history.add(change("foo", "alice", 1, NOW - 20 * DAY));
+        history.add(change("foo", "mallory", -1, NOW - DAY));
+
+        List<KarmaHistory.Tally> givers = history.topGivers(NET, 5, 7 * DAY, NOW);
+        assertEquals(2, givers.size());
+        assertEquals("jimj", givers.get(0).getName());
+        assertTally(givers.get(0), 2, 0);
+        assertEquals("bob", givers.get(1).getName());
+        assertTally(givers.get(1), 1, 1);
+
+        assertEquals(1, history.topGivers(NET, 1, 30 * DAY, NOW).size());
+        assertEquals(3, history.topGivers(NET, 5, 30 * DAY, NOW).size());
+    }
+
+    @Test
+    public void testExpire() {
+        KarmaHistory history = new KarmaHistory(30);
+        history.add(change("old", "jimj", 1, NOW - 40 * DAY));
+        history.add(change("foo", "jimj", 1, NOW - 40 * DAY));
+        history.add(change("foo", "jimj", 1, NOW - 10 * DAY));
+        history.expire(NOW);
+
+        assertNull(history.itemTally(NET, "old", 30 * DAY, NOW));
+        assertTally(history.itemTally(NET, "foo", 365 * DAY, NOW), 1, 0);
+    }
+
+    @Test
+    public void testMatchesCountingEverything() {
+        KarmaHistory history = new KarmaHistory(90);
+        Random random = new Random(42);
+        long[] whens = new long[5000];
+        int[] deltas = new int[whens.length];
+        long when = NOW - 90 * DAY;
+        for(int i=0;i<whens.length;i++) {
+            when += random.nextInt((int)(2 * 90 * DAY / whens.length));
+            whens[i] = when;
+            deltas[i] = random.nextBoolean() ? 1 : -1;
+            history.add(change("foo", "jimj", deltas[i], when));
+        }
+        long now = when;
+
+        //Each window is rounded out to the start of its oldest bucket.
+        long[][] windows = {{45 * MINUTE, MINUTE}, {5 * HOUR, MINUTE}, {3 * DAY, HOUR}, {60 * DAY, DAY}};
+        for(long[] window : windows) {
+            long since = now - window[0];
+            since -= since % window[1];
+            int up = 0;
+            int down = 0;
+            for(int i=0;i<whens.length;i++) {
+                if(whens[i] >= since) {
+                    up += deltas[i] > 0 ? 1 : 0;
+                    down += deltas[i] < 0 ? 1 : 0;
+                }
+            }
+            assertTally(history.itemTally(NET, "foo", window[0], now), up, down);
+        }
+    }
+
+    private KarmaChange change(String item, String giver, int delta, long when) {
+        return new KarmaChange(NET, "#automaton", item, giver, delta, when);
+    }
+
+    private void assertTally(KarmaHistory.Tally tally, int up, int down) {
+        assertEquals(up, tally.getUp());
+        assertEquals(down, tally.getDown());
+    }
+}
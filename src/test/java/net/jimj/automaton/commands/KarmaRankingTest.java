@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KarmaRankingTest {
+    private static final String NET = "slashnet";
+
+    @Test
+    public void testEmpty() {
+        KarmaRanking ranking = new KarmaRanking();
+        assertTrue(ranking.top(NET, 5).isEmpty());
+        assertTrue(ranking.bottom(NET, 5).isEmpty());
+        assertNull(ranking.find(NET, "foo"));
+        assertEquals(0, ranking.size(NET));
+    }
+
+    @Test
+    public void testTiesShareARank() {
+        KarmaRanking ranking = new KarmaRanking();
+        ranking.set(NET, "a", 5);
+        ranking.set(NET, "b", 3);
+        ranking.set(NET, "c", 5);
+        ranking.set(NET, "d", 1);
+
+        List<KarmaRanking.Ranked> top = ranking.top(NET, 4);
+        assertRanked(top.get(0), "a", 5, 1);
+        assertRanked(top.get(1), "c", 5, 1);
+        assertRanked(top.get(2), "b", 3, 3);
+        assertRanked(top.get(3), "d", 1, 4);
+
+        List<KarmaRanking.Ranked> bottom = ranking.bottom(NET, 3);
+        assertRanked(bottom.get(0), "d", 1, 4);
+        assertRanked(bottom.get(1), "b", 3, 3);
+        assertRanked(bottom.get(2), "c", 5, 1);
+
+        assertEquals(3, ranking.find(NET, "b").getRank());
+    }
+
+    @Test
+    public void testMatchesSortingEverything() {
+        KarmaRanking ranking = new KarmaRanking();
+        Map<String, Integer> values = new HashMap<>();
+        Random random = new Random(42);
+        for(int i=0;i<5000;i++) {
+            String item = "item" + random.nextInt(300);
+            int delta = random.nextInt(11) - 5;
+            ranking.add(NET, item, delta);
+            Integer old = values.get(item);
+            values.put(item, (old == null ? 0 : old) + delta);
+        }
+
+        final Map<String, Integer> expected = values;
+        List<String> sorted = new ArrayList<>(expected.keySet());
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int c = expected.get(b).compareTo(expected.get(a));
+                return c != 0 ? c : a.compareTo(b);
+            }
+        });
+
+        assertEquals(sorted.size(), ranking.size(NET));
+        List<KarmaRanking.Ranked> top = ranking.top(NET, sorted.size());
+        for(int i=0;i<sorted.size();i++) {
+            String item = sorted.get(i);
+            int rank = 1;
+            for(int value : expected.values()) {
+                if(value > expected.get(item)) {
+                    rank++;
+                }
+            }
+            assertRanked(top.get(i), item, expected.get(item), rank);
+            assertEquals(rank, ranking.find(NET, item).getRank());
+        }
+
+        List<KarmaRanking.Ranked> bottom = ranking.bottom(NET, 10);
+        for(int i=0;i<10;i++) {
+            assertEquals(sorted.get(sorted.size() - 1 - i), bottom.get(i).getItem());
+        }
+    }
+
+    @Test
+    public void testNetworksAreSeparate() {
+        KarmaRanking ranking = new KarmaRanking();
+        ranking.add(NET, "foo", 1);
+        ranking.add("othernet", "foo", 7);
+        assertEquals(1, ranking.find(NET, "foo").getValue());
+        assertEquals(7, ranking.find("othernet", "foo").getValue());
+        assertEquals(1, ranking.size(NET));
+    }
+
+    private void assertRanked(KarmaRanking.Ranked ranked, String item, int value, int rank) {
+        assertEquals(item, ranked.getItem());
+        assertEquals(value, ranked.getValue());
+        assertEquals(rank, ranked.getRank());
+    }
+}
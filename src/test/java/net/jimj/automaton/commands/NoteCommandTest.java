@@ -0,0 +1,78 @@
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.events.EventBus;
+import net.jimj.automaton.model.Note;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.NoteStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class NoteCommandTest {
+    private static final String NET = "slashnet";
+
+    private NoteCommand command;
+    private NoteStore notes;
+
+    @Before
+    public void init() {
+        notes = mock(NoteStore.class);
+        when(notes.findPendingRecipients()).thenReturn(Collections.<String, Set<String>>singletonMap(NET,
+                new HashSet<>(Arrays.asList("waiting"))));
+        command = new NoteCommand(notes);
+        command.setEventBus(new EventBus());
+    }
+
+    @Test
+    public void testNoQueryWithoutNotes() {
+        command.process(user("nobody"), "just chatting");
+        verify(notes, never()).findUndelivered(anyString(), anyString());
+    }
+
+    @Test
+    public void testStoreMarksPending() {
+        assertFalse(command.hasPendingNotes(NET, "Someone"));
+        command.storeNote(NET, "me", "Someone", "hi");
+        assertTrue(command.hasPendingNotes(NET, "someone"));
+        assertFalse("Same nick on another network is someone else", command.hasPendingNotes("othernet", "someone"));
+    }
+
+    @Test
+    public void testDeliveryIsBatched() {
+        when(notes.findUndelivered(NET, "waiting")).thenReturn(Arrays.asList(note(1), note(2)));
+
+        command.process(user("Waiting"), "hello");
+
+        ArgumentCaptor<Collection> delivered = ArgumentCaptor.forClass(Collection.class);
+        verify(notes).markDelivered(delivered.capture());
+        assertEquals(Arrays.asList(1, 2), delivered.getValue());
+        assertFalse(command.hasPendingNotes(NET, "waiting"));
+
+        //Everything was delivered, so the next line shouldn't go to the store.
+        when(notes.findUndelivered(NET, "waiting")).thenReturn(Collections.<Note>emptyList());
+        command.process(user("Waiting"), "hello again");
+        verify(notes, times(1)).findUndelivered(anyString(), anyString());
+    }
+
+    private Note note(int id) {
+        Note note = new Note(NET, "me", "waiting", "note " + id, System.currentTimeMillis());
+        note.setId(id);
+        return note;
+    }
+
+    private User user(String nick) {
+        User user = new User(0);
+        user.setNick(nick);
+        user.setNetwork(NET);
+        return user;
+    }
+}
@@ -22,30 +22,39 @@
 
 package net.jimj.automaton.commands;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBCollection;
+import net.jimj.automaton.log.ChannelLog;
+import net.jimj.automaton.log.LogRecord;
+import net.jimj.automaton.model.LogConfig;
+import net.jimj.automaton.model.User;
+import net.jimj.automaton.store.QuoteStore;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Mockito.mock;
 
 public class QuoteCommandTest {
+    private static final String NET = "slashnet";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     QuoteCommand command = null;
-    DBCollection dbc = null;
+    QuoteStore quoteStore = null;
 
     @Before
     public void init() {
-        dbc = mock(DBCollection.class);
-        command = new QuoteCommand(dbc);
+        quoteStore = new EmbeddedStorage(null).getQuoteStore();
+        command = new QuoteCommand(quoteStore);
     }
 
-    public static String[] split(String str) {
-        return str.split(" ");
+    public static Args split(String str) {
+        return Args.parse(str);
     }
 
     @Test
@@ -61,7 +70,7 @@ public class QuoteCommandTest {
 
     @Test
     public void testFindQuoteStartNone() {
-        assertEquals("Quote start should not be found", -1, command.findQuoteStart(new String[]{}));
+        assertEquals("Quote start should not be found", -1, command.findQuoteStart(Args.parse(null)));
         assertEquals("Quote start should not be found", -1, command.findQuoteStart(split("")));
         assertEquals("Quote start should not be found", -1, command.findQuoteStart(split("no start found")));
     }
@@ -76,26 +85,74 @@ public class QuoteCommandTest {
     }
 
     @Test
-    public void testBuildQuoteSearch() {
-        assertSearchDBObject("gnome", null, "gnome");
-        assertSearchDBObject("gnome /foo/", "foo", "gnome");
-        assertSearchDBObject("/foo/", "foo", null);
+    public void testQuoteSearch() {
+        assertSearch("gnome", null, "gnome");
+        assertSearch("gnome /foo/", "foo", "gnome");
+        assertSearch("/foo/", "foo", null);
     }
 
-    public void assertSearchDBObject(String args, String searchTerm, String nick) {
-        BasicDBObject dbObj = command.buildQuoteSearch(args);
-        if(searchTerm == null) {
-            assertNull(String.format("%s - %s", args, dbObj.toString()), dbObj.get(QuoteCommand.QUOTE_QUOTE));
-        }else {
-            BasicDBObject searchTermObj = (BasicDBObject) dbObj.get(QuoteCommand.QUOTE_QUOTE);
-            assertEquals("Search terms don't match in " + args, searchTerm, searchTermObj.getString("$regex"));
-        }
+    public void assertSearch(String args, String searchTerm, String nick) {
+        assertEquals("Search terms don't match in " + args, searchTerm, command.getSearchTerm(args));
+        assertEquals("Nicks don't match in " + args, nick, command.getSearchNick(args));
+    }
 
-        if(nick == null) {
-            assertNull(String.format("%s - %s", args, dbObj.toString()), dbObj.get(QuoteCommand.QUOTE_NICK));
-        }else {
-            assertEquals("Nicks don't match in " + args, nick, dbObj.getString(QuoteCommand.QUOTE_NICK));
-        }
+    @Test
+    public void testGrab() {
+        ChannelLog log = new ChannelLog(folder.getRoot(), new LogConfig());
+        command = new QuoteCommand(new EmbeddedStorage(null).getQuoteStore(), log);
+        log.append(new LogRecord(1, NET, "#chan", "foo", "first thing", false));
+        log.append(new LogRecord(2, NET, "#chan", "foo", "second thing", false));
+        log.append(new LogRecord(3, NET, "#chan", "bar", ".quote grab foo 2", true));
+
+        User user = new User(0);
+        user.setNick("bar");
+        user.setChannel("#chan");
+        user.setNetwork(NET);
+        assertEquals("quote stored.", command.grabQuote(user, "foo", 2));
+        assertEquals("<foo> first thing <foo> second thing", command.getQuote(NET, "foo"));
+        assertEquals("I haven't heard nobody say anything here.", command.grabQuote(user, "nobody", 1));
+
+        user.setChannel(null);
+        assertEquals("Quotes can only be grabbed in a channel.", command.grabQuote(user, "foo", 1));
+        log.close();
+    }
+
+    @Test
+    public void testStoreAndSearch() {
+        assertEquals("quote stored.", command.storeQuote(NET, split("<foo> hello there")));
+        assertEquals("quote stored.", command.storeQuote(NET, split("bar <baz> something else")));
+
+        assertEquals("<foo> hello there", command.getQuote(NET, "foo"));
+        assertEquals("<baz> something else", command.getQuote(NET, "bar"));
+        assertEquals("<foo> hello there", command.getQuote(NET, "/hello/"));
+        assertEquals("<baz> something else", command.getQuote(NET, "/some.*/"));
+        assertEquals("No quotes found.", command.getQuote(NET, "foo /else/"));
+        assertEquals("Quotes stay on their network", "No quotes found.", command.getQuote("othernet", "foo"));
+    }
+
+    @Test
+    public void testPlainSearchesMatchLikeRegexes() {
+        assertEquals("quote stored.", command.storeQuote(NET, split("<foo> hello there")));
+
+        assertEquals("Mid-word", "<foo> hello there", command.getQuote(NET, "/ell/"));
+        assertEquals("Across words", "<foo> hello there", command.getQuote(NET, "/lo the/"));
+        assertEquals("<foo> hello there", command.getQuote(NET, "/hello there/"));
+        assertEquals("Out of order", "No quotes found.", command.getQuote(NET, "/there hello/"));
+        assertEquals("Case sensitive", "No quotes found.", command.getQuote(NET, "/Hello/"));
+    }
+
+    @Test
+    public void testDuplicatesAreRejected() {
+        assertEquals("quote stored.", command.storeQuote(NET, split("[12:01] <@foo> we should rewrite it in something else")));
+        assertEquals("I already have that quote.", command.storeQuote(NET, split("<foo>  we should rewrite it in something else!")));
+        assertEquals("I already have a quote a lot like that.",
+                command.storeQuote(NET, split("<foo> we should rewrite it all in something else")));
+        assertEquals("quote stored.", command.storeQuote("othernet", split("<foo> we should rewrite it in something else")));
+        assertEquals("quote stored.", command.storeQuote(NET, split("<foo> we should never rewrite anything")));
+
+        //Loaded quotes count too.
+        command = new QuoteCommand(quoteStore);
+        assertEquals("I already have that quote.", command.storeQuote(NET, split("<foo> we should never rewrite anything")));
     }
 
     @Test
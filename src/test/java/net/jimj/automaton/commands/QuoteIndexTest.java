@@ -0,0 +1,72 @@
+package net.jimj.automaton.commands;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QuoteIndexTest {
+    private QuoteIndex index;
+
+    @Before
+    public void init() {
+        index = new QuoteIndex();
+        index.add(1, Arrays.asList("foo"), "slashnet", "<foo> the Quick brown fox");
+        index.add(2, Arrays.asList("bar"), "slashnet", "<bar> a quick-thinking dog");
+        index.add(3, Arrays.asList("foo", "bar"), "othernet", "<foo> brown dog <bar> quick");
+    }
+
+    @Test
+    public void testIsPlainSearch() {
+        assertTrue(QuoteIndex.isPlainSearch("quick brown"));
+        assertTrue(QuoteIndex.isPlainSearch("don't"));
+        assertFalse(QuoteIndex.isPlainSearch("qu.ck"));
+        assertFalse(QuoteIndex.isPlainSearch("^quick"));
+        assertFalse(QuoteIndex.isPlainSearch("   "));
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("foo", "the", "quick", "brown"), QuoteIndex.tokenize("<foo> the Quick, brown"));
+    }
+
+    @Test
+    public void testFindAllWords() {
+        assertMatches(index.find("slashnet", null, "Quick"), 1);
+        assertMatches(index.find("slashnet", null, "Quick brown"), 1);
+        assertMatches(index.find("slashnet", null, "quick cat"));
+    }
+
+    @Test
+    public void testMatchesAreExactSubstrings() {
+        assertMatches(index.find("slashnet", null, "quick"), 2);
+        assertMatches("Case matters, as in a regex", index.find("slashnet", null, "QUICK brown"));
+        assertMatches("Words have to be together and in order", index.find("slashnet", null, "brown Quick"));
+        assertMatches(index.find("slashnet", null, "the Quick"), 1);
+        assertMatches("Matches starting mid-word are left to the regex search", index.find("slashnet", null, "uick"));
+    }
+
+    @Test
+    public void testPrefixMatch() {
+        assertMatches(index.find("slashnet", null, "thin"), 2);
+    }
+
+    @Test
+    public void testFilters() {
+        assertMatches(index.find("slashnet", "bar", "quick"), 2);
+        assertMatches(index.find("othernet", "bar", "quick"), 3);
+        assertNull(index.findRandom("slashnet", "nobody", "quick"));
+    }
+
+    private void assertMatches(List<Object> found, Object... expected) {
+        assertMatches(null, found, expected);
+    }
+
+    private void assertMatches(String message, List<Object> found, Object... expected) {
+        assertEquals(message, new HashSet<>(Arrays.asList(expected)), new HashSet<>(found));
+    }
+}
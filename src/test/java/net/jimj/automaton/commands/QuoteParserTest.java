@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.model.Quote;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class QuoteParserTest {
+    private static final String NET = "slashnet";
+
+    private QuoteParser parser = new QuoteParser();
+
+    @Test
+    public void testIrssi() {
+        assertNicks("12:01 < foo> hi 12:02 <@Bar> hey 12:02  * baz waves", "foo", "bar", "baz");
+    }
+
+    @Test
+    public void testMirc() {
+        assertNicks("[12:01] <+foo> hi [12:02] * Bar waves [12:03] <%baz> ok", "foo", "bar", "baz");
+    }
+
+    @Test
+    public void testHexChat() {
+        assertNicks("[12:01:33] <foo>\thi there [12:01:40] <~bar>\tno", "foo", "bar");
+    }
+
+    @Test
+    public void testWeechat() {
+        assertNicks("2013-06-01 12:01:33 @foo | hi 12:01:34 +Bar \u2502 hey", "foo", "bar");
+        assertNicks("foo | hi", "foo");
+        assertNicks("this | isn't a nick", "this");
+        assertNicks("<foo> a | b", "foo");
+    }
+
+    @Test
+    public void testJunkIsNotANick() {
+        assertNicks("<foo> I <3 you -!- bar has quit :)", "foo");
+        assertNicks("<foo> 2 * 3 is 6", "foo");
+        assertEquals(-1, parser.findQuoteStart(Args.parse("no start found")));
+        assertEquals("Trailing bracket with nothing after", 0, parser.findQuoteStart(Args.parse("<")));
+        assertNull(parser.parse(NET, Args.parse(":) hi")));
+    }
+
+    @Test
+    public void testTimestamps() {
+        for(String timestamp : Arrays.asList("12:34", "9:34", "[12:34]", "(12:34:56)", "[ 9:34]", "2013-06-01", "[2013-06-01")) {
+            assertTrue(timestamp, parser.looksLikeTimestamp(timestamp));
+        }
+        for(String notTimestamp : Arrays.asList("12:3", "123:45", "12:345", "2013", "12-34", "12:34pm", "<12:34>", "")) {
+            assertFalse(notTimestamp, parser.looksLikeTimestamp(notTimestamp));
+        }
+    }
+
+    @Test
+    public void testParse() {
+        Quote quote = parser.parse(NET, Args.parse("Foo bar [12:01] <@baz> hi there"));
+        assertEquals("[12:01] <@baz> hi there", quote.getQuote());
+        assertEquals(Arrays.asList("baz", "Foo", "bar"), new ArrayList<>(quote.getNicks()));
+        assertEquals(NET, quote.getNetwork());
+    }
+
+    @Test
+    public void testFormatsArePluggable() {
+        parser = new QuoteParser(Collections.singletonList(QuoteFormats.WEECHAT));
+        assertNicks("<foo> hi");
+        assertNicks("12:00 foo | hi", "foo");
+    }
+
+    private void assertNicks(String paste, String... nicks) {
+        assertEquals(paste, Arrays.asList(nicks), new ArrayList<>(parser.findNickCandidates(Args.parse(paste))));
+    }
+}
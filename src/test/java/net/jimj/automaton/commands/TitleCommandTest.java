@@ -0,0 +1,99 @@
+package net.jimj.automaton.commands;
+
+import net.jimj.automaton.events.Event;
+import net.jimj.automaton.events.MessageEvent;
+import net.jimj.automaton.http.HttpFetcher;
+import net.jimj.automaton.http.PageInfo;
+import net.jimj.automaton.model.HttpConfig;
+import net.jimj.automaton.model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TitleCommandTest {
+    private BlockingQueue<Exception> failures = new LinkedBlockingQueue<>();
+    private BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+    private HttpFetcher fetcher;
+    private TitleCommand command;
+
+    @Before
+    public void init() {
+        fetcher = new HttpFetcher(new HttpConfig()) {
+            @Override
+            protected PageInfo fetchPage(String url) throws IOException {
+                try {
+                    return super.fetchPage(url);
+                }catch(IOException e) {
+                    failures.add(e);
+                    throw e;
+                }
+            }
+        };
+        command = new TitleCommand(fetcher) {
+            @Override
+            public void publish(Event event) {
+                replies.add(((MessageEvent)event).getMessage());
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        fetcher.shutdown();
+    }
+
+    @Test
+    public void testFindUrls() {
+        assertEquals(Arrays.asList("http://example.com/a", "https://example.com/b?c=d"),
+                TitleCommand.findUrls("see http://example.com/a, and (https://example.com/b?c=d). http://example.com/a"));
+        assertTrue(TitleCommand.findUrls("no links here").isEmpty());
+    }
+
+    @Test
+    public void testUrlsPerLineAreCapped() {
+        assertEquals(3, TitleCommand.findUrls("http://a.com http://b.com http://c.com http://d.com").size());
+    }
+
+    @Test
+    public void testDescribe() {
+        assertEquals("[ Cats ] text/html, 12 KB", TitleCommand.describe(new PageInfo(200, "text/html", 12 * 1024, "Cats")));
+        assertEquals("image/png, 1.5 MB", TitleCommand.describe(new PageInfo(200, "image/png", 1536 * 1024, null)));
+        assertEquals("text/plain", TitleCommand.describe(new PageInfo(200, "text/plain", -1, null)));
+        assertNull("Errors aren't announced", TitleCommand.describe(new PageInfo(404, "text/html", 10, "Not Found")));
+    }
+
+    @Test
+    public void testFormatSize() {
+        assertEquals("512 B", TitleCommand.formatSize(512));
+        assertEquals("1.0 KB", TitleCommand.formatSize(1024));
+        assertEquals("200 MB", TitleCommand.formatSize(200L * 1024 * 1024));
+    }
+
+    @Test
+    public void testPrivateLinksAreIgnored() throws InterruptedException {
+        command.process(new User(), "see http://127.0.0.1/admin and http://10.0.0.1/ and http://[::1]:8080/");
+        for(int i=0;i<3;i++) {
+            assertTrue(failures.poll(5, TimeUnit.SECONDS) instanceof UnknownHostException);
+        }
+        assertNull(replies.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPrivateLinksAreRefused() throws InterruptedException {
+        command.execute(new User(), Args.parseCommand(".title http://127.0.0.1/", 1));
+        assertEquals("Couldn't fetch http://127.0.0.1/: 127.0.0.1 isn't a public address",
+                replies.poll(5, TimeUnit.SECONDS));
+        command.execute(new User(), Args.parseCommand(".title 10.0.0.1", 1));
+        assertEquals("Couldn't fetch http://10.0.0.1: 10.0.0.1 isn't a public address",
+                replies.poll(5, TimeUnit.SECONDS));
+    }
+}
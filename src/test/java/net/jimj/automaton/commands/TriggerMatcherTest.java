@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.commands;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TriggerMatcherTest {
+    private TriggerMatcher<String> matcher;
+
+    @Before
+    public void init() {
+        Map<String, List<Trigger>> triggers = new LinkedHashMap<>();
+        triggers.put("karma", Arrays.asList(Trigger.suffix("++"), Trigger.suffix("--")));
+        triggers.put("yourmom", Collections.singletonList(Trigger.contains("your mom")));
+        triggers.put("url", Collections.singletonList(Trigger.regex("https?://\\S+")));
+        triggers.put("nested", Arrays.asList(Trigger.contains("she"), Trigger.contains("hers")));
+        matcher = TriggerMatcher.compile(triggers);
+    }
+
+    @Test
+    public void testSuffix() {
+        assertEquals(Arrays.asList("karma"), matcher.match("jimj++"));
+        assertEquals(Arrays.asList("karma"), matcher.match("java--"));
+        assertEquals("Suffixes only count at the end", Collections.emptyList(), matcher.match("c++ is fine"));
+    }
+
+    @Test
+    public void testContainsIgnoresCase() {
+        assertEquals(Arrays.asList("yourmom"), matcher.match("did you see what YOUR MoM did"));
+        assertEquals(Collections.emptyList(), matcher.match("your moth"));
+    }
+
+    @Test
+    public void testRegex() {
+        assertEquals(Arrays.asList("url"), matcher.match("look at http://example.com"));
+    }
+
+    @Test
+    public void testOverlappingLiterals() {
+        //"ushers" has both "she" and "hers" overlapping, the classic fail link case.
+        assertEquals(Arrays.asList("nested"), matcher.match("ushers"));
+        assertEquals(Arrays.asList("nested"), matcher.match("xhersx"));
+    }
+
+    @Test
+    public void testMultipleTargetsKeepOrder() {
+        assertEquals(Arrays.asList("karma", "yourmom", "url"), matcher.match("your mom http://x.org++"));
+    }
+
+    @Test
+    public void testAlways() {
+        Map<String, List<Trigger>> triggers = new LinkedHashMap<>();
+        triggers.put("note", Collections.singletonList(Trigger.always()));
+        triggers.put("karma", Collections.singletonList(Trigger.suffix("++")));
+        TriggerMatcher<String> withAlways = TriggerMatcher.compile(triggers);
+
+        assertEquals(Arrays.asList("note"), withAlways.match(""));
+        assertEquals(Arrays.asList("note", "karma"), withAlways.match("a++"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.dispatch;
+
+import net.jimj.automaton.model.DispatchConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DispatcherTest {
+    private DispatchConfig config;
+    private Dispatcher dispatcher;
+
+    @Before
+    public void init() {
+        config = new DispatchConfig();
+        config.setThreads(4);
+        dispatcher = new Dispatcher(config);
+    }
+
+    @After
+    public void cleanup() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testLaneOrdering() throws Exception {
+        final List<Integer> seen = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(20);
+        for(int i=0;i<20;i++) {
+            final int num = i;
+            assertTrue(dispatcher.dispatch("#chan", "task" + (i % 3), new Runnable() {
+                @Override
+                public void run() {
+                    seen.add(num);
+                    done.countDown();
+                }
+            }));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for(int i=0;i<20;i++) {
+            assertEquals("Tasks in a lane should run in order", i, seen.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testCommandLimit() throws Exception {
+        config.getLimits().put("slow", 1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        assertTrue(dispatcher.dispatch("#one", "slow", new Blocker(release)));
+        assertFalse("Second slow task should be rejected", dispatcher.dispatch("#two", "slow", new Blocker(release)));
+        assertTrue("Other tasks should still be accepted", dispatcher.dispatch("#two", "fast", new Blocker(release)));
+
+        release.countDown();
+    }
+
+    @Test
+    public void testLaneDepth() throws Exception {
+        config.setLaneDepth(2);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        //First task is pulled off the lane and blocks, the next two fill the lane.
+        assertTrue(dispatcher.dispatch("#chan", "a", new Blocker(release)));
+        Thread.sleep(100);
+        assertTrue(dispatcher.dispatch("#chan", "b", new Blocker(release)));
+        assertTrue(dispatcher.dispatch("#chan", "c", new Blocker(release)));
+        assertFalse("Full lane should reject", dispatcher.dispatch("#chan", "d", new Blocker(release)));
+        assertTrue("Other lanes are unaffected", dispatcher.dispatch("#other", "d", new Blocker(release)));
+
+        release.countDown();
+    }
+
+    @Test
+    public void testShutdownFinishesQueuedWork() throws Exception {
+        final List<Integer> seen = Collections.synchronizedList(new ArrayList<Integer>());
+        for(int i=0;i<10;i++) {
+            final int num = i;
+            assertTrue(dispatcher.dispatch("#chan", "task" + i, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(20);
+                    }catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    seen.add(num);
+                }
+            }));
+        }
+
+        dispatcher.shutdown();
+        assertEquals("Everything queued before shutdown should run", 10, seen.size());
+        assertFalse("Nothing new is taken after shutdown", dispatcher.dispatch("#chan", "late", new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+    }
+
+    private static class Blocker implements Runnable {
+        private final CountDownLatch release;
+
+        private Blocker(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.events;
+
+import net.jimj.automaton.store.PublishingStorage;
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventBusTest {
+    private EventBus events = new EventBus();
+
+    @After
+    public void tearDown() {
+        events.shutdown();
+    }
+
+    @Test
+    public void testSubscribersGetTheirTypes() {
+        List<Object> joins = record(JoinEvent.class);
+        List<Object> everything = record(Event.class);
+
+        JoinEvent join = new JoinEvent("net", "#chan", "foo");
+        QuitEvent quit = new QuitEvent("net", "foo", "bye");
+        events.publish(join);
+        events.publish(quit);
+
+        assertEquals(Collections.<Object>singletonList(join), joins);
+        assertEquals(2, everything.size());
+        assertSame(quit, everything.get(1));
+    }
+
+    @Test
+    public void testCancel() {
+        List<Object> joins = new ArrayList<>();
+        EventBus.Subscription<JoinEvent> subscription = events.subscribe(JoinEvent.class, recorder(joins));
+        List<Object> others = record(JoinEvent.class);
+
+        events.publish(new JoinEvent("net", "#chan", "foo"));
+        subscription.cancel();
+        events.publish(new JoinEvent("net", "#chan", "bar"));
+
+        assertEquals(1, joins.size());
+        assertEquals(2, others.size());
+    }
+
+    @Test
+    public void testFailingSubscriberDoesNotStopOthers() {
+        events.subscribe(Event.class, new Subscriber<Event>() {
+            @Override
+            public void onEvent(Event event) {
+                throw new IllegalStateException("broken");
+            }
+        });
+        List<Object> joins = record(JoinEvent.class);
+
+        events.publish(new JoinEvent("net", "#chan", "foo"));
+        assertEquals(1, joins.size());
+        assertEquals(1, events.getFailed());
+    }
+
+    @Test
+    public void testLanesDeliverInOrderOffThePublisher() throws InterruptedException {
+        final List<Object> delivered = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch done = new CountDownLatch(100);
+        events.subscribe(QuitEvent.class, new Subscriber<QuitEvent>() {
+            @Override
+            public void onEvent(QuitEvent event) {
+                delivered.add(event.getNick());
+                threads.add(Thread.currentThread());
+                done.countDown();
+            }
+        }, "slow");
+
+        for(int i=0;i<100;i++) {
+            events.publish(new QuitEvent("net", String.valueOf(i), null));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for(int i=0;i<100;i++) {
+            assertEquals(String.valueOf(i), delivered.get(i));
+            assertNotSame(Thread.currentThread(), threads.get(i));
+        }
+    }
+
+    @Test
+    public void testFullLaneDrops() throws InterruptedException {
+        events = new EventBus(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        events.subscribe(QuitEvent.class, new Subscriber<QuitEvent>() {
+            @Override
+            public void onEvent(QuitEvent event) {
+                started.countDown();
+                try {
+                    release.await();
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "blocked");
+
+        events.publish(new QuitEvent("net", "running", null));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        events.publish(new QuitEvent("net", "queued", null));
+        events.publish(new QuitEvent("net", "dropped", null));
+        assertEquals(1, events.getDropped());
+        release.countDown();
+    }
+
+    @Test
+    public void testStoreWritesArePublished() {
+        List<Object> writes = record(StoreWriteEvent.class);
+        Storage storage = new PublishingStorage(new EmbeddedStorage(null), events);
+
+        storage.getYourMomStore().add("your mom");
+        storage.getYourMomStore().findRandom();
+        storage.getKarmaStore().getKarma("net", "foo");
+
+        assertEquals("Reads aren't published", 1, writes.size());
+        StoreWriteEvent write = (StoreWriteEvent)writes.get(0);
+        assertEquals("yourmom", write.getStore());
+        assertEquals("add", write.getMethod());
+        assertEquals(Collections.<Object>singletonList("your mom"), write.getArguments());
+    }
+
+    private List<Object> record(Class<? extends Event> type) {
+        List<Object> recorded = new ArrayList<>();
+        events.subscribe(type, recorder(recorded));
+        return recorded;
+    }
+
+    private Subscriber<Event> recorder(final List<Object> recorded) {
+        return new Subscriber<Event>() {
+            @Override
+            public void onEvent(Event event) {
+                recorded.add(event);
+            }
+        };
+    }
+}
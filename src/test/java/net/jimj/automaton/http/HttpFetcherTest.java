@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.jimj.automaton.model.HttpConfig;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HttpFetcherTest {
+    private HttpServer server;
+    private HttpFetcher fetcher;
+    private AtomicInteger requests = new AtomicInteger();
+    private String baseUrl;
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                exchange.getResponseHeaders().add("Server", "test");
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.createContext("/page", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    //Long enough for a second ask to find this one in flight.
+                    Thread.sleep(100);
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = ("<html><head><TITLE>\n  Cats &amp; dogs\n</TITLE></head><body>" +
+                        StringUtils.repeat("woof ", 10000) + "</body></html>").getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        HttpConfig config = new HttpConfig();
+        config.setReadTimeoutMillis(200);
+        config.setAllowPrivateAddresses(true);
+        fetcher = new HttpFetcher(config);
+    }
+
+    @After
+    public void tearDown() {
+        fetcher.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testHead() throws Exception {
+        Results results = new Results();
+        assertTrue(fetcher.head(baseUrl + "/ok", results));
+        HeadResult result = (HeadResult)results.next();
+        assertEquals(200, result.getStatusCode());
+        assertEquals("test", result.getServer());
+    }
+
+    @Test
+    public void testResultsAreCached() throws Exception {
+        Results results = new Results();
+        fetcher.head(baseUrl + "/ok", results);
+        results.next();
+        fetcher.head(baseUrl + "/ok", results);
+        assertEquals("Cached answers come back right away", 200, ((HeadResult)results.queue.poll()).getStatusCode());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Results results = new Results();
+        fetcher.head(baseUrl + "/slow", results);
+        assertTrue(results.next() instanceof SocketTimeoutException);
+
+        //Failures aren't cached.
+        fetcher.head(baseUrl + "/slow", results);
+        assertTrue(results.next() instanceof SocketTimeoutException);
+    }
+
+    @Test
+    public void testPrivateAddressesAreRefused() throws Exception {
+        HttpFetcher guarded = new HttpFetcher(new HttpConfig());
+        try {
+            Results results = new Results();
+            guarded.head(baseUrl + "/ok", results);
+            assertTrue(results.next() instanceof UnknownHostException);
+            assertEquals(0, requests.get());
+        }finally {
+            guarded.shutdown();
+        }
+    }
+
+    @Test
+    public void testPage() throws Exception {
+        PageResults results = new PageResults();
+        assertTrue(fetcher.page(baseUrl + "/page", results));
+        PageInfo page = (PageInfo)results.next();
+        assertEquals("Cats & dogs", page.getTitle());
+        assertEquals("text/html", page.getContentType());
+        assertTrue(page.getContentLength() > 50000);
+    }
+
+    @Test
+    public void testConcurrentAsksShareOneFetch() throws Exception {
+        PageResults first = new PageResults();
+        PageResults second = new PageResults();
+        fetcher.page(baseUrl + "/page", first);
+        fetcher.page(baseUrl + "/page", second);
+        assertEquals("Cats & dogs", ((PageInfo)first.next()).getTitle());
+        assertEquals("Cats & dogs", ((PageInfo)second.next()).getTitle());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testFindTitle() {
+        assertEquals("a title", HttpFetcher.findTitle("<title lang=\"en\">a\ttitle</title>"));
+        assertNull(HttpFetcher.findTitle("<title> </title>"));
+        assertNull(HttpFetcher.findTitle("<title>cut off before the end"));
+    }
+
+    private static class PageResults implements HttpFetcher.Callback<PageInfo> {
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void completed(PageInfo result) {
+            queue.add(result);
+        }
+
+        @Override
+        public void failed(Exception e) {
+            queue.add(e);
+        }
+
+        private Object next() throws InterruptedException {
+            Object result = queue.poll(5, TimeUnit.SECONDS);
+            assertNotNull("No answer from the fetcher", result);
+            return result;
+        }
+    }
+
+    private static class Results implements HttpFetcher.Callback<HeadResult> {
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void completed(HeadResult result) {
+            queue.add(result);
+        }
+
+        @Override
+        public void failed(Exception e) {
+            queue.add(e);
+        }
+
+        private Object next() throws InterruptedException {
+            Object result = queue.poll(5, TimeUnit.SECONDS);
+            assertNotNull("No answer from the fetcher", result);
+            return result;
+        }
+    }
+}
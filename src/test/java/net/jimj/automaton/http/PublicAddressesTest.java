@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.http;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.*;
+
+public class PublicAddressesTest {
+    @Test
+    public void testPrivateAddresses() throws UnknownHostException {
+        for(String address : new String[] {"127.0.0.1", "127.1.2.3", "10.0.0.1", "172.16.5.4", "192.168.1.1",
+                "169.254.169.254", "0.0.0.0", "224.0.0.1", "::1", "::", "fe80::1", "fc00::1", "fd12:3456::1",
+                "::ffff:127.0.0.1"}) {
+            assertFalse(address, PublicAddresses.isPublic(InetAddress.getByName(address)));
+        }
+    }
+
+    @Test
+    public void testPublicAddresses() throws UnknownHostException {
+        for(String address : new String[] {"93.184.216.34", "8.8.8.8", "172.32.0.1", "2001:4860:4860::8888"}) {
+            assertTrue(address, PublicAddresses.isPublic(InetAddress.getByName(address)));
+        }
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void testRequirePublic() throws UnknownHostException {
+        PublicAddresses.requirePublic("sneaky.example", new InetAddress[] {
+                InetAddress.getByName("93.184.216.34"), InetAddress.getByName("10.0.0.1")});
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import net.jimj.automaton.Bot;
+import net.jimj.automaton.BotRuntime;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.OutboundConfig;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A real Bot, connected over loopback to a FakeIrcServer, under load from a TrafficGenerator.
+ *
+ * Too slow for every build, so it only runs in the loadtest profile: mvn verify -Ploadtest
+ */
+public class BotLoadTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BotLoadTest.class);
+    private static final String NETWORK = "loadnet";
+
+    private LoadProfile profile;
+    private TrafficGenerator generator;
+    private FakeIrcServer server;
+    private EmbeddedStorage storage;
+    private MetricRegistry metrics;
+    private BotRuntime runtime;
+    private File logDir;
+
+    @Before
+    public void setUp() throws Exception {
+        profile = LoadProfile.fromSystemProperties();
+        generator = new TrafficGenerator(profile);
+        server = new FakeIrcServer(generator);
+        server.start();
+
+        List<String> channels = profile.getChannelNames();
+        NetworkConfig network = new NetworkConfig(NETWORK, server.getHost(), "automaton", ".",
+                channels.toArray(new String[channels.size()]));
+        network.setPort(server.getPort());
+
+        Config config = new Config();
+        config.setNetworks(Collections.singletonList(network));
+        logDir = Files.createTempDirectory("loadtest-log").toFile();
+        config.getLog().setDir(logDir.getPath());
+
+        OutboundConfig outbound = config.getOutbound();
+        outbound.setLinesPerSecond(profile.getOutboundLinesPerSecond());
+        outbound.setTargetLinesPerSecond(profile.getOutboundLinesPerSecond());
+
+        storage = new EmbeddedStorage(null);
+        metrics = new MetricRegistry();
+        runtime = new BotRuntime(config, storage, metrics);
+    }
+
+    @After
+    public void tearDown() {
+        runtime.shutdown();
+        server.close();
+        for(Bot bot : runtime.getBots()) {
+            bot.dispose();
+        }
+        storage.close();
+        metrics.close();
+
+        File[] segments = logDir.listFiles();
+        for(File segment : segments == null ? new File[0] : segments) {
+            segment.delete();
+        }
+        logDir.delete();
+    }
+
+    @Test
+    public void testKeepsUp() throws Exception {
+        runtime.start();
+        assertTrue("Bot never joined its channels", server.awaitJoined(profile.getChannelNames(), 10000));
+
+        LoadReport report = generator.run(server, metrics, NETWORK);
+        LOGGER.info("Load test results:\n" + report);
+
+        //Work turned away by the dispatcher's limits is shed on purpose, so it's reported but allowed.
+        assertEquals("Unanswered lines", 0, report.getMissing());
+        assertEquals("Answers to nothing", 0, report.getUnexpected());
+        assertEquals("Errors reported", 0, report.getErrors());
+        assertTrue("p99 reply latency of " + report.getLatencyMillis(0.99) + "ms",
+                report.getLatencyMillis(0.99) <= profile.getMaxP99Millis());
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Just enough of an ircd on the loopback interface for a Bot to connect, join channels and talk.
+ *
+ * Clients are welcomed as soon as they've sent NICK and USER, every JOIN succeeds, and PINGs are
+ * answered.  What clients say with PRIVMSG goes to the Listener; lines for clients to hear are
+ * injected with say().  There's no routing between clients, every client hears everything.
+ */
+public class FakeIrcServer implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FakeIrcServer.class);
+    private static final String NAME = "fake.server";
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    public interface Listener {
+        /**
+         * Called on the connection's reader thread, so keep it quick.
+         */
+        public void onPrivmsg(String from, String target, String message);
+    }
+
+    private final Listener listener;
+    private final ServerSocket serverSocket;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final Set<String> joined = new HashSet<>();
+    private Thread acceptor;
+    private volatile boolean closed;
+
+    public FakeIrcServer(Listener listener) throws IOException {
+        this.listener = listener;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "fake-ircd-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Wait for a client to have joined all the channels.
+     * @return false if they weren't all joined in time.
+     */
+    public boolean awaitJoined(Collection<String> channels, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized(joined) {
+            while(!joined.containsAll(channels)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0) {
+                    return false;
+                }
+                joined.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Have a nick say something to a channel (or a client's nick) that every client hears.
+     */
+    public void say(String nick, String target, String message) {
+        String line = ":" + nick + "!" + nick + "@loopback PRIVMSG " + target + " :" + message;
+        for(Connection connection : connections) {
+            connection.send(line);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        }catch(IOException e) {
+            LOGGER.warn("Couldn't close the server socket", e);
+        }
+        for(Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void accept() {
+        while(!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread reader = new Thread(connection, "fake-ircd-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            }catch(IOException e) {
+                if(!closed) {
+                    LOGGER.warn("Couldn't accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private void joined(String channel) {
+        synchronized(joined) {
+            joined.add(channel);
+            joined.notifyAll();
+        }
+    }
+
+    /**
+     * One client.  Lines from it are handled on its own thread, lines to it are written by whoever sends them.
+     */
+    private class Connection implements Runnable {
+        private final Socket socket;
+        private final Writer out;
+        private String nick;
+        private String login;
+        private boolean welcomed;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), CHARSET));
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+                String line;
+                while((line = in.readLine()) != null) {
+                    handle(line);
+                }
+            }catch(SocketException e) {
+                //Closed from one end or the other.
+            }catch(IOException e) {
+                LOGGER.warn("Lost a client", e);
+            }finally {
+                close();
+            }
+        }
+
+        private void handle(String line) {
+            String trailing = null;
+            int colon = line.indexOf(" :");
+            if(colon != -1) {
+                trailing = line.substring(colon + 2);
+                line = line.substring(0, colon);
+            }
+            String[] parts = line.split(" ");
+            String command = parts[0].toUpperCase();
+
+            switch(command) {
+                case "NICK":
+                    nick = parts.length > 1 ? parts[1] : trailing;
+                    welcome();
+                    break;
+                case "USER":
+                    login = parts.length > 1 ? parts[1] : nick;
+                    welcome();
+                    break;
+                case "JOIN":
+                    for(String channel : (parts.length > 1 ? parts[1] : trailing).split(",")) {
+                        send(":" + nick + "!" + login + "@loopback JOIN :" + channel);
+                        joined(channel);
+                    }
+                    break;
+                case "PING":
+                    send(":" + NAME + " PONG " + NAME + " :" + (trailing == null ? parts[1] : trailing));
+                    break;
+                case "PRIVMSG":
+                    if(parts.length > 1 && trailing != null) {
+                        listener.onPrivmsg(nick, parts[1], trailing);
+                    }
+                    break;
+                case "QUIT":
+                    close();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void welcome() {
+            if(welcomed || nick == null || login == null) {
+                return;
+            }
+            welcomed = true;
+            send(":" + NAME + " 001 " + nick + " :Welcome to the fake network " + nick);
+            send(":" + NAME + " 002 " + nick + " :Your host is " + NAME);
+            send(":" + NAME + " 003 " + nick + " :This server was created just now");
+            send(":" + NAME + " 004 " + nick + " " + NAME + " fake-1.0 o o");
+        }
+
+        private synchronized void send(String line) {
+            try {
+                out.write(line);
+                out.write("\r\n");
+                out.flush();
+            }catch(IOException e) {
+                if(!closed) {
+                    LOGGER.warn("Couldn't write to " + nick, e);
+                }
+            }
+        }
+
+        private void close() {
+            connections.remove(this);
+            try {
+                socket.close();
+            }catch(IOException e) {
+                LOGGER.warn("Couldn't close the connection to " + nick, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What traffic to throw at the bot, and what counts as keeping up with it.
+ *
+ * Every setting can be given as a loadtest.* system property, e.g.
+ * -Dloadtest.rate=500 -Dloadtest.mix=karma_query=1,chatter=3
+ */
+public class LoadProfile {
+    /**
+     * The kinds of line users say, and whether the bot answers them.
+     */
+    public enum Action {
+        KARMA_CHANGE(false),
+        KARMA_QUERY(true),
+        QUOTE_STORE(true),
+        QUOTE_SEARCH(true),
+        NOTE(false),
+        CHATTER(false);
+
+        private final boolean replied;
+
+        private Action(boolean replied) {
+            this.replied = replied;
+        }
+
+        public boolean isReplied() {
+            return replied;
+        }
+    }
+
+    private int channels = 4;
+    private int users = 40;
+    private int karmaItems = 200;
+    private double linesPerSecond = 200;
+    private int seconds = 10;
+    private double burstiness = 0.1;
+    private int burstSize = 20;
+    private int drainSeconds = 10;
+    private long seed = 42;
+    private double outboundLinesPerSecond = 10000;
+    private long maxP99Millis = 500;
+    private Map<Action, Integer> mix = parseMix("karma_change=30,karma_query=20,quote_store=10,quote_search=10,note=5,chatter=25");
+
+    public static LoadProfile fromSystemProperties() {
+        LoadProfile profile = new LoadProfile();
+        profile.channels = Integer.getInteger("loadtest.channels", profile.channels);
+        profile.users = Integer.getInteger("loadtest.users", profile.users);
+        profile.karmaItems = Integer.getInteger("loadtest.karmaItems", profile.karmaItems);
+        profile.linesPerSecond = getDouble("loadtest.rate", profile.linesPerSecond);
+        profile.seconds = Integer.getInteger("loadtest.seconds", profile.seconds);
+        profile.burstiness = getDouble("loadtest.burstiness", profile.burstiness);
+        profile.burstSize = Integer.getInteger("loadtest.burstSize", profile.burstSize);
+        profile.drainSeconds = Integer.getInteger("loadtest.drainSeconds", profile.drainSeconds);
+        profile.seed = Long.getLong("loadtest.seed", profile.seed);
+        profile.outboundLinesPerSecond = getDouble("loadtest.outboundRate", profile.outboundLinesPerSecond);
+        profile.maxP99Millis = Long.getLong("loadtest.maxP99Millis", profile.maxP99Millis);
+        String mix = System.getProperty("loadtest.mix");
+        if(mix != null) {
+            profile.mix = parseMix(mix);
+        }
+        return profile;
+    }
+
+    /**
+     * @param mix comma separated action=weight pairs, e.g. "karma_query=2,chatter=1".  Actions left out never happen.
+     */
+    public static Map<Action, Integer> parseMix(String mix) {
+        Map<Action, Integer> weights = new EnumMap<>(Action.class);
+        for(String pair : mix.split(",")) {
+            String[] parts = pair.trim().split("=");
+            if(parts.length != 2) {
+                throw new IllegalArgumentException("Expected action=weight, not " + pair);
+            }
+            weights.put(Action.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    public List<String> getChannelNames() {
+        List<String> names = new ArrayList<>(channels);
+        for(int i=0;i<channels;i++) {
+            names.add("#load" + i);
+        }
+        return names;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public void setChannels(int channels) {
+        this.channels = channels;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public void setUsers(int users) {
+        this.users = users;
+    }
+
+    /**
+     * How many different things get karma, fewer means more contention on each.
+     */
+    public int getKarmaItems() {
+        return karmaItems;
+    }
+
+    public void setKarmaItems(int karmaItems) {
+        this.karmaItems = karmaItems;
+    }
+
+    /**
+     * The average rate, across all channels, bursts included.
+     */
+    public double getLinesPerSecond() {
+        return linesPerSecond;
+    }
+
+    public void setLinesPerSecond(double linesPerSecond) {
+        this.linesPerSecond = linesPerSecond;
+    }
+
+    public int getSeconds() {
+        return seconds;
+    }
+
+    public void setSeconds(int seconds) {
+        this.seconds = seconds;
+    }
+
+    /**
+     * The chance (0 to 1) that a line comes as part of a burst of burstSize lines at once.
+     */
+    public double getBurstiness() {
+        return burstiness;
+    }
+
+    public void setBurstiness(double burstiness) {
+        this.burstiness = burstiness;
+    }
+
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    public void setBurstSize(int burstSize) {
+        this.burstSize = burstSize;
+    }
+
+    /**
+     * How long to wait for replies once the traffic stops.
+     */
+    public int getDrainSeconds() {
+        return drainSeconds;
+    }
+
+    public void setDrainSeconds(int drainSeconds) {
+        this.drainSeconds = drainSeconds;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * The bot's outbound rate, overall and per channel.  The default is high enough that flood
+     * control isn't what's measured; set it to the real limits to see how replies queue behind them.
+     */
+    public double getOutboundLinesPerSecond() {
+        return outboundLinesPerSecond;
+    }
+
+    public void setOutboundLinesPerSecond(double outboundLinesPerSecond) {
+        this.outboundLinesPerSecond = outboundLinesPerSecond;
+    }
+
+    public long getMaxP99Millis() {
+        return maxP99Millis;
+    }
+
+    public void setMaxP99Millis(long maxP99Millis) {
+        this.maxP99Millis = maxP99Millis;
+    }
+
+    public Map<Action, Integer> getMix() {
+        return mix;
+    }
+
+    public void setMix(Map<Action, Integer> mix) {
+        this.mix = mix;
+    }
+
+    private static double getDouble(String property, double defaultValue) {
+        String value = System.getProperty(property);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * What happened during a load run.
+ */
+public class LoadReport {
+    private long sent;
+    private double sendSeconds;
+    private long expected;
+    private long[] latencies = new long[0];
+    private long unexpected;
+    private long errors;
+    private long noteDeliveries;
+    private long dropNotices;
+    private long maxOutboundQueued;
+    private long maxDispatchPending;
+    private long outboundSent;
+    private long outboundCoalesced;
+    private long outboundDropped;
+    private long dispatchRejected;
+    private long eventsDropped;
+
+    /**
+     * @return lines users said.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    void setSent(long sent, double sendSeconds) {
+        this.sent = sent;
+        this.sendSeconds = sendSeconds;
+    }
+
+    public double getLinesPerSecond() {
+        return sendSeconds == 0 ? 0 : sent / sendSeconds;
+    }
+
+    /**
+     * @return lines the bot should have answered.
+     */
+    public long getExpected() {
+        return expected;
+    }
+
+    void setExpected(long expected) {
+        this.expected = expected;
+    }
+
+    public long getAnswered() {
+        return latencies.length;
+    }
+
+    /**
+     * @return lines that never got an answer.
+     */
+    public long getMissing() {
+        return expected - latencies.length;
+    }
+
+    void setLatencies(long[] latencies) {
+        this.latencies = latencies.clone();
+        Arrays.sort(this.latencies);
+    }
+
+    /**
+     * @return the reply latency at a quantile (0 to 1), in milliseconds.
+     */
+    public double getLatencyMillis(double quantile) {
+        if(latencies.length == 0) {
+            return 0;
+        }
+        int index = Math.max(0, (int)Math.ceil(quantile * latencies.length) - 1);
+        return latencies[Math.min(index, latencies.length - 1)] / 1e6;
+    }
+
+    /**
+     * @return replies that didn't match anything said.
+     */
+    public long getUnexpected() {
+        return unexpected;
+    }
+
+    void setUnexpected(long unexpected) {
+        this.unexpected = unexpected;
+    }
+
+    /**
+     * @return lines the bot sent to somewhere other than a channel, i.e. error reports.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    void setNoteDeliveries(long noteDeliveries) {
+        this.noteDeliveries = noteDeliveries;
+    }
+
+    void setDropNotices(long dropNotices) {
+        this.dropNotices = dropNotices;
+    }
+
+    public long getMaxOutboundQueued() {
+        return maxOutboundQueued;
+    }
+
+    void setMaxOutboundQueued(long maxOutboundQueued) {
+        this.maxOutboundQueued = maxOutboundQueued;
+    }
+
+    public long getMaxDispatchPending() {
+        return maxDispatchPending;
+    }
+
+    void setMaxDispatchPending(long maxDispatchPending) {
+        this.maxDispatchPending = maxDispatchPending;
+    }
+
+    void setOutbound(long sent, long coalesced, long dropped) {
+        this.outboundSent = sent;
+        this.outboundCoalesced = coalesced;
+        this.outboundDropped = dropped;
+    }
+
+    public long getOutboundDropped() {
+        return outboundDropped;
+    }
+
+    public long getDispatchRejected() {
+        return dispatchRejected;
+    }
+
+    void setDispatchRejected(long dispatchRejected) {
+        this.dispatchRejected = dispatchRejected;
+    }
+
+    void setEventsDropped(long eventsDropped) {
+        this.eventsDropped = eventsDropped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sent %d lines at %.1f/s%n" +
+                        "replies: %d of %d expected, %d missing, %d unexpected, %d errors%n" +
+                        "latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n" +
+                        "outbound: %d lines sent, %d coalesced, %d dropped (%d notices), at most %d queued%n" +
+                        "dispatch: at most %d pending, %d rejected; events dropped: %d; notes delivered: %d",
+                sent, getLinesPerSecond(),
+                getAnswered(), expected, getMissing(), unexpected, errors,
+                getLatencyMillis(0.5), getLatencyMillis(0.9), getLatencyMillis(0.99), getLatencyMillis(1),
+                outboundSent, outboundCoalesced, outboundDropped, dropNotices, maxOutboundQueued,
+                maxDispatchPending, dispatchRejected, eventsDropped, noteDeliveries);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import net.jimj.automaton.Bot;
+import net.jimj.automaton.BotRuntime;
+import net.jimj.automaton.commands.Args;
+import net.jimj.automaton.commands.Command;
+import net.jimj.automaton.commands.CommandRegistry;
+import net.jimj.automaton.commands.HeadCommand;
+import net.jimj.automaton.commands.QuoteCommand;
+import net.jimj.automaton.commands.TitleCommand;
+import net.jimj.automaton.commands.YourMomCommand;
+import net.jimj.automaton.dispatch.Dispatcher;
+import net.jimj.automaton.log.ChannelLog;
+import net.jimj.automaton.log.LogRecord;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.model.DispatchConfig;
+import net.jimj.automaton.model.LogConfig;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.OutboundConfig;
+import net.jimj.automaton.plugins.PluginManager;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Plays recorded channel lines through Bot.onMessage as fast as they'll go, with no network.
+ *
+ * Each replay gets a fresh bot with in-memory storage.  Commands and processors run on the
+ * replaying thread, and whatever the bot queues to say is sent as soon as each line is done,
+ * straight into the transcript instead of to a server.  So replaying the same lines always says
+ * the same things, apart from:
+ *  - note deliveries, whose dates are masked out;
+ *  - quote lookups and .yourmom, which pick at random; the transcript only keeps where they answered.
+ * Commands that go out to the web aren't loaded.
+ */
+public class ReplayEngine {
+    private static final String NICK = "automaton";
+    private static final String HOST = "replay";
+    private static final Pattern WHEN = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2} \\S+");
+
+    private final String commandChar;
+
+    public ReplayEngine(String commandChar) {
+        this.commandChar = commandChar;
+    }
+
+    /**
+     * Read a whole channel log, e.g. a copy of the bot's data/log.  Nothing in it is deleted,
+     * whatever its age or size.
+     */
+    public static List<LogRecord> readLog(File dir) {
+        LogConfig config = new LogConfig();
+        config.setMaxAgeDays(Integer.MAX_VALUE);
+        config.setMaxBytes(Long.MAX_VALUE);
+        ChannelLog log = new ChannelLog(dir, config);
+        final List<LogRecord> records = new ArrayList<>();
+        try {
+            log.replay(log.getStartOffset(), new ChannelLog.Handler() {
+                @Override
+                public void handle(long offset, LogRecord record) {
+                    records.add(record);
+                }
+            });
+        }finally {
+            log.close();
+        }
+        return records;
+    }
+
+    public ReplayReport replay(List<LogRecord> records) throws IOException {
+        Set<String> networks = new LinkedHashSet<>();
+        for(LogRecord record : records) {
+            networks.add(record.getNetwork());
+        }
+
+        File logDir = Files.createTempDirectory("replay-log").toFile();
+        EmbeddedStorage storage = new EmbeddedStorage(null);
+        final List<String> sent = new ArrayList<>();
+        BotRuntime runtime = new BotRuntime(createConfig(networks, logDir), storage, new MetricRegistry()) {
+            @Override
+            protected Dispatcher createDispatcher(DispatchConfig dispatchConfig) {
+                return new InlineDispatcher(dispatchConfig);
+            }
+
+            @Override
+            protected Bot createBot(NetworkConfig network, OutboundConfig outboundConfig, MetricRegistry metrics) {
+                return new ReplayBot(this, network, outboundConfig, metrics, sent);
+            }
+        };
+
+        try {
+            leaveOutWebCommands(runtime.getRegistry());
+
+            List<Answer> answers = new ArrayList<>();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long allocatedBefore = allocatedBytes(threads);
+            long start = System.nanoTime();
+            for(int i=0;i<records.size();i++) {
+                LogRecord record = records.get(i);
+                ReplayBot bot = (ReplayBot)runtime.getBot(record.getNetwork());
+                bot.hear(record.getChannel(), record.getNick(), record.getMessage());
+                bot.sendQueued();
+                if(!sent.isEmpty()) {
+                    answers.add(new Answer(i, record, new ArrayList<>(sent)));
+                    sent.clear();
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes(threads);
+
+            Transcript transcript = new Transcript();
+            for(Answer answer : answers) {
+                boolean picked = isPick(runtime.getRegistry(), answer.record.getMessage());
+                List<String> outputs = new ArrayList<>(answer.sent.size());
+                for(String line : answer.sent) {
+                    int tab = line.indexOf('\t');
+                    String target = line.substring(0, tab);
+                    outputs.add(picked ? Transcript.picked(target)
+                            : Transcript.said(target, WHEN.matcher(line.substring(tab + 1)).replaceAll("<when>")));
+                }
+                transcript.add(answer.index, answer.record.getChannel() + " <" + answer.record.getNick() + "> " +
+                        answer.record.getMessage(), outputs);
+            }
+
+            long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+            return new ReplayReport(records.size(), nanos, allocated, transcript);
+        }finally {
+            runtime.shutdown();
+            storage.close();
+            deleteAll(logDir);
+        }
+    }
+
+    private Config createConfig(Set<String> networks, File logDir) {
+        Config config = new Config();
+        List<NetworkConfig> networkConfigs = new ArrayList<>();
+        for(String network : networks) {
+            networkConfigs.add(new NetworkConfig(network, HOST, NICK, commandChar, new String[0]));
+        }
+        config.setNetworks(networkConfigs);
+        config.getLog().setDir(logDir.getPath());
+        config.getPlugins().setDir(null);
+
+        //Everything goes out as soon as it's queued.
+        OutboundConfig outbound = config.getOutbound();
+        outbound.setBurst(Integer.MAX_VALUE);
+        outbound.setLinesPerSecond(Double.MAX_VALUE);
+        outbound.setTargetBurst(Integer.MAX_VALUE);
+        outbound.setTargetLinesPerSecond(Double.MAX_VALUE);
+        outbound.setMaxQueuedPerTarget(Integer.MAX_VALUE);
+        return config;
+    }
+
+    private void leaveOutWebCommands(CommandRegistry registry) {
+        List<Command> kept = new ArrayList<>();
+        for(Command command : registry.remove(PluginManager.BUILTIN)) {
+            if(!(command instanceof TitleCommand) && !(command instanceof HeadCommand)) {
+                kept.add(command);
+            }
+        }
+        registry.add(PluginManager.BUILTIN, kept);
+    }
+
+    /**
+     * @return true if the line's answer is picked at random.  Follows how QuoteCommand tells lookups from the rest.
+     */
+    private boolean isPick(CommandRegistry registry, String message) {
+        if(!message.startsWith(commandChar)) {
+            return false;
+        }
+
+        Args args = Args.parseCommand(message, commandChar.length());
+        Command command = registry.find(args);
+        if(command instanceof YourMomCommand) {
+            return true;
+        }
+        if(!(command instanceof QuoteCommand)) {
+            return false;
+        }
+        if(args.size() > 1 && "grab".equals(args.getString(0))) {
+            return false;
+        }
+        String text = args.text();
+        return args.size() <= 1 || text.indexOf('/') != text.lastIndexOf('/');
+    }
+
+    /**
+     * @return bytes allocated by this thread so far, or -1 if the JVM can't say.
+     */
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void deleteAll(File dir) {
+        File[] files = dir.listFiles();
+        for(File file : files == null ? new File[0] : files) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * What one replayed line got back.
+     */
+    private static class Answer {
+        private final int index;
+        private final LogRecord record;
+        private final List<String> sent;
+
+        private Answer(int index, LogRecord record, List<String> sent) {
+            this.index = index;
+            this.record = record;
+            this.sent = sent;
+        }
+    }
+
+    private static class InlineDispatcher extends Dispatcher {
+        private InlineDispatcher(DispatchConfig config) {
+            super(config);
+        }
+
+        @Override
+        public boolean dispatch(String laneKey, String taskName, Runnable task) {
+            task.run();
+            return true;
+        }
+    }
+
+    /**
+     * A Bot that's never connected; lines are handed to it, and what it sends is kept as "target\tline".
+     */
+    private static class ReplayBot extends Bot {
+        private final List<String> sent;
+
+        private ReplayBot(BotRuntime runtime, NetworkConfig network, OutboundConfig outboundConfig,
+                          MetricRegistry metrics, List<String> sent) {
+            super(runtime, network, outboundConfig, metrics);
+            this.sent = sent;
+        }
+
+        private void hear(String channel, String nick, String message) {
+            onMessage(channel, nick, nick, HOST, message);
+        }
+
+        @Override
+        protected void write(String target, String line) {
+            sent.add(target + "\t" + line);
+        }
+    }
+}
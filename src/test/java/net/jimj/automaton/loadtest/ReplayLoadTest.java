@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import net.jimj.automaton.log.LogRecord;
+import net.jimj.automaton.model.NetworkConfig;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays channel logs through the bot and checks it says what it said last time.
+ *
+ * By default that's the small sample log in the test resources and its checked in transcript.
+ * For real logs, point it at a copy of the log directory and a transcript file:
+ *
+ *   mvn verify -Ploadtest -Dreplay.logDir=/tmp/log-copy -Dreplay.transcript=/tmp/log.transcript -Dreplay.record=true
+ *
+ * records a transcript, and the same without replay.record checks against it.  The report from the
+ * last of replay.passes replays (the earlier ones warm up) gives lines per second and allocation.
+ */
+public class ReplayLoadTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayLoadTest.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SAMPLE_LOG = "/replay/sample.log";
+    private static final String SAMPLE_TRANSCRIPT = "/replay/sample.transcript";
+    private static final int MAX_DIFFERENCES = 20;
+
+    @Test
+    public void testReplayMatchesTranscript() throws Exception {
+        String logDir = System.getProperty("replay.logDir");
+        String transcriptFile = System.getProperty("replay.transcript");
+        List<LogRecord> records = logDir == null ? readSample() : ReplayEngine.readLog(new File(logDir));
+        ReplayEngine engine = new ReplayEngine(System.getProperty("replay.commandChar", "."));
+
+        int passes = Math.max(1, Integer.getInteger("replay.passes", 5));
+        ReplayReport first = null;
+        ReplayReport report = null;
+        for(int pass=1;pass<=passes;pass++) {
+            report = engine.replay(records);
+            LOGGER.info("Replay pass " + pass + ": " + report);
+            if(first == null) {
+                first = report;
+            }else {
+                List<String> differences = first.getTranscript().diff(report.getTranscript(), MAX_DIFFERENCES);
+                assertTrue("Pass " + pass + " said something different:\n" + StringUtils.join(differences, "\n"),
+                        differences.isEmpty());
+            }
+        }
+
+        if(Boolean.getBoolean("replay.record")) {
+            File out = new File(transcriptFile == null ? "target/replay.transcript" : transcriptFile);
+            try(Writer writer = new OutputStreamWriter(new FileOutputStream(out), UTF8)) {
+                report.getTranscript().write(writer);
+            }
+            LOGGER.info("Recorded the transcript in " + out);
+            return;
+        }
+
+        Transcript expected;
+        try(Reader reader = new InputStreamReader(transcriptFile == null ?
+                getClass().getResourceAsStream(SAMPLE_TRANSCRIPT) : new FileInputStream(transcriptFile), UTF8)) {
+            expected = Transcript.read(reader);
+        }
+        List<String> differences = expected.diff(report.getTranscript(), MAX_DIFFERENCES);
+        assertTrue("Replay doesn't match the transcript:\n" + StringUtils.join(differences, "\n"), differences.isEmpty());
+    }
+
+    /**
+     * @return the sample log's lines, which are channel, nick and message separated by tabs.
+     */
+    private List<LogRecord> readSample() throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        try(InputStream in = getClass().getResourceAsStream(SAMPLE_LOG)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if(fields.length == 3) {
+                    records.add(new LogRecord(records.size(), NetworkConfig.DEFAULT_NAME, fields[0], fields[1],
+                            fields[2], fields[2].startsWith(".")));
+                }
+            }
+        }
+        return records;
+    }
+}
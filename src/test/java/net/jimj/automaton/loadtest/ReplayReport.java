@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+/**
+ * How a replay went, and what the bot said during it.
+ */
+public class ReplayReport {
+    private final int lines;
+    private final long nanos;
+    private final long allocatedBytes;
+    private final Transcript transcript;
+
+    public ReplayReport(int lines, long nanos, long allocatedBytes, Transcript transcript) {
+        this.lines = lines;
+        this.nanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+        this.transcript = transcript;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public double getLinesPerSecond() {
+        return nanos == 0 ? 0 : lines * 1e9 / nanos;
+    }
+
+    /**
+     * @return bytes allocated on the replaying thread per line, or -1 if the JVM can't say.
+     */
+    public double getBytesPerLine() {
+        return allocatedBytes < 0 || lines == 0 ? -1 : allocatedBytes / (double)lines;
+    }
+
+    /**
+     * @return megabytes allocated per second of replay, or -1 if the JVM can't say.
+     */
+    public double getAllocationRate() {
+        return allocatedBytes < 0 || nanos == 0 ? -1 : allocatedBytes / 1e6 / (nanos / 1e9);
+    }
+
+    public Transcript getTranscript() {
+        return transcript;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("replayed %d lines in %.1f ms: %.0f lines/s, %.0f bytes/line allocated (%.1f MB/s), %d answered",
+                lines, nanos / 1e6, getLinesPerSecond(), getBytesPerLine(), getAllocationRate(),
+                transcript.getEntries().size());
+    }
+}
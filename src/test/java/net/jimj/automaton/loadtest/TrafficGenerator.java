@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import net.jimj.automaton.metrics.Counter;
+import net.jimj.automaton.metrics.Gauge;
+import net.jimj.automaton.metrics.MetricRegistry;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a crowd of users talking in channels, and times how long the bot takes to answer them.
+ *
+ * Lines go out at the profile's rate from one thread, some of them in bursts, with what's said
+ * picked at random by the profile's mix.  Replies are matched to what they answer by channel, in
+ * order: the bot handles each channel's commands one at a time, in the order they were said, and
+ * replies go out in that order too.  Replies joined into one line by the outbound queue are split
+ * back apart first.  Note deliveries and drop notices aren't answers to anything and are just counted.
+ */
+public class TrafficGenerator implements FakeIrcServer.Listener {
+    private static final String SEPARATOR = " | ";
+    private static final String NOTE_TEXT = "loadtest note ";
+    private static final String BUSY = ": busy, try again in a bit.";
+    private static final String[] WORDS = {"the", "build", "is", "broken", "again", "who", "pushed", "that",
+            "lunch", "coffee", "deploy", "friday", "never", "works", "on", "my", "machine", "cat", "keyboard"};
+    private static final long SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final LoadProfile profile;
+    private final Random random;
+    private final List<String> channels;
+    private final LoadProfile.Action[] actions;
+    private final int[] cumulativeWeights;
+
+    private final Map<String, ArrayDeque<Pending>> pending = new HashMap<>();
+    private long expected;
+    private long[] latencies = new long[1024];
+    private int answered;
+    private long unexpected;
+    private long errors;
+    private long noteDeliveries;
+    private long dropNotices;
+    private int sequence;
+
+    public TrafficGenerator(LoadProfile profile) {
+        this.profile = profile;
+        this.random = new Random(profile.getSeed());
+        this.channels = profile.getChannelNames();
+
+        Map<LoadProfile.Action, Integer> mix = profile.getMix();
+        actions = mix.keySet().toArray(new LoadProfile.Action[mix.size()]);
+        cumulativeWeights = new int[actions.length];
+        int total = 0;
+        for(int i=0;i<actions.length;i++) {
+            total += mix.get(actions[i]);
+            cumulativeWeights[i] = total;
+        }
+        if(total <= 0) {
+            throw new IllegalArgumentException("The mix needs at least one action with a weight");
+        }
+    }
+
+    /**
+     * Send the profile's traffic through the server, then wait for the replies to come in.
+     * @param metrics the bot's metrics, sampled for queueing as the run goes.
+     * @param network the bot's network name, which its outbound metrics are under.
+     */
+    public LoadReport run(FakeIrcServer server, MetricRegistry metrics, String network) {
+        Gauge outboundQueued = metrics.getGauges().get(network + ".outbound.queued");
+        Gauge dispatchPending = metrics.getGauges().get("dispatch.pending");
+        long maxOutboundQueued = 0;
+        long maxDispatchPending = 0;
+
+        double meanBurst = 1 + profile.getBurstiness() * (profile.getBurstSize() - 1);
+        long interval = (long)(TimeUnit.SECONDS.toNanos(1) * meanBurst / profile.getLinesPerSecond());
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(profile.getSeconds());
+        long next = start;
+        long nextSample = start;
+        long sent = 0;
+
+        while(next < end) {
+            long wait = next - System.nanoTime();
+            if(wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            int lines = random.nextDouble() < profile.getBurstiness() ? profile.getBurstSize() : 1;
+            for(int i=0;i<lines;i++) {
+                sendLine(server);
+                sent++;
+            }
+            next += interval;
+
+            long now = System.nanoTime();
+            if(now >= nextSample) {
+                maxOutboundQueued = Math.max(maxOutboundQueued, outboundQueued.getValue());
+                maxDispatchPending = Math.max(maxDispatchPending, dispatchPending.getValue());
+                nextSample = now + SAMPLE_NANOS;
+            }
+        }
+        double sendSeconds = (System.nanoTime() - start) / 1e9;
+
+        long drainEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(profile.getDrainSeconds());
+        while(outstanding() > 0 && System.nanoTime() < drainEnd) {
+            maxOutboundQueued = Math.max(maxOutboundQueued, outboundQueued.getValue());
+            maxDispatchPending = Math.max(maxDispatchPending, dispatchPending.getValue());
+            LockSupport.parkNanos(SAMPLE_NANOS);
+        }
+
+        LoadReport report = new LoadReport();
+        report.setSent(sent, sendSeconds);
+        report.setMaxOutboundQueued(maxOutboundQueued);
+        report.setMaxDispatchPending(maxDispatchPending);
+        report.setOutbound(getGauge(metrics, network + ".outbound.sent"),
+                getGauge(metrics, network + ".outbound.coalesced"),
+                getGauge(metrics, network + ".outbound.dropped"));
+        Counter rejected = metrics.getCounters().get("dispatch.rejected");
+        report.setDispatchRejected(rejected == null ? 0 : rejected.getCount());
+        report.setEventsDropped(getGauge(metrics, "events.dropped"));
+        synchronized(this) {
+            report.setExpected(expected);
+            report.setLatencies(Arrays.copyOf(latencies, answered));
+            report.setUnexpected(unexpected);
+            report.setErrors(errors);
+            report.setNoteDeliveries(noteDeliveries);
+            report.setDropNotices(dropNotices);
+        }
+        return report;
+    }
+
+    @Override
+    public void onPrivmsg(String from, String target, String message) {
+        long now = System.nanoTime();
+        synchronized(this) {
+            if(!target.startsWith("#")) {
+                errors++;
+                return;
+            }
+
+            int start = 0;
+            while(start <= message.length()) {
+                int end = message.indexOf(SEPARATOR, start);
+                if(end == -1) {
+                    end = message.length();
+                }
+                onReply(target, message.substring(start, end), now);
+                start = end + SEPARATOR.length();
+            }
+        }
+    }
+
+    private void onReply(String channel, String reply, long now) {
+        if(reply.contains(" you have a note from ")) {
+            noteDeliveries++;
+            return;
+        }
+        if(reply.startsWith(NOTE_TEXT)) {
+            return;
+        }
+        if(reply.startsWith("(") && reply.endsWith("dropped, slow down)")) {
+            dropNotices++;
+            return;
+        }
+
+        ArrayDeque<Pending> waiting = pending.get(channel);
+        if(reply.endsWith(BUSY)) {
+            //Turned away, so that line isn't getting any other answer.
+            String nick = reply.substring(0, reply.length() - BUSY.length());
+            Iterator<Pending> it = waiting == null ? null : waiting.iterator();
+            while(it != null && it.hasNext()) {
+                if(it.next().nick.equals(nick)) {
+                    it.remove();
+                    expected--;
+                    return;
+                }
+            }
+            return;
+        }
+
+        Pending answered = waiting == null ? null : waiting.poll();
+        if(answered == null) {
+            unexpected++;
+            return;
+        }
+        addLatency(now - answered.sentNanos);
+    }
+
+    private void addLatency(long nanos) {
+        if(answered == latencies.length) {
+            latencies = Arrays.copyOf(latencies, answered * 2);
+        }
+        latencies[answered++] = nanos;
+    }
+
+    private synchronized long outstanding() {
+        return expected - answered;
+    }
+
+    private void sendLine(FakeIrcServer server) {
+        String channel = channels.get(random.nextInt(channels.size()));
+        String nick = randomNick();
+        LoadProfile.Action action = randomAction();
+        String line;
+        switch(action) {
+            case KARMA_CHANGE:
+                line = randomItem() + (random.nextInt(4) == 0 ? "--" : "++");
+                break;
+            case KARMA_QUERY:
+                line = ".karma " + randomItem();
+                break;
+            case QUOTE_STORE:
+                line = ".quote <" + randomNick() + "> " + randomWords(6 + random.nextInt(6)) + " " + sequence++;
+                break;
+            case QUOTE_SEARCH:
+                line = ".quote " + randomNick();
+                break;
+            case NOTE:
+                line = ".note " + randomNick() + " " + NOTE_TEXT + sequence++;
+                break;
+            default:
+                line = randomWords(3 + random.nextInt(8));
+                break;
+        }
+
+        if(action.isReplied()) {
+            synchronized(this) {
+                ArrayDeque<Pending> waiting = pending.get(channel);
+                if(waiting == null) {
+                    waiting = new ArrayDeque<>();
+                    pending.put(channel, waiting);
+                }
+                waiting.add(new Pending(nick, System.nanoTime()));
+                expected++;
+            }
+        }
+        server.say(nick, channel, line);
+    }
+
+    private String randomNick() {
+        return "user" + random.nextInt(profile.getUsers());
+    }
+
+    private String randomItem() {
+        return "load" + random.nextInt(profile.getKarmaItems());
+    }
+
+    private String randomWords(int count) {
+        StringBuilder words = new StringBuilder();
+        for(int i=0;i<count;i++) {
+            if(i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private LoadProfile.Action randomAction() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for(int i=0;i<actions.length;i++) {
+            if(pick < cumulativeWeights[i]) {
+                return actions[i];
+            }
+        }
+        return actions[actions.length - 1];
+    }
+
+    private static long getGauge(MetricRegistry metrics, String name) {
+        Gauge gauge = metrics.getGauges().get(name);
+        return gauge == null ? 0 : gauge.getValue();
+    }
+
+    /**
+     * A line waiting for its answer.
+     */
+    private static class Pending {
+        private final String nick;
+        private final long sentNanos;
+
+        private Pending(String nick, long sentNanos) {
+            this.nick = nick;
+            this.sentNanos = sentNanos;
+        }
+    }
+}
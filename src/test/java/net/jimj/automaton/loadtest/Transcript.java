@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the bot said in answer to each line of a replayed log.
+ *
+ * Written as text so it can be checked in and diffed by eye.  Only lines that got an answer are kept:
+ *
+ *   &gt; 17 #chan &lt;nick&gt; .karma foo      the 17th line replayed (from 0)
+ *   = #chan foo: 3                     what was sent back, and where
+ *   ~ #chan                            something picked at random, only where it went is compared
+ */
+public class Transcript {
+    private final List<Entry> entries = new ArrayList<>();
+
+    public void add(long index, String input, List<String> outputs) {
+        entries.add(new Entry(index, input, new ArrayList<>(outputs)));
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public static String said(String target, String line) {
+        return "= " + target + " " + line;
+    }
+
+    public static String picked(String target) {
+        return "~ " + target;
+    }
+
+    public void write(Writer out) throws IOException {
+        for(Entry entry : entries) {
+            out.write("> " + entry.index + " " + entry.input + "\n");
+            for(String output : entry.outputs) {
+                out.write(output + "\n");
+            }
+        }
+        out.flush();
+    }
+
+    public static Transcript read(Reader in) throws IOException {
+        Transcript transcript = new Transcript();
+        BufferedReader reader = new BufferedReader(in);
+        Entry entry = null;
+        String line;
+        while((line = reader.readLine()) != null) {
+            if(line.startsWith("> ")) {
+                int space = line.indexOf(' ', 2);
+                entry = new Entry(Long.parseLong(line.substring(2, space)), line.substring(space + 1), new ArrayList<String>());
+                transcript.entries.add(entry);
+            }else if(entry != null && (line.startsWith("= ") || line.startsWith("~ "))) {
+                entry.outputs.add(line);
+            }else if(!line.isEmpty()) {
+                throw new IOException("Not a transcript line: " + line);
+            }
+        }
+        return transcript;
+    }
+
+    /**
+     * @return how another run's transcript differs from this one, at most limit differences.
+     */
+    public List<String> diff(Transcript actual, int limit) {
+        List<String> differences = new ArrayList<>();
+        int e = 0;
+        int a = 0;
+        while((e < entries.size() || a < actual.entries.size()) && differences.size() < limit) {
+            Entry expected = e < entries.size() ? entries.get(e) : null;
+            Entry got = a < actual.entries.size() ? actual.entries.get(a) : null;
+
+            if(got == null || (expected != null && expected.index < got.index)) {
+                differences.add(expected.index + " " + expected.input + ": expected " + expected.outputs + " but got nothing");
+                e++;
+            }else if(expected == null || got.index < expected.index) {
+                differences.add(got.index + " " + got.input + ": expected nothing but got " + got.outputs);
+                a++;
+            }else {
+                if(!expected.input.equals(got.input)) {
+                    differences.add(got.index + ": expected the line " + expected.input + " but replayed " + got.input);
+                }else if(!expected.outputs.equals(got.outputs)) {
+                    differences.add(got.index + " " + got.input + ": expected " + expected.outputs + " but got " + got.outputs);
+                }
+                e++;
+                a++;
+            }
+        }
+        return differences;
+    }
+
+    public static class Entry {
+        private final long index;
+        private final String input;
+        private final List<String> outputs;
+
+        private Entry(long index, String input, List<String> outputs) {
+            this.index = index;
+            this.input = input;
+            this.outputs = outputs;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public List<String> getOutputs() {
+            return Collections.unmodifiableList(outputs);
+        }
+    }
+}
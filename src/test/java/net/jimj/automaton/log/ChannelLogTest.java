@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.log;
+
+import net.jimj.automaton.model.LogConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ChannelLogTest {
+    private static final String NET = "slashnet";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LogConfig config;
+    private long now;
+    private ChannelLog log;
+
+    @Before
+    public void init() {
+        config = new LogConfig();
+        config.setSegmentBytes(1024);
+        config.setMaxBytes(4096);
+        now = TimeUnit.DAYS.toMillis(1000);
+        log = open();
+    }
+
+    @After
+    public void tearDown() {
+        log.close();
+    }
+
+    @Test
+    public void testAppendAndRead() {
+        long first = log.append(line("#chan", "foo", "hello"));
+        long second = log.append(line("#chan", "bar", "h\u00e9llo there"));
+        assertTrue(second > first);
+        assertEquals("hello", log.read(first).getMessage());
+        assertEquals("h\u00e9llo there", log.read(second).getMessage());
+        assertEquals("bar", log.read(second).getNick());
+        assertNull(log.read(log.getEndOffset()));
+    }
+
+    @Test
+    public void testLastBy() {
+        log.append(line("#chan", "foo", "one"));
+        log.append(line("#other", "foo", "elsewhere"));
+        log.append(line("#chan", "bar", "interrupting"));
+        log.append(line("#chan", "Foo", "two"));
+        log.append(new LogRecord(now, NET, "#chan", "foo", ".quote grab foo", true));
+
+        List<LogRecord> said = log.lastBy(NET, "#CHAN", "foo", 2);
+        assertEquals(2, said.size());
+        assertEquals("one", said.get(0).getMessage());
+        assertEquals("Commands aren't conversation", "two", said.get(1).getMessage());
+        assertTrue(log.lastBy("othernet", "#chan", "foo", 1).isEmpty());
+        assertEquals(5 - 1, log.recent(NET, "#chan", 10).size());
+    }
+
+    @Test
+    public void testLastByQuietNick() {
+        log.append(line("#chan", "quiet", "once"));
+        for(int i=0;i<30;i++) {
+            log.append(line("#chan", "chatty", "line " + i));
+        }
+
+        assertEquals("once", log.lastBy(NET, "#chan", "quiet", 5).get(0).getMessage());
+        assertEquals(1, log.lastBy(NET, "#chan", "quiet", 5).size());
+        assertTrue(log.lastBy(NET, "#chan", "nobody", 5).isEmpty());
+        assertEquals("line 29", log.lastBy(NET, "#chan", "chatty", 1).get(0).getMessage());
+    }
+
+    @Test
+    public void testReopenRebuildsIndex() {
+        for(int i=0;i<50;i++) {
+            log.append(line("#chan", "foo", "line " + i));
+        }
+        long end = log.getEndOffset();
+        int segments = log.getSegmentCount();
+        assertTrue("Should have rolled over to new segments", segments > 1);
+        log.close();
+
+        log = open();
+        assertEquals(end, log.getEndOffset());
+        assertEquals(segments, log.getSegmentCount());
+        assertEquals("line 49", log.lastBy(NET, "#chan", "foo", 1).get(0).getMessage());
+        long next = log.append(line("#chan", "foo", "after"));
+        assertEquals(end, next);
+    }
+
+    @Test
+    public void testReplay() {
+        long first = log.append(line("#chan", "foo", "one"));
+        long second = log.append(line("#chan", "foo", "two"));
+        for(int i=0;i<30;i++) {
+            log.append(line("#chan", "bar", "filler " + i));
+        }
+
+        final List<String> replayed = new ArrayList<>();
+        log.replay(second, new ChannelLog.Handler() {
+            @Override
+            public void handle(long offset, LogRecord record) {
+                replayed.add(record.getMessage());
+            }
+        });
+        assertEquals(31, replayed.size());
+        assertEquals("two", replayed.get(0));
+        assertEquals("filler 29", replayed.get(30));
+        assertTrue(first < second);
+    }
+
+    @Test
+    public void testRetentionBySize() {
+        log.append(line("#chan", "early", "soon gone"));
+        for(int i=0;i<200;i++) {
+            log.append(line("#chan", "foo", "line number " + i));
+        }
+        assertTrue(log.getSegmentCount() * config.getSegmentBytes() <= config.getMaxBytes());
+        assertTrue("Old lines are gone", log.getStartOffset() > 0);
+        assertNull(log.read(0));
+        assertEquals("line number 199", log.lastBy(NET, "#chan", "foo", 1).get(0).getMessage());
+        assertEquals(log.read(log.getStartOffset()).getMessage(), log.recent(NET, "#chan", 1000).get(0).getMessage());
+        assertTrue(log.lastBy(NET, "#chan", "early", 1).isEmpty());
+    }
+
+    @Test
+    public void testRetentionByAge() {
+        config.setMaxAgeDays(1);
+        for(int i=0;i<30;i++) {
+            log.append(line("#chan", "foo", "old line " + i));
+        }
+        now += TimeUnit.DAYS.toMillis(2);
+        for(int i=0;i<30;i++) {
+            log.append(line("#chan", "foo", "new line " + i));
+        }
+        //Segments go as a whole, so old lines sharing a segment with new ones stay a while longer.
+        List<LogRecord> kept = log.recent(NET, "#chan", 1000);
+        assertTrue(log.getStartOffset() > 0);
+        assertFalse(kept.get(0).getMessage().equals("old line 0"));
+        assertEquals("new line 29", kept.get(kept.size() - 1).getMessage());
+    }
+
+    @Test
+    public void testTornWrite() throws IOException {
+        log.append(line("#chan", "foo", "kept"));
+        long torn = log.append(line("#chan", "foo", "torn"));
+        log.close();
+
+        //Scribble over the middle of the last record, as if the bot died while writing it.
+        try(RandomAccessFile raf = new RandomAccessFile(new File(folder.getRoot(), String.format("%020d.log", 0)), "rw")) {
+            raf.seek(torn + 12);
+            raf.writeLong(-1);
+        }
+
+        log = open();
+        assertEquals(torn, log.getEndOffset());
+        assertEquals("kept", log.lastBy(NET, "#chan", "foo", 1).get(0).getMessage());
+        log.append(line("#chan", "foo", "replacement"));
+        assertEquals("replacement", log.read(torn).getMessage());
+    }
+
+    private LogRecord line(String channel, String nick, String message) {
+        return new LogRecord(now, NET, channel, nick, message, false);
+    }
+
+    private ChannelLog open() {
+        return new ChannelLog(folder.getRoot(), config) {
+            @Override
+            protected long now() {
+                return now;
+            }
+        };
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.metrics;
+
+import net.jimj.automaton.store.Storage;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class MetricRegistryTest {
+    private MBeanServer mBeanServer;
+    private MetricRegistry metrics;
+
+    @Before
+    public void init() {
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        metrics = new MetricRegistry(mBeanServer);
+    }
+
+    @Test
+    public void testTimerPercentiles() {
+        Timer timer = metrics.timer("test");
+        for(int i=1;i<=100;i++) {
+            timer.update(i, i % 10 == 0);
+        }
+
+        assertEquals(100, timer.getCount());
+        assertEquals(10, timer.getErrors());
+        assertEquals(50, timer.percentile(0.5));
+        assertEquals(99, timer.percentile(0.99));
+        assertEquals(100, timer.percentile(1));
+    }
+
+    @Test
+    public void testTimerWindow() {
+        Timer timer = new Timer(10);
+        for(int i=0;i<100;i++) {
+            timer.update(i < 90 ? 1000 : 1, false);
+        }
+        assertEquals("Only the recent window counts toward percentiles", 1, timer.percentile(0.99));
+        assertEquals(100, timer.getCount());
+    }
+
+    @Test
+    public void testMetricsAreShared() {
+        assertSame(metrics.timer("a"), metrics.timer("a"));
+        assertSame(metrics.counter("a"), metrics.counter("a"));
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        metrics.counter("command.quote.replies").add(3);
+        metrics.register("queue", new Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+
+        assertEquals(3L, mBeanServer.getAttribute(MetricRegistry.objectName("Counter", "command.quote.replies"), "Count"));
+        assertEquals(7L, mBeanServer.getAttribute(MetricRegistry.objectName("Gauge", "queue"), "Value"));
+
+        metrics.close();
+        assertFalse(mBeanServer.isRegistered(MetricRegistry.objectName("Gauge", "queue")));
+    }
+
+    @Test
+    public void testMeteredStorage() {
+        Storage storage = new MeteredStorage(new EmbeddedStorage(null), metrics);
+        storage.getKarmaStore().applyDeltas("slashnet", new HashMap<>(Collections.singletonMap("test", 1)));
+        assertEquals(1, storage.getKarmaStore().getKarma("slashnet", "test"));
+        assertEquals(1, storage.getKarmaStore().getKarma("slashnet", "test"));
+
+        assertEquals(1, metrics.timer("store.karma.applyDeltas").getCount());
+        assertEquals(2, metrics.timer("store.karma.getKarma").getCount());
+        assertEquals(0, metrics.timer("store.karma.getKarma").getErrors());
+    }
+
+    @Test
+    public void testMeteredStorageErrors() {
+        Storage storage = new MeteredStorage(new EmbeddedStorage(null), metrics);
+        try {
+            storage.getKarmaStore().applyDeltas("slashnet", Collections.singletonMap("test", 1));
+            fail("Immutable deltas can't be drained");
+        }catch(UnsupportedOperationException e) {
+            //The store's own exception comes through, not a proxy wrapper.
+        }
+        assertEquals(1, metrics.timer("store.karma.applyDeltas").getErrors());
+    }
+}
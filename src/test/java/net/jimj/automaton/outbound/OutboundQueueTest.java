@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.outbound;
+
+import net.jimj.automaton.model.OutboundConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private OutboundConfig config;
+    private RecordingSink sink;
+    private long now;
+    private OutboundQueue queue;
+
+    @Before
+    public void init() {
+        config = new OutboundConfig();
+        config.setBurst(2);
+        config.setLinesPerSecond(1);
+        config.setTargetBurst(2);
+        config.setTargetLinesPerSecond(1);
+        config.setMaxLineLength(40);
+        config.setMaxQueuedPerTarget(3);
+        sink = new RecordingSink();
+        now = 0;
+        queue = new OutboundQueue(config, sink) {
+            @Override
+            protected long now() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(Long.MAX_VALUE, queue.sendNext(now));
+        assertTrue(sink.sent.isEmpty());
+    }
+
+    @Test
+    public void testRateLimited() {
+        config.setMaxLineLength(5);
+        queue.offer("#a", "one", Priority.REPLY);
+        queue.offer("#a", "two", Priority.REPLY);
+        queue.offer("#a", "three", Priority.REPLY);
+
+        assertEquals(0, queue.sendNext(now));
+        assertEquals(0, queue.sendNext(now));
+        long wait = queue.sendNext(now);
+        assertTrue("Burst is used up", wait > 0 && wait <= SECOND);
+        assertEquals(Arrays.asList("#a one", "#a two"), sink.sent);
+
+        now += wait;
+        assertEquals(0, queue.sendNext(now));
+        assertEquals("#a three", sink.sent.get(2));
+    }
+
+    @Test
+    public void testCoalescing() {
+        queue.offer("#a", "bob you have a note", Priority.NORMAL);
+        queue.offer("#a", "buy milk", Priority.NORMAL);
+        queue.offer("#a", "this one is far too long to fit on the line", Priority.NORMAL);
+
+        queue.sendNext(now);
+        queue.sendNext(now);
+        assertEquals(Arrays.asList("#a bob you have a note | buy milk",
+                "#a this one is far too long to fit on the line"), sink.sent);
+        assertEquals(1, queue.getCoalesced());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testPriority() {
+        config.setMaxLineLength(5);
+        queue.offer("Gnome", "trace", Priority.DIAGNOSTIC);
+        queue.offer("#a", "reply", Priority.REPLY);
+        queue.offer("#b", "note", Priority.NORMAL);
+
+        queue.sendNext(now);
+        queue.sendNext(now);
+        assertEquals(Arrays.asList("#a reply", "#b note"), sink.sent);
+    }
+
+    @Test
+    public void testTargetsTakeTurns() {
+        config.setMaxLineLength(5);
+        config.setBurst(10);
+        for(int i=0;i<3;i++) {
+            queue.offer("#a", "a" + i, Priority.REPLY);
+        }
+        queue.offer("#b", "b0", Priority.REPLY);
+
+        queue.sendNext(now);
+        queue.sendNext(now);
+        assertEquals(Arrays.asList("#a a0", "#b b0"), sink.sent);
+    }
+
+    @Test
+    public void testFloodDropsLessImportantFirst() {
+        config.setMaxLineLength(400);
+        queue.offer("#a", "diag", Priority.DIAGNOSTIC);
+        queue.offer("#a", "r1", Priority.REPLY);
+        queue.offer("#a", "r2", Priority.REPLY);
+        assertTrue("Diagnostic makes room", queue.offer("#a", "r3", Priority.REPLY));
+        assertFalse("Nothing less important is left", queue.offer("#a", "diag2", Priority.DIAGNOSTIC));
+        assertEquals(2, queue.getDropped());
+
+        queue.sendNext(now);
+        assertEquals(Arrays.asList("#a r1 | r2 | r3 | (2 lines dropped, slow down)"), sink.sent);
+    }
+
+    private static class RecordingSink implements MessageSink {
+        private final List<String> sent = new ArrayList<>();
+
+        @Override
+        public void send(String target, String line) {
+            sent.add(target + " " + line);
+        }
+    }
+}
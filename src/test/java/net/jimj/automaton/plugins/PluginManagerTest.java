@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.plugins;
+
+import net.jimj.automaton.commands.Args;
+import net.jimj.automaton.commands.Command;
+import net.jimj.automaton.commands.CommandRegistry;
+import net.jimj.automaton.events.EventBus;
+import net.jimj.automaton.http.HttpFetcher;
+import net.jimj.automaton.metrics.MetricRegistry;
+import net.jimj.automaton.model.Config;
+import net.jimj.automaton.model.HttpConfig;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+public class PluginManagerTest {
+    private static final String CLASH_SHUTDOWN = "automaton.test.clashShutdown";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedStorage storage;
+    private HttpFetcher fetcher;
+    private CommandRegistry registry;
+    private PluginManager plugins;
+    private List<Command> bound;
+
+    @Before
+    public void init() throws IOException {
+        storage = new EmbeddedStorage(null);
+        fetcher = new HttpFetcher(new HttpConfig());
+        registry = new CommandRegistry();
+        bound = new ArrayList<>();
+        PluginContext context = new PluginContext(new Config(), storage, fetcher, new MetricRegistry(), null);
+        plugins = new PluginManager(folder.getRoot(), context, registry) {
+            @Override
+            protected void bind(Command command) {
+                command.setEventBus(new EventBus());
+                bound.add(command);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        plugins.shutdown();
+        fetcher.shutdown();
+        storage.close();
+    }
+
+    @Test
+    public void testBuiltinsAreDiscovered() {
+        plugins.loadBuiltins();
+        assertNotNull(registry.find(Args.parseCommand(".quote", 1)));
+        assertNotNull(registry.find(Args.parseCommand(".karma foo", 1)));
+        assertEquals("Every command is bound before it's used", registry.getCommands(), bound);
+        assertTrue("Built in commands aren't plugins", plugins.getLoaded().isEmpty());
+    }
+
+    @Test
+    public void testMissingJar() {
+        try {
+            plugins.load("nosuch");
+            fail("Loaded a jar that isn't there");
+        }catch(IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("nosuch.jar"));
+        }
+    }
+
+    @Test
+    public void testJarWithoutProviders() throws IOException {
+        //Anything on the bot's own classpath is skipped, so this jar has nothing of its own to offer.
+        new File(folder.getRoot(), "empty.jar").createNewFile();
+        try {
+            plugins.load("empty");
+            fail("Loaded a jar without any commands");
+        }catch(IllegalArgumentException e) {
+            //expected
+        }
+        assertTrue(plugins.getLoaded().isEmpty());
+        assertFalse(plugins.unload("empty"));
+    }
+
+    @Test
+    public void testClashingPluginIsShutDown() throws IOException {
+        plugins.loadBuiltins();
+        writePlugin("clash", "quote");
+        System.clearProperty(CLASH_SHUTDOWN);
+        try {
+            plugins.load("clash");
+            fail("Loaded a plugin whose command clashes with a built in one");
+        }catch(IllegalArgumentException e) {
+            //expected
+        }
+        assertEquals("The commands it made were shut down", "quote", System.getProperty(CLASH_SHUTDOWN));
+        assertTrue(plugins.getLoaded().isEmpty());
+        System.clearProperty(CLASH_SHUTDOWN);
+    }
+
+    /**
+     * Compile a one command plugin into a jar in the plugin directory.  It has to be built here,
+     * since anything on the test classpath would be loaded from there instead of from the jar.
+     * Its command's shutdown() sets the CLASH_SHUTDOWN system property to the command's name.
+     */
+    private void writePlugin(String name, String commandName) throws IOException {
+        File src = folder.newFolder(name + "-src");
+        File pkg = new File(src, "testplugin");
+        assertTrue(pkg.mkdirs());
+        String source = "package testplugin;\n" +
+                "import net.jimj.automaton.commands.*;\n" +
+                "import net.jimj.automaton.model.User;\n" +
+                "import net.jimj.automaton.plugins.*;\n" +
+                "import java.util.*;\n" +
+                "public class Provider implements CommandProvider {\n" +
+                "    public List<Command> createCommands(PluginContext context) {\n" +
+                "        return Collections.<Command>singletonList(new Command() {\n" +
+                "            public String getCommandName() { return \"" + commandName + "\"; }\n" +
+                "            public void execute(User user, Args args) { }\n" +
+                "            public boolean authorized(User user) { return true; }\n" +
+                "            public void shutdown() { System.setProperty(\"" + CLASH_SHUTDOWN + "\", getCommandName()); }\n" +
+                "        });\n" +
+                "    }\n" +
+                "}\n";
+        File sourceFile = new File(pkg, "Provider.java");
+        Files.write(sourceFile.toPath(), source.getBytes("UTF-8"));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("Needs a JDK to build the test plugin", compiler);
+        String classpath = new File(Command.class.getProtectionDomain().getCodeSource().getLocation().getPath()) +
+                File.pathSeparator + System.getProperty("java.class.path");
+        assertEquals(0, compiler.run(null, null, null, "-nowarn", "-cp", classpath, "-d", src.getPath(), sourceFile.getPath()));
+
+        try(JarOutputStream jar = new JarOutputStream(new FileOutputStream(new File(folder.getRoot(), name + ".jar")))) {
+            for(File classFile : pkg.listFiles()) {
+                if(classFile.getName().endsWith(".class")) {
+                    jar.putNextEntry(new JarEntry("testplugin/" + classFile.getName()));
+                    jar.write(Files.readAllBytes(classFile.toPath()));
+                    jar.closeEntry();
+                }
+            }
+            jar.putNextEntry(new JarEntry("META-INF/services/" + CommandProvider.class.getName()));
+            jar.write("testplugin.Provider\n".getBytes("UTF-8"));
+            jar.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store;
+
+import net.jimj.automaton.commands.NearDuplicateIndex;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FingerprintTest {
+    @Test
+    public void testNormalize() {
+        assertEquals("foo hi there", Fingerprint.normalize("[12:01] <@foo>   hi  there!"));
+        assertEquals("foo hi there", Fingerprint.normalize("(9:01:33) < +Foo > Hi there"));
+        assertEquals("", Fingerprint.normalize(null));
+        assertEquals("", Fingerprint.normalize(" -- "));
+    }
+
+    @Test
+    public void testExactFingerprint() {
+        assertEquals(Fingerprint.of("<foo> hi there"), Fingerprint.of("[12:01] <@foo> hi there"));
+        assertEquals(Fingerprint.of("your mom"), Fingerprint.of("  Your   MOM!"));
+        assertNotEquals(Fingerprint.of("<foo> hi there"), Fingerprint.of("<bar> hi there"));
+    }
+
+    @Test
+    public void testSimilarity() {
+        String quote = "<foo> the quick brown fox jumps over the lazy dog";
+        int[] signature = Fingerprint.minHash(quote);
+        assertEquals(1.0, Fingerprint.similarity(signature, Fingerprint.minHash(quote)), 0);
+        assertTrue(Fingerprint.similarity(signature,
+                Fingerprint.minHash("<foo> the quick brown fox jumped over the lazy dog")) > 0.6);
+        assertTrue(Fingerprint.similarity(signature,
+                Fingerprint.minHash("<bar> nothing at all like the other one here")) < 0.3);
+    }
+
+    @Test
+    public void testNearDuplicateIndex() {
+        NearDuplicateIndex index = new NearDuplicateIndex(0.8);
+        index.add(1, "net", "<foo> the quick brown fox jumps over the lazy dog");
+        index.add(2, "net", "short");
+        assertEquals("Short text isn't indexed", 1, index.size());
+
+        assertEquals(1, index.findNear("net", "[12:00] <@foo> the quick brown fox jumps over the lazy dog."));
+        assertEquals(1, index.findNear("net", "<foo> the quick brown fox jumps over the lazy dogs"));
+        assertNull("Scopes are separate", index.findNear("othernet", "<foo> the quick brown fox jumps over the lazy dog"));
+        assertNull(index.findNear("net", "<foo> something else entirely, nothing to do with foxes"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store;
+
+import net.jimj.automaton.events.EventBus;
+import net.jimj.automaton.events.StoreWriteEvent;
+import net.jimj.automaton.events.Subscriber;
+import net.jimj.automaton.store.embedded.EmbeddedStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PublishingStorageTest {
+    private List<StoreWriteEvent> writes = new ArrayList<>();
+    private Storage storage;
+
+    @Before
+    public void init() {
+        EventBus events = new EventBus();
+        events.subscribe(StoreWriteEvent.class, new Subscriber<StoreWriteEvent>() {
+            @Override
+            public void onEvent(StoreWriteEvent event) {
+                writes.add(event);
+            }
+        });
+        storage = new PublishingStorage(new EmbeddedStorage(null), events);
+    }
+
+    @After
+    public void cleanup() {
+        storage.close();
+    }
+
+    @Test
+    public void testKarmaFlushCarriesItsDeltas() {
+        Map<String, Integer> deltas = new HashMap<>();
+        deltas.put("foo", 2);
+        deltas.put("bar", -1);
+        storage.getKarmaStore().applyDeltas("slashnet", deltas);
+        assertTrue("The store used up the map", deltas.isEmpty());
+
+        assertEquals(1, writes.size());
+        StoreWriteEvent write = writes.get(0);
+        assertEquals("karma", write.getStore());
+        assertEquals("applyDeltas", write.getMethod());
+        assertEquals("slashnet", write.getArguments().get(0));
+        Map<?, ?> written = (Map<?, ?>)write.getArguments().get(1);
+        assertEquals(2, written.get("foo"));
+        assertEquals(-1, written.get("bar"));
+    }
+
+    @Test
+    public void testReadsAreNotPublished() {
+        storage.getKarmaStore().getKarma("slashnet", "foo");
+        assertTrue(writes.isEmpty());
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.embedded;
+
+import net.jimj.automaton.model.KarmaChange;
+import net.jimj.automaton.model.NetworkConfig;
+import net.jimj.automaton.model.Note;
+import net.jimj.automaton.model.Quote;
+import net.jimj.automaton.store.Fingerprint;
+import net.jimj.automaton.store.KarmaStore;
+import net.jimj.automaton.store.Storage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EmbeddedStorageTest {
+    private File dataDir;
+    private Storage storage;
+
+    @Before
+    public void init() throws IOException {
+        dataDir = File.createTempFile("automaton", "");
+        dataDir.delete();
+        storage = new EmbeddedStorage(dataDir);
+    }
+
+    @After
+    public void cleanup() {
+        storage.close();
+        File[] files = dataDir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        dataDir.delete();
+    }
+
+    @Test
+    public void testQuotesSurviveReopen() {
+        Quote quote = new Quote(new LinkedHashSet<>(Arrays.asList("foo")), "<foo> hi", "slashnet");
+        storage.getQuoteStore().save(quote);
+        assertNotNull(quote.getId());
+
+        reopen();
+        Quote found = storage.getQuoteStore().findById(quote.getId());
+        assertEquals("<foo> hi", found.getQuote());
+        assertEquals(quote.getNicks(), found.getNicks());
+        assertEquals("<foo> hi", storage.getQuoteStore().findRandom("slashnet", "foo", "h.").getQuote());
+        assertNull(storage.getQuoteStore().findRandom("slashnet", "bar", null));
+    }
+
+    @Test
+    public void testAppendAfterTornRecord() throws IOException {
+        Quote kept = new Quote(new LinkedHashSet<>(Arrays.asList("foo")), "<foo> kept", "slashnet");
+        Quote torn = new Quote(new LinkedHashSet<>(Arrays.asList("foo")), "<foo> torn", "slashnet");
+        storage.getQuoteStore().save(kept);
+        storage.getQuoteStore().save(torn);
+        storage.close();
+
+        //A crash partway through writing the last record.
+        try(RandomAccessFile file = new RandomAccessFile(new File(dataDir, "quotes.json"), "rw")) {
+            file.setLength(file.length() - 10);
+        }
+
+        storage = new EmbeddedStorage(dataDir);
+        assertNull(storage.getQuoteStore().findById(torn.getId()));
+        Quote after = new Quote(new LinkedHashSet<>(Arrays.asList("bar")), "<bar> after", "slashnet");
+        storage.getQuoteStore().save(after);
+
+        reopen();
+        assertEquals("<foo> kept", storage.getQuoteStore().findById(kept.getId()).getQuote());
+        assertEquals("<bar> after", storage.getQuoteStore().findById(after.getId()).getQuote());
+    }
+
+    @Test
+    public void testKarmaSurvivesReopen() {
+        storage.getKarmaStore().applyDeltas("slashnet", new HashMap<>(Collections.singletonMap("test", 2)));
+        storage.getKarmaStore().applyDeltas("slashnet", new HashMap<>(Collections.singletonMap("test", -5)));
+
+        reopen();
+        assertEquals(-3, storage.getKarmaStore().getKarma("slashnet", "test"));
+        assertEquals(0, storage.getKarmaStore().getKarma("slashnet", "other"));
+        assertEquals(0, storage.getKarmaStore().getKarma("othernet", "test"));
+    }
+
+    @Test
+    public void testKarmaHistorySurvivesReopen() {
+        KarmaStore karma = storage.getKarmaStore();
+        karma.appendChanges(Arrays.asList(new KarmaChange("slashnet", "#automaton", "test", "jimj", 1, 10),
+                new KarmaChange("slashnet", "#automaton", "test", "bob", -1, 30)));
+        karma.appendChanges(Arrays.asList(new KarmaChange("slashnet", null, "other", "jimj", 1, 20)));
+
+        reopen();
+        List<KarmaChange> changes = new ArrayList<>();
+        for(KarmaChange change : storage.getKarmaStore().findChanges(15)) {
+            changes.add(change);
+        }
+        assertEquals(2, changes.size());
+        assertEquals("other", changes.get(0).getItem());
+        assertNull(changes.get(0).getChannel());
+        assertEquals("bob", changes.get(1).getGiver());
+
+        storage.getKarmaStore().expireChanges(25);
+        reopen();
+        assertEquals(30, storage.getKarmaStore().findChanges(0).iterator().next().getWhen());
+    }
+
+    @Test
+    public void testKarmaHistoryOutOfOrder() {
+        KarmaStore karma = storage.getKarmaStore();
+        karma.appendChanges(Arrays.asList(new KarmaChange("slashnet", "#automaton", "a", "jimj", 1, 30),
+                new KarmaChange("slashnet", "#automaton", "b", "jimj", 1, 10),
+                new KarmaChange("slashnet", "#automaton", "c", "jimj", 1, 40)));
+
+        karma.expireChanges(20);
+        List<String> items = new ArrayList<>();
+        for(KarmaChange change : karma.findChanges(0)) {
+            items.add(change.getItem());
+        }
+        assertEquals(Arrays.asList("a", "c"), items);
+    }
+
+    @Test
+    public void testNotesSurviveReopen() {
+        Note first = new Note("slashnet", "me", "you", "one", 1);
+        Note second = new Note("slashnet", "me", "you", "two", 2);
+        storage.getNoteStore().save(first);
+        storage.getNoteStore().save(second);
+        storage.getNoteStore().markDelivered(Arrays.asList(first.getId()));
+
+        reopen();
+        assertEquals(Collections.singletonMap("slashnet", Collections.singleton("you")),
+                storage.getNoteStore().findPendingRecipients());
+        assertTrue(storage.getNoteStore().findUndelivered("othernet", "you").isEmpty());
+        List<Note> undelivered = storage.getNoteStore().findUndelivered("slashnet", "you");
+        assertEquals(1, undelivered.size());
+        assertEquals("two", undelivered.get(0).getNote());
+    }
+
+    @Test
+    public void testYourMomIsUnique() {
+        assertTrue(storage.getYourMomStore().add("your mom"));
+        reopen();
+        assertFalse(storage.getYourMomStore().add("your mom"));
+        assertFalse("Punctuation and spacing don't make it unique", storage.getYourMomStore().add("your  mom!"));
+        assertEquals("your mom", storage.getYourMomStore().findRandom());
+    }
+
+    @Test
+    public void testFindQuoteByFingerprint() {
+        Quote quote = new Quote(new LinkedHashSet<>(Arrays.asList("foo")), "[12:01] <@foo> hi there", "slashnet");
+        storage.getQuoteStore().save(quote);
+        reopen();
+        long fingerprint = Fingerprint.of("<foo> hi there");
+        assertEquals(quote.getId(), storage.getQuoteStore().findByFingerprint("slashnet", fingerprint).getId());
+        assertNull(storage.getQuoteStore().findByFingerprint("othernet", fingerprint));
+    }
+
+    @Test
+    public void testUsersAreRead() throws IOException {
+        storage.close();
+        try(FileWriter writer = new FileWriter(new File(dataDir, "users.json"))) {
+            writer.write("{\"nick\":\"Gnome\",\"level\":10}\n");
+            writer.write("{\"nick\":\"Gnome\",\"level\":1,\"network\":\"othernet\"}\n");
+        }
+
+        storage = new EmbeddedStorage(dataDir);
+        assertEquals(10, storage.getUserStore().findUser("slashnet", "Gnome").getLevel());
+        assertEquals("Network specific users win", 1, storage.getUserStore().findUser("othernet", "Gnome").getLevel());
+        assertNull(storage.getUserStore().findUser("slashnet", "nobody"));
+    }
+
+    @Test
+    public void testRecordsFromBeforeNetworks() throws IOException {
+        storage.close();
+        try(FileWriter writer = new FileWriter(new File(dataDir, "karma.json"))) {
+            writer.write("{\"item\":\"test\",\"value\":4}\n");
+        }
+        try(FileWriter writer = new FileWriter(new File(dataDir, "notes.json"))) {
+            writer.write("{\"id\":1,\"from\":\"me\",\"to\":\"you\",\"note\":\"hi\",\"when\":1}\n");
+        }
+
+        storage = new EmbeddedStorage(dataDir);
+        assertEquals(4, storage.getKarmaStore().getKarma(NetworkConfig.DEFAULT_NAME, "test"));
+        assertEquals(1, storage.getNoteStore().findUndelivered(NetworkConfig.DEFAULT_NAME, "you").size());
+    }
+
+    private void reopen() {
+        storage.close();
+        storage = new EmbeddedStorage(dataDir);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) <2013> <Jim Johnson jimj@jimj.net>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import net.jimj.automaton.model.KarmaChange;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MongoKarmaStoreTest {
+    private DBCollection karma;
+    private DBCollection history;
+    private MongoKarmaStore store;
+
+    @Before
+    public void init() {
+        karma = mock(DBCollection.class);
+        history = mock(DBCollection.class);
+        store = new MongoKarmaStore(karma, history);
+    }
+
+    @Test
+    public void testGetKarma() {
+        assertEquals(0, store.getKarma("slashnet", "test"));
+        when(karma.findOne(any(BasicDBObject.class))).thenReturn(new BasicDBObject("value", 5));
+        assertEquals(5, store.getKarma("slashnet", "test"));
+    }
+
+    @Test
+    public void testApplyDeltas() {
+        Map<String, Integer> deltas = new HashMap<>();
+        deltas.put("test", 3);
+        store.applyDeltas("slashnet", deltas);
+
+        ArgumentCaptor<BasicDBObject> query = ArgumentCaptor.forClass(BasicDBObject.class);
+        ArgumentCaptor<BasicDBObject> update = ArgumentCaptor.forClass(BasicDBObject.class);
+        verify(karma).update(query.capture(), update.capture(), eq(true), eq(false));
+        assertEquals("test", query.getValue().get("item"));
+        assertEquals("slashnet", query.getValue().get("network"));
+        assertEquals(3, ((BasicDBObject)update.getValue().get("$inc")).get("value"));
+        assertTrue("Written deltas are removed", deltas.isEmpty());
+    }
+
+    @Test
+    public void testAppendChanges() {
+        store.appendChanges(Arrays.asList(new KarmaChange("slashnet", "#automaton", "test", "jimj", -1, 42)));
+
+        ArgumentCaptor<List> inserted = ArgumentCaptor.forClass(List.class);
+        verify(history).insert(inserted.capture());
+        DBObject change = (DBObject)inserted.getValue().get(0);
+        assertEquals("test", change.get("item"));
+        assertEquals("jimj", change.get("giver"));
+        assertEquals(-1, change.get("delta"));
+        assertEquals(42L, change.get("when"));
+    }
+}
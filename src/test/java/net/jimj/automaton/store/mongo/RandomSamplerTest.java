@@ -0,0 +1,60 @@
+package net.jimj.automaton.store.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RandomSamplerTest {
+    private DBCollection collection;
+    private RandomSampler sampler;
+
+    @Before
+    public void init() {
+        collection = mock(DBCollection.class);
+        sampler = new RandomSampler(collection);
+    }
+
+    @Test
+    public void testAssignKey() {
+        BasicDBObject doc = new BasicDBObject();
+        sampler.assignKey(doc);
+        double key = (Double)doc.get(RandomSampler.RANDOM_KEY);
+        assertTrue(key >= 0 && key < 1);
+    }
+
+    @Test
+    public void testSingleLookup() {
+        BasicDBObject found = new BasicDBObject("quote", "hi");
+        when(collection.findOne(any(DBObject.class), any(DBObject.class), any(DBObject.class))).thenReturn(found);
+
+        assertSame(found, sampler.findOne(new BasicDBObject("nick", "foo"), new BasicDBObject("quote", 1)));
+
+        ArgumentCaptor<DBObject> query = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection, times(1)).findOne(query.capture(), any(DBObject.class), any(DBObject.class));
+        assertEquals("foo", query.getValue().get("nick"));
+        assertTrue(((DBObject)query.getValue().get(RandomSampler.RANDOM_KEY)).containsField("$gte"));
+    }
+
+    @Test
+    public void testWrapAround() {
+        BasicDBObject found = new BasicDBObject("quote", "hi");
+        when(collection.findOne(any(DBObject.class), any(DBObject.class), any(DBObject.class))).thenReturn(null, found);
+
+        assertSame(found, sampler.findOne(new BasicDBObject(), new BasicDBObject("quote", 1)));
+
+        ArgumentCaptor<DBObject> query = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection, times(2)).findOne(query.capture(), any(DBObject.class), any(DBObject.class));
+        assertTrue(((DBObject)query.getAllValues().get(1).get(RandomSampler.RANDOM_KEY)).containsField("$lt"));
+    }
+
+    @Test
+    public void testNothingFound() {
+        assertNull(sampler.findOne(new BasicDBObject(), new BasicDBObject("quote", 1)));
+    }
+}